@@ -0,0 +1,47 @@
+package de.comparus.opensource.longmap.benchmarks;
+
+/**
+ * The operations the benchmarks run against a map with long keys, so that
+ * every map is driven by the same benchmark code.
+ */
+public interface BenchmarkMap {
+
+    /**
+     * Associates the value with the key.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the previous value, or null
+     */
+    Object put(long key, Object value);
+
+    /**
+     * Returns the value associated with the key.
+     *
+     * @param key the key
+     * @return the value, or null
+     */
+    Object get(long key);
+
+    /**
+     * Removes the mapping for the key.
+     *
+     * @param key the key
+     * @return the removed value, or null
+     */
+    Object remove(long key);
+
+    /**
+     * Iterates over all the mappings.
+     *
+     * @return the sum of all keys
+     */
+    long sumKeys();
+
+    /**
+     * Returns the map under benchmark, for measuring its footprint.
+     *
+     * @return the underlying map
+     */
+    Object unwrap();
+}
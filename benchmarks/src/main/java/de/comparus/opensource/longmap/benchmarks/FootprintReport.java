@@ -0,0 +1,48 @@
+package de.comparus.opensource.longmap.benchmarks;
+
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Prints the memory footprint per entry of the compared maps, measured by
+ * walking the object graph of each map with JOL. All mappings share a single
+ * value, so the figures cover the structure of the map and its keys only.
+ * <p>
+ * Usage: {@code java -cp target/benchmarks.jar
+ * de.comparus.opensource.longmap.benchmarks.FootprintReport [size...]}
+ */
+public class FootprintReport {
+
+    /**
+     * The sizes reported when none are given on the command line.
+     */
+    private static final int[] DEFAULT_SIZES = {1000, 100000, 1000000};
+
+    /**
+     * The load factor of the measured maps.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    public static void main(String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        long valueSize = GraphLayout.parseInstance(LongMapBenchmark.VALUE).totalSize();
+        System.out.printf("%-14s %-11s %10s %14s %14s%n",
+                "map", "keys", "size", "total bytes", "bytes/entry");
+        for (MapKind kind : MapKind.values()) {
+            for (KeyDistribution distribution : KeyDistribution.values()) {
+                for (int size : sizes) {
+                    BenchmarkMap map = LongMapBenchmark.fill(kind.create(LOAD_FACTOR), distribution.keys(size));
+                    long total = GraphLayout.parseInstance(map.unwrap()).totalSize() - valueSize;
+                    System.out.printf("%-14s %-11s %10d %14d %14.2f%n",
+                            kind, distribution, size, total, (double) total / size);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package de.comparus.opensource.longmap.benchmarks;
+
+/**
+ * Distributions of the keys put into the benchmarked maps. Every
+ * distribution yields distinct keys for distinct indexes, so keys generated
+ * from indexes past the size of a map are guaranteed misses.
+ */
+public enum KeyDistribution {
+
+    /**
+     * Consecutive positive keys starting at 1.
+     */
+    SEQUENTIAL {
+        long key(long index) {
+            return index + 1;
+        }
+    },
+
+    /**
+     * Keys spread uniformly over the whole range of long.
+     */
+    RANDOM {
+        long key(long index) {
+            return mix(index + 1);
+        }
+    },
+
+    /**
+     * Runs of 64 consecutive keys, with the runs far apart.
+     */
+    CLUSTERED {
+        long key(long index) {
+            return (index >>> 6) * CLUSTER_STRIDE + (index & 63) + 1;
+        }
+    },
+
+    /**
+     * Consecutive negative keys starting at -1.
+     */
+    NEGATIVE {
+        long key(long index) {
+            return -index - 1;
+        }
+    };
+
+    /**
+     * The distance between the first keys of two adjacent clusters.
+     */
+    private static final long CLUSTER_STRIDE = 1L << 20;
+
+    /**
+     * Returns the key with the specified index.
+     *
+     * @param index the index of the key, not negative
+     * @return the key
+     */
+    abstract long key(long index);
+
+    /**
+     * Returns the keys with indexes from 0 to size, exclusive.
+     *
+     * @param size the number of keys
+     * @return the keys
+     */
+    public long[] keys(int size) {
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = key(i);
+        }
+        return keys;
+    }
+
+    /**
+     * A bijective 64-bit mixing function, the finalizer of MurmurHash3.
+     *
+     * @param x the value to mix
+     * @return the mixed value
+     */
+    private static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+}
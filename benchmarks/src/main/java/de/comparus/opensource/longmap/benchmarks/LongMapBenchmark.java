@@ -0,0 +1,147 @@
+package de.comparus.opensource.longmap.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares LongMapImpl with HashMap&lt;Long, V&gt;.
+ * <p>
+ * The lookup benchmarks run a fixed number of operations on keys picked at
+ * random from the map, mixed with absent keys in the proportion given by
+ * hitRatio, and report the time of a single operation. The resize benchmark
+ * fills a map of the default initial capacity with all keys, and iterate
+ * visits every mapping once.
+ * <p>
+ * The full parameter space is large, narrow it on the command line, e.g.
+ * {@code java -jar target/benchmarks.jar LongMapBenchmark.get -p size=100000000
+ * -p distribution=RANDOM -jvmArgs -Xmx32g}. Maps of 100M entries need a
+ * heap of that order, which is why that size is not among the defaults.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class LongMapBenchmark {
+
+    /**
+     * The number of operations of a single lookup benchmark invocation.
+     */
+    private static final int OPERATIONS = 1 << 16;
+
+    /**
+     * The value of all mappings.
+     */
+    static final Object VALUE = new Object();
+
+    @Param({"LONG_MAP_IMPL", "HASH_MAP"})
+    private MapKind map;
+
+    @Param({"1000", "100000", "10000000"})
+    private int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "CLUSTERED", "NEGATIVE"})
+    private KeyDistribution distribution;
+
+    @Param({"0.5", "0.75", "0.9"})
+    private float loadFactor;
+
+    @Param({"1.0", "0.5", "0.0"})
+    private double hitRatio;
+
+    private long[] keys;
+
+    private long[] lookups;
+
+    private BenchmarkMap target;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = distribution.keys(size);
+        target = fill(map.create(loadFactor), keys);
+
+        Random random = new Random(42);
+        lookups = new long[OPERATIONS];
+        for (int i = 0; i < OPERATIONS; i++) {
+            lookups[i] = random.nextDouble() < hitRatio
+                    ? keys[random.nextInt(size)]
+                    : distribution.key(size + random.nextInt(size));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void get(Blackhole blackhole) {
+        for (long key : lookups) {
+            blackhole.consume(target.get(key));
+        }
+    }
+
+    /**
+     * Puts the lookup keys. Absent keys are inserted by the first invocation
+     * and replaced afterwards, so the map does not grow during measurement.
+     */
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void put(Blackhole blackhole) {
+        for (long key : lookups) {
+            blackhole.consume(target.put(key, VALUE));
+        }
+    }
+
+    /**
+     * Removes the lookup keys and puts back the removed ones, which keeps
+     * the contents of the map stable across invocations.
+     */
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void removeAndReinsert(Blackhole blackhole) {
+        for (long key : lookups) {
+            Object value = target.remove(key);
+            if (value != null) {
+                target.put(key, value);
+            }
+            blackhole.consume(value);
+        }
+    }
+
+    @Benchmark
+    public long iterate() {
+        return target.sumKeys();
+    }
+
+    @Benchmark
+    public Object resize() {
+        return fill(map.create(loadFactor), keys).unwrap();
+    }
+
+    /**
+     * Puts all the specified keys into the map.
+     *
+     * @param target the map to fill
+     * @param keys   the keys
+     * @return the map
+     */
+    static BenchmarkMap fill(BenchmarkMap target, long[] keys) {
+        for (long key : keys) {
+            target.put(key, VALUE);
+        }
+        return target;
+    }
+}
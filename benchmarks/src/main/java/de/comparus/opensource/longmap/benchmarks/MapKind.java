@@ -0,0 +1,83 @@
+package de.comparus.opensource.longmap.benchmarks;
+
+import de.comparus.opensource.longmap.LongMapCursor;
+import de.comparus.opensource.longmap.LongMapImpl;
+
+import java.util.HashMap;
+
+/**
+ * The maps compared by the benchmarks.
+ */
+public enum MapKind {
+
+    LONG_MAP_IMPL {
+        public BenchmarkMap create(float loadFactor) {
+            LongMapImpl<Object> map = new LongMapImpl<>(loadFactor);
+            return new BenchmarkMap() {
+                public Object put(long key, Object value) {
+                    return map.put(key, value);
+                }
+
+                public Object get(long key) {
+                    return map.get(key);
+                }
+
+                public Object remove(long key) {
+                    return map.remove(key);
+                }
+
+                public long sumKeys() {
+                    long sum = 0L;
+                    LongMapCursor<Object> cursor = map.cursor();
+                    while (cursor.advance()) {
+                        sum += cursor.key();
+                    }
+                    return sum;
+                }
+
+                public Object unwrap() {
+                    return map;
+                }
+            };
+        }
+    },
+
+    HASH_MAP {
+        public BenchmarkMap create(float loadFactor) {
+            HashMap<Long, Object> map = new HashMap<>(16, loadFactor);
+            return new BenchmarkMap() {
+                public Object put(long key, Object value) {
+                    return map.put(key, value);
+                }
+
+                public Object get(long key) {
+                    return map.get(key);
+                }
+
+                public Object remove(long key) {
+                    return map.remove(key);
+                }
+
+                public long sumKeys() {
+                    long sum = 0L;
+                    for (Long key : map.keySet()) {
+                        sum += key;
+                    }
+                    return sum;
+                }
+
+                public Object unwrap() {
+                    return map;
+                }
+            };
+        }
+    };
+
+    /**
+     * Creates an empty map with the default initial capacity.
+     *
+     * @param loadFactor the load factor
+     * @return the map
+     */
+    public abstract BenchmarkMap create(float loadFactor);
+}
@@ -0,0 +1,778 @@
+package de.comparus.opensource.longmap;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Objects;
+
+/**
+ * An open-addressed hash table which keeps its slots in byte buffers.
+ * Every slot holds an 8-byte key followed by a fixed-width value encoded
+ * with a ValueCodec. Slots are split between buffers of at most 1 GB, so
+ * the table is not limited by the 2 GB size of a single buffer.
+ * <p>
+ * The key 0 marks an empty slot. Its own mapping lives in an extra slot
+ * after the table, whose key field is 1 when the mapping is present.
+ * Subclasses decide where the buffers come from.
+ *
+ * @param <V> the type of mapped values
+ */
+abstract class AbstractBufferLongMap<V> implements LongMap<V>, AutoCloseable {
+
+    /* ---------------- Default values ---------------- */
+
+    /**
+     * The default initial capacity.
+     */
+    static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The default load factor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The maximum capacity of the table, must be a power of two.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The maximum number of bytes in a single buffer.
+     */
+    private static final int MAXIMUM_CHUNK_BYTES = 1 << 30;
+
+    /**
+     * The key which marks an empty slot of the table.
+     */
+    private static final long FREE_KEY = 0L;
+
+    /* ---------------- Fields ---------------- */
+
+    /**
+     * The codec of the values.
+     */
+    final ValueCodec<V> codec;
+
+    /**
+     * The number of bytes in a slot.
+     */
+    final int slotSize;
+
+    /**
+     * The load factor for this map.
+     */
+    final float loadFactor;
+
+    /**
+     * The strategy which hashes the keys.
+     */
+    private final LongHashStrategy hashStrategy;
+
+    /**
+     * The number of slots in a buffer is 1 << chunkShift.
+     */
+    private final int chunkShift;
+
+    /**
+     * The mask to calculate the index of a slot inside its buffer.
+     */
+    private final int chunkMask;
+
+    /**
+     * The buffers holding the slots of the table.
+     */
+    ByteBuffer[] chunks;
+
+    /**
+     * The number of slots of the table, a power of two.
+     */
+    int capacity;
+
+    /**
+     * The mask to calculate the index of a slot, always equal to capacity - 1.
+     */
+    private int mask;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    int size;
+
+    /**
+     * The next size value at which to resize.
+     */
+    private int threshold;
+
+    /**
+     * True once the memory of this map has been released.
+     */
+    private boolean closed;
+
+    /**
+     * The number of structural modifications of this map, used to make
+     * iteration fail-fast.
+     */
+    private int modCount;
+
+    /* ---------------- Constructors ---------------- */
+
+    /**
+     * Prepares the layout of the table. Subclasses must call attach once
+     * the buffers are ready.
+     *
+     * @param codec        the codec of the values
+     * @param loadFactor   the load factor
+     * @param hashStrategy the strategy which hashes the keys
+     * @throws IllegalArgumentException if the load factor is not in (0, 1)
+     * @throws NullPointerException     if the hash strategy is null
+     */
+    AbstractBufferLongMap(ValueCodec<V> codec, float loadFactor, LongHashStrategy hashStrategy) {
+        Objects.requireNonNull(codec);
+        if (hashStrategy == null) {
+            throw new NullPointerException("Hash strategy is null");
+        }
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor)) {
+            throw new IllegalArgumentException("Illegal load factor: " +
+                    loadFactor);
+        }
+        this.codec = codec;
+        this.loadFactor = loadFactor;
+        this.hashStrategy = hashStrategy;
+        slotSize = Long.BYTES + codec.size();
+        chunkShift = 31 - Integer.numberOfLeadingZeros(MAXIMUM_CHUNK_BYTES / slotSize);
+        chunkMask = (1 << chunkShift) - 1;
+    }
+
+    /* ---------------- Memory ---------------- */
+
+    /**
+     * Returns zeroed buffers able to hold the specified number of slots.
+     *
+     * @param slots the number of slots
+     * @return the buffers
+     */
+    abstract ByteBuffer[] allocate(int slots);
+
+    /**
+     * Releases the buffers which are no longer used by this map.
+     *
+     * @param buffers the buffers
+     */
+    abstract void release(ByteBuffer[] buffers);
+
+    /**
+     * Called after the table has been moved to new buffers.
+     */
+    void resized() {
+    }
+
+    /**
+     * Called after the number of mappings has changed.
+     */
+    void sizeChanged() {
+    }
+
+    /**
+     * Returns the sizes in bytes of the buffers needed for the specified
+     * number of slots.
+     *
+     * @param slots the number of slots
+     * @return the size of each buffer
+     */
+    final long[] chunkSizes(int slots) {
+        int count = ((slots - 1) >>> chunkShift) + 1;
+        long[] sizes = new long[count];
+        for (int i = 0; i < count; i++) {
+            int chunkSlots = Math.min(slots - (i << chunkShift), 1 << chunkShift);
+            sizes[i] = (long) chunkSlots * slotSize;
+        }
+        return sizes;
+    }
+
+    /**
+     * Uses the specified buffers as the table of the specified capacity.
+     *
+     * @param buffers  the buffers, holding capacity + 1 slots
+     * @param capacity the capacity, a power of two
+     * @param size     the number of mappings in the buffers
+     */
+    final void attach(ByteBuffer[] buffers, int capacity, int size) {
+        this.chunks = buffers;
+        this.capacity = capacity;
+        this.size = size;
+        mask = capacity - 1;
+        threshold = Math.min((int) (capacity * loadFactor), capacity - 1);
+    }
+
+    /**
+     * Releases the memory of this map. The map cannot be used afterwards.
+     */
+    public void close() {
+        if (!closed) {
+            closed = true;
+            release(chunks);
+            chunks = null;
+        }
+    }
+
+    /* ---------------- Main Methods ---------------- */
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with key, or
+     * null if there was no mapping for key
+     * @throws NullPointerException  if the value is null
+     * @throws IllegalStateException if the map is closed
+     */
+    public V put(long key, V value) {
+        Objects.requireNonNull(value);
+        ensureOpen();
+        int slot = key == FREE_KEY ? capacity : hash(key);
+        if (key != FREE_KEY) {
+            long current;
+            while ((current = keyAt(chunks, slot)) != FREE_KEY) {
+                if (current == key) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        if (keyAt(chunks, slot) != FREE_KEY) {
+            V previous = valueAt(slot);
+            writeValue(slot, value);
+            return previous;
+        }
+
+        setKeyAt(chunks, slot, key == FREE_KEY ? 1L : key);
+        writeValue(slot, value);
+        modCount++;
+        size++;
+        if (key != FREE_KEY && size > threshold) {
+            resize();
+        }
+        sizeChanged();
+        return null;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this map
+     * contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or null if this map contains no mapping for the key
+     * @throws IllegalStateException if the map is closed
+     */
+    public V get(long key) {
+        ensureOpen();
+        int slot = indexOf(key);
+        return slot < 0 ? null : valueAt(slot);
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     * @throws IllegalStateException if the map is closed
+     */
+    public V remove(long key) {
+        ensureOpen();
+        int slot = indexOf(key);
+        if (slot < 0) {
+            return null;
+        }
+        V value = valueAt(slot);
+        if (slot == capacity) {
+            setKeyAt(chunks, slot, FREE_KEY);
+        } else {
+            shiftKeys(slot, null);
+        }
+        modCount++;
+        size--;
+        sizeChanged();
+        return value;
+    }
+
+    /**
+     * Returns true if this map contains no key-value mappings.
+     *
+     * @return true if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the specified key.
+     *
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for the specified key
+     * @throws IllegalStateException if the map is closed
+     */
+    public boolean containsKey(long key) {
+        ensureOpen();
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Returns true if this map maps one or more keys to the specified value.
+     * Every value of the table is decoded for the comparison.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return true if this map maps one or more keys to the specified value
+     * @throws IllegalStateException if the map is closed
+     */
+    public boolean containsValue(V value) {
+        ensureOpen();
+        if (value == null) {
+            return false;
+        }
+        for (int slot = 0; slot <= capacity; slot++) {
+            if (keyAt(chunks, slot) != FREE_KEY && value.equals(valueAt(slot))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns all the keys contained in this map.
+     *
+     * @return array of keys
+     * @throws IllegalStateException if the map is closed
+     */
+    public long[] keys() {
+        ensureOpen();
+        long[] keySet = new long[size];
+        int position = 0;
+
+        if (keyAt(chunks, capacity) != FREE_KEY) {
+            keySet[position++] = FREE_KEY;
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            long key = keyAt(chunks, slot);
+            if (key != FREE_KEY) {
+                keySet[position++] = key;
+            }
+        }
+        return keySet;
+    }
+
+    /**
+     * Returns all the values contained in this map, decoded into new objects.
+     *
+     * @return array of values or null if this map contains no values
+     * @throws IllegalStateException if the map is closed
+     */
+    @SuppressWarnings("unchecked")
+    public V[] values() {
+        ensureOpen();
+        V[] valuesSet = null;
+        int position = 0;
+
+        if (keyAt(chunks, capacity) != FREE_KEY) {
+            V value = valueAt(capacity);
+            valuesSet = (V[]) Array.newInstance(value.getClass(), size);
+            valuesSet[position++] = value;
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            if (keyAt(chunks, slot) != FREE_KEY) {
+                V value = valueAt(slot);
+                if (valuesSet == null) {
+                    valuesSet = (V[]) Array.newInstance(value.getClass(), size);
+                }
+                valuesSet[position++] = value;
+            }
+        }
+        return valuesSet;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     *
+     * @throws IllegalStateException if the map is closed
+     */
+    public void clear() {
+        ensureOpen();
+        for (int slot = 0; slot <= capacity; slot++) {
+            setKeyAt(chunks, slot, FREE_KEY);
+        }
+        modCount++;
+        size = 0;
+        sizeChanged();
+    }
+
+    /* ---------------- Iteration ---------------- */
+
+    /**
+     * Performs the given action for each mapping of this map. Every value is
+     * decoded for the action.
+     *
+     * @param action the action to be performed for each mapping
+     * @throws ConcurrentModificationException if the action structurally modifies this map
+     * @throws IllegalStateException           if the map is closed
+     */
+    public void forEach(LongObjConsumer<? super V> action) {
+        ensureOpen();
+        int expectedModCount = modCount;
+        if (keyAt(chunks, capacity) != FREE_KEY) {
+            action.accept(FREE_KEY, valueAt(capacity));
+        }
+        for (int slot = 0; slot < capacity && modCount == expectedModCount; slot++) {
+            long key = keyAt(chunks, slot);
+            if (key != FREE_KEY) {
+                action.accept(key, valueAt(slot));
+            }
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Returns a cursor over the mappings of this map, which reads the table in place.
+     *
+     * @return a new cursor
+     * @throws IllegalStateException if the map is closed
+     */
+    public LongMapCursor<V> cursor() {
+        ensureOpen();
+        return new Cursor();
+    }
+
+    /**
+     * A cursor which walks the table from its end to its start, so that
+     * removing the current entry only shifts entries which have been visited
+     * already, except for those wrapping around the end of the table.
+     */
+    private class Cursor implements LongMapCursor<V> {
+
+        /**
+         * The index of the slot to look at next, counting down. Negative
+         * values point into the wrapped keys.
+         */
+        private int position;
+
+        /**
+         * The slot of the current mapping or -1 if there is no current mapping.
+         */
+        private int current;
+
+        /**
+         * True if the current mapping is one of the wrapped keys.
+         */
+        private boolean currentWrapped;
+
+        /**
+         * The number of mappings not visited yet.
+         */
+        private int remaining;
+
+        /**
+         * The keys shifted from the unvisited part of the table into the
+         * visited one by removals through this cursor.
+         */
+        private long[] wrapped;
+
+        /**
+         * The number of wrapped keys.
+         */
+        private int wrappedCount;
+
+        /**
+         * The modCount this cursor is in sync with.
+         */
+        private int expectedModCount;
+
+        private Cursor() {
+            reset();
+        }
+
+        public void reset() {
+            position = capacity + 1;
+            current = -1;
+            currentWrapped = false;
+            remaining = size;
+            wrappedCount = 0;
+            expectedModCount = modCount;
+        }
+
+        public boolean advance() {
+            ensureOpen();
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (remaining == 0) {
+                current = -1;
+                return false;
+            }
+            remaining--;
+            while (true) {
+                if (--position < 0) {
+                    current = indexOf(wrapped[-position - 1]);
+                    currentWrapped = true;
+                    return true;
+                }
+                if (keyAt(chunks, position) != FREE_KEY) {
+                    current = position;
+                    return true;
+                }
+            }
+        }
+
+        public long key() {
+            checkCurrent();
+            return current == capacity ? FREE_KEY : keyAt(chunks, current);
+        }
+
+        public V value() {
+            checkCurrent();
+            return valueAt(current);
+        }
+
+        public void remove() {
+            checkCurrent();
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (current == capacity || currentWrapped) {
+                AbstractBufferLongMap.this.remove(key());
+            } else {
+                shiftKeys(current, this);
+                modCount++;
+                size--;
+                sizeChanged();
+            }
+            expectedModCount = modCount;
+            current = -1;
+            currentWrapped = false;
+        }
+
+        /**
+         * Remembers a key which has been shifted from the unvisited part of
+         * the table into the visited one.
+         *
+         * @param key the shifted key
+         */
+        private void addWrapped(long key) {
+            if (wrapped == null) {
+                wrapped = new long[2];
+            } else if (wrappedCount == wrapped.length) {
+                wrapped = Arrays.copyOf(wrapped, wrappedCount * 2);
+            }
+            wrapped[wrappedCount++] = key;
+        }
+
+        /**
+         * Checks that the cursor points to a mapping of an open map.
+         *
+         * @throws IllegalStateException if there is no current mapping
+         */
+        private void checkCurrent() {
+            ensureOpen();
+            if (current < 0) {
+                throw new IllegalStateException("Cursor does not point to a mapping");
+            }
+        }
+    }
+
+    /* ---------------- Utils Methods ---------------- */
+
+    /**
+     * Returns calculated hash of a key, which is the index of its home slot.
+     *
+     * @param key a key, which needs to be hashed
+     * @return hash value
+     */
+    private int hash(long key) {
+        return hashStrategy.hash(key) & mask;
+    }
+
+    /**
+     * Returns the index of the slot which contains the specified key.
+     *
+     * @param key a key to look for
+     * @return index of the slot or -1 if there is no such key in the table
+     */
+    private int indexOf(long key) {
+        if (key == FREE_KEY) {
+            return keyAt(chunks, capacity) != FREE_KEY ? capacity : -1;
+        }
+        int slot = hash(key);
+        long current;
+        while ((current = keyAt(chunks, slot)) != FREE_KEY) {
+            if (current == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the key stored in the specified slot.
+     *
+     * @param buffers the buffers of the table
+     * @param slot    index of the slot
+     * @return the key
+     */
+    private long keyAt(ByteBuffer[] buffers, int slot) {
+        return buffers[slot >>> chunkShift].getLong((slot & chunkMask) * slotSize);
+    }
+
+    /**
+     * Stores the key in the specified slot.
+     *
+     * @param buffers the buffers of the table
+     * @param slot    index of the slot
+     * @param key     the key
+     */
+    private void setKeyAt(ByteBuffer[] buffers, int slot, long key) {
+        buffers[slot >>> chunkShift].putLong((slot & chunkMask) * slotSize, key);
+    }
+
+    /**
+     * Decodes the value stored in the specified slot.
+     *
+     * @param slot index of the slot
+     * @return the value
+     */
+    private V valueAt(int slot) {
+        return codec.read(chunks[slot >>> chunkShift], (slot & chunkMask) * slotSize + Long.BYTES);
+    }
+
+    /**
+     * Encodes the value into the specified slot.
+     *
+     * @param slot  index of the slot
+     * @param value the value
+     */
+    private void writeValue(int slot, V value) {
+        codec.write(chunks[slot >>> chunkShift], (slot & chunkMask) * slotSize + Long.BYTES, value);
+    }
+
+    /**
+     * Copies a whole slot to another slot, possibly of other buffers.
+     *
+     * @param from    the buffers to copy from
+     * @param source  index of the slot to copy
+     * @param to      the buffers to copy to
+     * @param target  index of the slot to overwrite
+     */
+    private void copySlot(ByteBuffer[] from, int source, ByteBuffer[] to, int target) {
+        ByteBuffer sourceChunk = from[source >>> chunkShift];
+        ByteBuffer targetChunk = to[target >>> chunkShift];
+        int sourceOffset = (source & chunkMask) * slotSize;
+        int targetOffset = (target & chunkMask) * slotSize;
+        int i = 0;
+        for (; i + Long.BYTES <= slotSize; i += Long.BYTES) {
+            targetChunk.putLong(targetOffset + i, sourceChunk.getLong(sourceOffset + i));
+        }
+        for (; i < slotSize; i++) {
+            targetChunk.put(targetOffset + i, sourceChunk.get(sourceOffset + i));
+        }
+    }
+
+    /**
+     * Empties the specified slot and shifts the following entries of the
+     * cluster back, so that no entry becomes unreachable from its home slot.
+     * Entries wrapping around the end of the table are handed over to the
+     * cursor which removes the entry, if any.
+     *
+     * @param position index of the slot to empty
+     * @param cursor   the cursor which removes the entry, or null
+     */
+    private void shiftKeys(int position, Cursor cursor) {
+        int last;
+        long current;
+        while (true) {
+            last = position;
+            position = (position + 1) & mask;
+            while (true) {
+                if ((current = keyAt(chunks, position)) == FREE_KEY) {
+                    setKeyAt(chunks, last, FREE_KEY);
+                    return;
+                }
+                int home = hash(current);
+                if (last <= position ? last >= home || home > position : last >= home && home > position) {
+                    break;
+                }
+                position = (position + 1) & mask;
+            }
+            if (cursor != null && position < last) {
+                cursor.addWrapped(current);
+            }
+            copySlot(chunks, position, chunks, last);
+        }
+    }
+
+    /**
+     * Double the capacity of the table and copy all slots to new buffers.
+     */
+    private void resize() {
+        if (capacity == MAXIMUM_CAPACITY) {
+            if (size >= MAXIMUM_CAPACITY - 1) {
+                throw new IllegalStateException("Map capacity exceeded: " + size);
+            }
+            threshold = MAXIMUM_CAPACITY - 1;
+            return;
+        }
+        ByteBuffer[] oldChunks = chunks;
+        int oldCapacity = capacity;
+        ByteBuffer[] newChunks = allocate(oldCapacity * 2 + 1);
+        modCount++;
+        attach(newChunks, oldCapacity * 2, size);
+
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            long key = keyAt(oldChunks, slot);
+            if (key != FREE_KEY) {
+                int index = hash(key);
+                while (keyAt(newChunks, index) != FREE_KEY) {
+                    index = (index + 1) & mask;
+                }
+                copySlot(oldChunks, slot, newChunks, index);
+            }
+        }
+        copySlot(oldChunks, oldCapacity, newChunks, capacity);
+        release(oldChunks);
+        resized();
+    }
+
+    /**
+     * Checks that the memory of this map has not been released.
+     *
+     * @throws IllegalStateException if the map is closed
+     */
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Map is closed");
+        }
+    }
+
+    /**
+     * Returns a power of two size for the given capacity.
+     *
+     * @param capacity the requested capacity
+     * @return the smallest power of two not less than capacity and 2
+     */
+    static int tableSizeFor(int capacity) {
+        if (capacity >= MAXIMUM_CAPACITY) {
+            return MAXIMUM_CAPACITY;
+        }
+        int n = -1 >>> Integer.numberOfLeadingZeros(Math.max(capacity, 2) - 1);
+        return n + 1;
+    }
+}
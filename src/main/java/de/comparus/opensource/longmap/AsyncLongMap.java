@@ -0,0 +1,392 @@
+package de.comparus.opensource.longmap;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongFunction;
+
+/**
+ * An asynchronous facade over a ConcurrentLongMap, which loads the values
+ * of missing keys on an executor and returns CompletableFutures.
+ * <p>
+ * Concurrent misses on the same key share one load: the first miss
+ * registers a future for the key, and the later ones wait for it. With a
+ * bulk loader, the misses of all keys arriving within the batch window
+ * are collected and loaded with a single call of the loader; a batch is
+ * loaded early once it reaches the maximum batch size. Loaded values are
+ * stored in the map, unless the key was put in the meantime, in which case
+ * the put value wins.
+ * <p>
+ * No thread ever blocks on a lock of this facade: lookups read the map,
+ * misses are registered with putIfAbsent, and keys are added to the batch
+ * by claiming a slot with a compare-and-set, so callers on virtual threads
+ * never pin their carrier. Loads run only on the executor. Every caller
+ * receives its own future, so completing or cancelling it does not affect
+ * the others. The values must not be null.
+ *
+ * @param <V> the type of mapped values
+ */
+public class AsyncLongMap<V> {
+
+    /**
+     * The claim count which marks a batch as sealed. Claims beyond the batch
+     * size are rejected, so a sealed batch never accepts another key.
+     */
+    private static final int SEALED = Integer.MAX_VALUE / 2;
+
+    /**
+     * The thread which loads batches when their window ends.
+     */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "AsyncLongMap timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /* ---------------- Fields ---------------- */
+
+    /**
+     * The loaded values.
+     */
+    private final ConcurrentLongMap<V> map = new ConcurrentLongMap<>();
+
+    /**
+     * The futures of the keys being loaded.
+     */
+    private final ConcurrentLongMap<CompletableFuture<V>> loading = new ConcurrentLongMap<>();
+
+    /**
+     * The executor which runs the loads.
+     */
+    private final Executor executor;
+
+    /**
+     * The loader of missing keys looked up with get, or null if get does not load.
+     */
+    private final LongBulkLoader<V> bulkLoader;
+
+    /**
+     * How long the first key of a batch waits for more keys, in nanoseconds.
+     */
+    private final long windowNanos;
+
+    /**
+     * The maximum number of keys in a batch.
+     */
+    private final int maxBatchSize;
+
+    /**
+     * The batch which collects the missing keys.
+     */
+    private final AtomicReference<Batch> current;
+
+    /* ---------------- Constructors ---------------- */
+
+    /**
+     * Constructs an empty AsyncLongMap which loads the missing keys looked up
+     * with get in batches.
+     *
+     * @param executor     the executor which runs the loads
+     * @param bulkLoader   the loader of missing keys
+     * @param window       how long the first key of a batch waits for more keys
+     * @param unit         the unit of the window
+     * @param maxBatchSize the maximum number of keys in a batch
+     * @throws IllegalArgumentException if the window or the batch size is not positive
+     */
+    public AsyncLongMap(Executor executor, LongBulkLoader<V> bulkLoader, long window, TimeUnit unit,
+                        int maxBatchSize) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Illegal batch window: " +
+                    window);
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Illegal batch size: " +
+                    maxBatchSize);
+        }
+        this.executor = Objects.requireNonNull(executor);
+        this.bulkLoader = Objects.requireNonNull(bulkLoader);
+        this.windowNanos = unit.toNanos(window);
+        this.maxBatchSize = maxBatchSize;
+        current = new AtomicReference<>(new Batch());
+    }
+
+    /**
+     * Constructs an empty AsyncLongMap which loads missing keys only through
+     * computeIfAbsent; get completes with null for them.
+     *
+     * @param executor the executor which runs the loads
+     */
+    public AsyncLongMap(Executor executor) {
+        this.executor = Objects.requireNonNull(executor);
+        this.bulkLoader = null;
+        this.windowNanos = 0;
+        this.maxBatchSize = 0;
+        current = null;
+    }
+
+    /* ---------------- Main Methods ---------------- */
+
+    /**
+     * Returns the value of the specified key. A missing key is loaded with
+     * the bulk loader in the next batch, together with the other keys
+     * missed within the batch window.
+     *
+     * @param key the key whose value is to be returned
+     * @return the future of the value, completed with null if there is none
+     */
+    public CompletableFuture<V> get(long key) {
+        V value = map.get(key);
+        if (value != null || bulkLoader == null) {
+            return CompletableFuture.completedFuture(value);
+        }
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing.thenApply(v -> v);
+        }
+        value = map.get(key);
+        if (value != null) {
+            complete(key, value);
+            return CompletableFuture.completedFuture(value);
+        }
+        enqueue(key);
+        return future.thenApply(v -> v);
+    }
+
+    /**
+     * Returns the value of the specified key, loading a missing key with
+     * the specified loader on the executor. Concurrent calls for the same
+     * key share one load.
+     *
+     * @param key    the key whose value is to be returned
+     * @param loader the loader of the value, which may block
+     * @return the future of the value, completed with null if the loader
+     * returns null or exceptionally if the loader throws
+     */
+    public CompletableFuture<V> computeIfAbsent(long key, LongFunction<? extends V> loader) {
+        Objects.requireNonNull(loader);
+        V value = map.get(key);
+        if (value != null) {
+            return CompletableFuture.completedFuture(value);
+        }
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing.thenApply(v -> v);
+        }
+        value = map.get(key);
+        if (value != null) {
+            complete(key, value);
+            return CompletableFuture.completedFuture(value);
+        }
+        try {
+            executor.execute(() -> {
+                V loaded;
+                try {
+                    loaded = loader.apply(key);
+                } catch (Throwable e) {
+                    fail(key, e);
+                    return;
+                }
+                complete(key, loaded);
+            });
+        } catch (RejectedExecutionException e) {
+            fail(key, e);
+        }
+        return future.thenApply(v -> v);
+    }
+
+    /**
+     * Returns the value of the specified key without loading it.
+     *
+     * @param key the key whose value is to be returned
+     * @return the value, or null if the key is not loaded
+     */
+    public V getIfPresent(long key) {
+        return map.get(key);
+    }
+
+    /**
+     * Associates the specified value with the specified key. A load of the
+     * key in progress completes with this value.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with key, or null if there was no mapping for key
+     * @throws NullPointerException if the value is null
+     */
+    public V put(long key, V value) {
+        return map.put(key, value);
+    }
+
+    /**
+     * Removes the value of the specified key, so that the next lookup loads
+     * it again.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    public V remove(long key) {
+        return map.remove(key);
+    }
+
+    /**
+     * Returns the number of loaded values.
+     *
+     * @return the number of key-value mappings in the map
+     */
+    public long size() {
+        return map.size();
+    }
+
+    /**
+     * Removes all loaded values. Loads in progress still store their values.
+     */
+    public void clear() {
+        map.clear();
+    }
+
+    /* ---------------- Loading ---------------- */
+
+    /**
+     * Stores a loaded value, unless the key was put in the meantime, and
+     * completes the future of the key with the stored value.
+     *
+     * @param key   the key
+     * @param value the loaded value, or null if there is none
+     */
+    private void complete(long key, V value) {
+        if (value != null) {
+            V present = map.putIfAbsent(key, value);
+            if (present != null) {
+                value = present;
+            }
+        }
+        CompletableFuture<V> future = loading.remove(key);
+        if (future != null) {
+            future.complete(value);
+        }
+    }
+
+    /**
+     * Completes the future of the key exceptionally, so that the next lookup
+     * tries again.
+     *
+     * @param key   the key
+     * @param cause the failure of the load
+     */
+    private void fail(long key, Throwable cause) {
+        CompletableFuture<V> future = loading.remove(key);
+        if (future != null) {
+            future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Adds a missing key to the current batch. The first key of a batch
+     * schedules its load at the end of the window, and the key which fills
+     * the batch loads it at once.
+     *
+     * @param key the key
+     */
+    private void enqueue(long key) {
+        while (true) {
+            Batch batch = current.get();
+            int index = batch.claimed.getAndIncrement();
+            if (index < maxBatchSize) {
+                batch.keys[index] = key;
+                batch.written.incrementAndGet();
+                if (index == 0 && maxBatchSize > 1) {
+                    try {
+                        TIMER.schedule(() -> flush(batch), windowNanos, TimeUnit.NANOSECONDS);
+                    } catch (RejectedExecutionException e) {
+                        flush(batch);
+                    }
+                }
+                if (index == maxBatchSize - 1) {
+                    flush(batch);
+                }
+                return;
+            }
+            current.compareAndSet(batch, new Batch());
+        }
+    }
+
+    /**
+     * Seals the batch, unless it was sealed before, and loads its keys on
+     * the executor.
+     *
+     * @param batch the batch
+     */
+    private void flush(Batch batch) {
+        if (!batch.flushed.compareAndSet(false, true)) {
+            return;
+        }
+        current.compareAndSet(batch, new Batch());
+        int count = Math.min(batch.claimed.getAndSet(SEALED), maxBatchSize);
+        while (batch.written.get() < count) {
+            Thread.yield();
+        }
+        long[] keys = Arrays.copyOf(batch.keys, count);
+        try {
+            executor.execute(() -> load(keys));
+        } catch (RejectedExecutionException e) {
+            for (long key : keys) {
+                fail(key, e);
+            }
+        }
+    }
+
+    /**
+     * Loads the keys of a batch with the bulk loader and completes their futures.
+     *
+     * @param keys the keys
+     */
+    private void load(long[] keys) {
+        LongMap<? extends V> loaded;
+        try {
+            loaded = bulkLoader.loadAll(keys);
+        } catch (Throwable e) {
+            for (long key : keys) {
+                fail(key, e);
+            }
+            return;
+        }
+        for (long key : keys) {
+            complete(key, loaded == null ? null : loaded.get(key));
+        }
+    }
+
+    /**
+     * The missing keys collected within one window. Keys are added by
+     * claiming a slot and then counting it as written, so the load can
+     * wait for the keys whose slots were claimed before the batch was sealed.
+     */
+    private final class Batch {
+
+        private final long[] keys = new long[maxBatchSize];
+
+        /**
+         * The number of claimed slots, SEALED or more once the batch is sealed.
+         */
+        private final AtomicInteger claimed = new AtomicInteger();
+
+        /**
+         * The number of slots whose key was written.
+         */
+        private final AtomicInteger written = new AtomicInteger();
+
+        /**
+         * True once the load of this batch was started.
+         */
+        private final AtomicBoolean flushed = new AtomicBoolean();
+    }
+}
@@ -0,0 +1,802 @@
+package de.comparus.opensource.longmap;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A NavigableLongMap implemented as a B+tree. All mappings live in leaves
+ * which hold up to 64 keys in a plain long array, sorted and searched by
+ * binary search, so a leaf spans a few cache lines and keys are never
+ * boxed. Leaves are linked in both directions, so a range scan descends
+ * the tree once and then walks the leaves: O(log n + k).
+ * <p>
+ * Inner nodes hold separator keys: the child i of an inner node holds the
+ * keys from keys[i - 1], inclusive, to keys[i], exclusive. Every node except
+ * the root is at least half full.
+ * <p>
+ * Null values are permitted. This map is not thread-safe.
+ *
+ * @param <V> the type of mapped values
+ */
+public class BTreeLongMap<V> implements NavigableLongMap<V> {
+
+    /* ---------------- Default values ---------------- */
+
+    /**
+     * The maximum number of keys of a node.
+     */
+    private static final int ORDER = 64;
+
+    /**
+     * The minimum number of keys of a node other than the root.
+     */
+    private static final int MIN_KEYS = ORDER / 2;
+
+    /* ---------------- Nodes ---------------- */
+
+    /**
+     * A node of the tree. The arrays have room for one key more than ORDER,
+     * so that a node can overflow before it is split.
+     */
+    abstract static class Node {
+
+        final long[] keys = new long[ORDER + 1];
+        int size;
+    }
+
+    /**
+     * A leaf holding mappings.
+     */
+    static final class Leaf extends Node {
+
+        final Object[] values = new Object[ORDER + 1];
+        Leaf prev;
+        Leaf next;
+    }
+
+    /**
+     * An inner node holding separator keys and size + 1 children.
+     */
+    static final class Inner extends Node {
+
+        final Node[] children = new Node[ORDER + 2];
+    }
+
+    /* ---------------- Fields ---------------- */
+
+    /**
+     * The root of the tree.
+     */
+    private Node root;
+
+    /**
+     * The leftmost leaf.
+     */
+    private Leaf first;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    private long size;
+
+    /**
+     * The number of structural modifications of this map, used to make
+     * iteration fail-fast.
+     */
+    private int modCount;
+
+    /**
+     * The node split off by the last insert into a subtree, or null.
+     */
+    private Node splitNode;
+
+    /**
+     * The lowest key of splitNode.
+     */
+    private long splitKey;
+
+    /**
+     * True if the last remove from a subtree found the key.
+     */
+    private boolean removed;
+
+    /* ---------------- Constructors ---------------- */
+
+    /**
+     * Constructs an empty BTreeLongMap.
+     */
+    public BTreeLongMap() {
+        clear();
+    }
+
+    /* ---------------- Main Methods ---------------- */
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with key, or
+     * null if there was no mapping for key
+     */
+    public V put(long key, V value) {
+        V previous = insert(root, key, value);
+        if (splitNode != null) {
+            Inner newRoot = new Inner();
+            newRoot.keys[0] = splitKey;
+            newRoot.children[0] = root;
+            newRoot.children[1] = splitNode;
+            newRoot.size = 1;
+            root = newRoot;
+            splitNode = null;
+        }
+        return previous;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this map
+     * contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or null if this map contains no mapping for the key
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        Leaf leaf = leafFor(key);
+        int index = indexOf(leaf, key);
+        return index < 0 ? null : (V) leaf.values[index];
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    public V remove(long key) {
+        V previous = delete(root, key);
+        if (removed) {
+            removed = false;
+            if (root instanceof Inner && root.size == 0) {
+                root = ((Inner) root).children[0];
+            }
+        }
+        return previous;
+    }
+
+    /**
+     * Returns true if this map contains no key-value mappings.
+     *
+     * @return true if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the specified key.
+     *
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for the specified key
+     */
+    public boolean containsKey(long key) {
+        return indexOf(leafFor(key), key) >= 0;
+    }
+
+    /**
+     * Returns true if this map maps one or more keys to the specified value.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return true if this map maps one or more keys to the specified value
+     */
+    public boolean containsValue(V value) {
+        for (Leaf leaf = first; leaf != null; leaf = leaf.next) {
+            for (int i = 0; i < leaf.size; i++) {
+                if (Objects.equals(value, leaf.values[i])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns all the keys contained in this map in ascending order.
+     *
+     * @return array of keys
+     */
+    public long[] keys() {
+        long[] keySet = new long[(int) size];
+        int position = 0;
+        for (Leaf leaf = first; leaf != null; leaf = leaf.next) {
+            System.arraycopy(leaf.keys, 0, keySet, position, leaf.size);
+            position += leaf.size;
+        }
+        return keySet;
+    }
+
+    /**
+     * Returns all the values contained in this map in ascending order of
+     * their keys. The type of the array is the class of the first non-null
+     * value.
+     *
+     * @return array of values or null if this map contains no values
+     */
+    @SuppressWarnings("unchecked")
+    public V[] values() {
+        Object genericValue = null;
+        for (Leaf leaf = first; genericValue == null && leaf != null; leaf = leaf.next) {
+            for (int i = 0; genericValue == null && i < leaf.size; i++) {
+                genericValue = leaf.values[i];
+            }
+        }
+        if (genericValue == null) {
+            return null;
+        }
+        V[] valuesSet = (V[]) Array.newInstance(genericValue.getClass(), (int) size);
+        int position = 0;
+        for (Leaf leaf = first; leaf != null; leaf = leaf.next) {
+            System.arraycopy(leaf.values, 0, valuesSet, position, leaf.size);
+            position += leaf.size;
+        }
+        return valuesSet;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     */
+    public void clear() {
+        first = new Leaf();
+        root = first;
+        size = 0;
+        modCount++;
+    }
+
+    /* ---------------- Navigation ---------------- */
+
+    /**
+     * Returns the lowest key.
+     *
+     * @return the lowest key
+     * @throws NoSuchElementException if the map is empty
+     */
+    public long firstKey() {
+        if (size == 0) {
+            throw new NoSuchElementException("Map is empty");
+        }
+        return first.keys[0];
+    }
+
+    /**
+     * Returns the highest key.
+     *
+     * @return the highest key
+     * @throws NoSuchElementException if the map is empty
+     */
+    public long lastKey() {
+        if (size == 0) {
+            throw new NoSuchElementException("Map is empty");
+        }
+        Node node = root;
+        while (node instanceof Inner) {
+            node = ((Inner) node).children[node.size];
+        }
+        return node.keys[node.size - 1];
+    }
+
+    /**
+     * Returns the greatest key less than or equal to the given key.
+     *
+     * @param key the key
+     * @return the greatest key less than or equal to key
+     * @throws NoSuchElementException if there is no such key
+     */
+    public long floorKey(long key) {
+        Leaf leaf = leafFor(key);
+        int index = indexOf(leaf, key);
+        if (index >= 0) {
+            return key;
+        }
+        int insertion = -index - 1;
+        if (insertion > 0) {
+            return leaf.keys[insertion - 1];
+        }
+        if (leaf.prev != null) {
+            return leaf.prev.keys[leaf.prev.size - 1];
+        }
+        throw new NoSuchElementException("No key at or below " + key);
+    }
+
+    /**
+     * Returns the least key greater than or equal to the given key.
+     *
+     * @param key the key
+     * @return the least key greater than or equal to key
+     * @throws NoSuchElementException if there is no such key
+     */
+    public long ceilingKey(long key) {
+        Leaf leaf = leafFor(key);
+        int index = indexOf(leaf, key);
+        if (index >= 0) {
+            return key;
+        }
+        int insertion = -index - 1;
+        if (insertion < leaf.size) {
+            return leaf.keys[insertion];
+        }
+        if (leaf.next != null) {
+            return leaf.next.keys[0];
+        }
+        throw new NoSuchElementException("No key at or above " + key);
+    }
+
+    /**
+     * Performs the given action for each mapping with a key from fromKey,
+     * inclusive, to toKey, exclusive, in ascending key order.
+     *
+     * @param fromKey the low end of the range, inclusive
+     * @param toKey   the high end of the range, exclusive
+     * @param action  the action to be performed for each mapping
+     * @throws ConcurrentModificationException if the action modifies the map
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachInRange(long fromKey, long toKey, LongObjConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        Leaf leaf = leafFor(fromKey);
+        int index = indexOf(leaf, fromKey);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        int expectedModCount = modCount;
+        for (; leaf != null; leaf = leaf.next, index = 0) {
+            for (; index < leaf.size; index++) {
+                long key = leaf.keys[index];
+                if (key >= toKey) {
+                    return;
+                }
+                action.accept(key, (V) leaf.values[index]);
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+            }
+        }
+    }
+
+    /* ---------------- Iteration ---------------- */
+
+    /**
+     * Performs the given action for each mapping of this map in ascending
+     * key order.
+     *
+     * @param action the action to be performed for each mapping
+     * @throws ConcurrentModificationException if the action modifies the map
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(LongObjConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        for (Leaf leaf = first; leaf != null; leaf = leaf.next) {
+            for (int i = 0; i < leaf.size; i++) {
+                action.accept(leaf.keys[i], (V) leaf.values[i]);
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a cursor over the mappings of this map in ascending key order.
+     *
+     * @return a new cursor
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A cursor which walks the leaves. After a removal the cursor finds
+     * its way back by descending to the key following the removed one, as
+     * the removal may have merged or rebalanced leaves.
+     */
+    private final class Cursor implements LongMapCursor<V> {
+
+        private Leaf leaf;
+        private int index;
+        private boolean current;
+        private boolean started;
+        private long lastKey;
+        private int expectedModCount;
+
+        private Cursor() {
+            reset();
+        }
+
+        public void reset() {
+            leaf = first;
+            index = -1;
+            current = false;
+            started = false;
+            expectedModCount = modCount;
+        }
+
+        public boolean advance() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (leaf == null) {
+                if (!started || lastKey == Long.MAX_VALUE) {
+                    return current = false;
+                }
+                leaf = leafFor(lastKey + 1);
+                index = indexOf(leaf, lastKey + 1);
+                index = index < 0 ? -index - 2 : index - 1;
+            }
+            while (++index >= leaf.size) {
+                leaf = leaf.next;
+                index = -1;
+                if (leaf == null) {
+                    started = false;
+                    return current = false;
+                }
+            }
+            started = true;
+            lastKey = leaf.keys[index];
+            return current = true;
+        }
+
+        public long key() {
+            checkCurrent();
+            return leaf.keys[index];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V value() {
+            checkCurrent();
+            return (V) leaf.values[index];
+        }
+
+        public void remove() {
+            checkCurrent();
+            BTreeLongMap.this.remove(lastKey);
+            expectedModCount = modCount;
+            current = false;
+            leaf = null;
+        }
+
+        private void checkCurrent() {
+            if (!current) {
+                throw new IllegalStateException("Cursor does not point to a mapping");
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /* ---------------- Utils Methods ---------------- */
+
+    /**
+     * Returns the leaf which holds or would hold the specified key.
+     *
+     * @param key the key
+     * @return the leaf
+     */
+    private Leaf leafFor(long key) {
+        Node node = root;
+        while (node instanceof Inner) {
+            node = ((Inner) node).children[childIndex(node, key)];
+        }
+        return (Leaf) node;
+    }
+
+    /**
+     * Returns the index of the child of an inner node which holds the key,
+     * which is the number of separators less than or equal to it.
+     *
+     * @param node the inner node
+     * @param key  the key
+     * @return the index of the child
+     */
+    private static int childIndex(Node node, long key) {
+        long[] keys = node.keys;
+        int low = 0;
+        int high = node.size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] <= key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Searches the keys of a node, as defined by Arrays.binarySearch.
+     *
+     * @param node the node
+     * @param key  the key
+     * @return the index of the key, or (-(insertion point) - 1) if absent
+     */
+    private static int indexOf(Node node, long key) {
+        long[] keys = node.keys;
+        int low = 0;
+        int high = node.size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long current = keys[middle];
+            if (current < key) {
+                low = middle + 1;
+            } else if (current > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Inserts the mapping into the subtree. A node which overflows is split,
+     * and the new right half is reported in splitNode and splitKey.
+     *
+     * @param node  the root of the subtree
+     * @param key   the key
+     * @param value the value
+     * @return the previous value associated with key, or null
+     */
+    @SuppressWarnings("unchecked")
+    private V insert(Node node, long key, V value) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int index = indexOf(leaf, key);
+            if (index >= 0) {
+                V previous = (V) leaf.values[index];
+                leaf.values[index] = value;
+                return previous;
+            }
+            index = -index - 1;
+            int moved = leaf.size - index;
+            System.arraycopy(leaf.keys, index, leaf.keys, index + 1, moved);
+            System.arraycopy(leaf.values, index, leaf.values, index + 1, moved);
+            leaf.keys[index] = key;
+            leaf.values[index] = value;
+            leaf.size++;
+            size++;
+            modCount++;
+            if (leaf.size > ORDER) {
+                splitLeaf(leaf);
+            }
+            return null;
+        }
+
+        Inner inner = (Inner) node;
+        int index = childIndex(inner, key);
+        V previous = insert(inner.children[index], key, value);
+        if (splitNode != null) {
+            int moved = inner.size - index;
+            System.arraycopy(inner.keys, index, inner.keys, index + 1, moved);
+            System.arraycopy(inner.children, index + 1, inner.children, index + 2, moved);
+            inner.keys[index] = splitKey;
+            inner.children[index + 1] = splitNode;
+            inner.size++;
+            splitNode = null;
+            if (inner.size > ORDER) {
+                splitInner(inner);
+            }
+        }
+        return previous;
+    }
+
+    /**
+     * Moves the upper half of an overflowing leaf into a new leaf.
+     *
+     * @param leaf the leaf
+     */
+    private void splitLeaf(Leaf leaf) {
+        Leaf right = new Leaf();
+        int half = leaf.size / 2;
+        right.size = leaf.size - half;
+        System.arraycopy(leaf.keys, half, right.keys, 0, right.size);
+        System.arraycopy(leaf.values, half, right.values, 0, right.size);
+        Arrays.fill(leaf.values, half, leaf.size, null);
+        leaf.size = half;
+
+        right.next = leaf.next;
+        right.prev = leaf;
+        if (leaf.next != null) {
+            leaf.next.prev = right;
+        }
+        leaf.next = right;
+        splitNode = right;
+        splitKey = right.keys[0];
+    }
+
+    /**
+     * Moves the upper half of an overflowing inner node into a new node.
+     * The middle separator moves up to the parent.
+     *
+     * @param inner the inner node
+     */
+    private void splitInner(Inner inner) {
+        Inner right = new Inner();
+        int half = inner.size / 2;
+        right.size = inner.size - half - 1;
+        System.arraycopy(inner.keys, half + 1, right.keys, 0, right.size);
+        System.arraycopy(inner.children, half + 1, right.children, 0, right.size + 1);
+        Arrays.fill(inner.children, half + 1, inner.size + 1, null);
+        splitKey = inner.keys[half];
+        inner.size = half;
+        splitNode = right;
+    }
+
+    /**
+     * Removes the key from the subtree and rebalances children which
+     * become less than half full. Sets removed if the key was found.
+     *
+     * @param node the root of the subtree
+     * @param key  the key
+     * @return the removed value, or null
+     */
+    @SuppressWarnings("unchecked")
+    private V delete(Node node, long key) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int index = indexOf(leaf, key);
+            if (index < 0) {
+                return null;
+            }
+            V previous = (V) leaf.values[index];
+            int moved = leaf.size - index - 1;
+            System.arraycopy(leaf.keys, index + 1, leaf.keys, index, moved);
+            System.arraycopy(leaf.values, index + 1, leaf.values, index, moved);
+            leaf.values[--leaf.size] = null;
+            size--;
+            modCount++;
+            removed = true;
+            return previous;
+        }
+
+        Inner inner = (Inner) node;
+        int index = childIndex(inner, key);
+        V previous = delete(inner.children[index], key);
+        if (removed && inner.children[index].size < MIN_KEYS) {
+            rebalance(inner, index);
+        }
+        return previous;
+    }
+
+    /**
+     * Refills an underfull child by borrowing from a sibling, or merges it
+     * with a sibling if neither can spare a key.
+     *
+     * @param parent the parent of the child
+     * @param index  the index of the child
+     */
+    private void rebalance(Inner parent, int index) {
+        Node child = parent.children[index];
+        Node left = index > 0 ? parent.children[index - 1] : null;
+        Node right = index < parent.size ? parent.children[index + 1] : null;
+        if (left != null && left.size > MIN_KEYS) {
+            borrowFromLeft(parent, index, left, child);
+        } else if (right != null && right.size > MIN_KEYS) {
+            borrowFromRight(parent, index, child, right);
+        } else if (left != null) {
+            merge(parent, index - 1, left, child);
+        } else if (right != null) {
+            merge(parent, index, child, right);
+        }
+    }
+
+    /**
+     * Moves the last key of the left sibling into the child.
+     *
+     * @param parent the parent
+     * @param index  the index of the child
+     * @param left   the left sibling
+     * @param child  the child
+     */
+    private static void borrowFromLeft(Inner parent, int index, Node left, Node child) {
+        System.arraycopy(child.keys, 0, child.keys, 1, child.size);
+        if (child instanceof Leaf) {
+            Leaf leftLeaf = (Leaf) left;
+            Leaf childLeaf = (Leaf) child;
+            System.arraycopy(childLeaf.values, 0, childLeaf.values, 1, child.size);
+            child.keys[0] = left.keys[left.size - 1];
+            childLeaf.values[0] = leftLeaf.values[left.size - 1];
+            leftLeaf.values[left.size - 1] = null;
+            parent.keys[index - 1] = child.keys[0];
+        } else {
+            Inner leftInner = (Inner) left;
+            Inner childInner = (Inner) child;
+            System.arraycopy(childInner.children, 0, childInner.children, 1, child.size + 1);
+            child.keys[0] = parent.keys[index - 1];
+            childInner.children[0] = leftInner.children[left.size];
+            leftInner.children[left.size] = null;
+            parent.keys[index - 1] = left.keys[left.size - 1];
+        }
+        left.size--;
+        child.size++;
+    }
+
+    /**
+     * Moves the first key of the right sibling into the child.
+     *
+     * @param parent the parent
+     * @param index  the index of the child
+     * @param child  the child
+     * @param right  the right sibling
+     */
+    private static void borrowFromRight(Inner parent, int index, Node child, Node right) {
+        if (child instanceof Leaf) {
+            Leaf childLeaf = (Leaf) child;
+            Leaf rightLeaf = (Leaf) right;
+            child.keys[child.size] = right.keys[0];
+            childLeaf.values[child.size] = rightLeaf.values[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.size - 1);
+            System.arraycopy(rightLeaf.values, 1, rightLeaf.values, 0, right.size - 1);
+            rightLeaf.values[right.size - 1] = null;
+            parent.keys[index] = right.keys[0];
+        } else {
+            Inner childInner = (Inner) child;
+            Inner rightInner = (Inner) right;
+            child.keys[child.size] = parent.keys[index];
+            childInner.children[child.size + 1] = rightInner.children[0];
+            parent.keys[index] = right.keys[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.size - 1);
+            System.arraycopy(rightInner.children, 1, rightInner.children, 0, right.size);
+            rightInner.children[right.size] = null;
+        }
+        right.size--;
+        child.size++;
+    }
+
+    /**
+     * Merges the right node into the left one and removes the separator
+     * between them and the right node from the parent.
+     *
+     * @param parent    the parent
+     * @param separator the index of the separator between the nodes
+     * @param left      the left node
+     * @param right     the right node
+     */
+    private void merge(Inner parent, int separator, Node left, Node right) {
+        if (left instanceof Leaf) {
+            Leaf leftLeaf = (Leaf) left;
+            Leaf rightLeaf = (Leaf) right;
+            System.arraycopy(right.keys, 0, left.keys, left.size, right.size);
+            System.arraycopy(rightLeaf.values, 0, leftLeaf.values, left.size, right.size);
+            left.size += right.size;
+            leftLeaf.next = rightLeaf.next;
+            if (rightLeaf.next != null) {
+                rightLeaf.next.prev = leftLeaf;
+            }
+        } else {
+            Inner leftInner = (Inner) left;
+            Inner rightInner = (Inner) right;
+            left.keys[left.size] = parent.keys[separator];
+            System.arraycopy(right.keys, 0, left.keys, left.size + 1, right.size);
+            System.arraycopy(rightInner.children, 0, leftInner.children, left.size + 1, right.size + 1);
+            left.size += right.size + 1;
+        }
+        int moved = parent.size - separator - 1;
+        System.arraycopy(parent.keys, separator + 1, parent.keys, separator, moved);
+        System.arraycopy(parent.children, separator + 2, parent.children, separator + 1, moved);
+        parent.children[parent.size] = null;
+        parent.size--;
+    }
+}
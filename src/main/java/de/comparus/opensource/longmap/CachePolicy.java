@@ -0,0 +1,156 @@
+package de.comparus.opensource.longmap;
+
+import java.util.Arrays;
+
+/**
+ * The bookkeeping of an eviction policy of a LongCache. Entries are
+ * identified by the index of their slot in the cache. Queues of entries are
+ * doubly linked through the prev and next arrays, so that keeping the order
+ * of entries never allocates.
+ */
+abstract class CachePolicy {
+
+    /**
+     * The link which marks the end of a queue.
+     */
+    static final int NONE = -1;
+
+    /**
+     * The previous slot of each slot in its queue.
+     */
+    int[] prev = new int[0];
+
+    /**
+     * The next slot of each slot in its queue.
+     */
+    int[] next = new int[0];
+
+    /**
+     * Makes room for the bookkeeping of the specified number of slots.
+     *
+     * @param capacity the new number of slots
+     */
+    void grow(int capacity) {
+        prev = Arrays.copyOf(prev, capacity);
+        next = Arrays.copyOf(next, capacity);
+    }
+
+    /**
+     * Records a new entry.
+     *
+     * @param slot the slot of the entry
+     * @param key  the key of the entry
+     */
+    abstract void onInsert(int slot, long key);
+
+    /**
+     * Records a hit or an update of an entry.
+     *
+     * @param slot the slot of the entry
+     * @param key  the key of the entry
+     */
+    abstract void onAccess(int slot, long key);
+
+    /**
+     * Records a lookup of an absent key.
+     *
+     * @param key the key looked up
+     */
+    void onMiss(long key) {
+    }
+
+    /**
+     * Forgets an entry which is being removed from the cache.
+     *
+     * @param slot the slot of the entry
+     */
+    abstract void onRemove(int slot);
+
+    /**
+     * Chooses the entry to evict. The cache must not be empty.
+     *
+     * @return the slot of the entry to evict
+     */
+    abstract int victim();
+
+    /**
+     * Links the slot at the front of the queue.
+     *
+     * @param queue the queue
+     * @param slot  the slot
+     */
+    final void linkFirst(Queue queue, int slot) {
+        prev[slot] = NONE;
+        next[slot] = queue.head;
+        if (queue.head == NONE) {
+            queue.tail = slot;
+        } else {
+            prev[queue.head] = slot;
+        }
+        queue.head = slot;
+        queue.size++;
+    }
+
+    /**
+     * Links the slot at the back of the queue.
+     *
+     * @param queue the queue
+     * @param slot  the slot
+     */
+    final void linkLast(Queue queue, int slot) {
+        next[slot] = NONE;
+        prev[slot] = queue.tail;
+        if (queue.tail == NONE) {
+            queue.head = slot;
+        } else {
+            next[queue.tail] = slot;
+        }
+        queue.tail = slot;
+        queue.size++;
+    }
+
+    /**
+     * Unlinks the slot from the queue.
+     *
+     * @param queue the queue which contains the slot
+     * @param slot  the slot
+     */
+    final void unlink(Queue queue, int slot) {
+        int p = prev[slot];
+        int n = next[slot];
+        if (p == NONE) {
+            queue.head = n;
+        } else {
+            next[p] = n;
+        }
+        if (n == NONE) {
+            queue.tail = p;
+        } else {
+            prev[n] = p;
+        }
+        queue.size--;
+    }
+
+    /**
+     * Moves the slot to the front of its queue.
+     *
+     * @param queue the queue which contains the slot
+     * @param slot  the slot
+     */
+    final void moveToFirst(Queue queue, int slot) {
+        if (queue.head != slot) {
+            unlink(queue, slot);
+            linkFirst(queue, slot);
+        }
+    }
+
+    /**
+     * The ends and the length of a queue of slots.
+     */
+    static final class Queue {
+
+        int head = NONE;
+        int tail = NONE;
+        int size;
+    }
+}
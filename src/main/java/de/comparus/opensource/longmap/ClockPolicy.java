@@ -0,0 +1,76 @@
+package de.comparus.opensource.longmap;
+
+import java.util.Arrays;
+
+/**
+ * Second chance eviction: entries form a ring swept by a clock hand. A hit
+ * sets the reference bit of an entry; the hand clears set bits as it passes
+ * and stops at the first entry whose bit is clear.
+ */
+final class ClockPolicy extends CachePolicy {
+
+    private final Queue ring = new Queue();
+
+    private boolean[] referenced = new boolean[0];
+
+    /**
+     * The slot the hand points to, or NONE for the head of the ring.
+     */
+    private int hand = NONE;
+
+    @Override
+    void grow(int capacity) {
+        super.grow(capacity);
+        referenced = Arrays.copyOf(referenced, capacity);
+    }
+
+    void onInsert(int slot, long key) {
+        referenced[slot] = false;
+        if (hand == NONE) {
+            linkLast(ring, slot);
+        } else {
+            insertBefore(hand, slot);
+        }
+    }
+
+    void onAccess(int slot, long key) {
+        referenced[slot] = true;
+    }
+
+    void onRemove(int slot) {
+        if (hand == slot) {
+            hand = next[slot];
+        }
+        unlink(ring, slot);
+    }
+
+    int victim() {
+        int slot = hand == NONE ? ring.head : hand;
+        while (referenced[slot]) {
+            referenced[slot] = false;
+            slot = next[slot] == NONE ? ring.head : next[slot];
+        }
+        hand = slot;
+        return slot;
+    }
+
+    /**
+     * Links the slot right behind the hand, so that a new entry is the last
+     * one the hand reaches.
+     *
+     * @param position the slot of the hand
+     * @param slot     the slot to insert
+     */
+    private void insertBefore(int position, int slot) {
+        int p = prev[position];
+        if (p == NONE) {
+            linkLast(ring, slot);
+            return;
+        }
+        prev[slot] = p;
+        next[slot] = position;
+        next[p] = slot;
+        prev[position] = slot;
+        ring.size++;
+    }
+}
@@ -0,0 +1,1482 @@
+package de.comparus.opensource.longmap;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.LongFunction;
+
+/**
+ * A thread-safe hash table with keys of type long, built along the lines of
+ * ConcurrentHashMap. Retrievals never lock: bins are read with volatile
+ * semantics and a mapping is visible as soon as it is published. Inserts
+ * into an empty bin are a single compare-and-set, updates of a non-empty bin
+ * lock only the first node of that bin. When the table grows, every thread
+ * which touches a bin being moved helps to transfer the next range of bins.
+ * <p>
+ * Unlike LongMapImpl this map does not permit null values, because a null
+ * returned by get would be ambiguous between threads.
+ *
+ * @param <V> the type of mapped values
+ */
+public class ConcurrentLongMap<V> implements LongMap<V> {
+
+    /* ---------------- Default values ---------------- */
+
+    /**
+     * The default initial capacity.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The maximum capacity of the table, must be a power of two.
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The minimum number of bins transferred by a thread at once while
+     * resizing. Ranges are subdivided so that several threads can help.
+     */
+    private static final int MIN_TRANSFER_STRIDE = 16;
+
+    /**
+     * The number of bits used for the generation stamp in sizeCtl.
+     */
+    private static final int RESIZE_STAMP_BITS = 16;
+
+    /**
+     * The maximum number of threads that can help resize.
+     */
+    private static final int MAX_RESIZERS = (1 << (32 - RESIZE_STAMP_BITS)) - 1;
+
+    /**
+     * The bit shift for recording the size stamp in sizeCtl.
+     */
+    private static final int RESIZE_STAMP_SHIFT = 32 - RESIZE_STAMP_BITS;
+
+    /**
+     * The hash of forwarding nodes.
+     */
+    private static final int MOVED = -1;
+
+    /**
+     * The hash of sorted bins.
+     */
+    private static final int SORTED = -2;
+
+    /**
+     * The hash of transient reservation nodes.
+     */
+    private static final int RESERVED = -3;
+
+    /**
+     * The usable bits of a normal node hash.
+     */
+    private static final int HASH_BITS = 0x7fffffff;
+
+    /**
+     * The number of nodes of a chain at which an insert converts the bin
+     * into a sorted bin.
+     */
+    private static final int SORT_THRESHOLD = 8;
+
+    /**
+     * The number of nodes at or below which a sorted bin is converted back
+     * into a chain, smaller than SORT_THRESHOLD to avoid flapping.
+     */
+    private static final int UNSORT_THRESHOLD = 6;
+
+    /**
+     * The number of CPUs, to place bounds on the transfer stride.
+     */
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /* ---------------- Nodes ---------------- */
+
+    /**
+     * A key-value entry of a bin. Nodes with a negative hash are special
+     * nodes which do not hold a mapping.
+     */
+    static class Node<V> {
+
+        final int hash;
+        final long key;
+        volatile V value;
+        volatile Node<V> next;
+
+        Node(int hash, long key, V value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        /**
+         * Finds the node with the specified key in the chain starting from this node.
+         *
+         * @param h the spread hash of the key
+         * @param k the key
+         * @return the node or null if there is no such key
+         */
+        Node<V> find(int h, long k) {
+            Node<V> e = this;
+            do {
+                if (e.hash == h && e.key == k) {
+                    return e;
+                }
+            } while ((e = e.next) != null);
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "key: " + key + "; value: " + value;
+        }
+    }
+
+    /**
+     * A node inserted at the head of a bin which has been transferred to the next table.
+     */
+    static final class ForwardingNode<V> extends Node<V> {
+
+        final AtomicReferenceArray<Node<V>> nextTable;
+
+        ForwardingNode(AtomicReferenceArray<Node<V>> nextTable) {
+            super(MOVED, 0L, null);
+            this.nextTable = nextTable;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Node<V> find(int h, long k) {
+            outer:
+            for (AtomicReferenceArray<Node<V>> tab = nextTable; ; ) {
+                Node<V> e = tab.get((tab.length() - 1) & h);
+                if (e == null) {
+                    return null;
+                }
+                for (; ; ) {
+                    int eh = e.hash;
+                    if (eh == h && e.key == k) {
+                        return e;
+                    }
+                    if (eh < 0) {
+                        if (e instanceof ForwardingNode) {
+                            tab = ((ForwardingNode<V>) e).nextTable;
+                            continue outer;
+                        }
+                        return e.find(h, k);
+                    }
+                    if ((e = e.next) == null) {
+                        return null;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The head of a bin which holds too many nodes for a chain. The keys are
+     * kept in a sorted array searched by binary search, so a lookup stays
+     * O(log n) even if many keys collide. A sorted bin is immutable: every
+     * insert or removal replaces it in the table with a new one under the
+     * lock of the current one, so readers never see a partial update. The
+     * nodes themselves are shared between versions and have no next node.
+     */
+    static final class SortedBin<V> extends Node<V> {
+
+        final long[] keys;
+        final Node<V>[] nodes;
+
+        SortedBin(long[] keys, Node<V>[] nodes) {
+            super(SORTED, 0L, null);
+            this.keys = keys;
+            this.nodes = nodes;
+        }
+
+        @Override
+        Node<V> find(int h, long k) {
+            int index = Arrays.binarySearch(keys, k);
+            return index < 0 ? null : nodes[index];
+        }
+
+        /**
+         * Returns the position of the key, as defined by Arrays.binarySearch.
+         *
+         * @param k the key
+         * @return the index of the key, or (-(insertion point) - 1) if absent
+         */
+        int indexOf(long k) {
+            return Arrays.binarySearch(keys, k);
+        }
+
+        /**
+         * Returns a bin with the node inserted at the specified position.
+         *
+         * @param index the insertion point
+         * @param node  the node to insert
+         * @return the new bin
+         */
+        SortedBin<V> insert(int index, Node<V> node) {
+            int length = keys.length;
+            long[] newKeys = new long[length + 1];
+            Node<V>[] newNodes = newNodes(length + 1);
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(nodes, 0, newNodes, 0, index);
+            newKeys[index] = node.key;
+            newNodes[index] = node;
+            System.arraycopy(keys, index, newKeys, index + 1, length - index);
+            System.arraycopy(nodes, index, newNodes, index + 1, length - index);
+            return new SortedBin<>(newKeys, newNodes);
+        }
+
+        /**
+         * Returns a bin without the node at the specified position. A bin
+         * which becomes small enough is converted back into a chain.
+         *
+         * @param index the position of the node to delete
+         * @return the new first node of the bin
+         */
+        Node<V> delete(int index) {
+            int length = keys.length - 1;
+            long[] newKeys = new long[length];
+            Node<V>[] newNodes = newNodes(length);
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(nodes, 0, newNodes, 0, index);
+            System.arraycopy(keys, index + 1, newKeys, index, length - index);
+            System.arraycopy(nodes, index + 1, newNodes, index, length - index);
+            return binOf(newNodes, length);
+        }
+    }
+
+    /**
+     * A placeholder which locks an empty bin while computeIfAbsent computes its value.
+     */
+    static final class ReservationNode<V> extends Node<V> {
+
+        ReservationNode() {
+            super(RESERVED, 0L, null);
+        }
+
+        @Override
+        Node<V> find(int h, long k) {
+            return null;
+        }
+    }
+
+    /* ---------------- Fields ---------------- */
+
+    /**
+     * The array of bins.
+     */
+    private volatile AtomicReferenceArray<Node<V>> table;
+
+    /**
+     * The next table to use, non-null only while resizing.
+     */
+    private volatile AtomicReferenceArray<Node<V>> nextTable;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Table resizing control. When positive, the element count at which to
+     * resize the table. When negative, the resize stamp of the current table
+     * in the upper bits and the number of active resizing threads plus one
+     * in the lower bits.
+     */
+    private final AtomicInteger sizeCtl = new AtomicInteger();
+
+    /**
+     * The next bin index, plus one, to split while resizing.
+     */
+    private final AtomicInteger transferIndex = new AtomicInteger();
+
+    /* ---------------- Constructors ---------------- */
+
+    /**
+     * Constructs an empty ConcurrentLongMap with the specified initial capacity.
+     * The capacity is rounded up to the nearest power of two.
+     *
+     * @param initialCapacity the initial capacity
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public ConcurrentLongMap(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        }
+        int capacity = tableSizeFor(initialCapacity);
+        table = new AtomicReferenceArray<>(capacity);
+        sizeCtl.set(capacity - (capacity >>> 2));
+    }
+
+    /**
+     * Constructs an empty ConcurrentLongMap with the default initial capacity (16).
+     */
+    public ConcurrentLongMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /* ---------------- Main Methods ---------------- */
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with key, or
+     * null if there was no mapping for key
+     * @throws NullPointerException if the value is null
+     */
+    public V put(long key, V value) {
+        return putValue(key, value, false);
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this map
+     * contains no mapping for the key. Never blocks.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or null if this map contains no mapping for the key
+     */
+    public V get(long key) {
+        Node<V> node = getNode(key);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    public V remove(long key) {
+        int h = spread(key);
+        for (AtomicReferenceArray<Node<V>> tab = table; ; ) {
+            int i = (tab.length() - 1) & h;
+            Node<V> f = tab.get(i);
+            if (f == null) {
+                return null;
+            }
+            if (f.hash == MOVED) {
+                tab = helpTransfer(tab, f);
+                continue;
+            }
+            V previous = null;
+            boolean validated = false;
+            synchronized (f) {
+                if (tab.get(i) == f) {
+                    validated = true;
+                    if (f.hash >= 0) {
+                        for (Node<V> e = f, pred = null; e != null; pred = e, e = e.next) {
+                            if (e.key == key) {
+                                previous = e.value;
+                                if (pred != null) {
+                                    pred.next = e.next;
+                                } else {
+                                    tab.set(i, e.next);
+                                }
+                                break;
+                            }
+                        }
+                    } else if (f instanceof SortedBin) {
+                        SortedBin<V> bin = (SortedBin<V>) f;
+                        int index = bin.indexOf(key);
+                        if (index >= 0) {
+                            previous = bin.nodes[index].value;
+                            tab.set(i, bin.delete(index));
+                        }
+                    }
+                }
+            }
+            if (validated) {
+                if (previous != null) {
+                    addCount(-1L, -1);
+                }
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * Returns true if this map contains no key-value mappings.
+     *
+     * @return true if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the specified key. Never blocks.
+     *
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for the specified key
+     */
+    public boolean containsKey(long key) {
+        return getNode(key) != null;
+    }
+
+    /**
+     * Returns true if this map maps one or more keys to the specified value.
+     * This method traverses the whole table.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return true if this map maps one or more keys to the specified value
+     */
+    public boolean containsValue(V value) {
+        if (value == null) {
+            return false;
+        }
+        Traverser<V> traverser = new Traverser<>(table);
+        for (Node<V> node; (node = traverser.advance()) != null; ) {
+            if (value.equals(node.value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the keys contained in this map. The result reflects the state
+     * of the map at some point at or since the start of the call.
+     *
+     * @return array of keys
+     */
+    public long[] keys() {
+        long[] keySet = new long[(int) Math.max(size(), DEFAULT_CAPACITY)];
+        int position = 0;
+        Traverser<V> traverser = new Traverser<>(table);
+        for (Node<V> node; (node = traverser.advance()) != null; ) {
+            if (position == keySet.length) {
+                keySet = Arrays.copyOf(keySet, position * 2);
+            }
+            keySet[position++] = node.key;
+        }
+        return Arrays.copyOf(keySet, position);
+    }
+
+    /**
+     * Returns the values contained in this map. The result reflects the
+     * state of the map at some point at or since the start of the call.
+     *
+     * @return array of values or null if this map contains no values
+     */
+    @SuppressWarnings("unchecked")
+    public V[] values() {
+        Object[] valueSet = new Object[(int) Math.max(size(), DEFAULT_CAPACITY)];
+        int position = 0;
+        Traverser<V> traverser = new Traverser<>(table);
+        for (Node<V> node; (node = traverser.advance()) != null; ) {
+            V value = node.value;
+            if (value != null) {
+                if (position == valueSet.length) {
+                    valueSet = Arrays.copyOf(valueSet, position * 2);
+                }
+                valueSet[position++] = value;
+            }
+        }
+        if (position == 0) {
+            return null;
+        }
+        V[] values = (V[]) Array.newInstance(valueSet[0].getClass(), position);
+        System.arraycopy(valueSet, 0, values, 0, position);
+        return values;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map. The value is
+     * a momentary estimate while other threads modify the map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public long size() {
+        long sum = count.sum();
+        return sum < 0L ? 0L : sum;
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     */
+    public void clear() {
+        long delta = 0L;
+        int i = 0;
+        AtomicReferenceArray<Node<V>> tab = table;
+        while (i < tab.length()) {
+            Node<V> f = tab.get(i);
+            if (f == null) {
+                ++i;
+            } else if (f.hash == MOVED) {
+                tab = helpTransfer(tab, f);
+                i = 0;
+            } else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        if (f instanceof SortedBin) {
+                            delta -= ((SortedBin<V>) f).keys.length;
+                        }
+                        for (Node<V> p = f.hash >= 0 ? f : null; p != null; p = p.next) {
+                            --delta;
+                        }
+                        tab.set(i++, null);
+                    }
+                }
+            }
+        }
+        if (delta != 0L) {
+            addCount(delta, -1);
+        }
+    }
+
+    /* ---------------- Iteration ---------------- */
+
+    /**
+     * Performs the given action for each mapping of this map. Iteration is
+     * weakly consistent: it never throws ConcurrentModificationException,
+     * sees every mapping which exists during the whole traversal and may
+     * or may not see concurrent updates.
+     *
+     * @param action the action to be performed for each mapping
+     */
+    public void forEach(LongObjConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        Traverser<V> traverser = new Traverser<>(table);
+        for (Node<V> node; (node = traverser.advance()) != null; ) {
+            action.accept(node.key, node.value);
+        }
+    }
+
+    /**
+     * Returns a weakly consistent cursor over the mappings of this map.
+     *
+     * @return a new cursor
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A weakly consistent cursor on top of a traverser.
+     */
+    private final class Cursor implements LongMapCursor<V> {
+
+        private Traverser<V> traverser;
+        private Node<V> current;
+
+        private Cursor() {
+            reset();
+        }
+
+        public void reset() {
+            traverser = new Traverser<>(table);
+            current = null;
+        }
+
+        public boolean advance() {
+            current = traverser.advance();
+            return current != null;
+        }
+
+        public long key() {
+            checkCurrent();
+            return current.key;
+        }
+
+        public V value() {
+            checkCurrent();
+            return current.value;
+        }
+
+        public void remove() {
+            checkCurrent();
+            ConcurrentLongMap.this.remove(current.key);
+            current = null;
+        }
+
+        private void checkCurrent() {
+            if (current == null) {
+                throw new IllegalStateException("Cursor does not point to a mapping");
+            }
+        }
+    }
+
+    /**
+     * A table saved by a traverser while it visits a next table.
+     */
+    static final class TableStack<V> {
+
+        int length;
+        int index;
+        AtomicReferenceArray<Node<V>> tab;
+        TableStack<V> next;
+    }
+
+    /**
+     * Walks the mapping nodes of the table, following forwarding nodes into
+     * the next tables. The content of a moved bin i of a table of size n
+     * lives in bins i and i + n of the next table, so every mapping is
+     * visited once even while the table is being resized.
+     */
+    static final class Traverser<V> {
+
+        private AtomicReferenceArray<Node<V>> tab;
+        private Node<V> next;
+        private Node<V>[] sorted;
+        private int sortedIndex;
+        private TableStack<V> stack;
+        private TableStack<V> spare;
+        private int index;
+        private int baseIndex;
+        private final int baseLimit;
+        private final int baseSize;
+
+        Traverser(AtomicReferenceArray<Node<V>> tab) {
+            this.tab = tab;
+            this.baseSize = tab.length();
+            this.baseLimit = baseSize;
+        }
+
+        /**
+         * Returns the next mapping node, or null if there are no more.
+         *
+         * @return the next node
+         */
+        Node<V> advance() {
+            Node<V> e = next;
+            if (e != null) {
+                e = e.next;
+            }
+            for (; ; ) {
+                if (e != null) {
+                    return next = e;
+                }
+                if (sorted != null) {
+                    if (sortedIndex < sorted.length) {
+                        return next = sorted[sortedIndex++];
+                    }
+                    sorted = null;
+                }
+                AtomicReferenceArray<Node<V>> t = tab;
+                int i = index;
+                int n;
+                if (baseIndex >= baseLimit || t == null || (n = t.length()) <= i || i < 0) {
+                    return next = null;
+                }
+                if ((e = t.get(i)) != null && e.hash < 0) {
+                    if (e instanceof ForwardingNode) {
+                        tab = ((ForwardingNode<V>) e).nextTable;
+                        e = null;
+                        pushState(t, i, n);
+                        continue;
+                    }
+                    if (e instanceof SortedBin) {
+                        sorted = ((SortedBin<V>) e).nodes;
+                        sortedIndex = 0;
+                    }
+                    e = null;
+                }
+                if (stack != null) {
+                    recoverState(n);
+                } else if ((index = i + baseSize) >= n) {
+                    index = ++baseIndex;
+                }
+            }
+        }
+
+        /**
+         * Saves traversal state upon encountering a forwarding node.
+         */
+        private void pushState(AtomicReferenceArray<Node<V>> t, int i, int n) {
+            TableStack<V> s = spare;
+            if (s != null) {
+                spare = s.next;
+            } else {
+                s = new TableStack<>();
+            }
+            s.tab = t;
+            s.length = n;
+            s.index = i;
+            s.next = stack;
+            stack = s;
+        }
+
+        /**
+         * Possibly pops traversal state.
+         *
+         * @param n length of the current table
+         */
+        private void recoverState(int n) {
+            TableStack<V> s;
+            int len;
+            while ((s = stack) != null && (index += (len = s.length)) >= n) {
+                n = len;
+                index = s.index;
+                tab = s.tab;
+                s.tab = null;
+                TableStack<V> nextStack = s.next;
+                s.next = spare;
+                stack = nextStack;
+                spare = s;
+            }
+            if (s == null && (index += baseSize) >= n) {
+                index = ++baseIndex;
+            }
+        }
+    }
+
+    /* ---------------- Atomic Methods ---------------- */
+
+    /**
+     * Associates the specified value with the specified key unless the key
+     * is already mapped, atomically.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the current value associated with key, or null if there was
+     * no mapping for key and the value has been put
+     * @throws NullPointerException if the value is null
+     */
+    public V putIfAbsent(long key, V value) {
+        return putValue(key, value, true);
+    }
+
+    /**
+     * If the specified key is not already mapped, computes its value with the
+     * given function and enters it into this map unless null. The whole
+     * invocation is performed atomically, so the function is applied at most
+     * once per key. Other updates of the same bin are blocked while the
+     * computation is in progress, so the function should be short and must
+     * not update this map.
+     *
+     * @param key             key with which the computed value is to be associated
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value associated with key,
+     * or null if the computed value is null
+     * @throws NullPointerException  if the mapping function is null
+     * @throws IllegalStateException if the computation recursively updates this map
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        Objects.requireNonNull(mappingFunction);
+        int h = spread(key);
+        V value = null;
+        int binCount = 0;
+        for (AtomicReferenceArray<Node<V>> tab = table; ; ) {
+            int i = (tab.length() - 1) & h;
+            Node<V> f = tab.get(i);
+            if (f == null) {
+                Node<V> reservation = new ReservationNode<>();
+                synchronized (reservation) {
+                    if (tab.compareAndSet(i, null, reservation)) {
+                        binCount = 1;
+                        Node<V> node = null;
+                        try {
+                            if ((value = mappingFunction.apply(key)) != null) {
+                                node = new Node<>(h, key, value);
+                            }
+                        } finally {
+                            tab.set(i, node);
+                        }
+                    }
+                }
+                if (binCount != 0) {
+                    break;
+                }
+            } else if (f.hash == MOVED) {
+                tab = helpTransfer(tab, f);
+            } else if (f.hash == h && f.key == key && (value = f.value) != null) {
+                return value;
+            } else {
+                boolean added = false;
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        if (f.hash >= 0) {
+                            binCount = 1;
+                            for (Node<V> e = f; ; ++binCount) {
+                                if (e.key == key) {
+                                    value = e.value;
+                                    break;
+                                }
+                                Node<V> pred = e;
+                                if ((e = e.next) == null) {
+                                    if ((value = mappingFunction.apply(key)) != null) {
+                                        added = true;
+                                        pred.next = new Node<>(h, key, value);
+                                        if (binCount >= SORT_THRESHOLD) {
+                                            tab.set(i, sortChain(f));
+                                        }
+                                    }
+                                    break;
+                                }
+                            }
+                        } else if (f instanceof SortedBin) {
+                            binCount = 2;
+                            SortedBin<V> bin = (SortedBin<V>) f;
+                            int index = bin.indexOf(key);
+                            if (index >= 0) {
+                                value = bin.nodes[index].value;
+                            } else if ((value = mappingFunction.apply(key)) != null) {
+                                added = true;
+                                tab.set(i, bin.insert(-index - 1, new Node<>(h, key, value)));
+                            }
+                        } else if (f instanceof ReservationNode) {
+                            throw new IllegalStateException("Recursive update");
+                        }
+                    }
+                }
+                if (binCount != 0) {
+                    if (!added) {
+                        return value;
+                    }
+                    break;
+                }
+            }
+        }
+        if (value != null) {
+            addCount(1L, binCount);
+        }
+        return value;
+    }
+
+    /**
+     * If the specified key is not already mapped, associates it with the
+     * given value. Otherwise, replaces the value with the result of the given
+     * remapping function, or removes the mapping if the result is null.
+     * The whole invocation is performed atomically.
+     *
+     * @param key               key with which the resulting value is to be associated
+     * @param value             the value to use if absent
+     * @param remappingFunction the function to recompute a value if present
+     * @return the new value associated with key, or null if none
+     * @throws NullPointerException  if the value or the remapping function is null
+     * @throws IllegalStateException if the computation recursively updates this map
+     */
+    public V merge(long key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        int h = spread(key);
+        V result = null;
+        int delta = 0;
+        int binCount = 0;
+        for (AtomicReferenceArray<Node<V>> tab = table; ; ) {
+            int i = (tab.length() - 1) & h;
+            Node<V> f = tab.get(i);
+            if (f == null) {
+                if (tab.compareAndSet(i, null, new Node<>(h, key, value))) {
+                    delta = 1;
+                    result = value;
+                    break;
+                }
+            } else if (f.hash == MOVED) {
+                tab = helpTransfer(tab, f);
+            } else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        if (f.hash >= 0) {
+                            binCount = 1;
+                            for (Node<V> e = f, pred = null; ; ++binCount) {
+                                if (e.key == key) {
+                                    result = remappingFunction.apply(e.value, value);
+                                    if (result != null) {
+                                        e.value = result;
+                                    } else {
+                                        delta = -1;
+                                        if (pred != null) {
+                                            pred.next = e.next;
+                                        } else {
+                                            tab.set(i, e.next);
+                                        }
+                                    }
+                                    break;
+                                }
+                                pred = e;
+                                if ((e = e.next) == null) {
+                                    delta = 1;
+                                    result = value;
+                                    pred.next = new Node<>(h, key, value);
+                                    if (binCount >= SORT_THRESHOLD) {
+                                        tab.set(i, sortChain(f));
+                                    }
+                                    break;
+                                }
+                            }
+                        } else if (f instanceof SortedBin) {
+                            binCount = 2;
+                            SortedBin<V> bin = (SortedBin<V>) f;
+                            int index = bin.indexOf(key);
+                            if (index < 0) {
+                                delta = 1;
+                                result = value;
+                                tab.set(i, bin.insert(-index - 1, new Node<>(h, key, value)));
+                            } else if ((result = remappingFunction.apply(bin.nodes[index].value, value)) != null) {
+                                bin.nodes[index].value = result;
+                            } else {
+                                delta = -1;
+                                tab.set(i, bin.delete(index));
+                            }
+                        } else if (f instanceof ReservationNode) {
+                            throw new IllegalStateException("Recursive update");
+                        }
+                    }
+                }
+                if (binCount != 0) {
+                    break;
+                }
+            }
+        }
+        if (delta != 0) {
+            addCount(delta, binCount);
+        }
+        return result;
+    }
+
+    /**
+     * If the specified key is mapped, computes a new value from the key and
+     * the current value, or removes the mapping if the result is null. The
+     * whole invocation is performed atomically.
+     *
+     * @param key               key whose value is to be recomputed
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with key, or null if none
+     * @throws NullPointerException  if the remapping function is null
+     * @throws IllegalStateException if the computation recursively updates this map
+     */
+    public V computeIfPresent(long key, LongObjFunction<? super V, ? extends V> remappingFunction) {
+        return remap(key, remappingFunction, true);
+    }
+
+    /**
+     * Computes a new value from the key and its current value, or null if
+     * there is none, and stores it, or removes the mapping if the result is
+     * null. The whole invocation is performed atomically, so the function
+     * should be short and must not update this map.
+     *
+     * @param key               key whose value is to be computed
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with key, or null if none
+     * @throws NullPointerException  if the remapping function is null
+     * @throws IllegalStateException if the computation recursively updates this map
+     */
+    public V compute(long key, LongObjFunction<? super V, ? extends V> remappingFunction) {
+        return remap(key, remappingFunction, false);
+    }
+
+    /* ---------------- Utils Methods ---------------- */
+
+    /**
+     * Returns a non-negative hash of a key, mixed with fmix64 so that keys
+     * which differ only in their high bits land in different bins.
+     *
+     * @param key a key, which needs to be hashed
+     * @return hash value
+     */
+    private static int spread(long key) {
+        return LongHashStrategies.FMIX64.hash(key) & HASH_BITS;
+    }
+
+    /**
+     * Returns the stamp bits for resizing a table of size n.
+     * Must be negative when shifted left by RESIZE_STAMP_SHIFT.
+     *
+     * @param n the size of the table
+     * @return the resize stamp
+     */
+    private static int resizeStamp(int n) {
+        return Integer.numberOfLeadingZeros(n) | (1 << (RESIZE_STAMP_BITS - 1));
+    }
+
+    /**
+     * Returns the node with the specified key without locking.
+     *
+     * @param key the key to look for
+     * @return the node or null if there is no such key
+     */
+    private Node<V> getNode(long key) {
+        int h = spread(key);
+        AtomicReferenceArray<Node<V>> tab = table;
+        Node<V> e = tab.get((tab.length() - 1) & h);
+        if (e == null) {
+            return null;
+        }
+        int eh = e.hash;
+        if (eh == h) {
+            if (e.key == key) {
+                return e;
+            }
+        } else if (eh < 0) {
+            return e.find(h, key);
+        }
+        while ((e = e.next) != null) {
+            if (e.hash == h && e.key == key) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Implementation for compute and computeIfPresent. An empty bin is
+     * reserved while the function computes the value of an absent key.
+     *
+     * @param key               key whose value is to be computed
+     * @param remappingFunction the function to compute a value
+     * @param onlyIfPresent     if true, an absent key is left absent
+     * @return the new value associated with key, or null if none
+     */
+    private V remap(long key, LongObjFunction<? super V, ? extends V> remappingFunction, boolean onlyIfPresent) {
+        Objects.requireNonNull(remappingFunction);
+        int h = spread(key);
+        V result = null;
+        int delta = 0;
+        int binCount = 0;
+        for (AtomicReferenceArray<Node<V>> tab = table; ; ) {
+            int i = (tab.length() - 1) & h;
+            Node<V> f = tab.get(i);
+            if (f == null) {
+                if (onlyIfPresent) {
+                    break;
+                }
+                Node<V> reservation = new ReservationNode<>();
+                synchronized (reservation) {
+                    if (tab.compareAndSet(i, null, reservation)) {
+                        binCount = 1;
+                        Node<V> node = null;
+                        try {
+                            if ((result = remappingFunction.apply(key, null)) != null) {
+                                delta = 1;
+                                node = new Node<>(h, key, result);
+                            }
+                        } finally {
+                            tab.set(i, node);
+                        }
+                    }
+                }
+                if (binCount != 0) {
+                    break;
+                }
+            } else if (f.hash == MOVED) {
+                tab = helpTransfer(tab, f);
+            } else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        if (f.hash >= 0) {
+                            binCount = 1;
+                            for (Node<V> e = f, pred = null; ; ++binCount) {
+                                if (e.key == key) {
+                                    result = remappingFunction.apply(key, e.value);
+                                    if (result != null) {
+                                        e.value = result;
+                                    } else {
+                                        delta = -1;
+                                        if (pred != null) {
+                                            pred.next = e.next;
+                                        } else {
+                                            tab.set(i, e.next);
+                                        }
+                                    }
+                                    break;
+                                }
+                                pred = e;
+                                if ((e = e.next) == null) {
+                                    if (!onlyIfPresent && (result = remappingFunction.apply(key, null)) != null) {
+                                        delta = 1;
+                                        pred.next = new Node<>(h, key, result);
+                                        if (binCount >= SORT_THRESHOLD) {
+                                            tab.set(i, sortChain(f));
+                                        }
+                                    }
+                                    break;
+                                }
+                            }
+                        } else if (f instanceof SortedBin) {
+                            binCount = 2;
+                            SortedBin<V> bin = (SortedBin<V>) f;
+                            int index = bin.indexOf(key);
+                            if (index >= 0) {
+                                if ((result = remappingFunction.apply(key, bin.nodes[index].value)) != null) {
+                                    bin.nodes[index].value = result;
+                                } else {
+                                    delta = -1;
+                                    tab.set(i, bin.delete(index));
+                                }
+                            } else if (!onlyIfPresent && (result = remappingFunction.apply(key, null)) != null) {
+                                delta = 1;
+                                tab.set(i, bin.insert(-index - 1, new Node<>(h, key, result)));
+                            }
+                        } else if (f instanceof ReservationNode) {
+                            throw new IllegalStateException("Recursive update");
+                        }
+                    }
+                }
+                if (binCount != 0) {
+                    break;
+                }
+            }
+        }
+        if (delta != 0) {
+            addCount(delta, binCount);
+        }
+        return result;
+    }
+
+    /**
+     * Implementation for put and putIfAbsent.
+     *
+     * @param key          key with which the specified value is to be associated
+     * @param value        value to be associated with the specified key
+     * @param onlyIfAbsent if true, an existing value is not replaced
+     * @return the previous value associated with key, or null
+     */
+    private V putValue(long key, V value, boolean onlyIfAbsent) {
+        Objects.requireNonNull(value);
+        int h = spread(key);
+        int binCount = 0;
+        for (AtomicReferenceArray<Node<V>> tab = table; ; ) {
+            int i = (tab.length() - 1) & h;
+            Node<V> f = tab.get(i);
+            V previous;
+            if (f == null) {
+                if (tab.compareAndSet(i, null, new Node<>(h, key, value))) {
+                    break;
+                }
+            } else if (f.hash == MOVED) {
+                tab = helpTransfer(tab, f);
+            } else if (onlyIfAbsent && f.hash == h && f.key == key && (previous = f.value) != null) {
+                return previous;
+            } else {
+                previous = null;
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        if (f.hash >= 0) {
+                            binCount = 1;
+                            for (Node<V> e = f; ; ++binCount) {
+                                if (e.key == key) {
+                                    previous = e.value;
+                                    if (!onlyIfAbsent) {
+                                        e.value = value;
+                                    }
+                                    break;
+                                }
+                                Node<V> pred = e;
+                                if ((e = e.next) == null) {
+                                    pred.next = new Node<>(h, key, value);
+                                    if (binCount >= SORT_THRESHOLD) {
+                                        tab.set(i, sortChain(f));
+                                    }
+                                    break;
+                                }
+                            }
+                        } else if (f instanceof SortedBin) {
+                            binCount = 2;
+                            SortedBin<V> bin = (SortedBin<V>) f;
+                            int index = bin.indexOf(key);
+                            if (index >= 0) {
+                                previous = bin.nodes[index].value;
+                                if (!onlyIfAbsent) {
+                                    bin.nodes[index].value = value;
+                                }
+                            } else {
+                                tab.set(i, bin.insert(-index - 1, new Node<>(h, key, value)));
+                            }
+                        } else if (f instanceof ReservationNode) {
+                            throw new IllegalStateException("Recursive update");
+                        }
+                    }
+                }
+                if (binCount != 0) {
+                    if (previous != null) {
+                        return previous;
+                    }
+                    break;
+                }
+            }
+        }
+        addCount(1L, binCount);
+        return null;
+    }
+
+    /**
+     * Adds to count, and if table is too small and not already resizing,
+     * initiates transfer. If already resizing, helps perform transfer.
+     * Rechecks occupancy after a transfer to see if another resize is
+     * already needed because resizings are lagging additions.
+     *
+     * @param x     the count to add
+     * @param check if negative, don't check resize
+     */
+    private void addCount(long x, int check) {
+        count.add(x);
+        if (check < 0) {
+            return;
+        }
+        long s = count.sum();
+        int sc;
+        AtomicReferenceArray<Node<V>> tab;
+        while (s >= (long) (sc = sizeCtl.get()) && (tab = table).length() < MAXIMUM_CAPACITY) {
+            int n = tab.length();
+            int rs = resizeStamp(n) << RESIZE_STAMP_SHIFT;
+            if (sc < 0) {
+                AtomicReferenceArray<Node<V>> nt = nextTable;
+                if ((sc >>> RESIZE_STAMP_SHIFT) != (rs >>> RESIZE_STAMP_SHIFT) || sc == rs + MAX_RESIZERS
+                        || sc == rs + 1 || nt == null || transferIndex.get() <= 0) {
+                    break;
+                }
+                if (sizeCtl.compareAndSet(sc, sc + 1)) {
+                    transfer(tab, nt);
+                }
+            } else if (sizeCtl.compareAndSet(sc, rs + 2)) {
+                transfer(tab, null);
+            }
+            s = count.sum();
+        }
+    }
+
+    /**
+     * Helps transfer if a resize is in progress.
+     *
+     * @param tab the table which contains the forwarding node
+     * @param f   the forwarding node
+     * @return the table to retry the operation on
+     */
+    private AtomicReferenceArray<Node<V>> helpTransfer(AtomicReferenceArray<Node<V>> tab, Node<V> f) {
+        AtomicReferenceArray<Node<V>> nextTab = ((ForwardingNode<V>) f).nextTable;
+        int rs = resizeStamp(tab.length()) << RESIZE_STAMP_SHIFT;
+        int sc;
+        while (nextTab == nextTable && table == tab && (sc = sizeCtl.get()) < 0) {
+            if ((sc >>> RESIZE_STAMP_SHIFT) != (rs >>> RESIZE_STAMP_SHIFT) || sc == rs + MAX_RESIZERS
+                    || sc == rs + 1 || transferIndex.get() <= 0) {
+                break;
+            }
+            if (sizeCtl.compareAndSet(sc, sc + 1)) {
+                transfer(tab, nextTab);
+                break;
+            }
+        }
+        return nextTab;
+    }
+
+    /**
+     * Moves the nodes of each bin to the next table. Threads claim ranges
+     * of bins from transferIndex, so any number of threads can cooperate.
+     * A moved bin is replaced with a forwarding node, which redirects
+     * readers to the next table and makes writers help.
+     *
+     * @param tab     the current table
+     * @param nextTab the next table or null if the calling thread starts the resize
+     */
+    private void transfer(AtomicReferenceArray<Node<V>> tab, AtomicReferenceArray<Node<V>> nextTab) {
+        int n = tab.length();
+        int stride = NCPU > 1 ? (n >>> 3) / NCPU : n;
+        if (stride < MIN_TRANSFER_STRIDE) {
+            stride = MIN_TRANSFER_STRIDE;
+        }
+        if (nextTab == null) {
+            nextTab = new AtomicReferenceArray<>(n << 1);
+            nextTable = nextTab;
+            transferIndex.set(n);
+        }
+        ForwardingNode<V> fwd = new ForwardingNode<>(nextTab);
+        boolean advance = true;
+        boolean finishing = false;
+        for (int i = 0, bound = 0; ; ) {
+            while (advance) {
+                int nextIndex;
+                int nextBound;
+                if (--i >= bound || finishing) {
+                    advance = false;
+                } else if ((nextIndex = transferIndex.get()) <= 0) {
+                    i = -1;
+                    advance = false;
+                } else if (transferIndex.compareAndSet(nextIndex,
+                        nextBound = nextIndex > stride ? nextIndex - stride : 0)) {
+                    bound = nextBound;
+                    i = nextIndex - 1;
+                    advance = false;
+                }
+            }
+            if (i < 0) {
+                if (finishing) {
+                    nextTable = null;
+                    table = nextTab;
+                    sizeCtl.set((n << 1) - (n >>> 1));
+                    return;
+                }
+                int sc = sizeCtl.get();
+                if (sizeCtl.compareAndSet(sc, sc - 1)) {
+                    if ((sc - 2) != resizeStamp(n) << RESIZE_STAMP_SHIFT) {
+                        return;
+                    }
+                    finishing = advance = true;
+                    i = n;
+                }
+                continue;
+            }
+            Node<V> f = tab.get(i);
+            if (f == null) {
+                advance = tab.compareAndSet(i, null, fwd);
+            } else if (f.hash == MOVED) {
+                advance = true;
+            } else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        if (f.hash >= 0) {
+                            splitBin(f, n, i, nextTab);
+                            tab.set(i, fwd);
+                            advance = true;
+                        } else if (f instanceof SortedBin) {
+                            splitSortedBin((SortedBin<V>) f, n, i, nextTab);
+                            tab.set(i, fwd);
+                            advance = true;
+                        } else if (f instanceof ReservationNode) {
+                            throw new IllegalStateException("Recursive update");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits a chain into the lower and the upper bins of the next table.
+     * The longest tail which stays in one bin is reused, all other nodes are
+     * copied, so concurrent readers of the old chain are not disturbed.
+     *
+     * @param f       the first node of the chain
+     * @param n       the size of the current table
+     * @param i       the index of the bin
+     * @param nextTab the next table
+     */
+    private void splitBin(Node<V> f, int n, int i, AtomicReferenceArray<Node<V>> nextTab) {
+        int runBit = f.hash & n;
+        Node<V> lastRun = f;
+        for (Node<V> p = f.next; p != null; p = p.next) {
+            int b = p.hash & n;
+            if (b != runBit) {
+                runBit = b;
+                lastRun = p;
+            }
+        }
+        Node<V> ln = runBit == 0 ? lastRun : null;
+        Node<V> hn = runBit == 0 ? null : lastRun;
+        for (Node<V> p = f; p != lastRun; p = p.next) {
+            Node<V> copy = new Node<>(p.hash, p.key, p.value);
+            if ((p.hash & n) == 0) {
+                copy.next = ln;
+                ln = copy;
+            } else {
+                copy.next = hn;
+                hn = copy;
+            }
+        }
+        nextTab.set(i, ln);
+        nextTab.set(i + n, hn);
+    }
+
+    /**
+     * Splits a sorted bin into the lower and the upper bins of the next
+     * table. Both halves stay sorted; a half which is small enough becomes
+     * a chain again.
+     *
+     * @param bin     the sorted bin
+     * @param n       the size of the current table
+     * @param i       the index of the bin
+     * @param nextTab the next table
+     */
+    private void splitSortedBin(SortedBin<V> bin, int n, int i, AtomicReferenceArray<Node<V>> nextTab) {
+        Node<V>[] nodes = bin.nodes;
+        Node<V>[] lo = newNodes(nodes.length);
+        Node<V>[] hi = newNodes(nodes.length);
+        int lc = 0;
+        int hc = 0;
+        for (Node<V> node : nodes) {
+            if ((node.hash & n) == 0) {
+                lo[lc++] = node;
+            } else {
+                hi[hc++] = node;
+            }
+        }
+        nextTab.set(i, binOf(lo, lc));
+        nextTab.set(i + n, binOf(hi, hc));
+    }
+
+    /**
+     * Converts a chain into a sorted bin. The nodes are copied, so readers
+     * which are still walking the chain are not disturbed.
+     *
+     * @param f the first node of the chain
+     * @return the sorted bin
+     */
+    private static <V> SortedBin<V> sortChain(Node<V> f) {
+        int length = 0;
+        for (Node<V> p = f; p != null; p = p.next) {
+            length++;
+        }
+        Node<V>[] nodes = newNodes(length);
+        int index = 0;
+        for (Node<V> p = f; p != null; p = p.next) {
+            nodes[index++] = new Node<>(p.hash, p.key, p.value);
+        }
+        Arrays.sort(nodes, (a, b) -> Long.compare(a.key, b.key));
+        long[] keys = new long[length];
+        for (int k = 0; k < length; k++) {
+            keys[k] = nodes[k].key;
+        }
+        return new SortedBin<>(keys, nodes);
+    }
+
+    /**
+     * Returns the first node of a bin holding the specified nodes, sorted by
+     * key: null if there are none, a chain of copies if there are at most
+     * UNSORT_THRESHOLD, and a sorted bin otherwise.
+     *
+     * @param nodes  the nodes, sorted by key
+     * @param length the number of nodes to use
+     * @return the first node of the bin
+     */
+    private static <V> Node<V> binOf(Node<V>[] nodes, int length) {
+        if (length <= UNSORT_THRESHOLD) {
+            Node<V> first = null;
+            for (int k = length - 1; k >= 0; k--) {
+                Node<V> p = nodes[k];
+                Node<V> copy = new Node<>(p.hash, p.key, p.value);
+                copy.next = first;
+                first = copy;
+            }
+            return first;
+        }
+        long[] keys = new long[length];
+        for (int k = 0; k < length; k++) {
+            keys[k] = nodes[k].key;
+        }
+        return new SortedBin<>(keys, length == nodes.length ? nodes : Arrays.copyOf(nodes, length));
+    }
+
+    /**
+     * Creates an array of nodes.
+     *
+     * @param length the length of the array
+     * @return the array
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> Node<V>[] newNodes(int length) {
+        return (Node<V>[]) new Node<?>[length];
+    }
+
+    /**
+     * Returns a power of two size for the given capacity.
+     *
+     * @param capacity the requested capacity
+     * @return the smallest power of two not less than capacity and 2
+     */
+    private static int tableSizeFor(int capacity) {
+        if (capacity >= MAXIMUM_CAPACITY) {
+            return MAXIMUM_CAPACITY;
+        }
+        int n = -1 >>> Integer.numberOfLeadingZeros(Math.max(capacity, 2) - 1);
+        return n + 1;
+    }
+}
@@ -0,0 +1,515 @@
+package de.comparus.opensource.longmap;
+
+import java.lang.reflect.Array;
+import java.util.ConcurrentModificationException;
+import java.util.Objects;
+
+/**
+ * A map with keys of type long, which stores compact key ranges directly
+ * indexed. As long as the keys span a window of at most
+ * {@link #MAXIMUM_SLOTS_PER_MAPPING} slots per mapping, the value of key k
+ * is kept at index k - base of a plain value array and a bitmap marks the
+ * slots in use, so a lookup is a subtraction, a bit test and an array read,
+ * and a mapping costs about one reference instead of a key, a reference
+ * and the free slots of a hash table.
+ * <p>
+ * The window grows in both directions as keys are added. When a key would
+ * make the window too sparse, or wider than an array can be, the map moves
+ * all mappings into a {@link LongMapImpl} once and continues as a hash map.
+ * It returns to the dense mode only when it is cleared.
+ * <p>
+ * In the dense mode the mappings are iterated in ascending key order. The
+ * map is not synchronized and its iteration is fail-fast. Null values are
+ * permitted.
+ *
+ * @param <V> the type of mapped values
+ */
+public class DenseLongMap<V> implements LongMap<V> {
+
+    /* ---------------- Default values ---------------- */
+
+    /**
+     * The number of slots of the window of an empty map, which is also the
+     * width of the window which is never considered too sparse.
+     */
+    private static final int MINIMUM_SPAN = 64;
+
+    /**
+     * The maximum number of slots per mapping before the map switches to
+     * the hash mode.
+     */
+    static final int MAXIMUM_SLOTS_PER_MAPPING = 4;
+
+    /**
+     * The maximum number of slots of the window.
+     */
+    private static final int MAXIMUM_SPAN = 1 << 30;
+
+    /* ---------------- Fields ---------------- */
+
+    /**
+     * The number of key-value mappings contained in the window.
+     */
+    private int size;
+
+    /**
+     * The key stored at index 0 of the window.
+     */
+    private long base;
+
+    /**
+     * The values of the window, the value of key k at index k - base.
+     * Null in the hash mode.
+     */
+    private Object[] values;
+
+    /**
+     * The bitmap of the slots of the window which hold a mapping, bit i of
+     * word i / 64 for index i. Null in the hash mode.
+     */
+    private long[] present;
+
+    /**
+     * The map holding all mappings in the hash mode, or null in the dense mode.
+     */
+    private LongMapImpl<V> sparse;
+
+    /**
+     * The number of times this map has been structurally modified in the
+     * dense mode or switched its mode.
+     */
+    private int modCount;
+
+    /* ---------------- Constructors ---------------- */
+
+    /**
+     * Constructs an empty DenseLongMap in the dense mode.
+     */
+    public DenseLongMap() {
+        allocate(MINIMUM_SPAN);
+    }
+
+    /* ---------------- Main Methods ---------------- */
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * May widen the window or switch this map to the hash mode.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (sparse != null) {
+            return sparse.put(key, value);
+        }
+        if (size == 0) {
+            base = Math.min(key, Long.MAX_VALUE - (values.length - 1));
+        }
+        long offset = key - base;
+        if (Long.compareUnsigned(offset, values.length) >= 0) {
+            if (!widen(key)) {
+                switchToSparse();
+                return sparse.put(key, value);
+            }
+            offset = key - base;
+        }
+        int index = (int) offset;
+        long bit = 1L << index;
+        if ((present[index >>> 6] & bit) != 0) {
+            V previous = (V) values[index];
+            values[index] = value;
+            return previous;
+        }
+        present[index >>> 6] |= bit;
+        values[index] = value;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this map
+     * contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or null if this map contains no mapping for the key
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (sparse != null) {
+            return sparse.get(key);
+        }
+        int index = indexOf(key);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     * The window is not narrowed.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (sparse != null) {
+            return sparse.remove(key);
+        }
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V value = (V) values[index];
+        values[index] = null;
+        present[index >>> 6] &= ~(1L << index);
+        size--;
+        modCount++;
+        return value;
+    }
+
+    /**
+     * Returns true if this map contains no key-value mappings.
+     *
+     * @return true if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return sparse != null ? sparse.isEmpty() : size == 0;
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the specified key.
+     *
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for the specified key
+     */
+    public boolean containsKey(long key) {
+        if (sparse != null) {
+            return sparse.containsKey(key);
+        }
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Returns true if this map maps one or more keys to the specified value.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return true if this map maps one or more keys to the specified value
+     */
+    public boolean containsValue(V value) {
+        if (sparse != null) {
+            return sparse.containsValue(value);
+        }
+        for (int word = 0; word < present.length; word++) {
+            for (long bits = present[word]; bits != 0; bits &= bits - 1) {
+                if (Objects.equals(value, values[(word << 6) + Long.numberOfTrailingZeros(bits)])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns all the keys contained in this map, in ascending order in the
+     * dense mode.
+     *
+     * @return array of keys
+     */
+    public long[] keys() {
+        if (sparse != null) {
+            return sparse.keys();
+        }
+        long[] keySet = new long[size];
+        int position = 0;
+        for (int word = 0; word < present.length; word++) {
+            for (long bits = present[word]; bits != 0; bits &= bits - 1) {
+                keySet[position++] = base + (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return keySet;
+    }
+
+    /**
+     * Returns all the values contained in this map, in the order of
+     * {@link #keys()}. The type of the array is the class of the first
+     * non-null value.
+     *
+     * @return array of values or null if this map contains no values
+     */
+    @SuppressWarnings("unchecked")
+    public V[] values() {
+        if (sparse != null) {
+            return sparse.values();
+        }
+        V[] valuesSet = null;
+        int position = 0;
+        for (int word = 0; word < present.length; word++) {
+            for (long bits = present[word]; bits != 0; bits &= bits - 1) {
+                Object value = values[(word << 6) + Long.numberOfTrailingZeros(bits)];
+                if (valuesSet == null && value != null) {
+                    valuesSet = (V[]) Array.newInstance(value.getClass(), size);
+                }
+                if (valuesSet != null) {
+                    valuesSet[position] = (V) value;
+                }
+                position++;
+            }
+        }
+        return valuesSet;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public long size() {
+        return sparse != null ? sparse.size() : size;
+    }
+
+    /**
+     * Removes all of the mappings from this map and returns it to the
+     * dense mode with a window of the initial width.
+     */
+    public void clear() {
+        if (sparse == null && size == 0) {
+            return;
+        }
+        sparse = null;
+        size = 0;
+        allocate(MINIMUM_SPAN);
+        modCount++;
+    }
+
+    /**
+     * Returns true if this map stores its mappings directly indexed.
+     *
+     * @return true in the dense mode, false in the hash mode
+     */
+    public boolean isDense() {
+        return sparse == null;
+    }
+
+    /* ---------------- Iteration ---------------- */
+
+    /**
+     * Performs the given action for each mapping of this map.
+     *
+     * @param action the action to be performed for each mapping
+     * @throws ConcurrentModificationException if the action structurally modifies this map
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(LongObjConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        if (sparse != null) {
+            sparse.forEach(action);
+            return;
+        }
+        int expectedModCount = modCount;
+        long[] bitmap = present;
+        Object[] table = values;
+        for (int word = 0; word < bitmap.length && modCount == expectedModCount; word++) {
+            for (long bits = bitmap[word]; bits != 0 && modCount == expectedModCount; bits &= bits - 1) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+                action.accept(base + index, (V) table[index]);
+            }
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Returns a cursor over the mappings of this map. In the hash mode the
+     * cursor of the {@link LongMapImpl} is returned. A cursor of the dense
+     * mode fails fast when the map switches its mode.
+     *
+     * @return a new cursor
+     */
+    public LongMapCursor<V> cursor() {
+        return sparse != null ? sparse.cursor() : new Cursor();
+    }
+
+    /**
+     * A cursor over the bitmap of the window.
+     */
+    private class Cursor implements LongMapCursor<V> {
+
+        /**
+         * The index of the current mapping, or -1 before the first one.
+         */
+        private int index;
+
+        /**
+         * True if the cursor points to a mapping not removed yet.
+         */
+        private boolean current;
+
+        /**
+         * The modCount this cursor is in sync with.
+         */
+        private int expectedModCount;
+
+        private Cursor() {
+            reset();
+        }
+
+        public void reset() {
+            index = -1;
+            current = false;
+            expectedModCount = modCount;
+        }
+
+        public boolean advance() {
+            checkModCount();
+            index = nextIndex(index + 1);
+            current = index < present.length << 6;
+            return current;
+        }
+
+        public long key() {
+            checkCurrent();
+            return base + index;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V value() {
+            checkCurrent();
+            return (V) values[index];
+        }
+
+        public void remove() {
+            checkCurrent();
+            values[index] = null;
+            present[index >>> 6] &= ~(1L << index);
+            size--;
+            expectedModCount = ++modCount;
+            current = false;
+        }
+
+        private void checkCurrent() {
+            checkModCount();
+            if (!current) {
+                throw new IllegalStateException("Cursor does not point to a mapping");
+            }
+        }
+
+        private void checkModCount() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /* ---------------- Utils Methods ---------------- */
+
+    /**
+     * Returns the index of the specified key in the window.
+     *
+     * @param key a key to look for
+     * @return index of the key or -1 if there is no such key in the window
+     */
+    private int indexOf(long key) {
+        long offset = key - base;
+        if (Long.compareUnsigned(offset, values.length) >= 0) {
+            return -1;
+        }
+        int index = (int) offset;
+        return (present[index >>> 6] & (1L << index)) != 0 ? index : -1;
+    }
+
+    /**
+     * Returns the first index of the window from the specified one on which
+     * holds a mapping.
+     *
+     * @param from the index to start at
+     * @return the index of the mapping, or the width of the window if there is none
+     */
+    private int nextIndex(int from) {
+        int word = from >>> 6;
+        if (word >= present.length) {
+            return present.length << 6;
+        }
+        long bits = present[word] & (-1L << from);
+        while (bits == 0) {
+            if (++word == present.length) {
+                return present.length << 6;
+            }
+            bits = present[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Widens the window so that it covers the specified key, if the window
+     * stays dense enough. The window at least doubles, towards the side of
+     * the key, so that keys added in order widen it a logarithmic number
+     * of times.
+     *
+     * @param key a key outside of the window
+     * @return true if the window was widened, false if it would become too sparse
+     */
+    private boolean widen(long key) {
+        int length = values.length;
+        long low = Math.min(base, key);
+        long high = Math.max(base + (length - 1), key);
+        long span = high - low + 1;
+        long limit = Math.min(Math.max((long) (size + 1) * MAXIMUM_SLOTS_PER_MAPPING, MINIMUM_SPAN), MAXIMUM_SPAN);
+        if (span <= 0 || span > limit) {
+            return false;
+        }
+        int newLength = (int) ((Math.min(Math.max(span, (long) length * 2), limit) + 63) & ~63L);
+        long newBase;
+        if (key < base) {
+            newBase = high < Long.MIN_VALUE + (newLength - 1) ? Long.MIN_VALUE : high - (newLength - 1);
+        } else {
+            newBase = low > Long.MAX_VALUE - (newLength - 1) ? Long.MAX_VALUE - (newLength - 1) : low;
+        }
+
+        long[] oldPresent = present;
+        Object[] oldValues = values;
+        int shift = (int) (base - newBase);
+        allocate(newLength);
+        System.arraycopy(oldValues, 0, values, shift, length);
+        for (int word = 0; word < oldPresent.length; word++) {
+            for (long bits = oldPresent[word]; bits != 0; bits &= bits - 1) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(bits) + shift;
+                present[index >>> 6] |= 1L << index;
+            }
+        }
+        base = newBase;
+        return true;
+    }
+
+    /**
+     * Moves all mappings of the window into a new {@link LongMapImpl},
+     * which holds all mappings from now on.
+     */
+    @SuppressWarnings("unchecked")
+    private void switchToSparse() {
+        LongMapImpl<V> map = new LongMapImpl<>((int) Math.min((size + 1L) * 2, 1 << 30));
+        for (int word = 0; word < present.length; word++) {
+            for (long bits = present[word]; bits != 0; bits &= bits - 1) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+                map.put(base + index, (V) values[index]);
+            }
+        }
+        sparse = map;
+        values = null;
+        present = null;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Initialize a new empty window of the specified width.
+     *
+     * @param span the width of the window, a multiple of 64
+     */
+    private void allocate(int span) {
+        values = new Object[span];
+        present = new long[span >>> 6];
+    }
+}
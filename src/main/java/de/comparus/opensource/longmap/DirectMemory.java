@@ -0,0 +1,69 @@
+package de.comparus.opensource.longmap;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Releases direct and mapped buffers eagerly instead of waiting for the
+ * garbage collector to find them. Uses sun.misc.Unsafe.invokeCleaner on
+ * Java 9 and later and the buffer cleaner on Java 8. If neither is
+ * available, the memory is released when the buffer becomes unreachable.
+ */
+final class DirectMemory {
+
+    /**
+     * The Unsafe instance, or null if invokeCleaner is not available.
+     */
+    private static final Object UNSAFE;
+
+    /**
+     * The Unsafe.invokeCleaner method, or null if it is not available.
+     */
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            unsafe = theUnsafe.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private DirectMemory() {
+    }
+
+    /**
+     * Frees the memory of a direct or mapped buffer. The buffer must not be
+     * accessed afterwards.
+     *
+     * @param buffer the buffer to free
+     */
+    static void free(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } else {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to the garbage collector
+        }
+    }
+}
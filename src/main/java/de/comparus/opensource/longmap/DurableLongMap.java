@@ -0,0 +1,1088 @@
+package de.comparus.opensource.longmap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * A LongMap which keeps its mappings in a LongMapImpl and makes them
+ * durable with a write-ahead log in a directory. Every put, remove and
+ * clear appends a checksummed record to the log, which is split into
+ * segment files of a bounded size. When the log grows past the compaction
+ * threshold, a snapshot of the map is written in the background with
+ * LongMapSerializer and the segments it covers are deleted. Opening the
+ * directory loads the latest snapshot and replays the segments after it;
+ * a record torn by a crash at the end of the last segment is cut off.
+ * <p>
+ * Records are collected in a buffer and written to the log in batches. The
+ * sync policy decides when the log is forced to the storage device. Under
+ * {@link SyncPolicy#always()} a change returns once its record is forced,
+ * and one force covers the records of all threads which changed the map
+ * while the previous force was running (group commit), so the throughput
+ * is bound by the sequential bandwidth of the device rather than by the
+ * latency of a force.
+ * <p>
+ * The map is thread-safe. A change is visible to readers before its record
+ * is forced. forEach and cursor iterate a point-in-time snapshot. The
+ * compound default methods of LongMap are not atomic. Null values are
+ * permitted.
+ * <p>
+ * Once the log fails to be written, the map rejects all further changes,
+ * syncs and compactions, and close only closes the log. A change whose
+ * record was lost this way throws UncheckedIOException, but it has already
+ * been applied: it stays visible to readers of this instance, and it may or
+ * may not be recovered when the directory is opened again.
+ *
+ * @param <V> the type of mapped values
+ */
+public class DurableLongMap<V> implements LongMap<V>, AutoCloseable {
+
+    /* ---------------- Default values ---------------- */
+
+    /**
+     * The default maximum size of a segment in bytes.
+     */
+    private static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+
+    /**
+     * The default size of the log in bytes which triggers a compaction.
+     */
+    private static final long DEFAULT_COMPACTION_BYTES = 256L << 20;
+
+    /**
+     * The maximum size of a segment, which is mapped as a whole on recovery.
+     */
+    private static final long MAXIMUM_SEGMENT_BYTES = 1L << 30;
+
+    /**
+     * The size of the record buffer, which is written out when it fills up.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /* ---------------- File layout ---------------- */
+
+    /**
+     * The magic number at the start of a segment, "LWAL".
+     */
+    private static final int MAGIC = 0x4C57414C;
+
+    /**
+     * The version of the segment format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The number of bytes in the header of a segment: magic and version.
+     */
+    private static final int SEGMENT_HEADER_SIZE = 8;
+
+    /**
+     * The number of bytes in front of the payload of a record: its length
+     * and the CRC32 of the payload.
+     */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".lms";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /* ---------------- Fields ---------------- */
+
+    /**
+     * The directory of the log and the snapshots.
+     */
+    private final Path directory;
+
+    /**
+     * The codec of the values.
+     */
+    private final ValueCodec<V> codec;
+
+    /**
+     * When the log is forced.
+     */
+    private final SyncPolicy syncPolicy;
+
+    /**
+     * The size in bytes after which the log moves on to a new segment.
+     */
+    private final long segmentBytes;
+
+    /**
+     * The size of the log in bytes which triggers a compaction.
+     */
+    private final long compactionBytes;
+
+    /**
+     * The mappings, guarded by this.
+     */
+    private final LongMapImpl<V> map;
+
+    /**
+     * The records not written to the log yet, guarded by this.
+     */
+    private ByteBuffer pending;
+
+    /**
+     * The checksum of the records, guarded by this.
+     */
+    private final CRC32 checksum = new CRC32();
+
+    /**
+     * The number of records appended so far, guarded by this.
+     */
+    private long appendedLsn;
+
+    /**
+     * True once close was called, guarded by this.
+     */
+    private boolean closed;
+
+    /**
+     * The lock of the log. It is taken before the lock of this map, never
+     * while holding it, and guards the fields below.
+     */
+    private final Object logLock = new Object();
+
+    /**
+     * The buffer which replaces pending when its records are written.
+     */
+    private ByteBuffer spare;
+
+    /**
+     * The current segment, or null once the map is closed.
+     */
+    private FileChannel segment;
+
+    /**
+     * The number of the current segment.
+     */
+    private long segmentNumber;
+
+    /**
+     * The number of bytes in the current segment.
+     */
+    private long segmentPosition;
+
+    /**
+     * The number of bytes of all segments after the latest snapshot.
+     */
+    private long logBytes;
+
+    /**
+     * The number of records written to the log.
+     */
+    private long writtenLsn;
+
+    /**
+     * The number of records forced to the storage device.
+     */
+    private long durableLsn;
+
+    /**
+     * The lock which serializes compactions.
+     */
+    private final Object compactionLock = new Object();
+
+    /**
+     * True while a compaction is scheduled in the background.
+     */
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    /**
+     * The first failure of the log, after which all changes are rejected.
+     */
+    private volatile IOException failure;
+
+    /**
+     * The thread which forces the log at intervals and compacts it.
+     */
+    private final ScheduledExecutorService background;
+
+    /* ---------------- Constructors ---------------- */
+
+    /**
+     * Opens the map stored in the specified directory, or creates an empty
+     * one if the directory is empty or missing.
+     *
+     * @param directory       the directory of the log and the snapshots
+     * @param codec           the codec of the values
+     * @param syncPolicy      when the log is forced
+     * @param segmentBytes    the size in bytes after which the log moves on to a new segment
+     * @param compactionBytes the size of the log in bytes which triggers a compaction
+     * @throws IOException              if the directory cannot be read or contains a
+     *                                  corrupted snapshot or segment
+     * @throws IllegalArgumentException if the segment size is not in (0, 1 GB]
+     *                                  or the compaction threshold is not positive
+     */
+    public DurableLongMap(Path directory, ValueCodec<V> codec, SyncPolicy syncPolicy,
+                          long segmentBytes, long compactionBytes) throws IOException {
+        if (segmentBytes <= 0 || segmentBytes > MAXIMUM_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("Illegal segment size: " +
+                    segmentBytes);
+        }
+        if (compactionBytes <= 0) {
+            throw new IllegalArgumentException("Illegal compaction threshold: " +
+                    compactionBytes);
+        }
+        this.directory = directory;
+        this.codec = Objects.requireNonNull(codec);
+        this.syncPolicy = Objects.requireNonNull(syncPolicy);
+        this.segmentBytes = segmentBytes;
+        this.compactionBytes = compactionBytes;
+        pending = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        spare = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        Files.createDirectories(directory);
+        map = recover();
+        background = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "DurableLongMap " + directory.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = syncPolicy.intervalMillis();
+        if (interval > 0) {
+            background.scheduleWithFixedDelay(this::syncInBackground, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Opens the map stored in the specified directory with segments of at
+     * most 64 MB and a compaction once the log exceeds 256 MB.
+     *
+     * @param directory  the directory of the log and the snapshots
+     * @param codec      the codec of the values
+     * @param syncPolicy when the log is forced
+     * @throws IOException if the directory cannot be read or contains a
+     *                     corrupted snapshot or segment
+     */
+    public DurableLongMap(Path directory, ValueCodec<V> codec, SyncPolicy syncPolicy) throws IOException {
+        this(directory, codec, syncPolicy, DEFAULT_SEGMENT_BYTES, DEFAULT_COMPACTION_BYTES);
+    }
+
+    /**
+     * Opens the map stored in the specified directory, which forces the
+     * log before every change returns.
+     *
+     * @param directory the directory of the log and the snapshots
+     * @param codec     the codec of the values
+     * @throws IOException if the directory cannot be read or contains a
+     *                     corrupted snapshot or segment
+     */
+    public DurableLongMap(Path directory, ValueCodec<V> codec) throws IOException {
+        this(directory, codec, SyncPolicy.always());
+    }
+
+    /* ---------------- Main Methods ---------------- */
+
+    /**
+     * Associates the specified value with the specified key in this map and
+     * logs the change.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with key, or null if there was no mapping for key
+     * @throws UncheckedIOException  if the log cannot be written
+     * @throws IllegalStateException if the map is closed
+     */
+    public V put(long key, V value) {
+        V previous;
+        long lsn;
+        boolean full;
+        synchronized (this) {
+            checkWritable();
+            previous = map.put(key, value);
+            lsn = append(PUT, key, value);
+            full = pending.position() >= BUFFER_SIZE;
+        }
+        logged(lsn, full);
+        return previous;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this map
+     * contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or null if this map contains no mapping for the key
+     */
+    public synchronized V get(long key) {
+        return map.get(key);
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present and
+     * logs the change.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     * @throws UncheckedIOException  if the log cannot be written
+     * @throws IllegalStateException if the map is closed
+     */
+    public V remove(long key) {
+        V previous;
+        long lsn;
+        boolean full;
+        synchronized (this) {
+            checkWritable();
+            if (!map.containsKey(key)) {
+                return null;
+            }
+            previous = map.remove(key);
+            lsn = append(REMOVE, key, null);
+            full = pending.position() >= BUFFER_SIZE;
+        }
+        logged(lsn, full);
+        return previous;
+    }
+
+    /**
+     * Returns true if this map contains no key-value mappings.
+     *
+     * @return true if this map contains no key-value mappings
+     */
+    public synchronized boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the specified key.
+     *
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for the specified key
+     */
+    public synchronized boolean containsKey(long key) {
+        return map.containsKey(key);
+    }
+
+    /**
+     * Returns true if this map maps one or more keys to the specified value.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return true if this map maps one or more keys to the specified value
+     */
+    public synchronized boolean containsValue(V value) {
+        return map.containsValue(value);
+    }
+
+    /**
+     * Returns all the keys contained in this map.
+     *
+     * @return array of keys
+     */
+    public synchronized long[] keys() {
+        return map.keys();
+    }
+
+    /**
+     * Returns all the values contained in this map, in the order of keys().
+     *
+     * @return array of values or null if this map contains no values
+     */
+    public synchronized V[] values() {
+        return map.values();
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public synchronized long size() {
+        return map.size();
+    }
+
+    /**
+     * Removes all of the mappings from this map and logs the change.
+     *
+     * @throws UncheckedIOException  if the log cannot be written
+     * @throws IllegalStateException if the map is closed
+     */
+    public void clear() {
+        long lsn;
+        synchronized (this) {
+            checkWritable();
+            if (map.isEmpty()) {
+                return;
+            }
+            map.clear();
+            lsn = append(CLEAR, 0L, null);
+        }
+        logged(lsn, false);
+    }
+
+    /* ---------------- Iteration ---------------- */
+
+    /**
+     * Performs the given action for each mapping of a point-in-time
+     * snapshot of this map, without holding its lock.
+     *
+     * @param action the action to be performed for each mapping
+     */
+    public void forEach(LongObjConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        snapshot().forEach(action);
+    }
+
+    /**
+     * Returns a cursor over a point-in-time snapshot of this map. Removing
+     * through the cursor removes the key from this map and logs the change.
+     *
+     * @return a new cursor
+     */
+    public LongMapCursor<V> cursor() {
+        LongMapCursor<V> snapshotCursor = snapshot().cursor();
+        return new LongMapCursor<V>() {
+
+            /**
+             * True if the current mapping was removed through this cursor.
+             */
+            private boolean removed;
+
+            public void reset() {
+                snapshotCursor.reset();
+                removed = false;
+            }
+
+            public boolean advance() {
+                removed = false;
+                return snapshotCursor.advance();
+            }
+
+            public long key() {
+                return snapshotCursor.key();
+            }
+
+            public V value() {
+                return snapshotCursor.value();
+            }
+
+            public void remove() {
+                if (removed) {
+                    throw new IllegalStateException("Cursor does not point to a mapping");
+                }
+                DurableLongMap.this.remove(snapshotCursor.key());
+                removed = true;
+            }
+        };
+    }
+
+    /* ---------------- Durability ---------------- */
+
+    /**
+     * Writes and forces all logged changes to the storage device,
+     * regardless of the sync policy.
+     *
+     * @throws IOException           if the log cannot be written or failed before
+     * @throws IllegalStateException if the map is closed
+     */
+    public void sync() throws IOException {
+        long lsn;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Map is closed");
+            }
+            lsn = appendedLsn;
+        }
+        sync(lsn, true);
+    }
+
+    /**
+     * Writes a snapshot of this map and deletes the segments it covers.
+     * Changes may continue while the snapshot is written; they go to a new
+     * segment. Compactions also run in the background whenever the log
+     * exceeds the compaction threshold.
+     *
+     * @throws IOException           if the snapshot cannot be written or the log failed before
+     * @throws IllegalStateException if the map is closed
+     */
+    public void compact() throws IOException {
+        if (!writeSnapshot()) {
+            throw new IllegalStateException("Map is closed");
+        }
+    }
+
+    /**
+     * Writes and forces the remaining records, unless the sync policy never
+     * forces, and closes the log. A compaction running in the background
+     * completes first.
+     *
+     * @throws UncheckedIOException if the log cannot be written or closed
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        try {
+            synchronized (logLock) {
+                if (segment == null) {
+                    return;
+                }
+                try {
+                    if (failure == null) {
+                        flush(syncPolicy.intervalMillis() >= 0, false);
+                    }
+                    segment.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    segment = null;
+                }
+            }
+        } finally {
+            background.shutdown();
+            try {
+                background.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /* ---------------- Log ---------------- */
+
+    /**
+     * Appends a record to the pending records. Called with the lock of this map.
+     *
+     * @param op    the operation
+     * @param key   the key, ignored for CLEAR
+     * @param value the value of a PUT
+     * @return the log sequence number of the record
+     */
+    private long append(byte op, long key, V value) {
+        int length = op == PUT ? 10 + (value == null ? 0 : codec.size()) : op == REMOVE ? 9 : 1;
+        if (pending.remaining() < RECORD_HEADER_SIZE + length) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position()
+                    + RECORD_HEADER_SIZE + length)).order(ByteOrder.LITTLE_ENDIAN);
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        int start = pending.position();
+        pending.putInt(length);
+        pending.putInt(0);
+        pending.put(op);
+        if (op != CLEAR) {
+            pending.putLong(key);
+        }
+        if (op == PUT) {
+            if (value == null) {
+                pending.put((byte) 0);
+            } else {
+                pending.put((byte) 1);
+                codec.write(pending, pending.position(), value);
+                pending.position(pending.position() + codec.size());
+            }
+        }
+
+        ByteBuffer payload = pending.duplicate();
+        payload.position(start + RECORD_HEADER_SIZE).limit(pending.position());
+        checksum.reset();
+        checksum.update(payload);
+        pending.putInt(start + 4, (int) checksum.getValue());
+        return ++appendedLsn;
+    }
+
+    /**
+     * Waits for a logged change as required by the sync policy. Called
+     * without the lock of this map.
+     *
+     * @param lsn  the log sequence number of the record of the change
+     * @param full true if the pending records fill the buffer
+     * @throws UncheckedIOException if the log cannot be written
+     */
+    private void logged(long lsn, boolean full) {
+        try {
+            if (syncPolicy.isAlways()) {
+                sync(lsn, true);
+            } else if (full) {
+                sync(lsn, false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(fail(e));
+        }
+    }
+
+    /**
+     * Makes sure the specified record is written and, if requested, forced.
+     * The caller which takes the log lock writes the records of all callers
+     * waiting for it at once, so they all return after a single force.
+     *
+     * @param lsn   the log sequence number of the record
+     * @param force true to force the record to the storage device
+     * @throws IOException if the log cannot be written or failed before
+     */
+    private void sync(long lsn, boolean force) throws IOException {
+        boolean compact;
+        synchronized (logLock) {
+            checkLog();
+            if (segment == null || (force ? durableLsn : writtenLsn) >= lsn) {
+                return;
+            }
+            flush(force, false);
+            if (segmentPosition >= segmentBytes) {
+                roll();
+            }
+            compact = logBytes >= compactionBytes;
+        }
+        if (compact && compactionScheduled.compareAndSet(false, true)) {
+            try {
+                background.execute(this::compactInBackground);
+            } catch (RejectedExecutionException e) {
+                compactionScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Writes the pending records to the log. The log moves on to a new
+     * segment before a record which would take the current one past the
+     * segment size, so no segment outgrows it however many records have
+     * queued up. Any failure is recorded as the failure of the log. Called
+     * with the log lock.
+     *
+     * @param force   true to force the segment to the storage device
+     * @param capture true to take a snapshot of the map which contains
+     *                exactly the changes of the written records
+     * @return the snapshot, or null if none was requested
+     * @throws IOException if the log failed before or the segment cannot be written
+     */
+    private LongMap<V> flush(boolean force, boolean capture) throws IOException {
+        checkLog();
+        ByteBuffer batch;
+        long upTo;
+        LongMap<V> image = null;
+        synchronized (this) {
+            batch = pending;
+            pending = spare;
+            upTo = appendedLsn;
+            if (capture) {
+                image = map.snapshot();
+            }
+        }
+        try {
+            batch.flip();
+            while (batch.hasRemaining()) {
+                int end = batch.position();
+                long room = segmentBytes - segmentPosition;
+                while (end < batch.limit() && end - batch.position() + RECORD_HEADER_SIZE + batch.getInt(end) <= room) {
+                    end += RECORD_HEADER_SIZE + batch.getInt(end);
+                }
+                if (end == batch.position()) {
+                    if (segmentPosition > SEGMENT_HEADER_SIZE) {
+                        roll();
+                        continue;
+                    }
+                    end += RECORD_HEADER_SIZE + batch.getInt(end);
+                }
+                ByteBuffer records = batch.duplicate();
+                records.limit(end);
+                while (records.hasRemaining()) {
+                    segment.write(records);
+                }
+                segmentPosition += end - batch.position();
+                logBytes += end - batch.position();
+                batch.position(end);
+            }
+            batch.clear();
+            spare = batch;
+            writtenLsn = upTo;
+            if (force && durableLsn < upTo) {
+                segment.force(false);
+                durableLsn = upTo;
+            }
+        } catch (IOException e) {
+            throw fail(e);
+        }
+        return image;
+    }
+
+    /**
+     * Throws the failure of the log, if any, so that no record is written
+     * or forced after records were lost, and no snapshot contains changes
+     * whose records were lost. Called with the log lock.
+     *
+     * @throws IOException if the log failed before
+     */
+    private void checkLog() throws IOException {
+        if (failure != null) {
+            throw new IOException("Write-ahead log failed", failure);
+        }
+    }
+
+    /**
+     * Forces the current segment and moves on to a new one. Called with the log lock.
+     *
+     * @throws IOException if a segment cannot be forced or created
+     */
+    private void roll() throws IOException {
+        try {
+            segment.force(false);
+            durableLsn = writtenLsn;
+            segment.close();
+            segmentNumber++;
+            segment = createSegment(segmentNumber);
+            segmentPosition = SEGMENT_HEADER_SIZE;
+        } catch (IOException e) {
+            throw fail(e);
+        }
+    }
+
+    /**
+     * Forces the log in the background, as the interval sync policy requires.
+     */
+    private void syncInBackground() {
+        try {
+            long lsn;
+            synchronized (this) {
+                lsn = appendedLsn;
+            }
+            sync(lsn, true);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Records the first failure of the log.
+     *
+     * @param e the failure
+     * @return the first failure
+     */
+    private IOException fail(IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+        return failure;
+    }
+
+    /**
+     * Throws if the map does not accept changes. Called with the lock of this map.
+     *
+     * @throws IllegalStateException if the map is closed
+     * @throws UncheckedIOException  if the log failed before
+     */
+    private void checkWritable() {
+        if (closed) {
+            throw new IllegalStateException("Map is closed");
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Write-ahead log failed", failure);
+        }
+    }
+
+    /**
+     * Returns a point-in-time snapshot of the mappings.
+     *
+     * @return the snapshot
+     */
+    private synchronized LongMap<V> snapshot() {
+        return map.snapshot();
+    }
+
+    /* ---------------- Compaction ---------------- */
+
+    /**
+     * Compacts the log in the background.
+     */
+    private void compactInBackground() {
+        try {
+            writeSnapshot();
+        } catch (IOException e) {
+            fail(e);
+        } finally {
+            compactionScheduled.set(false);
+        }
+    }
+
+    /**
+     * Moves the log on to a new segment, writes a snapshot which contains
+     * exactly the changes of the previous segments, and deletes them.
+     *
+     * @return false if the map is closed
+     * @throws IOException if the snapshot cannot be written
+     */
+    private boolean writeSnapshot() throws IOException {
+        synchronized (compactionLock) {
+            LongMap<V> image;
+            long firstSegment;
+            synchronized (logLock) {
+                if (segment == null) {
+                    return false;
+                }
+                image = flush(true, true);
+                roll();
+                firstSegment = segmentNumber;
+                logBytes = 0;
+            }
+
+            Path snapshot = directory.resolve(fileName(SNAPSHOT_PREFIX, firstSegment, SNAPSHOT_SUFFIX));
+            Path temp = snapshot.resolveSibling(snapshot.getFileName() + TEMP_SUFFIX);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                LongMapSerializer.write(image, codec, channel);
+                channel.force(true);
+            }
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory();
+
+            for (long number : list(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                if (number < firstSegment) {
+                    Files.deleteIfExists(directory.resolve(fileName(SEGMENT_PREFIX, number, SEGMENT_SUFFIX)));
+                }
+            }
+            for (long number : list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+                if (number < firstSegment) {
+                    Files.deleteIfExists(directory.resolve(fileName(SNAPSHOT_PREFIX, number, SNAPSHOT_SUFFIX)));
+                }
+            }
+            return true;
+        }
+    }
+
+    /* ---------------- Recovery ---------------- */
+
+    /**
+     * Loads the latest snapshot, replays the segments after it, deletes the
+     * files it made obsolete and opens a new segment.
+     *
+     * @return the recovered mappings
+     * @throws IOException if a snapshot or segment is corrupted
+     */
+    private LongMapImpl<V> recover() throws IOException {
+        try (DirectoryStream<Path> temps = Files.newDirectoryStream(directory, "*" + TEMP_SUFFIX)) {
+            for (Path temp : temps) {
+                Files.delete(temp);
+            }
+        }
+        List<Long> snapshots = list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        List<Long> segments = list(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+
+        long firstSegment = 0;
+        LongMapImpl<V> recovered;
+        if (snapshots.isEmpty()) {
+            recovered = new LongMapImpl<>();
+        } else {
+            firstSegment = snapshots.get(snapshots.size() - 1);
+            Path snapshot = directory.resolve(fileName(SNAPSHOT_PREFIX, firstSegment, SNAPSHOT_SUFFIX));
+            try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+                recovered = LongMapSerializer.read(channel, codec);
+            }
+            for (long number : snapshots.subList(0, snapshots.size() - 1)) {
+                Files.delete(directory.resolve(fileName(SNAPSHOT_PREFIX, number, SNAPSHOT_SUFFIX)));
+            }
+        }
+
+        segmentNumber = firstSegment;
+        for (int i = 0; i < segments.size(); i++) {
+            long number = segments.get(i);
+            Path file = directory.resolve(fileName(SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+            if (number < firstSegment) {
+                Files.delete(file);
+                continue;
+            }
+            long replayed = replay(file, recovered, i == segments.size() - 1);
+            if (replayed < 0) {
+                Files.delete(file);
+            } else {
+                logBytes += replayed;
+            }
+            segmentNumber = number + 1;
+        }
+        segment = createSegment(segmentNumber);
+        segmentPosition = SEGMENT_HEADER_SIZE;
+        return recovered;
+    }
+
+    /**
+     * Applies the records of a segment to the map. A torn record at the end
+     * of the last segment is cut off.
+     *
+     * @param file  the segment
+     * @param into  the map to apply the records to
+     * @param last  true if this is the last segment
+     * @return the size of the segment after recovery, or -1 if the last
+     * segment was torn before its header was complete
+     * @throws IOException if the segment is corrupted
+     */
+    private long replay(Path file, LongMapImpl<V> into, boolean last) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size > MAXIMUM_SEGMENT_BYTES + BUFFER_SIZE) {
+                throw new IOException("Log segment is too big: " + file);
+            }
+            if (size < SEGMENT_HEADER_SIZE) {
+                if (!last) {
+                    throw new IOException("Corrupted log segment: " + file);
+                }
+                return -1;
+            }
+
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            long end;
+            try {
+                data.order(ByteOrder.LITTLE_ENDIAN);
+                if (data.getInt(0) != MAGIC) {
+                    throw new IOException("Not a log segment: " + file);
+                }
+                if (data.getInt(4) != VERSION) {
+                    throw new IOException("Unsupported log segment version: " + data.getInt(4));
+                }
+                end = applyRecords(data, into);
+            } finally {
+                DirectMemory.free(data);
+            }
+            if (end < size) {
+                if (!last) {
+                    throw new IOException("Corrupted log segment: " + file);
+                }
+                channel.truncate(end);
+                channel.force(true);
+            }
+            return end;
+        }
+    }
+
+    /**
+     * Applies the valid records of a segment to the map.
+     *
+     * @param data the content of the segment
+     * @param into the map to apply the records to
+     * @return the offset after the last valid record
+     */
+    private long applyRecords(ByteBuffer data, LongMapImpl<V> into) {
+        CRC32 crc = new CRC32();
+        int valueSize = codec.size();
+        int position = SEGMENT_HEADER_SIZE;
+        while (data.limit() - position >= RECORD_HEADER_SIZE + 1) {
+            int length = data.getInt(position);
+            int payload = position + RECORD_HEADER_SIZE;
+            if (length < 1 || length > data.limit() - payload) {
+                break;
+            }
+            ByteBuffer record = data.duplicate();
+            record.position(payload).limit(payload + length);
+            crc.reset();
+            crc.update(record);
+            if ((int) crc.getValue() != data.getInt(position + 4)) {
+                break;
+            }
+
+            byte op = data.get(payload);
+            boolean present = op == PUT && data.get(payload + 9) != 0;
+            if (op == PUT && length == (present ? 10 + valueSize : 10)) {
+                into.put(data.getLong(payload + 1), present ? codec.read(data, payload + 10) : null);
+            } else if (op == REMOVE && length == 9) {
+                into.remove(data.getLong(payload + 1));
+            } else if (op == CLEAR && length == 1) {
+                into.clear();
+            } else {
+                break;
+            }
+            position = payload + length;
+        }
+        return position;
+    }
+
+    /* ---------------- Utils Methods ---------------- */
+
+    /**
+     * Creates a segment and writes its header.
+     *
+     * @param number the number of the segment
+     * @return the channel of the segment, positioned after the header
+     * @throws IOException if the segment cannot be created
+     */
+    private FileChannel createSegment(long number) throws IOException {
+        Path file = directory.resolve(fileName(SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            forceDirectory();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * Forces the directory entries, so that created and moved files survive
+     * a crash of the machine. Platforms which cannot open a directory as a
+     * channel are skipped.
+     */
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not supported on this platform
+        }
+    }
+
+    /**
+     * Returns the numbers of the files with the specified prefix and suffix,
+     * in ascending order.
+     *
+     * @param prefix the prefix of the file names
+     * @param suffix the suffix of the file names
+     * @return the numbers
+     * @throws IOException if the directory cannot be read
+     */
+    private List<Long> list(String prefix, String suffix) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.parseUnsignedLong(name.substring(prefix.length(),
+                            name.length() - suffix.length()), 16));
+                } catch (NumberFormatException e) {
+                    // not a file of this map
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * Returns the name of a numbered file.
+     *
+     * @param prefix the prefix of the file name
+     * @param number the number
+     * @param suffix the suffix of the file name
+     * @return the file name
+     */
+    private static String fileName(String prefix, long number, String suffix) {
+        return prefix + String.format("%016x", number) + suffix;
+    }
+}
@@ -0,0 +1,35 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * Receives the entries evicted from a LongCache.
+ *
+ * @param <V> the type of cached values
+ */
+@FunctionalInterface
+public interface EvictionListener<V> {
+
+    /**
+     * The reason of an eviction.
+     */
+    enum Cause {
+
+        /**
+         * The cache exceeded its maximum size or weight.
+         */
+        SIZE,
+
+        /**
+         * The entry outlived its time to live.
+         */
+        EXPIRED
+    }
+
+    /**
+     * Called after the entry has been removed from the cache.
+     *
+     * @param key   the key of the evicted entry
+     * @param value the value of the evicted entry
+     * @param cause the reason of the eviction
+     */
+    void onEviction(long key, V value, Cause cause);
+}
@@ -0,0 +1,47 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * The policies which choose the entry evicted from a full LongCache.
+ */
+public enum EvictionPolicy {
+
+    /**
+     * Evicts the least recently used entry. Every hit moves the entry to the
+     * front of the access order.
+     */
+    LRU {
+        CachePolicy create() {
+            return new LruPolicy();
+        }
+    },
+
+    /**
+     * Approximates LRU with a clock hand sweeping over the entries. A hit
+     * only sets a reference bit, so it costs less than a hit under LRU; an
+     * entry with the bit set survives one more sweep.
+     */
+    CLOCK {
+        CachePolicy create() {
+            return new ClockPolicy();
+        }
+    },
+
+    /**
+     * W-TinyLFU: new entries enter a small LRU window, and an entry leaving
+     * the window is admitted to the main segmented LRU only if a count-min
+     * sketch estimates it to be used more often than the entry it would
+     * evict. Resists scans and keeps frequently used entries.
+     */
+    W_TINY_LFU {
+        CachePolicy create() {
+            return new TinyLfuPolicy();
+        }
+    };
+
+    /**
+     * Creates the bookkeeping of this policy for a new cache.
+     *
+     * @return the policy instance
+     */
+    abstract CachePolicy create();
+}
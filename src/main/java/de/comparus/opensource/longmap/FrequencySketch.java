@@ -0,0 +1,109 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * A count-min sketch which estimates how often keys were used, with 4-bit
+ * counters packed sixteen to a long. Every key maps to four counters, and
+ * its frequency is the smallest of them. Once the number of increments
+ * reaches ten times the width of the table, all counters are halved, so
+ * that the estimates follow changes of the workload.
+ */
+final class FrequencySketch {
+
+    /**
+     * The seeds of the four hash functions.
+     */
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    /**
+     * Keeps the lower three bits of every 4-bit counter.
+     */
+    private static final long HALF_MASK = 0x7777777777777777L;
+
+    /**
+     * The maximum value of a counter.
+     */
+    private static final int MAX_COUNT = 15;
+
+    private long[] table = new long[1];
+    private int mask;
+    private int sampleSize = 10;
+    private int additions;
+
+    /**
+     * Widens the sketch for the specified number of entries, dropping the
+     * frequencies collected so far if it grows.
+     *
+     * @param capacity the number of entries of the cache
+     */
+    void ensureCapacity(int capacity) {
+        int width = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        if (width > table.length) {
+            table = new long[width];
+            mask = width - 1;
+            sampleSize = 10 * width;
+            additions = 0;
+        }
+    }
+
+    /**
+     * Returns the estimated number of uses of the key, at most 15.
+     *
+     * @param key the key
+     * @return the estimated frequency
+     */
+    int frequency(long key) {
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = indexHash(key, i);
+            int shift = (int) (h >>> 58) & 0x3C;
+            frequency = Math.min(frequency, (int) (table[(int) h & mask] >>> shift) & MAX_COUNT);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records a use of the key.
+     *
+     * @param key the key
+     */
+    void increment(long key) {
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = indexHash(key, i);
+            int shift = (int) (h >>> 58) & 0x3C;
+            int index = (int) h & mask;
+            if (((table[index] >>> shift) & MAX_COUNT) != MAX_COUNT) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Halves all counters.
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & HALF_MASK;
+        }
+        additions >>>= 1;
+    }
+
+    /**
+     * Returns the hash of the key for the specified hash function. The low
+     * bits select the long of the table, the high bits the counter in it.
+     *
+     * @param key the key
+     * @param i   the index of the hash function
+     * @return the hash
+     */
+    private static long indexHash(long key, int i) {
+        long h = (key + SEEDS[i]) * SEEDS[i];
+        return h ^ (h >>> 29);
+    }
+}
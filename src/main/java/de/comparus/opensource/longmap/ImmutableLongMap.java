@@ -0,0 +1,313 @@
+package de.comparus.opensource.longmap;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An immutable map with keys of type long, laid out for lookups. The
+ * mappings are grouped by their hash bucket into two arrays of exactly the
+ * size of the map, and an offset array marks where each bucket starts.
+ * There are as many buckets as the next power of two above the size, so a
+ * bucket holds at most one key on average, and a lookup reads the offsets
+ * of its bucket and scans the few keys in between. There are no empty
+ * slots, no sentinel key and no resize or modification checks.
+ * <p>
+ * All fields are final, so an instance can be shared with any number of
+ * threads without locks, even through a data race. The mutating methods
+ * throw UnsupportedOperationException. Null values are permitted.
+ *
+ * @param <V> the type of mapped values
+ */
+public final class ImmutableLongMap<V> implements LongMap<V> {
+
+    /* ---------------- Default values ---------------- */
+
+    /**
+     * The strategy which hashes the keys.
+     */
+    private static final LongHashStrategy HASH = LongHashStrategies.FMIX64;
+
+    /* ---------------- Fields ---------------- */
+
+    /**
+     * The mask to calculate the bucket of a key, equal to the number of buckets - 1.
+     */
+    private final int mask;
+
+    /**
+     * The index of the first key of each bucket, followed by the size of
+     * the map. The keys of bucket b are at offsets[b] until offsets[b + 1].
+     */
+    private final int[] offsets;
+
+    /**
+     * The keys grouped by bucket.
+     */
+    private final long[] keys;
+
+    /**
+     * The values, parallel to the keys.
+     */
+    private final Object[] values;
+
+    /* ---------------- Constructors ---------------- */
+
+    /**
+     * Lays out the specified mappings. The keys must be distinct.
+     *
+     * @param keys   the keys
+     * @param values the values, parallel to the keys
+     * @param size   the number of mappings in the arrays
+     */
+    private ImmutableLongMap(long[] keys, Object[] values, int size) {
+        int buckets = size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+        mask = buckets - 1;
+        int[] bucketOf = new int[size];
+        int[] starts = new int[buckets + 1];
+        for (int i = 0; i < size; i++) {
+            bucketOf[i] = HASH.hash(keys[i]) & mask;
+            starts[bucketOf[i] + 1]++;
+        }
+        for (int b = 0; b < buckets; b++) {
+            starts[b + 1] += starts[b];
+        }
+        offsets = starts.clone();
+        this.keys = new long[size];
+        this.values = new Object[size];
+        for (int i = 0; i < size; i++) {
+            int position = starts[bucketOf[i]]++;
+            this.keys[position] = keys[i];
+            this.values[position] = values[i];
+        }
+    }
+
+    /**
+     * Returns an immutable copy of the specified map.
+     *
+     * @param map the map to copy
+     * @param <V> the type of mapped values
+     * @return the immutable copy
+     */
+    public static <V> ImmutableLongMap<V> copyOf(LongMap<? extends V> map) {
+        if (map instanceof ImmutableLongMap) {
+            @SuppressWarnings("unchecked")
+            ImmutableLongMap<V> immutable = (ImmutableLongMap<V>) map;
+            return immutable;
+        }
+        int capacity = (int) Math.min(Math.max(map.size(), 16), Integer.MAX_VALUE - 8);
+        long[][] keys = {new long[capacity]};
+        Object[][] values = {new Object[capacity]};
+        int[] size = {0};
+        map.forEach((key, value) -> {
+            if (size[0] == keys[0].length) {
+                keys[0] = Arrays.copyOf(keys[0], size[0] * 2);
+                values[0] = Arrays.copyOf(values[0], size[0] * 2);
+            }
+            keys[0][size[0]] = key;
+            values[0][size[0]++] = value;
+        });
+        return new ImmutableLongMap<>(keys[0], values[0], size[0]);
+    }
+
+    /* ---------------- Main Methods ---------------- */
+
+    /**
+     * Throws UnsupportedOperationException, as this map is immutable.
+     *
+     * @param key   ignored
+     * @param value ignored
+     * @return never returns normally
+     * @throws UnsupportedOperationException always
+     */
+    public V put(long key, V value) {
+        throw new UnsupportedOperationException("Map is immutable");
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this map
+     * contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or null if this map contains no mapping for the key
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    /**
+     * Throws UnsupportedOperationException, as this map is immutable.
+     *
+     * @param key ignored
+     * @return never returns normally
+     * @throws UnsupportedOperationException always
+     */
+    public V remove(long key) {
+        throw new UnsupportedOperationException("Map is immutable");
+    }
+
+    /**
+     * Returns true if this map contains no key-value mappings.
+     *
+     * @return true if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the specified key.
+     *
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for the specified key
+     */
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Returns true if this map maps one or more keys to the specified value.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return true if this map maps one or more keys to the specified value
+     */
+    public boolean containsValue(V value) {
+        for (Object current : values) {
+            if (Objects.equals(value, current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns all the keys contained in this map.
+     *
+     * @return array of keys
+     */
+    public long[] keys() {
+        return keys.clone();
+    }
+
+    /**
+     * Returns all the values contained in this map, in the order of
+     * {@link #keys()}. The type of the array is the class of the first
+     * non-null value.
+     *
+     * @return array of values or null if this map contains no values
+     */
+    @SuppressWarnings("unchecked")
+    public V[] values() {
+        for (Object value : values) {
+            if (value != null) {
+                V[] valuesSet = (V[]) Array.newInstance(value.getClass(), values.length);
+                System.arraycopy(values, 0, valuesSet, 0, values.length);
+                return valuesSet;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public long size() {
+        return keys.length;
+    }
+
+    /**
+     * Throws UnsupportedOperationException, as this map is immutable.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    public void clear() {
+        throw new UnsupportedOperationException("Map is immutable");
+    }
+
+    /* ---------------- Iteration ---------------- */
+
+    /**
+     * Performs the given action for each mapping of this map.
+     *
+     * @param action the action to be performed for each mapping
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(LongObjConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        for (int i = 0; i < keys.length; i++) {
+            action.accept(keys[i], (V) values[i]);
+        }
+    }
+
+    /**
+     * Returns a cursor over the mappings of this map, in the order of
+     * {@link #keys()}. Its remove method throws UnsupportedOperationException.
+     *
+     * @return a new cursor
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A cursor over the arrays of the map.
+     */
+    private final class Cursor implements LongMapCursor<V> {
+
+        private int index = -1;
+
+        public void reset() {
+            index = -1;
+        }
+
+        public boolean advance() {
+            if (index < keys.length) {
+                index++;
+            }
+            return index < keys.length;
+        }
+
+        public long key() {
+            checkCurrent();
+            return keys[index];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V value() {
+            checkCurrent();
+            return (V) values[index];
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Map is immutable");
+        }
+
+        private void checkCurrent() {
+            if (index < 0 || index >= keys.length) {
+                throw new IllegalStateException("Cursor does not point to a mapping");
+            }
+        }
+    }
+
+    /* ---------------- Utils Methods ---------------- */
+
+    /**
+     * Returns the index of the specified key.
+     *
+     * @param key a key to look for
+     * @return index of the key or -1 if there is no such key
+     */
+    private int indexOf(long key) {
+        int bucket = HASH.hash(key) & mask;
+        for (int i = offsets[bucket], end = offsets[bucket + 1]; i < end; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,21 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * Loads the values of several keys at once for an AsyncLongMap.
+ *
+ * @param <V> the type of loaded values
+ */
+@FunctionalInterface
+public interface LongBulkLoader<V> {
+
+    /**
+     * Loads the values of the specified keys. May block; it is called on
+     * the executor of the map.
+     *
+     * @param keys the keys to load, distinct
+     * @return the loaded values by key, without the keys which have no value
+     * @throws Exception if the values cannot be loaded, which fails the
+     *                   lookups of all the keys
+     */
+    LongMap<? extends V> loadAll(long[] keys) throws Exception;
+}
@@ -0,0 +1,453 @@
+package de.comparus.opensource.longmap;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A cache with keys of type long, bounded by the number or the total weight
+ * of its entries. When a put exceeds the bound, entries chosen by the
+ * eviction policy are evicted until the cache fits again. Entries may also
+ * expire a fixed time after they were written.
+ * <p>
+ * Entries live in slots of parallel arrays, and a primitive LongIntMapImpl
+ * maps keys to slots. The eviction policies link slots through int arrays,
+ * so neither a hit nor an update allocates.
+ * <p>
+ * This cache is not thread-safe. It does not permit null values.
+ *
+ * @param <V> the type of cached values
+ */
+public class LongCache<V> {
+
+    /* ---------------- Default values ---------------- */
+
+    /**
+     * The initial number of slots.
+     */
+    private static final int INITIAL_SLOTS = 16;
+
+    /**
+     * The maximum number of slots.
+     */
+    private static final int MAXIMUM_SLOTS = 1 << 30;
+
+    /**
+     * The value of the index for an absent key.
+     */
+    private static final int NO_SLOT = -1;
+
+    /* ---------------- Fields ---------------- */
+
+    /**
+     * The maximum total weight of the entries.
+     */
+    private final long maximumWeight;
+
+    /**
+     * The weigher of the entries, or null if every entry weighs 1.
+     */
+    private final LongWeigher<? super V> weigher;
+
+    /**
+     * The bookkeeping of the eviction policy.
+     */
+    private final CachePolicy policy;
+
+    /**
+     * The slots of the keys in this cache.
+     */
+    private final LongIntMapImpl index = new LongIntMapImpl(INITIAL_SLOTS, 0.75f, NO_SLOT);
+
+    /**
+     * The key of each slot.
+     */
+    private long[] keys;
+
+    /**
+     * The value of each slot, null for a free slot.
+     */
+    private Object[] values;
+
+    /**
+     * The weight of each slot, or null if every entry weighs 1.
+     */
+    private long[] weights;
+
+    /**
+     * The time at which each slot expires, or null if entries do not expire.
+     */
+    private long[] expiresAt;
+
+    /**
+     * The stack of free slots below used.
+     */
+    private int[] freeSlots;
+
+    /**
+     * The number of free slots on the stack.
+     */
+    private int freeCount;
+
+    /**
+     * The number of slots ever used, all slots above are free.
+     */
+    private int used;
+
+    /**
+     * The number of entries in this cache.
+     */
+    private int size;
+
+    /**
+     * The total weight of the entries in this cache.
+     */
+    private long totalWeight;
+
+    /**
+     * The time to live of an entry in nanoseconds, or 0 if entries do not expire.
+     */
+    private long expireAfterWriteNanos;
+
+    /**
+     * The source of time for expiry.
+     */
+    private LongSupplier ticker = System::nanoTime;
+
+    /**
+     * The listener of evictions, or null.
+     */
+    private EvictionListener<? super V> listener;
+
+    /* ---------------- Constructors ---------------- */
+
+    /**
+     * Constructs an empty LongCache which holds at most the specified number
+     * of entries.
+     *
+     * @param maximumSize the maximum number of entries
+     * @param policy      the eviction policy
+     * @throws IllegalArgumentException if the maximum size is not positive
+     */
+    public LongCache(int maximumSize, EvictionPolicy policy) {
+        this(checkMaximumSize(maximumSize), null, policy);
+    }
+
+    /**
+     * Constructs an empty LongCache whose entries weigh at most the
+     * specified total weight.
+     *
+     * @param maximumWeight the maximum total weight of the entries
+     * @param weigher       the weigher of the entries
+     * @param policy        the eviction policy
+     * @throws IllegalArgumentException if the maximum weight is negative
+     */
+    public LongCache(long maximumWeight, LongWeigher<? super V> weigher, EvictionPolicy policy) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("Illegal maximum weight: " + maximumWeight);
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.policy = Objects.requireNonNull(policy).create();
+        int slots = (int) Math.min(INITIAL_SLOTS, Math.max(maximumWeight, 1));
+        keys = new long[slots];
+        values = new Object[slots];
+        weights = weigher == null ? null : new long[slots];
+        freeSlots = new int[slots];
+        this.policy.grow(slots);
+    }
+
+    /* ---------------- Main Methods ---------------- */
+
+    /**
+     * Returns the value cached for the key and records the hit with the
+     * eviction policy, or returns null if the key is absent or expired.
+     *
+     * @param key the key whose cached value is to be returned
+     * @return the cached value, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = index.get(key);
+        if (slot == NO_SLOT) {
+            policy.onMiss(key);
+            return null;
+        }
+        if (isExpired(slot)) {
+            evict(slot, EvictionListener.Cause.EXPIRED);
+            policy.onMiss(key);
+            return null;
+        }
+        policy.onAccess(slot, key);
+        return (V) values[slot];
+    }
+
+    /**
+     * Caches the value for the key and evicts entries until the cache fits
+     * its bound. The new entry itself may be evicted if the policy says so.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value cached for the key, or null
+     * @throws NullPointerException     if the value is null
+     * @throws IllegalArgumentException if the weigher returns a negative weight
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        Objects.requireNonNull(value);
+        long weight = weigh(key, value);
+        V previous = null;
+        int slot = index.get(key);
+        if (slot != NO_SLOT) {
+            if (isExpired(slot)) {
+                evict(slot, EvictionListener.Cause.EXPIRED);
+                slot = NO_SLOT;
+            } else {
+                previous = (V) values[slot];
+                values[slot] = value;
+                if (weights != null) {
+                    totalWeight += weight - weights[slot];
+                    weights[slot] = weight;
+                }
+                policy.onAccess(slot, key);
+            }
+        }
+        if (slot == NO_SLOT) {
+            slot = allocateSlot();
+            keys[slot] = key;
+            values[slot] = value;
+            if (weights != null) {
+                weights[slot] = weight;
+            }
+            index.put(key, slot);
+            size++;
+            totalWeight += weight;
+            policy.onInsert(slot, key);
+        }
+        if (expiresAt != null) {
+            expiresAt[slot] = ticker.getAsLong() + expireAfterWriteNanos;
+        }
+        while (totalWeight > maximumWeight && size > 0) {
+            evict(policy.victim(), EvictionListener.Cause.SIZE);
+        }
+        return previous;
+    }
+
+    /**
+     * Removes the entry for the key. The eviction listener is not notified.
+     *
+     * @param key key whose entry is to be removed
+     * @return the value cached for the key, or null if it was absent or expired
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int slot = index.get(key);
+        if (slot == NO_SLOT) {
+            return null;
+        }
+        V value = isExpired(slot) ? null : (V) values[slot];
+        release(slot);
+        return value;
+    }
+
+    /**
+     * Returns true if the cache holds an unexpired entry for the key. Does
+     * not count as an access.
+     *
+     * @param key key whose presence is to be tested
+     * @return true if the key is cached
+     */
+    public boolean containsKey(long key) {
+        int slot = index.get(key);
+        return slot != NO_SLOT && !isExpired(slot);
+    }
+
+    /**
+     * Returns the number of entries, including expired ones which have not
+     * been cleaned up yet.
+     *
+     * @return the number of entries
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the total weight of the entries.
+     *
+     * @return the total weight
+     */
+    public long weight() {
+        return totalWeight;
+    }
+
+    /**
+     * Removes all entries without notifying the eviction listener.
+     */
+    public void clear() {
+        for (int slot = 0; slot < used; slot++) {
+            if (values[slot] != null) {
+                release(slot);
+            }
+        }
+    }
+
+    /**
+     * Evicts all expired entries.
+     */
+    public void cleanUp() {
+        if (expiresAt == null) {
+            return;
+        }
+        for (int slot = 0; slot < used; slot++) {
+            if (values[slot] != null && isExpired(slot)) {
+                evict(slot, EvictionListener.Cause.EXPIRED);
+            }
+        }
+    }
+
+    /* ---------------- Settings ---------------- */
+
+    /**
+     * Sets the time after which an entry expires once it has been put.
+     * Applies to entries put from now on. A duration of 0 disables expiry.
+     *
+     * @param duration the time to live
+     * @param unit     the unit of the duration
+     * @throws IllegalArgumentException if the duration is negative
+     */
+    public void setExpireAfterWrite(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Illegal duration: " + duration);
+        }
+        expireAfterWriteNanos = unit.toNanos(duration);
+        if (expireAfterWriteNanos > 0 && expiresAt == null) {
+            expiresAt = new long[keys.length];
+            Arrays.fill(expiresAt, ticker.getAsLong() + expireAfterWriteNanos);
+        } else if (expireAfterWriteNanos == 0) {
+            expiresAt = null;
+        }
+    }
+
+    /**
+     * Sets the listener notified of evicted entries.
+     *
+     * @param listener the listener, or null to remove it
+     */
+    public void setEvictionListener(EvictionListener<? super V> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the source of time for expiry, in nanoseconds.
+     *
+     * @param ticker the ticker
+     */
+    void setTicker(LongSupplier ticker) {
+        this.ticker = ticker;
+    }
+
+    /* ---------------- Utils Methods ---------------- */
+
+    /**
+     * Validates the maximum size of a cache bounded by the number of entries.
+     *
+     * @param maximumSize the maximum number of entries
+     * @return the maximum size as the maximum weight
+     * @throws IllegalArgumentException if the maximum size is not positive
+     */
+    private static long checkMaximumSize(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Illegal maximum size: " + maximumSize);
+        }
+        return maximumSize;
+    }
+
+    /**
+     * Returns the weight of an entry.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the weight
+     */
+    private long weigh(long key, V value) {
+        if (weigher == null) {
+            return 1L;
+        }
+        long weight = weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Illegal weight: " + weight);
+        }
+        return weight;
+    }
+
+    /**
+     * Returns true if the entry of the slot has outlived its time to live.
+     *
+     * @param slot the slot
+     * @return true if the entry is expired
+     */
+    private boolean isExpired(int slot) {
+        return expiresAt != null && ticker.getAsLong() - expiresAt[slot] >= 0;
+    }
+
+    /**
+     * Removes the entry of the slot and notifies the eviction listener.
+     *
+     * @param slot  the slot
+     * @param cause the reason of the eviction
+     */
+    @SuppressWarnings("unchecked")
+    private void evict(int slot, EvictionListener.Cause cause) {
+        long key = keys[slot];
+        V value = (V) values[slot];
+        release(slot);
+        if (listener != null) {
+            listener.onEviction(key, value, cause);
+        }
+    }
+
+    /**
+     * Removes the entry of the slot and frees the slot.
+     *
+     * @param slot the slot
+     */
+    private void release(int slot) {
+        index.remove(keys[slot]);
+        policy.onRemove(slot);
+        values[slot] = null;
+        totalWeight -= weights == null ? 1L : weights[slot];
+        size--;
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Returns a free slot, growing the arrays if all slots are used.
+     *
+     * @return the slot
+     * @throws IllegalStateException if the maximum number of slots is exceeded
+     */
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (used == keys.length) {
+            if (used == MAXIMUM_SLOTS) {
+                throw new IllegalStateException("Cache capacity exceeded: " + used);
+            }
+            int slots = (int) Math.min((long) used * 2, MAXIMUM_SLOTS);
+            keys = Arrays.copyOf(keys, slots);
+            values = Arrays.copyOf(values, slots);
+            if (weights != null) {
+                weights = Arrays.copyOf(weights, slots);
+            }
+            if (expiresAt != null) {
+                expiresAt = Arrays.copyOf(expiresAt, slots);
+            }
+            freeSlots = Arrays.copyOf(freeSlots, slots);
+            policy.grow(slots);
+        }
+        return used++;
+    }
+}
@@ -0,0 +1,25 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * A map with keys of type long and values of type double, which stores the
+ * values unboxed. Absent mappings are reported with the no entry value
+ * chosen when the map was created.
+ */
+public interface LongDoubleMap {
+    double put(long key, double value);
+    double get(long key);
+    double remove(long key);
+    double addTo(long key, double delta);
+
+    boolean isEmpty();
+    boolean containsKey(long key);
+    boolean containsValue(double value);
+
+    long[] keys();
+    double[] values();
+
+    long size();
+    void clear();
+
+    double getNoEntryValue();
+}
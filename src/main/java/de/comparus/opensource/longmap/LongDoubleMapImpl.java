@@ -0,0 +1,487 @@
+package de.comparus.opensource.longmap;
+
+import java.util.Arrays;
+
+public class LongDoubleMapImpl implements LongDoubleMap {
+
+    /* ---------------- Default values ---------------- */
+
+    /**
+     * The default initial capacity.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The default load factor.
+     */
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The maximum capacity of the table, must be a power of two.
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The key which marks an empty slot of the table. The mapping for this
+     * key itself is kept outside of the table.
+     */
+    private static final long FREE_KEY = 0L;
+
+    /* ---------------- Fields ---------------- */
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    private int size;
+
+    /**
+     * The load factor for this map.
+     */
+    private final float loadFactor;
+
+    /**
+     * The value returned for absent keys.
+     */
+    private final double noEntryValue;
+
+    /**
+     * The next size value at which to resize.
+     */
+    private int threshold;
+
+    /**
+     * The mask to calculate the index of a slot, always equal to capacity - 1.
+     */
+    private int mask;
+
+    /**
+     * The keys of this map. A slot is empty when it contains FREE_KEY.
+     */
+    private long[] keys;
+
+    /**
+     * The values of this map, parallel to the keys.
+     */
+    private double[] values;
+
+    /**
+     * True if this map contains a mapping for FREE_KEY.
+     */
+    private boolean hasFreeKey;
+
+    /**
+     * The value associated with FREE_KEY.
+     */
+    private double freeValue;
+
+    /* ---------------- Constructors ---------------- */
+
+    /**
+     * Constructs an empty LongDoubleMapImpl with the specified initial capacity,
+     * load factor and no entry value. The capacity is rounded up to the
+     * nearest power of two.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor      the load factor
+     * @param noEntryValue    the value returned for absent keys
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *                                  or the load factor is not in (0, 1)
+     */
+    public LongDoubleMapImpl(int initialCapacity, float loadFactor, double noEntryValue) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        }
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor)) {
+            throw new IllegalArgumentException("Illegal load factor: " +
+                    loadFactor);
+        }
+        this.loadFactor = loadFactor;
+        this.noEntryValue = noEntryValue;
+        allocate(tableSizeFor(initialCapacity));
+    }
+
+    /**
+     * Constructs an empty LongDoubleMapImpl with the specified initial capacity
+     * and load factor, which reports absent keys with 0.0.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor      the load factor
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *                                  or the load factor is not in (0, 1)
+     */
+    public LongDoubleMapImpl(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, 0.0);
+    }
+
+    /**
+     * Constructs an empty LongDoubleMapImpl with the specified initial capacity
+     * and the default load factor (0.75), which reports absent keys with 0.0.
+     *
+     * @param initialCapacity the initial capacity
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public LongDoubleMapImpl(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR, 0.0);
+    }
+
+    /**
+     * Constructs an empty LongDoubleMapImpl with the default initial capacity (16)
+     * and the default load factor (0.75), which reports absent keys with 0.0.
+     */
+    public LongDoubleMapImpl() {
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR, 0.0);
+    }
+
+    /* ---------------- Main Methods ---------------- */
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with key, or
+     * the no entry value if there was no mapping for key
+     */
+    public double put(long key, double value) {
+        if (key == FREE_KEY) {
+            double previous = hasFreeKey ? freeValue : noEntryValue;
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeValue = value;
+            return previous;
+        }
+
+        int index = insertionIndex(key);
+        if (index < 0) {
+            index = -index - 1;
+            double previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size > threshold) {
+            resize();
+        }
+        return noEntryValue;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or the no entry
+     * value if this map contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or the no entry value
+     */
+    public double get(long key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey ? freeValue : noEntryValue;
+        }
+        int index = indexOf(key);
+        return index < 0 ? noEntryValue : values[index];
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or the no entry value
+     */
+    public double remove(long key) {
+        if (key == FREE_KEY) {
+            if (!hasFreeKey) {
+                return noEntryValue;
+            }
+            hasFreeKey = false;
+            size--;
+            return freeValue;
+        }
+
+        int index = indexOf(key);
+        if (index < 0) {
+            return noEntryValue;
+        }
+        double value = values[index];
+        shiftKeys(index);
+        size--;
+        return value;
+    }
+
+    /**
+     * Adds the delta to the value associated with the specified key. An
+     * absent key is treated as if it was mapped to 0.0, not to the no entry
+     * value, so that counters start from 0.0.
+     *
+     * @param key   key whose value is to be incremented
+     * @param delta the increment
+     * @return the previous value associated with key, or
+     * the no entry value if there was no mapping for key
+     */
+    public double addTo(long key, double delta) {
+        if (key == FREE_KEY) {
+            double previous = hasFreeKey ? freeValue : noEntryValue;
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                freeValue = 0.0;
+                size++;
+            }
+            freeValue += delta;
+            return previous;
+        }
+
+        int index = insertionIndex(key);
+        if (index < 0) {
+            index = -index - 1;
+            double previous = values[index];
+            values[index] += delta;
+            return previous;
+        }
+        keys[index] = key;
+        values[index] = delta;
+        if (++size > threshold) {
+            resize();
+        }
+        return noEntryValue;
+    }
+
+    /**
+     * Returns true if this map contains no key-value mappings.
+     *
+     * @return true if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the specified key.
+     *
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for the specified key
+     */
+    public boolean containsKey(long key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey;
+        }
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Returns true if this map maps one or more keys to the specified value.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return true if this map maps one or more keys to the specified value
+     */
+    public boolean containsValue(double value) {
+        if (hasFreeKey && Double.compare(freeValue, value) == 0) {
+            return true;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY && Double.compare(values[i], value) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns all the keys contained in this map.
+     *
+     * @return array of keys
+     */
+    public long[] keys() {
+        long[] keySet = new long[size];
+        int position = 0;
+
+        if (hasFreeKey) {
+            keySet[position++] = FREE_KEY;
+        }
+        for (long key : keys) {
+            if (key != FREE_KEY) {
+                keySet[position++] = key;
+            }
+        }
+        return keySet;
+    }
+
+    /**
+     * Returns all the values contained in this map, in the order of keys().
+     *
+     * @return array of values
+     */
+    public double[] values() {
+        double[] valuesSet = new double[size];
+        int position = 0;
+
+        if (hasFreeKey) {
+            valuesSet[position++] = freeValue;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                valuesSet[position++] = values[i];
+            }
+        }
+        return valuesSet;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     */
+    public void clear() {
+        size = 0;
+        hasFreeKey = false;
+        Arrays.fill(keys, FREE_KEY);
+    }
+
+    /**
+     * Returns the value which this map reports for absent keys.
+     *
+     * @return the no entry value
+     */
+    public double getNoEntryValue() {
+        return noEntryValue;
+    }
+
+    /* ---------------- Utils Methods ---------------- */
+
+    /**
+     * Returns calculated hash of a key, which is the index of its home slot.
+     *
+     * @param key a key, which needs to be hashed
+     * @return hash value
+     */
+    private int hash(long key) {
+        return LongHashStrategies.FMIX64.hash(key) & mask;
+    }
+
+    /**
+     * Returns the index of the slot which contains the specified key.
+     *
+     * @param key a key to look for, must not be FREE_KEY
+     * @return index of the slot or -1 if there is no such key in the table
+     */
+    private int indexOf(long key) {
+        int index = hash(key);
+        long current;
+        while ((current = keys[index]) != FREE_KEY) {
+            if (current == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the slot for the specified key with a single probe.
+     *
+     * @param key a key to look for, must not be FREE_KEY
+     * @return index of the empty slot to insert the key into, or
+     * -index - 1 if the key is already in the slot with that index
+     */
+    private int insertionIndex(long key) {
+        int index = hash(key);
+        long current;
+        while ((current = keys[index]) != FREE_KEY) {
+            if (current == key) {
+                return -index - 1;
+            }
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * Empties the specified slot and shifts the following entries of the
+     * cluster back, so that no entry becomes unreachable from its home slot.
+     *
+     * @param position index of the slot to empty
+     */
+    private void shiftKeys(int position) {
+        int last;
+        long current;
+        while (true) {
+            last = position;
+            position = (position + 1) & mask;
+            while (true) {
+                if ((current = keys[position]) == FREE_KEY) {
+                    keys[last] = FREE_KEY;
+                    return;
+                }
+                int home = hash(current);
+                if (last <= position ? last >= home || home > position : last >= home && home > position) {
+                    break;
+                }
+                position = (position + 1) & mask;
+            }
+            keys[last] = current;
+            values[last] = values[position];
+        }
+    }
+
+    /**
+     * Double the capacity of the table and rewrite all entries to it.
+     */
+    private void resize() {
+        if (keys.length == MAXIMUM_CAPACITY) {
+            if (size >= MAXIMUM_CAPACITY - 1) {
+                throw new IllegalStateException("Map capacity exceeded: " + size);
+            }
+            threshold = MAXIMUM_CAPACITY - 1;
+            return;
+        }
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        allocate(oldKeys.length * 2);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != FREE_KEY) {
+                int index = hash(key);
+                while (keys[index] != FREE_KEY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Initialize new empty table of the specified capacity.
+     *
+     * @param capacity the capacity of the table, must be a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new double[capacity];
+        mask = capacity - 1;
+        threshold = Math.min((int) (capacity * loadFactor), capacity - 1);
+    }
+
+    /**
+     * Returns a power of two size for the given capacity.
+     *
+     * @param capacity the requested capacity
+     * @return the smallest power of two not less than capacity and 2
+     */
+    private static int tableSizeFor(int capacity) {
+        if (capacity >= MAXIMUM_CAPACITY) {
+            return MAXIMUM_CAPACITY;
+        }
+        int n = -1 >>> Integer.numberOfLeadingZeros(Math.max(capacity, 2) - 1);
+        return n + 1;
+    }
+}
@@ -0,0 +1,464 @@
+package de.comparus.opensource.longmap;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.LongConsumer;
+
+/**
+ * A hash set of long values with open addressing, laid out like
+ * {@link LongLongMapImpl} without the value array: a table of keys probed
+ * linearly, backward shift deletion and the value 0 kept outside of the
+ * table, as it marks the empty slots.
+ */
+public class LongHashSet implements LongSet {
+
+    /* ---------------- Default values ---------------- */
+
+    /**
+     * The default initial capacity.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The default load factor.
+     */
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The maximum capacity of the table, must be a power of two.
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The value which marks an empty slot of the table. Whether the set
+     * contains this value itself is kept outside of the table.
+     */
+    private static final long FREE_KEY = 0L;
+
+    /* ---------------- Fields ---------------- */
+
+    /**
+     * The number of values contained in this set.
+     */
+    private int size;
+
+    /**
+     * The load factor for this set.
+     */
+    private final float loadFactor;
+
+    /**
+     * The next size value at which to resize.
+     */
+    private int threshold;
+
+    /**
+     * The mask to calculate the index of a slot, always equal to capacity - 1.
+     */
+    private int mask;
+
+    /**
+     * The values of this set. A slot is empty when it contains FREE_KEY.
+     */
+    private long[] keys;
+
+    /**
+     * True if this set contains FREE_KEY.
+     */
+    private boolean hasFreeKey;
+
+    /* ---------------- Constructors ---------------- */
+
+    /**
+     * Constructs an empty LongHashSet with the specified initial capacity
+     * and load factor. The capacity is rounded up to the nearest power of two.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor      the load factor
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *                                  or the load factor is not in (0, 1)
+     */
+    public LongHashSet(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        }
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor)) {
+            throw new IllegalArgumentException("Illegal load factor: " +
+                    loadFactor);
+        }
+        this.loadFactor = loadFactor;
+        allocate(tableSizeFor(initialCapacity));
+    }
+
+    /**
+     * Constructs an empty LongHashSet with the specified initial capacity
+     * and the default load factor (0.75).
+     *
+     * @param initialCapacity the initial capacity
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public LongHashSet(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty LongHashSet with the default initial capacity (16)
+     * and the default load factor (0.75).
+     */
+    public LongHashSet() {
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /* ---------------- Main Methods ---------------- */
+
+    /**
+     * Adds the specified value to this set if it is not already present.
+     *
+     * @param value value to be added to this set
+     * @return true if this set did not already contain the value
+     */
+    public boolean add(long value) {
+        if (value == FREE_KEY) {
+            if (hasFreeKey) {
+                return false;
+            }
+            hasFreeKey = true;
+            size++;
+            return true;
+        }
+
+        int index = insertionIndex(value);
+        if (index < 0) {
+            return false;
+        }
+        keys[index] = value;
+        if (++size > threshold) {
+            resize();
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if this set contains the specified value.
+     *
+     * @param value value whose presence in this set is to be tested
+     * @return true if this set contains the specified value
+     */
+    public boolean contains(long value) {
+        if (value == FREE_KEY) {
+            return hasFreeKey;
+        }
+        return indexOf(value) >= 0;
+    }
+
+    /**
+     * Removes the specified value from this set if present.
+     *
+     * @param value value to be removed from this set
+     * @return true if this set contained the value
+     */
+    public boolean remove(long value) {
+        if (value == FREE_KEY) {
+            if (!hasFreeKey) {
+                return false;
+            }
+            hasFreeKey = false;
+            size--;
+            return true;
+        }
+
+        int index = indexOf(value);
+        if (index < 0) {
+            return false;
+        }
+        shiftKeys(index);
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns true if this set contains no values.
+     *
+     * @return true if this set contains no values
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of values in this set.
+     *
+     * @return the number of values in this set
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Removes all of the values from this set.
+     */
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        size = 0;
+        hasFreeKey = false;
+        Arrays.fill(keys, FREE_KEY);
+    }
+
+    /**
+     * Returns all the values contained in this set.
+     *
+     * @return array of values
+     */
+    public long[] toArray() {
+        long[] valueSet = new long[size];
+        int position = 0;
+
+        if (hasFreeKey) {
+            valueSet[position++] = FREE_KEY;
+        }
+        for (long key : keys) {
+            if (key != FREE_KEY) {
+                valueSet[position++] = key;
+            }
+        }
+        return valueSet;
+    }
+
+    /**
+     * Performs the given action for each value of this set.
+     *
+     * @param action the action to be performed for each value
+     */
+    public void forEach(LongConsumer action) {
+        Objects.requireNonNull(action);
+        if (hasFreeKey) {
+            action.accept(FREE_KEY);
+        }
+        for (long key : keys) {
+            if (key != FREE_KEY) {
+                action.accept(key);
+            }
+        }
+    }
+
+    /* ---------------- Bulk Operations ---------------- */
+
+    /**
+     * Adds all values of the other set to this set, so that this set
+     * becomes the union of both. The table is resized once up front for
+     * the combined size rather than doubling repeatedly during the adds.
+     *
+     * @param other the set whose values are to be added
+     * @return true if this set changed
+     */
+    public boolean addAll(LongSet other) {
+        if (other == this) {
+            return false;
+        }
+        ensureCapacity(size + other.size());
+        return LongSet.super.addAll(other);
+    }
+
+    /**
+     * Removes all values which are not in the other set from this set, so
+     * that this set becomes the intersection of both. The retained values
+     * are written to a fresh table of the same capacity in one pass, so no
+     * copy of the values and no backward shifts are needed.
+     *
+     * @param other the set whose values are to be retained
+     * @return true if this set changed
+     */
+    public boolean retainAll(LongSet other) {
+        if (other == this) {
+            return false;
+        }
+        int oldSize = size;
+        long[] oldKeys = keys;
+        allocate(oldKeys.length);
+        size = 0;
+        if (hasFreeKey) {
+            hasFreeKey = other.contains(FREE_KEY);
+            if (hasFreeKey) {
+                size++;
+            }
+        }
+        for (long key : oldKeys) {
+            if (key != FREE_KEY && other.contains(key)) {
+                int index = hash(key);
+                while (keys[index] != FREE_KEY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                size++;
+            }
+        }
+        return size != oldSize;
+    }
+
+    /**
+     * Removes all values of the other set from this set, so that this set
+     * becomes the difference of both. Removing this set from itself clears it.
+     *
+     * @param other the set whose values are to be removed
+     * @return true if this set changed
+     */
+    public boolean removeAll(LongSet other) {
+        if (other == this) {
+            boolean changed = size != 0;
+            clear();
+            return changed;
+        }
+        return LongSet.super.removeAll(other);
+    }
+
+    /* ---------------- Utils Methods ---------------- */
+
+    /**
+     * Returns calculated hash of a value, which is the index of its home slot.
+     *
+     * @param key a value, which needs to be hashed
+     * @return hash value
+     */
+    private int hash(long key) {
+        return LongHashStrategies.FMIX64.hash(key) & mask;
+    }
+
+    /**
+     * Returns the index of the slot which contains the specified value.
+     *
+     * @param key a value to look for, must not be FREE_KEY
+     * @return index of the slot or -1 if there is no such value in the table
+     */
+    private int indexOf(long key) {
+        int index = hash(key);
+        long current;
+        while ((current = keys[index]) != FREE_KEY) {
+            if (current == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the slot for the specified value with a single probe.
+     *
+     * @param key a value to look for, must not be FREE_KEY
+     * @return index of the empty slot to insert the value into, or
+     * -index - 1 if the value is already in the slot with that index
+     */
+    private int insertionIndex(long key) {
+        int index = hash(key);
+        long current;
+        while ((current = keys[index]) != FREE_KEY) {
+            if (current == key) {
+                return -index - 1;
+            }
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * Empties the specified slot and shifts the following values of the
+     * cluster back, so that no value becomes unreachable from its home slot.
+     *
+     * @param position index of the slot to empty
+     */
+    private void shiftKeys(int position) {
+        int last;
+        long current;
+        while (true) {
+            last = position;
+            position = (position + 1) & mask;
+            while (true) {
+                if ((current = keys[position]) == FREE_KEY) {
+                    keys[last] = FREE_KEY;
+                    return;
+                }
+                int home = hash(current);
+                if (last <= position ? last >= home || home > position : last >= home && home > position) {
+                    break;
+                }
+                position = (position + 1) & mask;
+            }
+            keys[last] = current;
+        }
+    }
+
+    /**
+     * Grows the table so that it holds the expected number of values
+     * without a resize.
+     *
+     * @param expected the expected number of values
+     */
+    private void ensureCapacity(long expected) {
+        int capacity = tableSizeFor((int) Math.min(expected / loadFactor + 1, MAXIMUM_CAPACITY));
+        if (capacity > keys.length) {
+            rehash(capacity);
+        }
+    }
+
+    /**
+     * Double the capacity of the table and rewrite all values to it.
+     */
+    private void resize() {
+        if (keys.length == MAXIMUM_CAPACITY) {
+            if (size >= MAXIMUM_CAPACITY - 1) {
+                throw new IllegalStateException("Set capacity exceeded: " + size);
+            }
+            threshold = MAXIMUM_CAPACITY - 1;
+            return;
+        }
+        rehash(keys.length * 2);
+    }
+
+    /**
+     * Rewrites all values to a new table of the specified capacity.
+     *
+     * @param capacity the capacity of the new table, must be a power of two
+     */
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        allocate(capacity);
+
+        for (long key : oldKeys) {
+            if (key != FREE_KEY) {
+                int index = hash(key);
+                while (keys[index] != FREE_KEY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+            }
+        }
+    }
+
+    /**
+     * Initialize new empty table of the specified capacity.
+     *
+     * @param capacity the capacity of the table, must be a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        threshold = Math.min((int) (capacity * loadFactor), capacity - 1);
+    }
+
+    /**
+     * Returns a power of two size for the given capacity.
+     *
+     * @param capacity the requested capacity
+     * @return the smallest power of two not less than capacity and 2
+     */
+    private static int tableSizeFor(int capacity) {
+        if (capacity >= MAXIMUM_CAPACITY) {
+            return MAXIMUM_CAPACITY;
+        }
+        int n = -1 >>> Integer.numberOfLeadingZeros(Math.max(capacity, 2) - 1);
+        return n + 1;
+    }
+}
@@ -0,0 +1,58 @@
+package de.comparus.opensource.longmap;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The common hash strategies for long keys.
+ */
+public final class LongHashStrategies {
+
+    /**
+     * Mixes the key with fmix64, the finalizer of MurmurHash3. Every bit of
+     * the key affects every bit of the hash, so keys which differ only in
+     * their high bits, like timestamps or Snowflake IDs, spread evenly.
+     * This is the default strategy of OffHeapLongMap and MappedLongMap.
+     */
+    public static final LongHashStrategy FMIX64 = key -> {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    };
+
+    /**
+     * Folds the high half of the key into the low half, like
+     * {@link Long#hashCode(long)}. It is the cheapest strategy and keeps
+     * sequential keys in sequential slots, but keys which differ only in
+     * their high bits collide.
+     */
+    public static final LongHashStrategy FOLD = Long::hashCode;
+
+    /**
+     * Returns a strategy which mixes the key with fmix64 after XORing it with
+     * the seed. fmix64 alone is a public bijection, so keys which all land in
+     * one slot can be computed by inverting it; under a seed which is unknown
+     * to whoever picks the keys, such keys spread like any others.
+     *
+     * @param seed the seed
+     * @return the seeded strategy
+     */
+    public static LongHashStrategy seeded(long seed) {
+        return key -> FMIX64.hash(key ^ seed);
+    }
+
+    /**
+     * Returns a strategy seeded with a random number, as used by default by
+     * LongMapImpl.
+     *
+     * @return the randomly seeded strategy
+     */
+    public static LongHashStrategy randomSeeded() {
+        return seeded(ThreadLocalRandom.current().nextLong());
+    }
+
+    private LongHashStrategies() {
+    }
+}
@@ -0,0 +1,18 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * Hashes the keys of a map. The map takes the low bits of the hash as the
+ * index of the home slot of a key, so they have to depend on all bits of the
+ * key which vary between the keys put into the map.
+ */
+@FunctionalInterface
+public interface LongHashStrategy {
+
+    /**
+     * Returns the hash of the key.
+     *
+     * @param key the key to hash
+     * @return the hash of the key
+     */
+    int hash(long key);
+}
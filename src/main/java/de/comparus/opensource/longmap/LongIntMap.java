@@ -0,0 +1,25 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * A map with keys of type long and values of type int, which stores the
+ * values unboxed. Absent mappings are reported with the no entry value
+ * chosen when the map was created.
+ */
+public interface LongIntMap {
+    int put(long key, int value);
+    int get(long key);
+    int remove(long key);
+    int addTo(long key, int delta);
+
+    boolean isEmpty();
+    boolean containsKey(long key);
+    boolean containsValue(int value);
+
+    long[] keys();
+    int[] values();
+
+    long size();
+    void clear();
+
+    int getNoEntryValue();
+}
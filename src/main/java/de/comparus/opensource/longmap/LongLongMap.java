@@ -0,0 +1,25 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * A map with keys of type long and values of type long, which stores the
+ * values unboxed. Absent mappings are reported with the no entry value
+ * chosen when the map was created.
+ */
+public interface LongLongMap {
+    long put(long key, long value);
+    long get(long key);
+    long remove(long key);
+    long addTo(long key, long delta);
+
+    boolean isEmpty();
+    boolean containsKey(long key);
+    boolean containsValue(long value);
+
+    long[] keys();
+    long[] values();
+
+    long size();
+    void clear();
+
+    long getNoEntryValue();
+}
@@ -1,5 +1,9 @@
 package de.comparus.opensource.longmap;
 
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.LongFunction;
+
 public interface LongMap<V> {
     V put(long key, V value);
     V get(long key);
@@ -14,4 +18,278 @@ public interface LongMap<V> {
 
     long size();
     void clear();
+
+    /**
+     * Performs the given action for each mapping of this map. The default
+     * implementation iterates over a copy of the keys and looks up their
+     * values; implementations should override it to walk their storage
+     * without allocating.
+     *
+     * @param action the action to be performed for each mapping
+     * @throws NullPointerException if the action is null
+     */
+    default void forEach(LongObjConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        for (long key : keys()) {
+            action.accept(key, get(key));
+        }
+    }
+
+    /**
+     * Returns a cursor over the mappings of this map. The default
+     * implementation moves over a copy of the keys taken when the cursor is
+     * created, looks up the values and removes through remove; implementations
+     * should override it to walk their storage without allocating.
+     *
+     * @return a cursor positioned before the first mapping
+     */
+    default LongMapCursor<V> cursor() {
+        long[] keys = keys();
+        return new LongMapCursor<V>() {
+
+            /**
+             * The index of the current key, or -1 before the first one.
+             */
+            private int index = -1;
+
+            /**
+             * True if the current mapping was removed through this cursor.
+             */
+            private boolean removed;
+
+            public boolean advance() {
+                removed = false;
+                if (index < keys.length) {
+                    index++;
+                }
+                return index < keys.length;
+            }
+
+            public long key() {
+                checkCurrent();
+                return keys[index];
+            }
+
+            public V value() {
+                checkCurrent();
+                return get(keys[index]);
+            }
+
+            public void remove() {
+                checkCurrent();
+                LongMap.this.remove(keys[index]);
+                removed = true;
+            }
+
+            public void reset() {
+                index = -1;
+                removed = false;
+            }
+
+            /**
+             * Checks that the cursor points to a mapping.
+             *
+             * @throws IllegalStateException if there is no current mapping
+             */
+            private void checkCurrent() {
+                if (index < 0 || index >= keys.length || removed) {
+                    throw new IllegalStateException("Cursor does not point to a mapping");
+                }
+            }
+        };
+    }
+
+    /**
+     * Looks up all the specified keys and stores the mapped values, or null
+     * for absent keys, into out at the same positions.
+     *
+     * @param keys the keys to look up
+     * @param out  the array receiving the values, at least as long as keys
+     * @throws IllegalArgumentException if out is shorter than keys
+     */
+    default void getAll(long[] keys, V[] out) {
+        if (out.length < keys.length) {
+            throw new IllegalArgumentException("Output array is too short: " + out.length);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            out[i] = get(keys[i]);
+        }
+    }
+
+    /**
+     * Associates each of the specified keys with the value at the same
+     * position. A key which occurs more than once ends up with the last of
+     * its values.
+     *
+     * @param keys   the keys
+     * @param values the values to be associated with the keys
+     * @throws IllegalArgumentException if the arrays differ in length
+     */
+    default void putAll(long[] keys, V[] values) {
+        if (values.length != keys.length) {
+            throw new IllegalArgumentException("Keys and values differ in length: " +
+                    keys.length + " and " + values.length);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            put(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * Removes the mappings for all the specified keys.
+     *
+     * @param keys the keys whose mappings are to be removed
+     * @return the number of mappings removed
+     */
+    default int removeAll(long[] keys) {
+        int removed = 0;
+        for (long key : keys) {
+            if (containsKey(key)) {
+                remove(key);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Tests the presence of all the specified keys and stores the results
+     * into out at the same positions.
+     *
+     * @param keys the keys to test
+     * @param out  the array receiving the results, at least as long as keys
+     * @return true if this map contains mappings for all the keys
+     * @throws IllegalArgumentException if out is shorter than keys
+     */
+    default boolean containsAll(long[] keys, boolean[] out) {
+        if (out.length < keys.length) {
+            throw new IllegalArgumentException("Output array is too short: " + out.length);
+        }
+        boolean all = true;
+        for (int i = 0; i < keys.length; i++) {
+            all &= out[i] = containsKey(keys[i]);
+        }
+        return all;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or the
+     * default value if this map contains no mapping for the key.
+     *
+     * @param key          the key whose associated value is to be returned
+     * @param defaultValue the value to return if the key is absent
+     * @return the value mapped to key, or defaultValue
+     */
+    default V getOrDefault(long key, V defaultValue) {
+        V value = get(key);
+        return value != null || containsKey(key) ? value : defaultValue;
+    }
+
+    /**
+     * Associates the specified value with the specified key unless the key
+     * is already mapped to a non-null value.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the current value associated with key, or null if the value has been put
+     */
+    default V putIfAbsent(long key, V value) {
+        V current = get(key);
+        if (current == null) {
+            current = put(key, value);
+        }
+        return current;
+    }
+
+    /**
+     * If the specified key is not mapped to a non-null value, computes its
+     * value with the given function and enters it into this map unless null.
+     *
+     * @param key             key with which the computed value is to be associated
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value associated with key,
+     * or null if the computed value is null
+     * @throws NullPointerException if the mapping function is null
+     */
+    default V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        Objects.requireNonNull(mappingFunction);
+        V current = get(key);
+        if (current == null) {
+            current = mappingFunction.apply(key);
+            if (current != null) {
+                put(key, current);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * If the specified key is mapped to a non-null value, computes a new
+     * value from the key and the current value. The mapping is removed if
+     * the new value is null.
+     *
+     * @param key               key whose value is to be recomputed
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with key, or null if none
+     * @throws NullPointerException if the remapping function is null
+     */
+    default V computeIfPresent(long key, LongObjFunction<? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(remappingFunction);
+        V current = get(key);
+        if (current == null) {
+            return null;
+        }
+        V value = remappingFunction.apply(key, current);
+        if (value != null) {
+            put(key, value);
+        } else {
+            remove(key);
+        }
+        return value;
+    }
+
+    /**
+     * Computes a new value from the key and its current value, or null if
+     * there is none. The mapping is removed if the new value is null.
+     *
+     * @param key               key whose value is to be computed
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with key, or null if none
+     * @throws NullPointerException if the remapping function is null
+     */
+    default V compute(long key, LongObjFunction<? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(remappingFunction);
+        V current = get(key);
+        V value = remappingFunction.apply(key, current);
+        if (value != null) {
+            put(key, value);
+        } else if (current != null || containsKey(key)) {
+            remove(key);
+        }
+        return value;
+    }
+
+    /**
+     * If the specified key is not mapped to a non-null value, associates it
+     * with the given value. Otherwise, replaces the value with the result of
+     * the given remapping function, or removes the mapping if the result is null.
+     *
+     * @param key               key with which the resulting value is to be associated
+     * @param value             the value to use if absent
+     * @param remappingFunction the function to recompute a value if present
+     * @return the new value associated with key, or null if none
+     * @throws NullPointerException if the value or the remapping function is null
+     */
+    default V merge(long key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        V current = get(key);
+        V result = current == null ? value : remappingFunction.apply(current, value);
+        if (result != null) {
+            put(key, result);
+        } else {
+            remove(key);
+        }
+        return result;
+    }
 }
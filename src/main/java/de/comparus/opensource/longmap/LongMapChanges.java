@@ -0,0 +1,63 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * A batch of changes of an ObservableLongMap, in the order they were made.
+ * A batch is only valid during the call of the listener which receives it;
+ * its storage is reused for the next batch.
+ *
+ * @param <V> the type of mapped values
+ */
+public interface LongMapChanges<V> {
+
+    /**
+     * The kind of a change.
+     */
+    enum Type {
+
+        /**
+         * A key was mapped to a value.
+         */
+        PUT,
+
+        /**
+         * The mapping of a key was removed.
+         */
+        REMOVE,
+
+        /**
+         * All mappings were removed. The key of the change is 0.
+         */
+        CLEAR
+    }
+
+    /**
+     * Returns the number of changes in this batch.
+     *
+     * @return the number of changes
+     */
+    int size();
+
+    /**
+     * Returns the kind of the change at the specified position.
+     *
+     * @param index the position of the change, in [0, size())
+     * @return the kind of the change
+     */
+    Type type(int index);
+
+    /**
+     * Returns the key of the change at the specified position.
+     *
+     * @param index the position of the change, in [0, size())
+     * @return the key, or 0 for CLEAR
+     */
+    long key(int index);
+
+    /**
+     * Returns the new value of the change at the specified position.
+     *
+     * @param index the position of the change, in [0, size())
+     * @return the value of a PUT, or null
+     */
+    V value(int index);
+}
@@ -0,0 +1,57 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * A cursor over the mappings of a LongMap. Unlike an iterator, a cursor
+ * does not create an entry object per mapping: it is moved with advance
+ * and then exposes the key and the value of the current mapping.
+ *
+ * <pre>
+ * LongMapCursor&lt;V&gt; cursor = map.cursor();
+ * while (cursor.advance()) {
+ *     use(cursor.key(), cursor.value());
+ * }
+ * </pre>
+ *
+ * @param <V> the type of mapped values
+ */
+public interface LongMapCursor<V> {
+
+    /**
+     * Moves the cursor to the next mapping.
+     *
+     * @return true if the cursor points to a mapping, false if there are no more mappings
+     * @throws java.util.ConcurrentModificationException if the map was structurally
+     *                                                   modified other than through this cursor
+     */
+    boolean advance();
+
+    /**
+     * Returns the key of the current mapping.
+     *
+     * @return the key
+     * @throws IllegalStateException if the cursor does not point to a mapping
+     */
+    long key();
+
+    /**
+     * Returns the value of the current mapping.
+     *
+     * @return the value
+     * @throws IllegalStateException if the cursor does not point to a mapping
+     */
+    V value();
+
+    /**
+     * Removes the current mapping from the map.
+     *
+     * @throws IllegalStateException if the cursor does not point to a mapping
+     *                               or it has already been removed
+     */
+    void remove();
+
+    /**
+     * Moves the cursor back before the first mapping, so that it can be reused
+     * for another pass over the map.
+     */
+    void reset();
+}
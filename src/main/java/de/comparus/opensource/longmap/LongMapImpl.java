@@ -1,8 +1,23 @@
 package de.comparus.opensource.longmap;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Array;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class LongMapImpl<V> implements LongMap<V> {
 
@@ -18,59 +33,46 @@ public class LongMapImpl<V> implements LongMap<V> {
      */
     private static final float DEFAULT_LOAD_FACTOR = 0.75f;
 
-    /* ---------------- Link(s) between key(s) and value(s) in a bucket ---------------- */
-
-    static class Node<V> {
-
-        private List<Node<V>> nodes;
-        private long key;
-        private V value;
-
-        private Node(long key, V value) {
-            this.key = key;
-            this.value = value;
-            nodes = new LinkedList<>();
-        }
-
-        public List<Node<V>> getNodes() {
-            return nodes;
-        }
+    /**
+     * The maximum capacity of the table, must be a power of two.
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
 
-        public void setValue(V value) {
-            this.value = value;
-        }
+    /**
+     * The key which marks an empty slot of the table. The mapping for this
+     * key itself is kept outside of the table.
+     */
+    private static final long FREE_KEY = 0L;
 
-        private long getKey() {
-            return key;
-        }
+    /**
+     * The number of slots of the old table migrated by a single operation
+     * while an incremental resize is in progress.
+     */
+    private static final int REHASH_STEP = 16;
 
-        private V getValue() {
-            return value;
-        }
+    /**
+     * The marker of a value in the old table which was removed or already
+     * migrated to the new table during an incremental resize.
+     */
+    private static final Object REMOVED = new Object();
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(key, value);
-        }
+    /**
+     * The number of keys of a batch operation whose first probes are issued
+     * together, so that their cache misses overlap.
+     */
+    private static final int PROBE_GROUP = 8;
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) {
-                return true;
-            }
-            if (!(o instanceof Node)) {
-                return false;
-            }
-            Node node = (Node) o;
-            return Objects.equals(key, node.getKey()) &&
-                    Objects.equals(value, node.getValue());
-        }
+    /**
+     * The slot reported by a batch lookup for FREE_KEY when it is present.
+     */
+    private static final int FREE_SLOT = -2;
 
-        @Override
-        public String toString() {
-            return "key: " + key + "; value: " + value;
-        }
-    }
+    /**
+     * False if statistics are switched off for the whole JVM with the system
+     * property de.comparus.opensource.longmap.stats=false. The JIT then
+     * removes the recording code of all maps altogether.
+     */
+    private static final boolean STATS = !"false".equals(System.getProperty("de.comparus.opensource.longmap.stats"));
 
     /* ---------------- Fields ---------------- */
 
@@ -85,40 +87,148 @@ public class LongMapImpl<V> implements LongMap<V> {
     private final float loadFactor;
 
     /**
-     * The next count of buckets.
+     * The strategy which hashes the keys of this map.
+     */
+    private final LongHashStrategy hashStrategy;
+
+    /**
+     * The next size value at which to resize.
      * The time of resizing is calculated by the next formula: capacity * load factor.
      */
     private int threshold;
 
     /**
-     * The array of nodes in this map.
+     * The load factor below which removals shrink the table, or 0 if the
+     * table is never shrunk automatically.
+     */
+    private float shrinkLoadFactor;
+
+    /**
+     * The size below which a removal shrinks the table, or 0 if it does not.
+     */
+    private int shrinkThreshold;
+
+    /**
+     * The initial capacity of the table, below which it is never shrunk
+     * automatically.
+     */
+    private final int minimumCapacity;
+
+    /**
+     * The mask to calculate the index of a slot, always equal to capacity - 1.
+     */
+    private int mask;
+
+    /**
+     * The keys of this map. A slot is empty when it contains FREE_KEY.
+     */
+    private long[] keys;
+
+    /**
+     * The values of this map, parallel to the keys.
+     */
+    private Object[] values;
+
+    /**
+     * True if this map contains a mapping for FREE_KEY.
+     */
+    private boolean hasFreeKey;
+
+    /**
+     * The value associated with FREE_KEY.
+     */
+    private V freeValue;
+
+    /**
+     * True if the table should be resized incrementally instead of all at once.
+     */
+    private boolean incrementalResize;
+
+    /**
+     * The keys of the table being migrated during an incremental resize,
+     * or null if there is no resize in progress.
      */
-    private Node<V>[] currentNodes;
+    private long[] oldKeys;
+
+    /**
+     * The values of the table being migrated during an incremental resize.
+     */
+    private Object[] oldValues;
+
+    /**
+     * The index of the next slot of the old table to migrate.
+     */
+    private int rehashIndex;
+
+    /**
+     * The number of structural modifications of this map, used to make
+     * iteration fail-fast.
+     */
+    private int modCount;
+
+    /**
+     * The statistics of this map, or null if they are not collected.
+     */
+    private StatsRecorder stats;
+
+    /**
+     * True if the arrays of the table are shared with a snapshot, so they
+     * must be copied before the next write. No resize is ever in progress
+     * while the arrays are shared.
+     */
+    private boolean shared;
+
+    /**
+     * The pool which runs parallel bulk operations, or null for the common pool.
+     */
+    private ForkJoinPool bulkPool;
 
     /* ---------------- Constructors ---------------- */
 
     /**
-     * Constructs an empty LongMapImpl with the specified initial capacity
-     * and the specified load factor.
+     * Constructs an empty LongMapImpl with the specified initial capacity,
+     * load factor and hash strategy. The capacity is rounded up to the
+     * nearest power of two.
      *
      * @param initialCapacity the initial capacity
      * @param loadFactor      the load factor
+     * @param hashStrategy    the strategy which hashes the keys
      * @throws IllegalArgumentException if the initial capacity is negative
-     *                                  or the load factor is non-positive
+     *                                  or the load factor is not in (0, 1)
+     * @throws NullPointerException     if the hash strategy is null
      */
-    @SuppressWarnings("unchecked")
-    public LongMapImpl(int initialCapacity, float loadFactor) {
+    public LongMapImpl(int initialCapacity, float loadFactor, LongHashStrategy hashStrategy) {
+        if (hashStrategy == null) {
+            throw new NullPointerException("Hash strategy is null");
+        }
         if (initialCapacity < 0) {
             throw new IllegalArgumentException("Illegal initial capacity: " +
                     initialCapacity);
         }
-        if (loadFactor <= 0 || Float.isNaN(loadFactor)) {
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor)) {
             throw new IllegalArgumentException("Illegal load factor: " +
                     loadFactor);
         }
         this.loadFactor = loadFactor;
-        threshold = Math.round(initialCapacity * this.loadFactor);
-        currentNodes = new Node[initialCapacity];
+        this.hashStrategy = hashStrategy;
+        this.minimumCapacity = tableSizeFor(initialCapacity);
+        allocate(minimumCapacity);
+    }
+
+    /**
+     * Constructs an empty LongMapImpl with the specified initial capacity
+     * and the specified load factor, which hashes keys with fmix64 under a
+     * random seed of its own, so that keys crafted to collide under fmix64
+     * do not share a home slot. The capacity is rounded up to the nearest
+     * power of two.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor      the load factor
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *                                  or the load factor is not in (0, 1)
+     */
+    public LongMapImpl(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, LongHashStrategies.randomSeeded());
     }
 
     /**
@@ -145,7 +255,7 @@ public class LongMapImpl<V> implements LongMap<V> {
      * and the specified load factor.
      *
      * @param loadFactor the load factor
-     * @throws IllegalArgumentException if the the load factor is non-positive
+     * @throws IllegalArgumentException if the the load factor is not in (0, 1)
      */
     public LongMapImpl(float loadFactor) {
         this(DEFAULT_CAPACITY, loadFactor);
@@ -161,18 +271,49 @@ public class LongMapImpl<V> implements LongMap<V> {
      * @return the previous value associated with key, or
      * null if there was no mapping for key
      */
+    @SuppressWarnings("unchecked")
     public V put(long key, V value) {
-        if (size + 1 >= threshold) {
-            resize();
+        if (STATS && stats != null) {
+            stats.put();
+        }
+        if (key == FREE_KEY) {
+            return putFreeKey(value);
+        }
+        unshare();
+        if (oldKeys != null) {
+            rehashStep();
+            int oldIndex = indexOfOld(key);
+            if (oldIndex >= 0) {
+                V previous = (V) oldValues[oldIndex];
+                oldValues[oldIndex] = value;
+                return previous;
+            }
         }
 
-        Node<V> node = new Node<>(key, value);
-        int index = hash(node);
+        int index = hash(key);
+        long current;
+        while ((current = keys[index]) != FREE_KEY) {
+            if (current == key) {
+                if (STATS && stats != null) {
+                    stats.probe(distance(key, index));
+                }
+                V previous = (V) values[index];
+                values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        if (STATS && stats != null) {
+            stats.probe(distance(key, index));
+        }
 
-        if (currentNodes[index] == null) {
-            return add(index, node);
+        keys[index] = key;
+        values[index] = value;
+        modCount++;
+        if (++size > threshold) {
+            resize();
         }
-        return resolvingCollision(index, node);
+        return null;
     }
 
     /**
@@ -181,20 +322,31 @@ public class LongMapImpl<V> implements LongMap<V> {
      *
      * @param key the key whose associated value is to be returned
      * @return the value to which the specified key is mapped, or null if this map contains no mapping for the key
-     * @throws ArrayIndexOutOfBoundsException if index equal or bigger then length of current nodes
      */
+    @SuppressWarnings("unchecked")
     public V get(long key) {
-        int index = hash(key);
-
-        if (currentNodes[index] != null) {
-            List<Node<V>> nodes = currentNodes[index].getNodes();
-            for (Node<V> node : nodes) {
-                if (key == node.getKey()) {
-                    return node.getValue();
+        if (key == FREE_KEY) {
+            if (STATS && stats != null) {
+                stats.get(hasFreeKey);
+            }
+            return freeValue;
+        }
+        if (oldKeys != null) {
+            rehashStep();
+            int oldIndex = indexOfOld(key);
+            if (oldIndex >= 0) {
+                if (STATS && stats != null) {
+                    stats.get(true);
                 }
+                return (V) oldValues[oldIndex];
             }
         }
-        return null;
+        int index = indexOf(key);
+        if (STATS && stats != null) {
+            stats.get(index >= 0);
+            recordProbe(key, index);
+        }
+        return index < 0 ? null : (V) values[index];
     }
 
     /**
@@ -203,30 +355,39 @@ public class LongMapImpl<V> implements LongMap<V> {
      * @param key key whose mapping is to be removed from the map
      * @return the previous value associated with key, or null if there was no mapping for key
      */
+    @SuppressWarnings("unchecked")
     public V remove(long key) {
-        int index = hash(key);
-        V value = null;
-
-        if (currentNodes[index] == null) {
-            return value;
+        if (STATS && stats != null) {
+            stats.remove();
         }
-
-        if (currentNodes[index].getNodes().size() == 1) {
-            value = currentNodes[index].getNodes().get(0).getValue();
-            currentNodes[index] = null;
-            size--;
-            return value;
+        if (key == FREE_KEY) {
+            return removeFreeKey();
         }
-
-        List<Node<V>> nodes = currentNodes[index].getNodes();
-        for (Node<V> node : nodes) {
-            if (key == node.getKey()) {
-                value = node.getValue();
-                nodes.remove(node);
+        unshare();
+        if (oldKeys != null) {
+            rehashStep();
+            int oldIndex = indexOfOld(key);
+            if (oldIndex >= 0) {
+                V value = (V) oldValues[oldIndex];
+                oldValues[oldIndex] = REMOVED;
+                modCount++;
                 size--;
                 return value;
             }
         }
+
+        int index = indexOf(key);
+        if (STATS && stats != null) {
+            recordProbe(key, index);
+        }
+        if (index < 0) {
+            return null;
+        }
+        V value = (V) values[index];
+        shiftKeys(index, null);
+        modCount++;
+        size--;
+        shrinkIfSparse();
         return value;
     }
 
@@ -246,17 +407,16 @@ public class LongMapImpl<V> implements LongMap<V> {
      * @return true if this map contains a mapping for the specified key
      */
     public boolean containsKey(long key) {
-        int index = hash(key);
-
-        if (Objects.nonNull(currentNodes[index])) {
-            List<Node<V>> nodes = currentNodes[index].getNodes();
-            for (Node<V> node : nodes) {
-                if (key == node.getKey()) {
-                    return true;
-                }
+        if (key == FREE_KEY) {
+            return hasFreeKey;
+        }
+        if (oldKeys != null) {
+            rehashStep();
+            if (indexOfOld(key) >= 0) {
+                return true;
             }
         }
-        return false;
+        return indexOf(key) >= 0;
     }
 
     /**
@@ -265,8 +425,24 @@ public class LongMapImpl<V> implements LongMap<V> {
      * @param value value whose presence in this map is to be tested
      * @return true if this map maps one or more keys to the specified value
      */
+    @SuppressWarnings("unchecked")
     public boolean containsValue(V value) {
-        return getAllNodes().stream().anyMatch(val -> isEqualValues(value, val.getValue()));
+        if (hasFreeKey && isEqualValues(value, freeValue)) {
+            return true;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY && isEqualValues(value, (V) values[i])) {
+                return true;
+            }
+        }
+        if (oldKeys != null) {
+            for (int i = rehashIndex; i < oldKeys.length; i++) {
+                if (isLiveOld(i) && isEqualValues(value, (V) oldValues[i])) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     /**
@@ -275,12 +451,23 @@ public class LongMapImpl<V> implements LongMap<V> {
      * @return array of keys
      */
     public long[] keys() {
-        List<Long> keys = getAllNodes().stream().map(Node::getKey).collect(Collectors.toList());
+        long[] keySet = new long[size];
+        int position = 0;
 
-        long[] keySet = new long[keys.size()];
-
-        for (int i = 0; i < keys.size(); i++) {
-            keySet[i] = keys.get(i);
+        if (hasFreeKey) {
+            keySet[position++] = FREE_KEY;
+        }
+        for (long key : keys) {
+            if (key != FREE_KEY) {
+                keySet[position++] = key;
+            }
+        }
+        if (oldKeys != null) {
+            for (int i = rehashIndex; i < oldKeys.length; i++) {
+                if (isLiveOld(i)) {
+                    keySet[position++] = oldKeys[i];
+                }
+            }
         }
         return keySet;
     }
@@ -296,15 +483,42 @@ public class LongMapImpl<V> implements LongMap<V> {
      */
     @SuppressWarnings("unchecked")
     public V[] values() {
-        List<V> values = getAllNodes().stream().map(Node::getValue).collect(Collectors.toList());
-        Optional<V> genericClass = values.stream().filter(Objects::nonNull).findAny();
-
-        if (values.isEmpty() || !genericClass.isPresent()) {
+        Object genericValue = hasFreeKey ? freeValue : null;
+        for (int i = 0; genericValue == null && i < keys.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                genericValue = values[i];
+            }
+        }
+        if (oldKeys != null) {
+            for (int i = rehashIndex; genericValue == null && i < oldKeys.length; i++) {
+                if (isLiveOld(i)) {
+                    genericValue = oldValues[i];
+                }
+            }
+        }
+        if (genericValue == null) {
             return null;
         }
-        V[] valuesSet = (V[]) Array.newInstance(genericClass.get().getClass(), values.size());
 
-        return values.toArray(valuesSet);
+        V[] valuesSet = (V[]) Array.newInstance(genericValue.getClass(), size);
+        int position = 0;
+
+        if (hasFreeKey) {
+            valuesSet[position++] = freeValue;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                valuesSet[position++] = (V) values[i];
+            }
+        }
+        if (oldKeys != null) {
+            for (int i = rehashIndex; i < oldKeys.length; i++) {
+                if (isLiveOld(i)) {
+                    valuesSet[position++] = (V) oldValues[i];
+                }
+            }
+        }
+        return valuesSet;
     }
 
     /**
@@ -319,120 +533,2007 @@ public class LongMapImpl<V> implements LongMap<V> {
     /**
      * Removes all of the mappings from this map.
      */
-    @SuppressWarnings("unchecked")
     public void clear() {
+        modCount++;
+        boolean empty = size == 0;
         size = 0;
-        for (int i = 0; i < currentNodes.length; i++){
-            currentNodes[i] = null;
+        hasFreeKey = false;
+        freeValue = null;
+        oldKeys = null;
+        oldValues = null;
+        if (shrinkLoadFactor > 0 && keys.length > minimumCapacity) {
+            allocate(minimumCapacity);
+        } else if (shared) {
+            allocate(keys.length);
+        } else if (!empty) {
+            Arrays.fill(keys, FREE_KEY);
+            Arrays.fill(values, null);
         }
+        shared = false;
     }
 
-    /* ---------------- Utils Methods ---------------- */
+    /* ---------------- Bulk Methods ---------------- */
 
     /**
-     * Returns calculated hash of a node key.
+     * Looks up all the specified keys and stores the mapped values, or null
+     * for absent keys, into out at the same positions. The keys are probed
+     * in small groups: the home slots of a group are loaded back to back
+     * before any of them is compared, so the memory accesses overlap.
      *
-     * @param node a node, which key needs to be hashed
-     * @return hash value
+     * @param keys the keys to look up
+     * @param out  the array receiving the values, at least as long as keys
+     * @throws IllegalArgumentException if out is shorter than keys
      */
-    private int hash(Node<V> node) {
-        return hash(node.getKey());
+    @SuppressWarnings("unchecked")
+    public void getAll(long[] keys, V[] out) {
+        if (out.length < keys.length) {
+            throw new IllegalArgumentException("Output array is too short: " + out.length);
+        }
+        if (oldKeys != null) {
+            finishRehash();
+        }
+        int[] slots = new int[PROBE_GROUP];
+        long[] probes = new long[PROBE_GROUP];
+        for (int from = 0; from < keys.length; from += PROBE_GROUP) {
+            int count = findGroup(keys, from, slots, probes);
+            for (int i = 0; i < count; i++) {
+                int slot = slots[i];
+                out[from + i] = slot >= 0 ? (V) values[slot] : slot == FREE_SLOT ? freeValue : null;
+                if (STATS && stats != null) {
+                    stats.get(slot != -1);
+                }
+            }
+        }
     }
 
     /**
-     * Returns calculated hash of a key.
+     * Associates each of the specified keys with the value at the same
+     * position. The table is sized once for the whole batch up front, so
+     * it is never resized in the middle of the batch.
      *
-     * @param key a key, which needs to be hashed
-     * @return hash value
+     * @param keys   the keys
+     * @param values the values to be associated with the keys
+     * @throws IllegalArgumentException if the arrays differ in length
      */
-    private int hash(long key) {
-        return Objects.hashCode(key) % currentNodes.length;
+    public void putAll(long[] keys, V[] values) {
+        if (values.length != keys.length) {
+            throw new IllegalArgumentException("Keys and values differ in length: " +
+                    keys.length + " and " + values.length);
+        }
+        unshare();
+        presize((long) size + keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            put(keys[i], values[i]);
+        }
     }
 
     /**
-     * Resolving potential collision. It may happen when we try to add new node
-     * in non-empty bucket. If new node has same key but another value with the
-     * already defined in this bucket node(s), then new value will override
-     * existing value. If new node has the same hasCode() like already existing
-     * node(s) and they are not equals, then new node adding in this bucket,
-     * but not replacing existing node(s).
+     * Removes the mappings for all the specified keys.
      *
-     * @param index index of the bucket in which we need to add new node
-     * @param node  entity of node which we need to add
-     * @return the previous value associated with key, or
-     * null if there was no mapping for key
+     * @param keys the keys whose mappings are to be removed
+     * @return the number of mappings removed
      */
-    private V resolvingCollision(int index, Node<V> node) {
-        V answer = null;
-
-        List<Node<V>> multiValueNodes = currentNodes[index].getNodes();
-
-        for (Node<V> oneValue : multiValueNodes) {
-
-            boolean isEqualValues = isEqualValues(oneValue.getValue(), node.getValue());
-
-            if ((oneValue.getKey() == node.getKey()) && !isEqualValues) {
-                answer = oneValue.getValue();
-                oneValue.setValue(node.getValue());
+    public int removeAll(long[] keys) {
+        unshare();
+        if (oldKeys != null) {
+            finishRehash();
+        }
+        int removed = 0;
+        for (long key : keys) {
+            if (key == FREE_KEY) {
+                if (hasFreeKey) {
+                    removeFreeKey();
+                    removed++;
+                }
+                continue;
+            }
+            int index = indexOf(key);
+            if (index >= 0) {
+                shiftKeys(index, null);
+                modCount++;
+                size--;
+                removed++;
             }
+        }
+        shrinkIfSparse();
+        return removed;
+    }
 
-            if ((oneValue.hashCode() == node.hashCode()) && !oneValue.equals(node)) {
-                multiValueNodes.add(node);
-                size++;
-                answer = oneValue.getValue();
+    /**
+     * Tests the presence of all the specified keys and stores the results
+     * into out at the same positions. The keys are probed in groups like
+     * in {@link #getAll(long[], Object[])}.
+     *
+     * @param keys the keys to test
+     * @param out  the array receiving the results, at least as long as keys
+     * @return true if this map contains mappings for all the keys
+     * @throws IllegalArgumentException if out is shorter than keys
+     */
+    public boolean containsAll(long[] keys, boolean[] out) {
+        if (out.length < keys.length) {
+            throw new IllegalArgumentException("Output array is too short: " + out.length);
+        }
+        if (oldKeys != null) {
+            finishRehash();
+        }
+        int[] slots = new int[PROBE_GROUP];
+        long[] probes = new long[PROBE_GROUP];
+        boolean all = true;
+        for (int from = 0; from < keys.length; from += PROBE_GROUP) {
+            int count = findGroup(keys, from, slots, probes);
+            for (int i = 0; i < count; i++) {
+                all &= out[from + i] = slots[i] != -1;
             }
         }
-        return answer;
+        return all;
     }
 
+    /* ---------------- Compute Methods ---------------- */
+
     /**
-     * Add new node to the empty bucket
+     * Returns the value to which the specified key is mapped, or the
+     * default value if this map contains no mapping for the key.
      *
-     * @param index index of the bucket in which we need to add new node
-     * @param node  entity of node which we need to add
-     * @return null
+     * @param key          the key whose associated value is to be returned
+     * @param defaultValue the value to return if the key is absent
+     * @return the value mapped to key, or defaultValue
      */
-    private V add(int index, Node<V> node) {
-        currentNodes[index] = new Node<>(node.key, node.value);
-        currentNodes[index].getNodes().add(node);
-        size++;
-        return null;
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(long key, V defaultValue) {
+        if (key == FREE_KEY) {
+            if (STATS && stats != null) {
+                stats.get(hasFreeKey);
+            }
+            return hasFreeKey ? freeValue : defaultValue;
+        }
+        int index = probe(key);
+        if (STATS && stats != null) {
+            stats.get(index >= 0);
+        }
+        return index >= 0 ? (V) values[index] : defaultValue;
     }
 
     /**
-     * Double the numbers of buckets and threshold. Initialize new array
-     * of buckets and rewrite all nodes to it.
+     * Associates the specified value with the specified key unless the key
+     * is already mapped to a non-null value. The key is probed once.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the current value associated with key, or null if the value has been put
      */
     @SuppressWarnings("unchecked")
-    private void resize() {
-        Node<V>[] oldNodes = currentNodes;
-        size = 0;
-        threshold *= 2;
+    public V putIfAbsent(long key, V value) {
+        if (STATS && stats != null) {
+            stats.put();
+        }
+        if (key == FREE_KEY) {
+            return freeValue == null ? putFreeKey(value) : freeValue;
+        }
+        int index = probe(key);
+        if (index < 0) {
+            insertAt(-index - 1, key, value);
+            return null;
+        }
+        V current = (V) values[index];
+        if (current == null) {
+            unshare();
+            values[index] = value;
+        }
+        return current;
+    }
 
-        currentNodes = new Node[oldNodes.length * 2];
-        for (Node<V> node : oldNodes) {
-            if (node != null) {
-                for (Node<V> possibleMultiValue : node.getNodes()) {
-                    put(possibleMultiValue.getKey(), possibleMultiValue.getValue());
+    /**
+     * If the specified key is not mapped to a non-null value, computes its
+     * value with the given function and enters it into this map unless null.
+     * The key is probed once, and the computed value goes straight into the
+     * slot found by the probe.
+     *
+     * @param key             key with which the computed value is to be associated
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value associated with key,
+     * or null if the computed value is null
+     * @throws NullPointerException            if the mapping function is null
+     * @throws ConcurrentModificationException if the function modifies this map
+     */
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        if (mappingFunction == null) {
+            throw new NullPointerException("Mapping function is null");
+        }
+        if (key == FREE_KEY) {
+            if (freeValue == null) {
+                V value = mappingFunction.apply(key);
+                if (value != null) {
+                    putFreeKey(value);
                 }
+                return value;
+            }
+            return freeValue;
+        }
+        int index = probe(key);
+        if (index >= 0 && values[index] != null) {
+            return (V) values[index];
+        }
+        int expectedModCount = modCount;
+        V value = mappingFunction.apply(key);
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        if (value != null) {
+            if (STATS && stats != null) {
+                stats.put();
+            }
+            if (index >= 0) {
+                unshare();
+                values[index] = value;
+            } else {
+                insertAt(freeSlotFrom(-index - 1), key, value);
             }
         }
+        return value;
     }
 
     /**
-     * Returns all pairs of key-value in this map.
+     * If the specified key is mapped to a non-null value, computes a new
+     * value from the key and the current value. The mapping is removed if
+     * the new value is null. The key is probed once.
      *
-     * @return all pairs of key-value in this map
+     * @param key               key whose value is to be recomputed
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with key, or null if none
+     * @throws NullPointerException            if the remapping function is null
+     * @throws ConcurrentModificationException if the function modifies this map
      */
-    private List<Node<V>> getAllNodes() {
-        List<Node<V>> nodes = new LinkedList<>();
+    @SuppressWarnings("unchecked")
+    public V computeIfPresent(long key, LongObjFunction<? super V, ? extends V> remappingFunction) {
+        if (remappingFunction == null) {
+            throw new NullPointerException("Remapping function is null");
+        }
+        if (key == FREE_KEY) {
+            if (freeValue == null) {
+                return null;
+            }
+            int expectedModCount = modCount;
+            return storeFreeKey(remappingFunction.apply(key, freeValue), expectedModCount);
+        }
+        int index = probe(key);
+        if (index < 0 || values[index] == null) {
+            return null;
+        }
+        int expectedModCount = modCount;
+        return storeAt(index, remappingFunction.apply(key, (V) values[index]), expectedModCount);
+    }
 
-        for (Node<V> currentNode : currentNodes) {
-            if (currentNode != null) {
-                nodes.addAll(currentNode.getNodes());
+    /**
+     * Computes a new value from the key and its current value, or null if
+     * there is none. The mapping is removed if the new value is null. The
+     * key is probed once.
+     *
+     * @param key               key whose value is to be computed
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with key, or null if none
+     * @throws NullPointerException            if the remapping function is null
+     * @throws ConcurrentModificationException if the function modifies this map
+     */
+    @SuppressWarnings("unchecked")
+    public V compute(long key, LongObjFunction<? super V, ? extends V> remappingFunction) {
+        if (remappingFunction == null) {
+            throw new NullPointerException("Remapping function is null");
+        }
+        int expectedModCount = modCount;
+        if (key == FREE_KEY) {
+            return storeFreeKey(remappingFunction.apply(key, freeValue), expectedModCount);
+        }
+        int index = probe(key);
+        if (index >= 0) {
+            return storeAt(index, remappingFunction.apply(key, (V) values[index]), expectedModCount);
+        }
+        V value = remappingFunction.apply(key, null);
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        if (value != null) {
+            if (STATS && stats != null) {
+                stats.put();
             }
+            insertAt(freeSlotFrom(-index - 1), key, value);
+        }
+        return value;
+    }
+
+    /**
+     * If the specified key is not mapped to a non-null value, associates it
+     * with the given value. Otherwise, replaces the value with the result of
+     * the given remapping function, or removes the mapping if the result is
+     * null. The key is probed once.
+     *
+     * @param key               key with which the resulting value is to be associated
+     * @param value             the value to use if absent
+     * @param remappingFunction the function to recompute a value if present
+     * @return the new value associated with key, or null if none
+     * @throws NullPointerException            if the value or the remapping function is null
+     * @throws ConcurrentModificationException if the function modifies this map
+     */
+    @SuppressWarnings("unchecked")
+    public V merge(long key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (value == null || remappingFunction == null) {
+            throw new NullPointerException("Value or remapping function is null");
+        }
+        if (key == FREE_KEY) {
+            int expectedModCount = modCount;
+            return storeFreeKey(freeValue == null ? value : remappingFunction.apply(freeValue, value),
+                    expectedModCount);
+        }
+        int index = probe(key);
+        if (index >= 0) {
+            V current = (V) values[index];
+            int expectedModCount = modCount;
+            return storeAt(index, current == null ? value : remappingFunction.apply(current, value),
+                    expectedModCount);
+        }
+        if (STATS && stats != null) {
+            stats.put();
+        }
+        insertAt(-index - 1, key, value);
+        return value;
+    }
+
+    /* ---------------- Incremental Resize ---------------- */
+
+    /**
+     * Enables or disables incremental resizing. When it is enabled, growing
+     * the table does not rewrite all entries at once: the old and the new
+     * tables coexist and every put, get, remove and containsKey migrates a
+     * bounded number of slots, so the cost of a resize is spread evenly over
+     * subsequent operations. Disabling it completes a resize in progress.
+     *
+     * @param incrementalResize true to resize the table incrementally
+     */
+    public void setIncrementalResize(boolean incrementalResize) {
+        this.incrementalResize = incrementalResize;
+        if (!incrementalResize && oldKeys != null) {
+            finishRehash();
+        }
+    }
+
+    /**
+     * Returns true if the table is resized incrementally.
+     *
+     * @return true if the table is resized incrementally
+     */
+    public boolean isIncrementalResize() {
+        return incrementalResize;
+    }
+
+    /**
+     * Returns true if an incremental resize is in progress.
+     *
+     * @return true if the old table is still being migrated
+     */
+    boolean isRehashing() {
+        return oldKeys != null;
+    }
+
+    /* ---------------- Shrinking ---------------- */
+
+    /**
+     * Sets the load factor below which removals shrink the table. When the
+     * map becomes sparser than that, the table is rebuilt at the smallest
+     * capacity at which it is at most half as full as the load factor
+     * allows, but not below its initial capacity. Since the shrink load
+     * factor is below half the load factor, a table is never grown and
+     * shrunk back by a few puts and removes in a row. With shrinking
+     * enabled, clear also drops the table back to its initial capacity.
+     * Removals through a cursor never shrink the table.
+     *
+     * @param shrinkLoadFactor the shrink load factor, or 0 to never shrink
+     *                         the table automatically, which is the default
+     * @throws IllegalArgumentException if the shrink load factor is not in
+     *                                  [0, load factor / 2)
+     */
+    public void setShrinkLoadFactor(float shrinkLoadFactor) {
+        if (!(shrinkLoadFactor >= 0 && shrinkLoadFactor < loadFactor / 2)) {
+            throw new IllegalArgumentException("Illegal shrink load factor: " +
+                    shrinkLoadFactor);
+        }
+        this.shrinkLoadFactor = shrinkLoadFactor;
+        int capacity = keys.length;
+        shrinkThreshold = capacity > minimumCapacity ? (int) (capacity * shrinkLoadFactor) : 0;
+    }
+
+    /**
+     * Returns the load factor below which removals shrink the table.
+     *
+     * @return the shrink load factor, or 0 if the table is never shrunk automatically
+     */
+    public float getShrinkLoadFactor() {
+        return shrinkLoadFactor;
+    }
+
+    /**
+     * Rebuilds the table at the smallest capacity which holds the current
+     * mappings within the load factor, releasing the memory of the slots
+     * left empty by removals. Completes an incremental resize in progress.
+     */
+    public void trimToSize() {
+        unshare();
+        if (oldKeys != null) {
+            finishRehash();
+        }
+        int capacity = capacityFor(size);
+        if (capacity < keys.length) {
+            rebuild(capacity);
+        }
+    }
+
+    /* ---------------- Snapshots ---------------- */
+
+    /**
+     * Returns an immutable copy of this map laid out for lookups, see
+     * {@link ImmutableLongMap}. This map stays unchanged.
+     *
+     * @return the immutable copy
+     */
+    public ImmutableLongMap<V> freeze() {
+        return ImmutableLongMap.copyOf(this);
+    }
+
+    /**
+     * Returns a read-only view of the mappings of this map at this point in
+     * time. Taking a snapshot copies nothing: the snapshot shares the table
+     * with this map, and the next write to this map copies the table first,
+     * so the snapshot never changes. Taking several snapshots without writes
+     * in between costs a single copy. An incremental resize in progress is
+     * completed first.
+     * <p>
+     * A snapshot can be read by any number of threads without locks once it
+     * has been handed over to them. Its mutating methods throw
+     * UnsupportedOperationException.
+     *
+     * @return the snapshot
+     */
+    public LongMap<V> snapshot() {
+        if (oldKeys != null) {
+            finishRehash();
+        }
+        shared = true;
+        return new Snapshot<>(keys, values, hashStrategy, hasFreeKey, freeValue, size);
+    }
+
+    /**
+     * Copies the arrays of the table if they are shared with a snapshot,
+     * to be called before every write to them.
+     */
+    private void unshare() {
+        if (shared) {
+            keys = keys.clone();
+            values = values.clone();
+            shared = false;
+        }
+    }
+
+    /**
+     * A read-only view of the table of a LongMapImpl at the time it was
+     * taken. The arrays are never written again once shared, and all fields
+     * are final, so the view is safe to publish to other threads.
+     *
+     * @param <V> the type of mapped values
+     */
+    private static final class Snapshot<V> implements LongMap<V> {
+
+        private final long[] keys;
+        private final Object[] values;
+        private final int mask;
+        private final LongHashStrategy hashStrategy;
+        private final boolean hasFreeKey;
+        private final V freeValue;
+        private final int size;
+
+        Snapshot(long[] keys, Object[] values, LongHashStrategy hashStrategy, boolean hasFreeKey,
+                 V freeValue, int size) {
+            this.keys = keys;
+            this.values = values;
+            this.mask = keys.length - 1;
+            this.hashStrategy = hashStrategy;
+            this.hasFreeKey = hasFreeKey;
+            this.freeValue = freeValue;
+            this.size = size;
+        }
+
+        public V put(long key, V value) {
+            throw new UnsupportedOperationException("Snapshot is read-only");
+        }
+
+        @SuppressWarnings("unchecked")
+        public V get(long key) {
+            if (key == FREE_KEY) {
+                return freeValue;
+            }
+            int index = indexOf(key);
+            return index < 0 ? null : (V) values[index];
+        }
+
+        public V remove(long key) {
+            throw new UnsupportedOperationException("Snapshot is read-only");
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public boolean containsKey(long key) {
+            return key == FREE_KEY ? hasFreeKey : indexOf(key) >= 0;
+        }
+
+        public boolean containsValue(V value) {
+            if (hasFreeKey && Objects.equals(value, freeValue)) {
+                return true;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != FREE_KEY && Objects.equals(value, values[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public long[] keys() {
+            long[] keySet = new long[size];
+            int position = 0;
+            if (hasFreeKey) {
+                keySet[position++] = FREE_KEY;
+            }
+            for (long key : keys) {
+                if (key != FREE_KEY) {
+                    keySet[position++] = key;
+                }
+            }
+            return keySet;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V[] values() {
+            Object genericValue = hasFreeKey ? freeValue : null;
+            for (int i = 0; genericValue == null && i < keys.length; i++) {
+                if (keys[i] != FREE_KEY) {
+                    genericValue = values[i];
+                }
+            }
+            if (genericValue == null) {
+                return null;
+            }
+            V[] valuesSet = (V[]) Array.newInstance(genericValue.getClass(), size);
+            int position = 0;
+            if (hasFreeKey) {
+                valuesSet[position++] = freeValue;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != FREE_KEY) {
+                    valuesSet[position++] = (V) values[i];
+                }
+            }
+            return valuesSet;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public void clear() {
+            throw new UnsupportedOperationException("Snapshot is read-only");
+        }
+
+        @SuppressWarnings("unchecked")
+        public void forEach(LongObjConsumer<? super V> action) {
+            if (hasFreeKey) {
+                action.accept(FREE_KEY, freeValue);
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != FREE_KEY) {
+                    action.accept(keys[i], (V) values[i]);
+                }
+            }
+        }
+
+        public LongMapCursor<V> cursor() {
+            return new LongMapCursor<V>() {
+
+                /**
+                 * The slot of the current mapping, -1 for FREE_KEY.
+                 */
+                private int index;
+
+                private boolean current;
+
+                {
+                    reset();
+                }
+
+                public void reset() {
+                    index = hasFreeKey ? -2 : -1;
+                    current = false;
+                }
+
+                public boolean advance() {
+                    while (++index < keys.length) {
+                        if (index < 0 || keys[index] != FREE_KEY) {
+                            return current = true;
+                        }
+                    }
+                    index = keys.length - 1;
+                    return current = false;
+                }
+
+                public long key() {
+                    checkCurrent();
+                    return index < 0 ? FREE_KEY : keys[index];
+                }
+
+                @SuppressWarnings("unchecked")
+                public V value() {
+                    checkCurrent();
+                    return index < 0 ? freeValue : (V) values[index];
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException("Snapshot is read-only");
+                }
+
+                private void checkCurrent() {
+                    if (!current) {
+                        throw new IllegalStateException("Cursor does not point to a mapping");
+                    }
+                }
+            };
+        }
+
+        /**
+         * Returns the index of the slot which contains the specified key.
+         *
+         * @param key a key to look for, must not be FREE_KEY
+         * @return index of the slot or -1 if there is no such key in the table
+         */
+        private int indexOf(long key) {
+            int index = hashStrategy.hash(key) & mask;
+            long current;
+            while ((current = keys[index]) != FREE_KEY) {
+                if (current == key) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+    }
+
+    /* ---------------- Statistics ---------------- */
+
+    /**
+     * Enables or disables collecting statistics of the operations of this
+     * map. Disabling drops the statistics collected so far. While disabled,
+     * the recording costs a predictable branch per operation; setting the
+     * system property de.comparus.opensource.longmap.stats to false lets the
+     * JIT remove it completely.
+     *
+     * @param enabled true to collect statistics
+     * @throws IllegalStateException if statistics are switched off by the system property
+     */
+    public void setStatsEnabled(boolean enabled) {
+        if (!enabled) {
+            stats = null;
+        } else if (!STATS) {
+            throw new IllegalStateException("Statistics are switched off by system property");
+        } else if (stats == null) {
+            stats = new StatsRecorder();
+        }
+    }
+
+    /**
+     * Returns true if this map collects statistics.
+     *
+     * @return true if statistics are enabled
+     */
+    public boolean isStatsEnabled() {
+        return stats != null;
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this map.
+     *
+     * @return the statistics collected since they were enabled
+     * @throws IllegalStateException if statistics are not enabled
+     */
+    public LongMapStats stats() {
+        StatsRecorder recorder = stats;
+        if (recorder == null) {
+            throw new IllegalStateException("Statistics are not enabled");
+        }
+        return recorder.snapshot(size, keys.length);
+    }
+
+    /**
+     * Enables statistics and registers them with the platform MBean server
+     * under the specified name. The attributes are read from the thread of
+     * the JMX client without synchronization, so they may lag slightly
+     * behind the map. The MBean server keeps this map reachable until
+     * unregisterStats is called.
+     *
+     * @param name the name of the MBean
+     * @throws JMException           if the MBean cannot be registered
+     * @throws IllegalStateException if statistics are switched off by the system property
+     */
+    public void registerStats(ObjectName name) throws JMException {
+        setStatsEnabled(true);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new LongMapStatsBean(this::stats), name);
+    }
+
+    /**
+     * Unregisters the statistics registered under the specified name from
+     * the platform MBean server, so that the server no longer keeps this map
+     * reachable. Statistics stay enabled.
+     *
+     * @param name the name the statistics were registered under
+     * @throws JMException if no MBean is registered under the name
+     */
+    public void unregisterStats(ObjectName name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+
+    /* ---------------- Iteration ---------------- */
+
+    /**
+     * Performs the given action for each mapping of this map, reading the
+     * table in place. An incremental resize in progress is completed first.
+     *
+     * @param action the action to be performed for each mapping
+     * @throws ConcurrentModificationException if the action structurally modifies this map
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(LongObjConsumer<? super V> action) {
+        if (oldKeys != null) {
+            finishRehash();
+        }
+        int expectedModCount = modCount;
+        if (hasFreeKey) {
+            action.accept(FREE_KEY, freeValue);
+        }
+        long[] table = keys;
+        for (int i = 0; i < table.length && modCount == expectedModCount; i++) {
+            if (table[i] != FREE_KEY) {
+                action.accept(table[i], (V) values[i]);
+            }
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Returns a cursor over the mappings of this map, which reads the table
+     * in place. An incremental resize in progress is completed first.
+     *
+     * @return a new cursor
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A cursor which walks the table from its end to its start, so that
+     * removing the current entry only shifts entries which have been visited
+     * already, except for those wrapping around the end of the table.
+     */
+    private class Cursor implements LongMapCursor<V> {
+
+        /**
+         * The index of the slot to look at next, counting down. Negative
+         * values point into the wrapped keys.
+         */
+        private int position;
+
+        /**
+         * The slot of the current mapping, keys.length for FREE_KEY or -1
+         * if there is no current mapping.
+         */
+        private int current;
+
+        /**
+         * True if the current mapping is one of the wrapped keys.
+         */
+        private boolean currentWrapped;
+
+        /**
+         * The number of mappings not visited yet.
+         */
+        private int remaining;
+
+        /**
+         * True if the mapping for FREE_KEY has not been visited yet.
+         */
+        private boolean mustReturnFreeKey;
+
+        /**
+         * The keys shifted from the unvisited part of the table into the
+         * visited one by removals through this cursor.
+         */
+        private long[] wrapped;
+
+        /**
+         * The number of wrapped keys.
+         */
+        private int wrappedCount;
+
+        /**
+         * The modCount this cursor is in sync with.
+         */
+        private int expectedModCount;
+
+        private Cursor() {
+            reset();
+        }
+
+        public void reset() {
+            if (oldKeys != null) {
+                finishRehash();
+            }
+            position = keys.length;
+            current = -1;
+            currentWrapped = false;
+            remaining = size;
+            mustReturnFreeKey = hasFreeKey;
+            wrappedCount = 0;
+            expectedModCount = modCount;
+        }
+
+        public boolean advance() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (remaining == 0) {
+                current = -1;
+                return false;
+            }
+            remaining--;
+            if (mustReturnFreeKey) {
+                mustReturnFreeKey = false;
+                current = keys.length;
+                return true;
+            }
+            while (true) {
+                if (--position < 0) {
+                    current = indexOf(wrapped[-position - 1]);
+                    currentWrapped = true;
+                    return true;
+                }
+                if (keys[position] != FREE_KEY) {
+                    current = position;
+                    return true;
+                }
+            }
+        }
+
+        public long key() {
+            checkCurrent();
+            return current == keys.length ? FREE_KEY : keys[current];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V value() {
+            checkCurrent();
+            return current == keys.length ? freeValue : (V) values[current];
+        }
+
+        public void remove() {
+            checkCurrent();
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (current == keys.length) {
+                removeFreeKey();
+            } else {
+                unshare();
+                shiftKeys(current, currentWrapped ? null : this);
+                modCount++;
+                size--;
+            }
+            expectedModCount = modCount;
+            current = -1;
+            currentWrapped = false;
+        }
+
+        /**
+         * Remembers a key which has been shifted from the unvisited part of
+         * the table into the visited one.
+         *
+         * @param key the shifted key
+         */
+        private void addWrapped(long key) {
+            if (wrapped == null) {
+                wrapped = new long[2];
+            } else if (wrappedCount == wrapped.length) {
+                wrapped = Arrays.copyOf(wrapped, wrappedCount * 2);
+            }
+            wrapped[wrappedCount++] = key;
+        }
+
+        /**
+         * Checks that the cursor points to a mapping.
+         *
+         * @throws IllegalStateException if there is no current mapping
+         */
+        private void checkCurrent() {
+            if (current < 0) {
+                throw new IllegalStateException("Cursor does not point to a mapping");
+            }
+        }
+    }
+
+    /* ---------------- Parallel Bulk Methods ---------------- */
+
+    /**
+     * Sets the pool which runs the parallel bulk operations of this map.
+     *
+     * @param pool the pool, or null to use the common pool
+     */
+    public void setBulkPool(ForkJoinPool pool) {
+        bulkPool = pool;
+    }
+
+    /**
+     * Performs the given action for each mapping of this map. If the map
+     * holds at least parallelismThreshold mappings, the table is split into
+     * ranges of slots which are processed in parallel by the bulk pool, so
+     * the action must be safe to call from several threads at once. The map
+     * must not be modified until the operation returns.
+     *
+     * @param parallelismThreshold the number of mappings from which the
+     *                             operation runs in parallel, Long.MAX_VALUE
+     *                             to always run sequentially
+     * @param action               the action to be performed for each mapping
+     * @throws ConcurrentModificationException if the map is modified during the operation
+     */
+    public void forEach(long parallelismThreshold, LongObjConsumer<? super V> action) {
+        if (action == null) {
+            throw new NullPointerException("Action is null");
+        }
+        int expectedModCount = startBulk();
+        if (hasFreeKey) {
+            action.accept(FREE_KEY, freeValue);
+        }
+        invokeBulk(new ForEachTask(0, keys.length, batchFor(parallelismThreshold), action));
+        endBulk(expectedModCount);
+    }
+
+    /**
+     * Returns the result of accumulating the given transformation of all
+     * mappings using the given reducer to combine values, or null if none.
+     * Mappings transformed to null are skipped. Runs in parallel like
+     * {@link #forEach(long, LongObjConsumer)}, so the reducer must be
+     * associative and both functions must be safe to call from several
+     * threads at once.
+     *
+     * @param parallelismThreshold the number of mappings from which the
+     *                             operation runs in parallel, Long.MAX_VALUE
+     *                             to always run sequentially
+     * @param transformer          the function transforming a mapping, or
+     *                             returning null to skip it
+     * @param reducer              the function combining two transformed values
+     * @param <U>                  the type of the result
+     * @return the accumulated result, or null if all mappings were skipped
+     * @throws ConcurrentModificationException if the map is modified during the operation
+     */
+    public <U> U reduce(long parallelismThreshold, LongObjFunction<? super V, ? extends U> transformer,
+                        BiFunction<? super U, ? super U, ? extends U> reducer) {
+        if (transformer == null || reducer == null) {
+            throw new NullPointerException("Transformer or reducer is null");
+        }
+        int expectedModCount = startBulk();
+        U freeResult = hasFreeKey ? transformer.apply(FREE_KEY, freeValue) : null;
+        U tableResult = invokeBulk(new ReduceTask<U>(0, keys.length, batchFor(parallelismThreshold),
+                transformer, reducer));
+        endBulk(expectedModCount);
+        return combine(freeResult, tableResult, reducer);
+    }
+
+    /**
+     * Returns a non-null result of applying the given search function to a
+     * mapping, or null if the function returns null for all mappings. Once a
+     * result is found, the remaining parallel tasks stop early; which result
+     * wins when several mappings match is unspecified. Runs in parallel like
+     * {@link #forEach(long, LongObjConsumer)}.
+     *
+     * @param parallelismThreshold the number of mappings from which the
+     *                             operation runs in parallel, Long.MAX_VALUE
+     *                             to always run sequentially
+     * @param searchFunction       the function returning a non-null result
+     *                             on success, else null
+     * @param <U>                  the type of the result
+     * @return a non-null result of the search function, or null if none
+     * @throws ConcurrentModificationException if the map is modified during the operation
+     */
+    public <U> U search(long parallelismThreshold, LongObjFunction<? super V, ? extends U> searchFunction) {
+        if (searchFunction == null) {
+            throw new NullPointerException("Search function is null");
+        }
+        int expectedModCount = startBulk();
+        if (hasFreeKey) {
+            U result = searchFunction.apply(FREE_KEY, freeValue);
+            if (result != null) {
+                return result;
+            }
+        }
+        AtomicReference<U> result = new AtomicReference<>();
+        invokeBulk(new SearchTask<U>(0, keys.length, batchFor(parallelismThreshold), searchFunction, result));
+        endBulk(expectedModCount);
+        return result.get();
+    }
+
+    /**
+     * Returns a stream of the keys of this map. The stream is split by
+     * ranges of slots of the table, so it runs well in parallel. It is bound
+     * to the table when created and fails with
+     * ConcurrentModificationException if the map is modified in between.
+     *
+     * @return a stream of the keys
+     */
+    public LongStream keyStream() {
+        int expectedModCount = startBulk();
+        return StreamSupport.longStream(new KeySpliterator(hasFreeKey ? -1 : 0, keys.length, size,
+                expectedModCount), false);
+    }
+
+    /**
+     * Returns a stream of the values of this map, in the order of
+     * {@link #keyStream()}, with the same splitting and fail-fast behavior.
+     *
+     * @return a stream of the values
+     */
+    public Stream<V> valueStream() {
+        int expectedModCount = startBulk();
+        return StreamSupport.stream(new ValueSpliterator(hasFreeKey ? -1 : 0, keys.length, size,
+                expectedModCount), false);
+    }
+
+    /**
+     * Completes an incremental resize in progress, so that all mappings of
+     * the table are in the current table, and returns the modCount a bulk
+     * operation must leave unchanged.
+     *
+     * @return the current modCount
+     */
+    private int startBulk() {
+        if (oldKeys != null) {
+            finishRehash();
+        }
+        return modCount;
+    }
+
+    /**
+     * Checks that the map was not modified during a bulk operation.
+     *
+     * @param expectedModCount the modCount at the start of the operation
+     * @throws ConcurrentModificationException if the map was modified
+     */
+    private void endBulk(int expectedModCount) {
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Returns the pool which runs parallel bulk operations.
+     *
+     * @return the bulk pool
+     */
+    private ForkJoinPool bulkPool() {
+        ForkJoinPool pool = bulkPool;
+        return pool == null ? ForkJoinPool.commonPool() : pool;
+    }
+
+    /**
+     * Returns the number of times a bulk task should be split, or 0 to run
+     * it sequentially in the calling thread. Mirrors the parallelism
+     * threshold of ConcurrentHashMap: the table is split into at most four
+     * tasks per thread of the pool, each with at least parallelismThreshold
+     * mappings on average.
+     *
+     * @param parallelismThreshold the number of mappings from which the
+     *                             operation runs in parallel
+     * @return the batch of the root task
+     */
+    private int batchFor(long parallelismThreshold) {
+        long n = size;
+        if (parallelismThreshold == Long.MAX_VALUE || n <= 1L || n < parallelismThreshold) {
+            return 0;
+        }
+        int tasks = bulkPool().getParallelism() << 2;
+        return parallelismThreshold <= 0L || (n /= parallelismThreshold) >= tasks ? tasks : (int) n;
+    }
+
+    /**
+     * Runs the root task of a bulk operation, in the calling thread if it
+     * is not split at all.
+     *
+     * @param task the root task
+     * @param <R>  the type of the result
+     * @return the result of the task
+     */
+    private <R> R invokeBulk(BulkTask<R> task) {
+        return task.batch == 0 ? task.invoke() : bulkPool().invoke(task);
+    }
+
+    /**
+     * Combines two partial results of a reduction, either of which may be null.
+     *
+     * @param left    the left result
+     * @param right   the right result
+     * @param reducer the function combining two results
+     * @param <U>     the type of the result
+     * @return the combined result
+     */
+    private static <U> U combine(U left, U right, BiFunction<? super U, ? super U, ? extends U> reducer) {
+        if (left == null) {
+            return right;
+        }
+        return right == null ? left : reducer.apply(left, right);
+    }
+
+    /**
+     * A task of a bulk operation over a range of slots of the table. While
+     * its batch is positive, the task splits its range in halves.
+     *
+     * @param <R> the type of the result
+     */
+    @SuppressWarnings("serial")
+    private abstract class BulkTask<R> extends RecursiveTask<R> {
+
+        /**
+         * The first slot of the range.
+         */
+        final int from;
+
+        /**
+         * The slot after the range.
+         */
+        final int to;
+
+        /**
+         * The number of tasks this task should still be split into.
+         */
+        final int batch;
+
+        BulkTask(int from, int to, int batch) {
+            this.from = from;
+            this.to = to;
+            this.batch = batch;
+        }
+
+        /**
+         * Returns true if this task should be split rather than run.
+         *
+         * @return true if this task should be split
+         */
+        final boolean shouldSplit() {
+            return batch > 0 && to - from > 1;
+        }
+    }
+
+    /**
+     * A task of {@link #forEach(long, LongObjConsumer)}.
+     */
+    @SuppressWarnings("serial")
+    private final class ForEachTask extends BulkTask<Void> {
+
+        private final LongObjConsumer<? super V> action;
+
+        ForEachTask(int from, int to, int batch, LongObjConsumer<? super V> action) {
+            super(from, to, batch);
+            this.action = action;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected Void compute() {
+            if (shouldSplit()) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ForEachTask(from, middle, batch >>> 1, action),
+                        new ForEachTask(middle, to, batch >>> 1, action));
+                return null;
+            }
+            long[] table = keys;
+            Object[] tableValues = values;
+            for (int i = from; i < to; i++) {
+                if (table[i] != FREE_KEY) {
+                    action.accept(table[i], (V) tableValues[i]);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A task of {@link #reduce(long, LongObjFunction, BiFunction)}.
+     *
+     * @param <U> the type of the result
+     */
+    @SuppressWarnings("serial")
+    private final class ReduceTask<U> extends BulkTask<U> {
+
+        private final LongObjFunction<? super V, ? extends U> transformer;
+        private final BiFunction<? super U, ? super U, ? extends U> reducer;
+
+        ReduceTask(int from, int to, int batch, LongObjFunction<? super V, ? extends U> transformer,
+                   BiFunction<? super U, ? super U, ? extends U> reducer) {
+            super(from, to, batch);
+            this.transformer = transformer;
+            this.reducer = reducer;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected U compute() {
+            if (shouldSplit()) {
+                int middle = (from + to) >>> 1;
+                ReduceTask<U> left = new ReduceTask<>(from, middle, batch >>> 1, transformer, reducer);
+                left.fork();
+                U right = new ReduceTask<>(middle, to, batch >>> 1, transformer, reducer).compute();
+                return combine(left.join(), right, reducer);
+            }
+            long[] table = keys;
+            Object[] tableValues = values;
+            U result = null;
+            for (int i = from; i < to; i++) {
+                if (table[i] != FREE_KEY) {
+                    result = combine(result, transformer.apply(table[i], (V) tableValues[i]), reducer);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A task of {@link #search(long, LongObjFunction)}. The first result
+     * found is published to all tasks, which then stop.
+     *
+     * @param <U> the type of the result
+     */
+    @SuppressWarnings("serial")
+    private final class SearchTask<U> extends BulkTask<Void> {
+
+        private final LongObjFunction<? super V, ? extends U> searchFunction;
+        private final AtomicReference<U> result;
+
+        SearchTask(int from, int to, int batch, LongObjFunction<? super V, ? extends U> searchFunction,
+                   AtomicReference<U> result) {
+            super(from, to, batch);
+            this.searchFunction = searchFunction;
+            this.result = result;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected Void compute() {
+            if (result.get() != null) {
+                return null;
+            }
+            if (shouldSplit()) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SearchTask<>(from, middle, batch >>> 1, searchFunction, result),
+                        new SearchTask<>(middle, to, batch >>> 1, searchFunction, result));
+                return null;
+            }
+            long[] table = keys;
+            Object[] tableValues = values;
+            for (int i = from; i < to && result.get() == null; i++) {
+                if (table[i] != FREE_KEY) {
+                    U found = searchFunction.apply(table[i], (V) tableValues[i]);
+                    if (found != null) {
+                        result.compareAndSet(null, found);
+                        return null;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A spliterator over a range of slots of the table. The slot -1 stands
+     * for the mapping of FREE_KEY. The spliterator keeps the table it was
+     * created for, so a modification of the map cannot make it read out of
+     * bounds before it is detected.
+     */
+    private abstract class TableSpliterator {
+
+        /**
+         * The keys of the table.
+         */
+        final long[] table = keys;
+
+        /**
+         * The values of the table.
+         */
+        final Object[] tableValues = values;
+
+        /**
+         * The next slot to visit.
+         */
+        int index;
+
+        /**
+         * The slot after the range.
+         */
+        final int fence;
+
+        /**
+         * The estimated number of mappings in the range.
+         */
+        long estimate;
+
+        /**
+         * The modCount the map must keep during the traversal.
+         */
+        final int expectedModCount;
+
+        TableSpliterator(int index, int fence, long estimate, int expectedModCount) {
+            this.index = index;
+            this.fence = fence;
+            this.estimate = estimate;
+            this.expectedModCount = expectedModCount;
+        }
+
+        /**
+         * Returns the slot at which to split off the lower half of the
+         * remaining range, or -2 if the range is too small to split.
+         * Halves the estimate on success.
+         *
+         * @return the start of the upper half
+         */
+        final int split() {
+            int low = index;
+            int middle = (low + fence) >> 1;
+            if (low >= middle) {
+                return -2;
+            }
+            estimate >>>= 1;
+            return middle;
+        }
+
+        /**
+         * Advances to the next occupied slot of the range.
+         *
+         * @return the slot, or fence if the range is exhausted
+         */
+        final int nextSlot() {
+            while (index < fence) {
+                int i = index++;
+                if (i < 0 || table[i] != FREE_KEY) {
+                    return i;
+                }
+            }
+            return fence;
+        }
+
+        /**
+         * Checks that the map was not modified.
+         *
+         * @throws ConcurrentModificationException if the map was modified
+         */
+        final void checkModCount() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        public long estimateSize() {
+            return estimate;
+        }
+    }
+
+    /**
+     * The spliterator of {@link #keyStream()}.
+     */
+    private final class KeySpliterator extends TableSpliterator implements Spliterator.OfLong {
+
+        KeySpliterator(int index, int fence, long estimate, int expectedModCount) {
+            super(index, fence, estimate, expectedModCount);
+        }
+
+        public Spliterator.OfLong trySplit() {
+            int low = index;
+            int middle = split();
+            return middle == -2 ? null : new KeySpliterator(low, index = middle, estimate, expectedModCount);
+        }
+
+        public boolean tryAdvance(LongConsumer action) {
+            int i = nextSlot();
+            if (i == fence) {
+                return false;
+            }
+            action.accept(i < 0 ? FREE_KEY : table[i]);
+            checkModCount();
+            return true;
+        }
+
+        public void forEachRemaining(LongConsumer action) {
+            for (int i = nextSlot(); i != fence; i = nextSlot()) {
+                action.accept(i < 0 ? FREE_KEY : table[i]);
+            }
+            checkModCount();
+        }
+
+        public int characteristics() {
+            return Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+    }
+
+    /**
+     * The spliterator of {@link #valueStream()}.
+     */
+    private final class ValueSpliterator extends TableSpliterator implements Spliterator<V> {
+
+        ValueSpliterator(int index, int fence, long estimate, int expectedModCount) {
+            super(index, fence, estimate, expectedModCount);
+        }
+
+        public Spliterator<V> trySplit() {
+            int low = index;
+            int middle = split();
+            return middle == -2 ? null : new ValueSpliterator(low, index = middle, estimate, expectedModCount);
+        }
+
+        public boolean tryAdvance(Consumer<? super V> action) {
+            int i = nextSlot();
+            if (i == fence) {
+                return false;
+            }
+            action.accept(valueAt(i));
+            checkModCount();
+            return true;
+        }
+
+        public void forEachRemaining(Consumer<? super V> action) {
+            for (int i = nextSlot(); i != fence; i = nextSlot()) {
+                action.accept(valueAt(i));
+            }
+            checkModCount();
+        }
+
+        public int characteristics() {
+            return 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private V valueAt(int slot) {
+            return slot < 0 ? freeValue : (V) tableValues[slot];
+        }
+    }
+
+    /* ---------------- Table Layout ---------------- */
+
+    /**
+     * Returns the number of slots of the table.
+     *
+     * @return the capacity of the table
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the load factor of this map.
+     *
+     * @return the load factor
+     */
+    float loadFactor() {
+        return loadFactor;
+    }
+
+    /* ---------------- Utils Methods ---------------- */
+
+    /**
+     * Returns calculated hash of a key, which is the index of its home slot.
+     *
+     * @param key a key, which needs to be hashed
+     * @return hash value
+     */
+    private int hash(long key) {
+        return hashStrategy.hash(key) & mask;
+    }
+
+    /**
+     * Returns the index of the slot of the old table which contains the
+     * specified live key during an incremental resize. The last migration
+     * step may have just dropped the old table, in which case nothing is found.
+     *
+     * @param key a key to look for, must not be FREE_KEY
+     * @return index of the slot or -1 if there is no such live key in the old table
+     */
+    private int indexOfOld(long key) {
+        if (oldKeys == null) {
+            return -1;
+        }
+        int oldMask = oldKeys.length - 1;
+        int index = hashStrategy.hash(key) & oldMask;
+        long current;
+        while ((current = oldKeys[index]) != FREE_KEY) {
+            if (current == key) {
+                return oldValues[index] == REMOVED ? -1 : index;
+            }
+            index = (index + 1) & oldMask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if the specified slot of the old table holds a mapping
+     * which has not been removed or migrated yet.
+     *
+     * @param index index of the slot of the old table
+     * @return true if the slot holds a live mapping
+     */
+    private boolean isLiveOld(int index) {
+        return oldKeys[index] != FREE_KEY && oldValues[index] != REMOVED;
+    }
+
+    /**
+     * Returns the index of the slot which contains the specified key.
+     *
+     * @param key a key to look for, must not be FREE_KEY
+     * @return index of the slot or -1 if there is no such key in the table
+     */
+    private int indexOf(long key) {
+        int index = hash(key);
+        long current;
+        while ((current = keys[index]) != FREE_KEY) {
+            if (current == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the slots of up to PROBE_GROUP keys of a batch starting at the
+     * specified position. All home slots of the group are computed and read
+     * first, then every key resolves its probe sequence from the slot read.
+     * The old table must be fully migrated.
+     *
+     * @param batch  the keys of the batch
+     * @param from   the position of the first key of the group
+     * @param slots  receives the slot of each key, FREE_SLOT for a present
+     *               FREE_KEY or -1 if the key is absent
+     * @param probes scratch space for the keys read from the home slots
+     * @return the number of keys in the group
+     */
+    private int findGroup(long[] batch, int from, int[] slots, long[] probes) {
+        int count = Math.min(PROBE_GROUP, batch.length - from);
+        long[] table = keys;
+        for (int i = 0; i < count; i++) {
+            int home = hash(batch[from + i]);
+            slots[i] = home;
+            probes[i] = table[home];
+        }
+        for (int i = 0; i < count; i++) {
+            long key = batch[from + i];
+            if (key == FREE_KEY) {
+                slots[i] = hasFreeKey ? FREE_SLOT : -1;
+                continue;
+            }
+            int index = slots[i];
+            long current = probes[i];
+            while (current != key) {
+                if (current == FREE_KEY) {
+                    index = -1;
+                    break;
+                }
+                index = (index + 1) & mask;
+                current = table[index];
+            }
+            slots[i] = index;
+        }
+        return count;
+    }
+
+    /**
+     * Records the probe length of a lookup in the table.
+     *
+     * @param key   the key looked up
+     * @param index the slot of the key or -1 if the key is absent
+     */
+    private void recordProbe(long key, int index) {
+        if (index >= 0) {
+            stats.probe(distance(key, index));
+            return;
+        }
+        int length = 1;
+        for (int i = hash(key); keys[i] != FREE_KEY; i = (i + 1) & mask) {
+            length++;
+        }
+        stats.probe(length);
+    }
+
+    /**
+     * Returns the number of slots from the home slot of a key up to the
+     * specified slot, both inclusive.
+     *
+     * @param key   the key
+     * @param index the slot
+     * @return the probe length
+     */
+    private int distance(long key, int index) {
+        return ((index - hash(key)) & mask) + 1;
+    }
+
+    /**
+     * Finds the slot of a key in the current table in a single probe. During
+     * an incremental resize, a key still in the old table is first moved to
+     * the current one, so that the caller can update it in place.
+     *
+     * @param key a key to look for, must not be FREE_KEY
+     * @return the slot of the key, or (-(empty slot) - 1) for the empty slot
+     * which ends the probe sequence of an absent key
+     */
+    private int probe(long key) {
+        if (oldKeys != null) {
+            rehashStep();
+            int oldIndex = indexOfOld(key);
+            if (oldIndex >= 0) {
+                int index = hash(key);
+                while (keys[index] != FREE_KEY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[oldIndex];
+                oldValues[oldIndex] = REMOVED;
+            }
+        }
+        int index = hash(key);
+        long current;
+        while ((current = keys[index]) != FREE_KEY) {
+            if (current == key) {
+                if (STATS && stats != null) {
+                    stats.probe(distance(key, index));
+                }
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        if (STATS && stats != null) {
+            stats.probe(distance(key, index));
+        }
+        return -index - 1;
+    }
+
+    /**
+     * Returns the empty slot in which an absent key is to be inserted, going
+     * on from the slot found by probe. A function run between the probe and
+     * the insertion may have read this map during an incremental resize and
+     * so migrated entries of the old table into that slot; the probe
+     * sequence of the key then continues past them.
+     *
+     * @param index the empty slot found by probe
+     * @return the first empty slot at or after index
+     */
+    private int freeSlotFrom(int index) {
+        while (keys[index] != FREE_KEY) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * Puts a new mapping into the empty slot found by probe and resizes the
+     * table if it grows beyond its threshold.
+     *
+     * @param index the empty slot
+     * @param key   the key
+     * @param value the value
+     */
+    private void insertAt(int index, long key, V value) {
+        unshare();
+        keys[index] = key;
+        values[index] = value;
+        modCount++;
+        if (++size > threshold) {
+            resize();
+        }
+    }
+
+    /**
+     * Stores the value computed for the key of a slot, or removes the
+     * mapping if the value is null.
+     *
+     * @param index            the slot of the key
+     * @param value            the computed value
+     * @param expectedModCount the modCount before the value was computed
+     * @return the value
+     * @throws ConcurrentModificationException if the computation modified this map
+     */
+    private V storeAt(int index, V value, int expectedModCount) {
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        unshare();
+        if (value != null) {
+            if (STATS && stats != null) {
+                stats.put();
+            }
+            values[index] = value;
+        } else {
+            if (STATS && stats != null) {
+                stats.remove();
+            }
+            shiftKeys(index, null);
+            modCount++;
+            size--;
+            shrinkIfSparse();
+        }
+        return value;
+    }
+
+    /**
+     * Stores the value computed for FREE_KEY, or removes its mapping if the
+     * value is null.
+     *
+     * @param value            the computed value
+     * @param expectedModCount the modCount before the value was computed
+     * @return the value
+     * @throws ConcurrentModificationException if the computation modified this map
+     */
+    private V storeFreeKey(V value, int expectedModCount) {
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        if (value != null) {
+            putFreeKey(value);
+        } else {
+            removeFreeKey();
+        }
+        return value;
+    }
+
+    /**
+     * Associates the specified value with FREE_KEY.
+     *
+     * @param value value to be associated with FREE_KEY
+     * @return the previous value associated with FREE_KEY
+     */
+    private V putFreeKey(V value) {
+        V previous = freeValue;
+        if (!hasFreeKey) {
+            hasFreeKey = true;
+            modCount++;
+            size++;
+        }
+        freeValue = value;
+        return previous;
+    }
+
+    /**
+     * Removes the mapping for FREE_KEY if present.
+     *
+     * @return the previous value associated with FREE_KEY
+     */
+    private V removeFreeKey() {
+        if (!hasFreeKey) {
+            return null;
+        }
+        V previous = freeValue;
+        hasFreeKey = false;
+        freeValue = null;
+        modCount++;
+        size--;
+        return previous;
+    }
+
+    /**
+     * Empties the specified slot and shifts the following entries of the
+     * cluster back, so that no entry becomes unreachable from its home slot.
+     * This keeps the table free of tombstones.
+     * <p>
+     * When a cursor removes an entry, an entry which the cursor has not
+     * visited yet may wrap around the end of the table into the part
+     * already visited. Such entries are handed over to the cursor.
+     *
+     * @param position index of the slot to empty
+     * @param cursor   the cursor which removes the entry, or null
+     */
+    private void shiftKeys(int position, Cursor cursor) {
+        int last;
+        long current;
+        while (true) {
+            last = position;
+            position = (position + 1) & mask;
+            while (true) {
+                if ((current = keys[position]) == FREE_KEY) {
+                    keys[last] = FREE_KEY;
+                    values[last] = null;
+                    return;
+                }
+                int home = hash(current);
+                if (last <= position ? last >= home || home > position : last >= home && home > position) {
+                    break;
+                }
+                position = (position + 1) & mask;
+            }
+            if (cursor != null && position < last) {
+                cursor.addWrapped(current);
+            }
+            keys[last] = current;
+            values[last] = values[position];
+        }
+    }
+
+    /**
+     * Double the capacity of the table and rewrite all entries to it,
+     * or start migrating them if incremental resizing is enabled.
+     */
+    private void resize() {
+        if (oldKeys != null) {
+            finishRehash();
+        }
+        if (keys.length == MAXIMUM_CAPACITY) {
+            if (size >= MAXIMUM_CAPACITY - 1) {
+                throw new IllegalStateException("Map capacity exceeded: " + size);
+            }
+            threshold = MAXIMUM_CAPACITY - 1;
+            return;
+        }
+        long start = STATS && stats != null ? System.nanoTime() : 0L;
+        rehash(keys.length * 2);
+
+        if (!incrementalResize) {
+            finishRehash();
+        }
+        if (STATS && stats != null) {
+            stats.resize(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Resizes the table at once so that it holds the specified number of
+     * mappings without further resizing.
+     *
+     * @param expected the number of mappings to make room for
+     */
+    private void presize(long expected) {
+        if (expected <= threshold) {
+            return;
+        }
+        if (oldKeys != null) {
+            finishRehash();
+        }
+        int capacity = capacityFor(expected);
+        if (capacity > keys.length) {
+            rebuild(capacity);
+        }
+    }
+
+    /**
+     * Shrinks the table if the map has become sparser than the shrink load
+     * factor allows. The new table is at most half as full as the load
+     * factor allows, so the next resize in either direction is far off.
+     * Nothing is done while an incremental resize is in progress.
+     */
+    private void shrinkIfSparse() {
+        if (size < shrinkThreshold && oldKeys == null) {
+            int capacity = Math.max(capacityFor((long) size * 2), minimumCapacity);
+            if (capacity < keys.length) {
+                rebuild(capacity);
+            }
+        }
+    }
+
+    /**
+     * Rewrites all entries to a new table of the specified capacity at once.
+     * The old table must be fully migrated.
+     *
+     * @param capacity the capacity of the new table, must be a power of two
+     */
+    private void rebuild(int capacity) {
+        long start = STATS && stats != null ? System.nanoTime() : 0L;
+        rehash(capacity);
+        finishRehash();
+        if (STATS && stats != null) {
+            stats.resize(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the capacity of a table which holds the specified number of
+     * mappings without exceeding the load factor.
+     *
+     * @param expected the number of mappings
+     * @return the capacity, a power of two
+     */
+    private int capacityFor(long expected) {
+        long needed = (long) Math.ceil(expected / (double) loadFactor) + 1;
+        return tableSizeFor((int) Math.min(needed, MAXIMUM_CAPACITY));
+    }
+
+    /**
+     * Replaces the table with an empty one of the specified capacity and
+     * makes the current table the old one, to be migrated.
+     *
+     * @param capacity the capacity of the new table, must be a power of two
+     */
+    private void rehash(int capacity) {
+        modCount++;
+        oldKeys = keys;
+        oldValues = values;
+        rehashIndex = 0;
+        allocate(capacity);
+    }
+
+    /**
+     * Migrates the next REHASH_STEP slots of the old table to the new one.
+     */
+    private void rehashStep() {
+        migrate(Math.min(rehashIndex + REHASH_STEP, oldKeys.length));
+    }
+
+    /**
+     * Migrates all remaining slots of the old table to the new one.
+     */
+    private void finishRehash() {
+        migrate(oldKeys.length);
+    }
+
+    /**
+     * Migrates the live slots of the old table up to the specified index
+     * to the new table and drops the old table once it is fully migrated.
+     * A migrated slot keeps its key and is marked REMOVED, so that probe
+     * sequences of the old table stay intact.
+     *
+     * @param end index of the old table to migrate up to, exclusive
+     */
+    private void migrate(int end) {
+        for (int i = rehashIndex; i < end; i++) {
+            if (isLiveOld(i)) {
+                long key = oldKeys[i];
+                int index = hash(key);
+                while (keys[index] != FREE_KEY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[i];
+                oldValues[i] = REMOVED;
+            }
+        }
+        rehashIndex = end;
+        if (end == oldKeys.length) {
+            oldKeys = null;
+            oldValues = null;
+        }
+    }
+
+    /**
+     * Initialize new empty table of the specified capacity.
+     *
+     * @param capacity the capacity of the table, must be a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = Math.min((int) (capacity * loadFactor), capacity - 1);
+        shrinkThreshold = capacity > minimumCapacity ? (int) (capacity * shrinkLoadFactor) : 0;
+    }
+
+    /**
+     * Returns a power of two size for the given capacity.
+     *
+     * @param capacity the requested capacity
+     * @return the smallest power of two not less than capacity and 2
+     */
+    private static int tableSizeFor(int capacity) {
+        if (capacity >= MAXIMUM_CAPACITY) {
+            return MAXIMUM_CAPACITY;
         }
-        return nodes;
+        int n = -1 >>> Integer.numberOfLeadingZeros(Math.max(capacity, 2) - 1);
+        return n + 1;
     }
 
     /**
@@ -0,0 +1,18 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * Receives the changes of an ObservableLongMap in batches.
+ *
+ * @param <V> the type of mapped values
+ */
+@FunctionalInterface
+public interface LongMapListener<V> {
+
+    /**
+     * Called on the dispatch thread of the map with the next batch of
+     * changes. The listener must not change the map it observes.
+     *
+     * @param changes the changes, only valid during this call
+     */
+    void onChanges(LongMapChanges<V> changes);
+}
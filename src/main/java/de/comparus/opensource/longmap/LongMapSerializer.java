@@ -0,0 +1,256 @@
+package de.comparus.opensource.longmap;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Writes snapshots of a LongMap and reads them back into a LongMapImpl, in a
+ * compact binary format.
+ * <p>
+ * A snapshot starts with a header: magic number, format version, number of
+ * mappings, capacity and load factor of the table, and the width of the
+ * encoded values. The mappings follow in ascending key order. Each key is
+ * written as an unsigned varint of its difference to the previous key (the
+ * first key as a zigzag varint), followed by a presence byte and, unless
+ * the value is null, the value encoded with the codec. Dense or clustered
+ * keys take one or two bytes each.
+ * <p>
+ * Data is streamed through a fixed-size buffer in both directions. Restore
+ * sizes the table from the header, so loading never resizes it.
+ */
+public final class LongMapSerializer {
+
+    /**
+     * The magic number at the start of a snapshot, "LMS1".
+     */
+    private static final int MAGIC = 0x4C4D5331;
+
+    /**
+     * The version of the snapshot format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The number of bytes in the header.
+     */
+    private static final int HEADER_SIZE = 28;
+
+    /**
+     * The size of the streaming buffer.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The maximum length of a varint.
+     */
+    private static final int MAX_VARINT_BYTES = 10;
+
+    /**
+     * The load factor recorded for maps which are not a LongMapImpl.
+     */
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    private LongMapSerializer() {
+    }
+
+    /* ---------------- Write ---------------- */
+
+    /**
+     * Writes a snapshot of the map to the channel. The capacity and load
+     * factor of a LongMapImpl are recorded, so that it is restored with the
+     * same table; any other map is restored into a table sized for its
+     * mappings with the default load factor (0.75).
+     *
+     * @param map     the map to write
+     * @param codec   the codec of the values
+     * @param channel the channel to write to
+     * @param <V>     the type of mapped values
+     * @throws IOException if the channel cannot be written
+     */
+    public static <V> void write(LongMap<V> map, ValueCodec<V> codec, WritableByteChannel channel)
+            throws IOException {
+        int valueSize = codec.size();
+        if (BUFFER_SIZE < MAX_VARINT_BYTES + 1 + valueSize) {
+            throw new IllegalArgumentException("Value width is too big: " + valueSize);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        int capacity;
+        float loadFactor;
+        if (map instanceof LongMapImpl) {
+            capacity = ((LongMapImpl<V>) map).capacity();
+            loadFactor = ((LongMapImpl<V>) map).loadFactor();
+        } else {
+            capacity = (int) Math.min(keys.length / DEFAULT_LOAD_FACTOR + 1, 1 << 30);
+            loadFactor = DEFAULT_LOAD_FACTOR;
+        }
+
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(keys.length);
+        buffer.putInt(capacity);
+        buffer.putFloat(loadFactor);
+        buffer.putInt(valueSize);
+
+        long previous = 0L;
+        for (int i = 0; i < keys.length; i++) {
+            if (buffer.remaining() < MAX_VARINT_BYTES + 1 + valueSize) {
+                flush(buffer, channel);
+            }
+            long key = keys[i];
+            writeVarLong(buffer, i == 0 ? (key << 1) ^ (key >> 63) : key - previous);
+            previous = key;
+
+            V value = map.get(key);
+            if (value == null) {
+                buffer.put((byte) 0);
+            } else {
+                buffer.put((byte) 1);
+                codec.write(buffer, buffer.position(), value);
+                buffer.position(buffer.position() + valueSize);
+            }
+        }
+        flush(buffer, channel);
+    }
+
+    /* ---------------- Read ---------------- */
+
+    /**
+     * Reads a snapshot from the channel into a new map.
+     *
+     * @param channel the channel to read from
+     * @param codec   the codec of the values
+     * @param <V>     the type of mapped values
+     * @return the restored map
+     * @throws IOException if the channel cannot be read or does not contain
+     *                     a snapshot written with a codec of the same width
+     */
+    public static <V> LongMapImpl<V> read(ReadableByteChannel channel, ValueCodec<V> codec) throws IOException {
+        int valueSize = codec.size();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+
+        fill(buffer, channel, HEADER_SIZE);
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a map snapshot");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version: " + version);
+        }
+        long size = buffer.getLong();
+        int capacity = buffer.getInt();
+        float loadFactor = buffer.getFloat();
+        int snapshotValueSize = buffer.getInt();
+        if (snapshotValueSize != valueSize) {
+            throw new IOException("Snapshot has values of " + snapshotValueSize
+                    + " bytes, the codec needs " + valueSize);
+        }
+        if (size < 0 || size > capacity) {
+            throw new IOException("Corrupted snapshot size: " + size);
+        }
+
+        LongMapImpl<V> map;
+        try {
+            map = new LongMapImpl<>(capacity, loadFactor);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupted snapshot header", e);
+        }
+        long previous = 0L;
+        for (long i = 0; i < size; i++) {
+            long encoded = readVarLong(buffer, channel);
+            long key = i == 0 ? (encoded >>> 1) ^ -(encoded & 1) : previous + encoded;
+            previous = key;
+
+            fill(buffer, channel, 1);
+            V value = null;
+            if (buffer.get() != 0) {
+                fill(buffer, channel, valueSize);
+                value = codec.read(buffer, buffer.position());
+                buffer.position(buffer.position() + valueSize);
+            }
+            map.put(key, value);
+        }
+        return map;
+    }
+
+    /* ---------------- Utils Methods ---------------- */
+
+    /**
+     * Writes the content of the buffer to the channel and clears the buffer.
+     *
+     * @param buffer  the buffer in write mode
+     * @param channel the channel to write to
+     * @throws IOException if the channel cannot be written
+     */
+    private static void flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Reads from the channel until the buffer has at least the specified
+     * number of bytes remaining.
+     *
+     * @param buffer  the buffer in read mode
+     * @param channel the channel to read from
+     * @param bytes   the number of bytes needed
+     * @throws IOException if the channel ends before
+     */
+    private static void fill(ByteBuffer buffer, ReadableByteChannel channel, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of snapshot");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Writes an unsigned variable-length long, seven bits per byte.
+     *
+     * @param buffer the buffer to write to
+     * @param value  the value
+     */
+    private static void writeVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned variable-length long.
+     *
+     * @param buffer  the buffer in read mode
+     * @param channel the channel to refill the buffer from
+     * @return the value
+     * @throws IOException if the channel ends before or the varint is malformed
+     */
+    private static long readVarLong(ByteBuffer buffer, ReadableByteChannel channel) throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            fill(buffer, channel, 1);
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in snapshot");
+    }
+}
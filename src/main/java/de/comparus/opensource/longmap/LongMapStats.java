@@ -0,0 +1,175 @@
+package de.comparus.opensource.longmap;
+
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of the statistics of a map.
+ * <p>
+ * Histograms have logarithmic buckets: bucket 0 counts values equal to 0
+ * and bucket i counts values from 2^(i-1) inclusive to 2^i exclusive. For
+ * instance, a probe length of 1 falls into bucket 1, lengths 2 and 3 into
+ * bucket 2, lengths 4 to 7 into bucket 3.
+ */
+public final class LongMapStats {
+
+    /**
+     * The number of buckets of a histogram.
+     */
+    static final int HISTOGRAM_BUCKETS = 64;
+
+    private final long gets;
+    private final long hits;
+    private final long puts;
+    private final long removes;
+    private final long resizes;
+    private final long size;
+    private final int capacity;
+    private final long[] probeLengths;
+    private final long[] resizeNanos;
+
+    LongMapStats(long gets, long hits, long puts, long removes, long resizes, long size, int capacity,
+                 long[] probeLengths, long[] resizeNanos) {
+        this.gets = gets;
+        this.hits = hits;
+        this.puts = puts;
+        this.removes = removes;
+        this.resizes = resizes;
+        this.size = size;
+        this.capacity = capacity;
+        this.probeLengths = probeLengths;
+        this.resizeNanos = resizeNanos;
+    }
+
+    /**
+     * Returns the histogram bucket of a value.
+     *
+     * @param value a value, not negative
+     * @return the index of the bucket
+     */
+    static int bucket(long value) {
+        return Math.min(HISTOGRAM_BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * Returns the number of lookups.
+     *
+     * @return the number of lookups
+     */
+    public long getGets() {
+        return gets;
+    }
+
+    /**
+     * Returns the number of lookups which found a mapping.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups which found no mapping.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return gets - hits;
+    }
+
+    /**
+     * Returns the number of puts.
+     *
+     * @return the number of puts
+     */
+    public long getPuts() {
+        return puts;
+    }
+
+    /**
+     * Returns the number of removes.
+     *
+     * @return the number of removes
+     */
+    public long getRemoves() {
+        return removes;
+    }
+
+    /**
+     * Returns the number of times the table was resized.
+     *
+     * @return the number of resizes
+     */
+    public long getResizes() {
+        return resizes;
+    }
+
+    /**
+     * Returns the number of mappings at the time of the snapshot.
+     *
+     * @return the size of the map
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of slots of the table at the time of the snapshot.
+     *
+     * @return the capacity of the table
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the ratio of mappings to slots at the time of the snapshot.
+     *
+     * @return the current load factor
+     */
+    public double getLoadFactor() {
+        return capacity == 0 ? 0.0 : (double) size / capacity;
+    }
+
+    /**
+     * Returns the histogram of the number of slots inspected by lookups,
+     * puts and removes.
+     *
+     * @return a copy of the histogram
+     */
+    public long[] getProbeLengths() {
+        return probeLengths.clone();
+    }
+
+    /**
+     * Returns the histogram of the duration of resizes in nanoseconds.
+     * An incremental resize is measured until the new table is allocated.
+     *
+     * @return a copy of the histogram
+     */
+    public long[] getResizeNanos() {
+        return resizeNanos.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "gets: " + gets + "; hits: " + hits + "; puts: " + puts + "; removes: " + removes
+                + "; resizes: " + resizes + "; size: " + size + "; capacity: " + capacity
+                + "; probe lengths: " + Arrays.toString(trim(probeLengths))
+                + "; resize nanos: " + Arrays.toString(trim(resizeNanos));
+    }
+
+    /**
+     * Drops the trailing empty buckets of a histogram.
+     *
+     * @param histogram the histogram
+     * @return the histogram up to its last non-empty bucket
+     */
+    private static long[] trim(long[] histogram) {
+        int length = histogram.length;
+        while (length > 0 && histogram[length - 1] == 0) {
+            length--;
+        }
+        return Arrays.copyOf(histogram, length);
+    }
+}
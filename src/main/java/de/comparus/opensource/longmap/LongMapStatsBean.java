@@ -0,0 +1,59 @@
+package de.comparus.opensource.longmap;
+
+import java.util.function.Supplier;
+
+/**
+ * Exposes snapshots of the statistics of a map as an MXBean.
+ */
+final class LongMapStatsBean implements LongMapStatsMXBean {
+
+    private final Supplier<LongMapStats> stats;
+
+    LongMapStatsBean(Supplier<LongMapStats> stats) {
+        this.stats = stats;
+    }
+
+    public long getGets() {
+        return stats.get().getGets();
+    }
+
+    public long getHits() {
+        return stats.get().getHits();
+    }
+
+    public long getMisses() {
+        return stats.get().getMisses();
+    }
+
+    public long getPuts() {
+        return stats.get().getPuts();
+    }
+
+    public long getRemoves() {
+        return stats.get().getRemoves();
+    }
+
+    public long getResizes() {
+        return stats.get().getResizes();
+    }
+
+    public long getSize() {
+        return stats.get().getSize();
+    }
+
+    public int getCapacity() {
+        return stats.get().getCapacity();
+    }
+
+    public double getLoadFactor() {
+        return stats.get().getLoadFactor();
+    }
+
+    public long[] getProbeLengths() {
+        return stats.get().getProbeLengths();
+    }
+
+    public long[] getResizeNanos() {
+        return stats.get().getResizeNanos();
+    }
+}
@@ -0,0 +1,30 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * The management interface of the statistics of a map. Every attribute is
+ * read from a fresh snapshot.
+ */
+public interface LongMapStatsMXBean {
+
+    long getGets();
+
+    long getHits();
+
+    long getMisses();
+
+    long getPuts();
+
+    long getRemoves();
+
+    long getResizes();
+
+    long getSize();
+
+    int getCapacity();
+
+    double getLoadFactor();
+
+    long[] getProbeLengths();
+
+    long[] getResizeNanos();
+}
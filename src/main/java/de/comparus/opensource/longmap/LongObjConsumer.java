@@ -0,0 +1,18 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * An operation that accepts a long key and a value and returns no result.
+ *
+ * @param <V> the type of values
+ */
+@FunctionalInterface
+public interface LongObjConsumer<V> {
+
+    /**
+     * Performs this operation on the given key and value.
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    void accept(long key, V value);
+}
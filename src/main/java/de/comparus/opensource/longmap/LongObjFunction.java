@@ -0,0 +1,20 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * A function that accepts a long key and a value and produces a result.
+ *
+ * @param <V> the type of values
+ * @param <R> the type of the result
+ */
+@FunctionalInterface
+public interface LongObjFunction<V, R> {
+
+    /**
+     * Applies this function to the given key and value.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the result
+     */
+    R apply(long key, V value);
+}
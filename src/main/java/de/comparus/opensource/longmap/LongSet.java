@@ -0,0 +1,72 @@
+package de.comparus.opensource.longmap;
+
+import java.util.function.LongConsumer;
+
+/**
+ * A set of values of type long, which stores the values unboxed.
+ */
+public interface LongSet {
+    boolean add(long value);
+    boolean contains(long value);
+    boolean remove(long value);
+
+    boolean isEmpty();
+    long size();
+    void clear();
+
+    long[] toArray();
+    void forEach(LongConsumer action);
+
+    /**
+     * Adds all values of the other set to this set, so that this set
+     * becomes the union of both.
+     *
+     * @param other the set whose values are to be added
+     * @return true if this set changed
+     */
+    default boolean addAll(LongSet other) {
+        boolean[] changed = {false};
+        other.forEach(value -> changed[0] |= add(value));
+        return changed[0];
+    }
+
+    /**
+     * Removes all values which are not in the other set from this set, so
+     * that this set becomes the intersection of both.
+     *
+     * @param other the set whose values are to be retained
+     * @return true if this set changed
+     */
+    default boolean retainAll(LongSet other) {
+        boolean changed = false;
+        for (long value : toArray()) {
+            if (!other.contains(value)) {
+                remove(value);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Removes all values of the other set from this set, so that this set
+     * becomes the difference of both. When the other set is this set, its
+     * values are copied first, as removing them while iterating the set
+     * itself would skip some.
+     *
+     * @param other the set whose values are to be removed
+     * @return true if this set changed
+     */
+    default boolean removeAll(LongSet other) {
+        if (other == this) {
+            boolean changed = false;
+            for (long value : toArray()) {
+                changed |= remove(value);
+            }
+            return changed;
+        }
+        boolean[] changed = {false};
+        other.forEach(value -> changed[0] |= remove(value));
+        return changed[0];
+    }
+}
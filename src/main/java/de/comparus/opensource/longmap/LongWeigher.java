@@ -0,0 +1,19 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * Calculates the weight of an entry of a LongCache.
+ *
+ * @param <V> the type of cached values
+ */
+@FunctionalInterface
+public interface LongWeigher<V> {
+
+    /**
+     * Returns the weight of the entry.
+     *
+     * @param key   the key of the entry
+     * @param value the value of the entry
+     * @return the weight, not negative
+     */
+    long weigh(long key, V value);
+}
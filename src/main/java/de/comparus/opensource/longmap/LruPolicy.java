@@ -0,0 +1,26 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * Least recently used eviction: entries are kept in access order and the
+ * entry at the back is evicted.
+ */
+final class LruPolicy extends CachePolicy {
+
+    private final Queue queue = new Queue();
+
+    void onInsert(int slot, long key) {
+        linkFirst(queue, slot);
+    }
+
+    void onAccess(int slot, long key) {
+        moveToFirst(queue, slot);
+    }
+
+    void onRemove(int slot) {
+        unlink(queue, slot);
+    }
+
+    int victim() {
+        return queue.tail;
+    }
+}
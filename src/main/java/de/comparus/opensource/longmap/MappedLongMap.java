@@ -0,0 +1,328 @@
+package de.comparus.opensource.longmap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A LongMap whose table lives in a memory-mapped file. Opening an existing
+ * file only maps it again, so a map of any size is readable right after a
+ * restart without reloading its entries. The table is mapped in regions of
+ * at most 1 GB to get past the 2 GB limit of a single mapping.
+ * <p>
+ * Changes reach the file through the page cache. Call force to make them
+ * durable at a known point. A resize writes the grown table to a sibling
+ * file and then moves it over the original one, so an interrupted resize
+ * leaves the previous table intact. Keys are always hashed with fmix64,
+ * as their placement is part of the file format. Null values are not permitted.
+ *
+ * @param <V> the type of mapped values
+ */
+public class MappedLongMap<V> extends AbstractBufferLongMap<V> {
+
+    /* ---------------- File layout ---------------- */
+
+    /**
+     * The magic number at the start of the file.
+     */
+    private static final long MAGIC = 0x4C4F4E474D415031L;
+
+    /**
+     * The version of the file layout. Version 2 places keys by their fmix64
+     * hash instead of Long.hashCode.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * The number of bytes reserved for the header before the table.
+     */
+    private static final int HEADER_SIZE = 64;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int SLOT_SIZE_OFFSET = 12;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int SIZE_OFFSET = 20;
+
+    /**
+     * The suffix of the file which receives the table during a resize.
+     */
+    private static final String RESIZE_SUFFIX = ".resize";
+
+    /* ---------------- Fields ---------------- */
+
+    /**
+     * The file of this map.
+     */
+    private final Path file;
+
+    /**
+     * The channel of the file.
+     */
+    private FileChannel channel;
+
+    /**
+     * The mapped header of the file.
+     */
+    private MappedByteBuffer header;
+
+    /**
+     * The channel of the file being filled by a resize.
+     */
+    private FileChannel resizeChannel;
+
+    /**
+     * The mapped header of the file being filled by a resize.
+     */
+    private MappedByteBuffer resizeHeader;
+
+    /* ---------------- Constructors ---------------- */
+
+    /**
+     * Opens the map stored in the specified file, or creates an empty one
+     * with the specified initial capacity if the file is empty or missing.
+     *
+     * @param file            the file of the map
+     * @param codec           the codec of the values
+     * @param initialCapacity the initial capacity of a new map
+     * @param loadFactor      the load factor
+     * @throws IOException              if the file cannot be opened or is not a map
+     *                                  written with a codec of the same width
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *                                  or the load factor is not in (0, 1)
+     */
+    public MappedLongMap(Path file, ValueCodec<V> codec, int initialCapacity, float loadFactor) throws IOException {
+        super(codec, loadFactor, LongHashStrategies.FMIX64);
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        }
+        this.file = file;
+        Files.deleteIfExists(resizeFile());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                int capacity = tableSizeFor(initialCapacity);
+                header = createFile(channel, capacity);
+                attach(mapTable(channel, capacity + 1), capacity, 0);
+            } else {
+                header = openFile(channel);
+                int capacity = header.getInt(CAPACITY_OFFSET);
+                attach(mapTable(channel, capacity + 1), capacity, header.getInt(SIZE_OFFSET));
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the map stored in the specified file, or creates an empty one
+     * with the default initial capacity (16) and load factor (0.75).
+     *
+     * @param file  the file of the map
+     * @param codec the codec of the values
+     * @throws IOException if the file cannot be opened or is not a map
+     *                     written with a codec of the same width
+     */
+    public MappedLongMap(Path file, ValueCodec<V> codec) throws IOException {
+        this(file, codec, DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /* ---------------- Durability ---------------- */
+
+    /**
+     * Writes all changes of the table to the storage device. Once this
+     * method returns, the current state survives a crash of the process
+     * or of the machine.
+     *
+     * @throws IllegalStateException if the map is closed
+     */
+    public void force() {
+        if (chunks == null) {
+            throw new IllegalStateException("Map is closed");
+        }
+        for (ByteBuffer chunk : chunks) {
+            ((MappedByteBuffer) chunk).force();
+        }
+        header.force();
+    }
+
+    /**
+     * Unmaps the file and closes it. Changes which were not forced still
+     * reach the file through the operating system.
+     *
+     * @throws UncheckedIOException if the file cannot be closed
+     */
+    public void close() {
+        if (chunks == null) {
+            return;
+        }
+        super.close();
+        DirectMemory.free(header);
+        header = null;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /* ---------------- Memory ---------------- */
+
+    /**
+     * Maps the table of a new sibling file, which replaces the file of this
+     * map once the resize is complete.
+     *
+     * @param slots the number of slots
+     * @return the mapped buffers
+     * @throws UncheckedIOException if the file cannot be created
+     */
+    ByteBuffer[] allocate(int slots) {
+        try {
+            resizeChannel = FileChannel.open(resizeFile(), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            resizeHeader = createFile(resizeChannel, slots - 1);
+            return mapTable(resizeChannel, slots);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Unmaps the buffers.
+     *
+     * @param buffers the buffers
+     */
+    void release(ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers) {
+            DirectMemory.free(buffer);
+        }
+    }
+
+    /**
+     * Forces the resized table to the storage device and moves its file
+     * over the file of this map.
+     *
+     * @throws UncheckedIOException if the file cannot be replaced
+     */
+    void resized() {
+        try {
+            resizeHeader.putInt(SIZE_OFFSET, size);
+            for (ByteBuffer chunk : chunks) {
+                ((MappedByteBuffer) chunk).force();
+            }
+            resizeHeader.force();
+            Files.move(resizeFile(), file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            DirectMemory.free(header);
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        channel = resizeChannel;
+        header = resizeHeader;
+        resizeChannel = null;
+        resizeHeader = null;
+    }
+
+    /**
+     * Records the number of mappings in the header.
+     */
+    void sizeChanged() {
+        header.putInt(SIZE_OFFSET, size);
+    }
+
+    /* ---------------- Utils Methods ---------------- */
+
+    /**
+     * Returns the file which receives the table during a resize.
+     *
+     * @return the resize file
+     */
+    private Path resizeFile() {
+        return file.resolveSibling(file.getFileName() + RESIZE_SUFFIX);
+    }
+
+    /**
+     * Sizes an empty file for a table of the specified capacity and writes its header.
+     *
+     * @param fileChannel the channel of the file
+     * @param capacity    the capacity of the table
+     * @return the mapped header
+     * @throws IOException if the file cannot be written
+     */
+    private MappedByteBuffer createFile(FileChannel fileChannel, int capacity) throws IOException {
+        long length = HEADER_SIZE;
+        for (long chunkSize : chunkSizes(capacity + 1)) {
+            length += chunkSize;
+        }
+        fileChannel.truncate(0);
+        fileChannel.write(ByteBuffer.allocate(1), length - 1);
+
+        MappedByteBuffer mapped = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        mapped.putLong(MAGIC_OFFSET, MAGIC);
+        mapped.putInt(VERSION_OFFSET, VERSION);
+        mapped.putInt(SLOT_SIZE_OFFSET, slotSize);
+        mapped.putInt(CAPACITY_OFFSET, capacity);
+        mapped.putInt(SIZE_OFFSET, 0);
+        return mapped;
+    }
+
+    /**
+     * Maps and validates the header of an existing file.
+     *
+     * @param fileChannel the channel of the file
+     * @return the mapped header
+     * @throws IOException if the file is not a map written with a codec of the same width
+     */
+    private MappedByteBuffer openFile(FileChannel fileChannel) throws IOException {
+        if (fileChannel.size() < HEADER_SIZE) {
+            throw new IOException("Not a map file: " + file);
+        }
+        MappedByteBuffer mapped = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (mapped.getLong(MAGIC_OFFSET) != MAGIC) {
+            throw new IOException("Not a map file: " + file);
+        }
+        if (mapped.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IOException("Unsupported map file version: " + mapped.getInt(VERSION_OFFSET));
+        }
+        if (mapped.getInt(SLOT_SIZE_OFFSET) != slotSize) {
+            throw new IOException("Map file has slots of " + mapped.getInt(SLOT_SIZE_OFFSET)
+                    + " bytes, the codec needs " + slotSize);
+        }
+        int capacity = mapped.getInt(CAPACITY_OFFSET);
+        if (capacity < 2 || capacity > MAXIMUM_CAPACITY || Integer.bitCount(capacity) != 1) {
+            throw new IOException("Corrupted map file capacity: " + capacity);
+        }
+        return mapped;
+    }
+
+    /**
+     * Maps the table of a file in regions.
+     *
+     * @param fileChannel the channel of the file
+     * @param slots       the number of slots of the table
+     * @return the mapped buffers
+     * @throws IOException if the file cannot be mapped
+     */
+    private ByteBuffer[] mapTable(FileChannel fileChannel, int slots) throws IOException {
+        long[] sizes = chunkSizes(slots);
+        ByteBuffer[] buffers = new ByteBuffer[sizes.length];
+        long position = HEADER_SIZE;
+        for (int i = 0; i < sizes.length; i++) {
+            buffers[i] = fileChannel.map(FileChannel.MapMode.READ_WRITE, position, sizes[i])
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            position += sizes[i];
+        }
+        return buffers;
+    }
+}
@@ -0,0 +1,57 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * A LongMap which keeps its keys in ascending order. keys(), values(),
+ * forEach and cursor() visit the mappings in that order.
+ * <p>
+ * The navigation methods return primitive keys, so they throw
+ * NoSuchElementException where java.util.NavigableMap would return null.
+ *
+ * @param <V> the type of mapped values
+ */
+public interface NavigableLongMap<V> extends LongMap<V> {
+
+    /**
+     * Returns the lowest key.
+     *
+     * @return the lowest key
+     * @throws java.util.NoSuchElementException if the map is empty
+     */
+    long firstKey();
+
+    /**
+     * Returns the highest key.
+     *
+     * @return the highest key
+     * @throws java.util.NoSuchElementException if the map is empty
+     */
+    long lastKey();
+
+    /**
+     * Returns the greatest key less than or equal to the given key.
+     *
+     * @param key the key
+     * @return the greatest key less than or equal to key
+     * @throws java.util.NoSuchElementException if there is no such key
+     */
+    long floorKey(long key);
+
+    /**
+     * Returns the least key greater than or equal to the given key.
+     *
+     * @param key the key
+     * @return the least key greater than or equal to key
+     * @throws java.util.NoSuchElementException if there is no such key
+     */
+    long ceilingKey(long key);
+
+    /**
+     * Performs the given action for each mapping with a key from fromKey,
+     * inclusive, to toKey, exclusive, in ascending key order.
+     *
+     * @param fromKey the low end of the range, inclusive
+     * @param toKey   the high end of the range, exclusive
+     * @param action  the action to be performed for each mapping
+     */
+    void forEachInRange(long fromKey, long toKey, LongObjConsumer<? super V> action);
+}
@@ -0,0 +1,641 @@
+package de.comparus.opensource.longmap;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A LongMap which publishes its changes to listeners, so that caches and
+ * indexes can mirror it incrementally instead of rescanning its keys.
+ * <p>
+ * Every put, remove and clear made through this map is written to a
+ * bounded ring buffer after it was applied to the wrapped map. A dispatch
+ * thread drains the buffer in batches and hands every batch to all
+ * listeners. When the listeners fall behind and the buffer is full, the
+ * changing thread waits for free space, so a slow listener slows down the
+ * writers instead of letting the buffer grow (backpressure). In the
+ * coalescing mode a batch keeps only the last change of every key, so the
+ * further the listeners fall behind, the less work they get per change.
+ * <p>
+ * Changes are serialized on this map, so the order of the changes in the
+ * buffer is the order in which they were applied. Reads go to the wrapped
+ * map directly. A listener receives the changes made after it subscribed;
+ * a mirror which subscribes first and then copies this map converges to
+ * its content. Listeners must not change this map. A listener which
+ * throws is unsubscribed and the exception is passed to the uncaught
+ * exception handler of the dispatch thread.
+ *
+ * @param <V> the type of mapped values
+ */
+public class ObservableLongMap<V> implements LongMap<V>, AutoCloseable {
+
+    /* ---------------- Default values ---------------- */
+
+    /**
+     * The default number of changes the buffer holds.
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 14;
+
+    /**
+     * The default maximum number of changes read from the buffer per batch.
+     */
+    private static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /**
+     * The maximum number of changes the buffer holds, must be a power of two.
+     */
+    private static final int MAXIMUM_BUFFER_SIZE = 1 << 30;
+
+    /**
+     * How long a writer waiting for space in the buffer parks before it
+     * looks again.
+     */
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static final LongMapChanges.Type[] TYPES = LongMapChanges.Type.values();
+
+    /* ---------------- Fields ---------------- */
+
+    /**
+     * The map which holds the mappings.
+     */
+    private final LongMap<V> map;
+
+    /**
+     * The maximum number of changes read from the buffer per batch.
+     */
+    private final int batchSize;
+
+    /**
+     * True if a batch keeps only the last change of every key.
+     */
+    private final boolean coalesce;
+
+    /**
+     * The mask to calculate the slot of a sequence number, equal to the
+     * size of the buffer - 1.
+     */
+    private final int mask;
+
+    /**
+     * The ordinals of the types of the changes in the buffer.
+     */
+    private final byte[] types;
+
+    /**
+     * The keys of the changes in the buffer.
+     */
+    private final long[] keys;
+
+    /**
+     * The values of the changes in the buffer.
+     */
+    private final Object[] values;
+
+    /**
+     * The sequence number of the next change to be written. Only written by
+     * a thread holding the lock of this map, after the slot of the change.
+     */
+    private volatile long published;
+
+    /**
+     * The sequence number of the next change to be read. Only written by
+     * the dispatch thread, after the slot was copied out.
+     */
+    private volatile long consumed;
+
+    /**
+     * True while the dispatch thread is parked because the buffer is empty.
+     * It parks without a timeout, as a writer which finds idle set after
+     * publishing a change unparks it, and so does close; an idle map costs
+     * no CPU.
+     */
+    private volatile boolean idle;
+
+    /**
+     * True once close was called.
+     */
+    private volatile boolean closed;
+
+    /**
+     * The active subscriptions.
+     */
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * The thread which delivers the changes.
+     */
+    private final Thread dispatcher;
+
+    /* ---------------- Constructors ---------------- */
+
+    /**
+     * Wraps the specified map. The buffer size is rounded up to the nearest
+     * power of two, and is at least 2.
+     *
+     * @param map        the map which holds the mappings, must not be changed
+     *                   other than through this map
+     * @param bufferSize the number of changes the buffer holds
+     * @param batchSize  the maximum number of changes read from the buffer per batch
+     * @param coalesce   true to keep only the last change of every key in a batch
+     * @throws IllegalArgumentException if the buffer size or the batch size is not positive
+     */
+    public ObservableLongMap(LongMap<V> map, int bufferSize, int batchSize, boolean coalesce) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Illegal buffer size: " +
+                    bufferSize);
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Illegal batch size: " +
+                    batchSize);
+        }
+        this.map = Objects.requireNonNull(map);
+        this.batchSize = batchSize;
+        this.coalesce = coalesce;
+        int capacity = bufferSize >= MAXIMUM_BUFFER_SIZE
+                ? MAXIMUM_BUFFER_SIZE : (-1 >>> Integer.numberOfLeadingZeros(Math.max(bufferSize, 2) - 1)) + 1;
+        mask = capacity - 1;
+        types = new byte[capacity];
+        keys = new long[capacity];
+        values = new Object[capacity];
+
+        dispatcher = new Thread(this::dispatch, "ObservableLongMap dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Wraps the specified map with a buffer of 16384 changes, batches of at
+     * most 1024 changes and without coalescing.
+     *
+     * @param map the map which holds the mappings, must not be changed
+     *            other than through this map
+     */
+    public ObservableLongMap(LongMap<V> map) {
+        this(map, DEFAULT_BUFFER_SIZE, DEFAULT_BATCH_SIZE, false);
+    }
+
+    /* ---------------- Subscriptions ---------------- */
+
+    /**
+     * Subscribes the listener to the changes made from now on.
+     *
+     * @param listener the listener
+     * @return the subscription, which cancels the delivery to the listener
+     * @throws IllegalStateException if the map is closed
+     */
+    public Subscription subscribe(LongMapListener<? super V> listener) {
+        Objects.requireNonNull(listener);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Map is closed");
+            }
+            Subscription subscription = new Subscription(listener, published);
+            subscriptions.add(subscription);
+            return subscription;
+        }
+    }
+
+    /**
+     * The registration of a listener.
+     */
+    public final class Subscription {
+
+        private final LongMapListener<? super V> listener;
+
+        /**
+         * The sequence number of the first change delivered to the listener.
+         */
+        private final long start;
+
+        private Subscription(LongMapListener<? super V> listener, long start) {
+            this.listener = listener;
+            this.start = start;
+        }
+
+        /**
+         * Stops the delivery of changes to the listener. A batch which is
+         * being delivered may still reach it.
+         */
+        public void cancel() {
+            subscriptions.remove(this);
+        }
+
+        /**
+         * Returns true if the delivery of changes to the listener was stopped.
+         *
+         * @return true if this subscription was cancelled
+         */
+        public boolean isCancelled() {
+            return !subscriptions.contains(this);
+        }
+    }
+
+    /* ---------------- Main Methods ---------------- */
+
+    /**
+     * Associates the specified value with the specified key in this map and
+     * publishes a PUT.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with key, or null if there was no mapping for key
+     * @throws IllegalStateException if the map is closed
+     */
+    public synchronized V put(long key, V value) {
+        checkOpen();
+        V previous = map.put(key, value);
+        publish(LongMapChanges.Type.PUT, key, value);
+        return previous;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this map
+     * contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or null if this map contains no mapping for the key
+     */
+    public V get(long key) {
+        return map.get(key);
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present and
+     * publishes a REMOVE.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     * @throws IllegalStateException if the map is closed
+     */
+    public synchronized V remove(long key) {
+        checkOpen();
+        if (!map.containsKey(key)) {
+            return null;
+        }
+        V previous = map.remove(key);
+        publish(LongMapChanges.Type.REMOVE, key, null);
+        return previous;
+    }
+
+    /**
+     * Returns true if this map contains no key-value mappings.
+     *
+     * @return true if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the specified key.
+     *
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for the specified key
+     */
+    public boolean containsKey(long key) {
+        return map.containsKey(key);
+    }
+
+    /**
+     * Returns true if this map maps one or more keys to the specified value.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return true if this map maps one or more keys to the specified value
+     */
+    public boolean containsValue(V value) {
+        return map.containsValue(value);
+    }
+
+    /**
+     * Returns all the keys contained in this map.
+     *
+     * @return array of keys
+     */
+    public long[] keys() {
+        return map.keys();
+    }
+
+    /**
+     * Returns all the values contained in this map, in the order of keys().
+     *
+     * @return array of values or null if this map contains no values
+     */
+    public V[] values() {
+        return map.values();
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public long size() {
+        return map.size();
+    }
+
+    /**
+     * Removes all of the mappings from this map and publishes a CLEAR.
+     *
+     * @throws IllegalStateException if the map is closed
+     */
+    public synchronized void clear() {
+        checkOpen();
+        map.clear();
+        publish(LongMapChanges.Type.CLEAR, 0L, null);
+    }
+
+    /* ---------------- Iteration ---------------- */
+
+    /**
+     * Performs the given action for each mapping of this map.
+     *
+     * @param action the action to be performed for each mapping
+     */
+    public void forEach(LongObjConsumer<? super V> action) {
+        map.forEach(action);
+    }
+
+    /**
+     * Returns a cursor over the mappings of this map. Removing through the
+     * cursor publishes a REMOVE.
+     *
+     * @return a new cursor
+     */
+    public LongMapCursor<V> cursor() {
+        LongMapCursor<V> mapCursor = map.cursor();
+        return new LongMapCursor<V>() {
+            public boolean advance() {
+                return mapCursor.advance();
+            }
+
+            public long key() {
+                return mapCursor.key();
+            }
+
+            public V value() {
+                return mapCursor.value();
+            }
+
+            public void remove() {
+                synchronized (ObservableLongMap.this) {
+                    checkOpen();
+                    long key = mapCursor.key();
+                    mapCursor.remove();
+                    publish(LongMapChanges.Type.REMOVE, key, null);
+                }
+            }
+
+            public void reset() {
+                mapCursor.reset();
+            }
+        };
+    }
+
+    /* ---------------- Lifecycle ---------------- */
+
+    /**
+     * Stops accepting changes, delivers the changes still in the buffer and
+     * stops the dispatch thread. Waits for the delivery unless it is called
+     * by a listener.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        LockSupport.unpark(dispatcher);
+        if (Thread.currentThread() != dispatcher) {
+            boolean interrupted = false;
+            while (dispatcher.isAlive()) {
+                try {
+                    dispatcher.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /* ---------------- Buffer ---------------- */
+
+    /**
+     * Writes a change to the buffer, waiting for free space while the
+     * buffer is full. Called with the lock of this map.
+     *
+     * @param type  the kind of the change
+     * @param key   the key
+     * @param value the new value of a PUT
+     */
+    private void publish(LongMapChanges.Type type, long key, V value) {
+        long sequence = published;
+        while (sequence - consumed > mask) {
+            if (Thread.currentThread() == dispatcher) {
+                throw new IllegalStateException("Listener changed the observed map");
+            }
+            LockSupport.unpark(dispatcher);
+            LockSupport.parkNanos(this, PARK_NANOS);
+        }
+        int slot = (int) sequence & mask;
+        types[slot] = (byte) type.ordinal();
+        keys[slot] = key;
+        values[slot] = value;
+        published = sequence + 1;
+        if (idle) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    /**
+     * The loop of the dispatch thread: copies batches out of the buffer,
+     * frees their slots and delivers them, until the map is closed and the
+     * buffer is empty.
+     */
+    private void dispatch() {
+        Batch batch = new Batch(batchSize);
+        LongIntMapImpl positions = coalesce ? new LongIntMapImpl(batchSize * 2, 0.5f, -1) : null;
+        while (true) {
+            long from = consumed;
+            long available = published;
+            if (available == from) {
+                if (closed && published == from) {
+                    return;
+                }
+                idle = true;
+                if (published == from && !closed) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+                continue;
+            }
+
+            long to = Math.min(available, from + batchSize);
+            batch.size = 0;
+            if (positions != null) {
+                positions.clear();
+            }
+            for (long sequence = from; sequence < to; sequence++) {
+                int slot = (int) sequence & mask;
+                batch.add(types[slot], keys[slot], values[slot], sequence, positions);
+                values[slot] = null;
+            }
+            consumed = to;
+            deliver(batch);
+            Arrays.fill(batch.values, 0, batch.size, null);
+        }
+    }
+
+    /**
+     * Hands the batch to every subscription, without the changes made
+     * before a subscription started.
+     *
+     * @param batch the batch
+     */
+    @SuppressWarnings("unchecked")
+    private void deliver(Batch batch) {
+        for (Subscription subscription : subscriptions) {
+            LongMapChanges<V> changes = batch;
+            if (subscription.start > batch.minimumSequence) {
+                changes = batch.since(subscription.start);
+                if (changes.size() == 0) {
+                    continue;
+                }
+            }
+            try {
+                ((LongMapListener<V>) subscription.listener).onChanges(changes);
+            } catch (RuntimeException | Error e) {
+                subscription.cancel();
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+
+    /**
+     * Throws if the map does not accept changes.
+     *
+     * @throws IllegalStateException if the map is closed
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Map is closed");
+        }
+    }
+
+    /**
+     * The changes copied out of the buffer for one delivery.
+     */
+    private final class Batch implements LongMapChanges<V> {
+
+        private final byte[] types;
+        private final long[] keys;
+        private final Object[] values;
+
+        /**
+         * The sequence numbers of the changes.
+         */
+        private final long[] sequences;
+
+        private int size;
+
+        /**
+         * The smallest sequence number in this batch.
+         */
+        private long minimumSequence;
+
+        private Batch(int capacity) {
+            types = new byte[capacity];
+            keys = new long[capacity];
+            values = new Object[capacity];
+            sequences = new long[capacity];
+        }
+
+        /**
+         * Appends a change. When coalescing, a change replaces the earlier
+         * change of its key in this batch, and a CLEAR drops all earlier
+         * changes.
+         *
+         * @param type      the ordinal of the kind of the change
+         * @param key       the key
+         * @param value     the value
+         * @param sequence  the sequence number of the change
+         * @param positions the positions of the keys in this batch, or null
+         *                  if the changes are not coalesced
+         */
+        void add(byte type, long key, Object value, long sequence, LongIntMapImpl positions) {
+            if (positions != null) {
+                if (type == LongMapChanges.Type.CLEAR.ordinal()) {
+                    size = 0;
+                    positions.clear();
+                } else {
+                    int position = positions.get(key);
+                    if (position >= 0) {
+                        types[position] = type;
+                        values[position] = value;
+                        sequences[position] = sequence;
+                        return;
+                    }
+                    positions.put(key, size);
+                }
+            }
+            if (size == 0) {
+                minimumSequence = sequence;
+            }
+            types[size] = type;
+            keys[size] = key;
+            values[size] = value;
+            sequences[size] = sequence;
+            size++;
+        }
+
+        /**
+         * Returns a copy of this batch without the changes before the
+         * specified sequence number.
+         *
+         * @param start the sequence number of the first change to keep
+         * @return the copy
+         */
+        Batch since(long start) {
+            Batch copy = new Batch(size);
+            for (int i = 0; i < size; i++) {
+                if (sequences[i] >= start) {
+                    copy.add(types[i], keys[i], values[i], sequences[i], null);
+                }
+            }
+            return copy;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public Type type(int index) {
+            checkIndex(index);
+            return TYPES[types[index]];
+        }
+
+        public long key(int index) {
+            checkIndex(index);
+            return keys[index];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V value(int index) {
+            checkIndex(index);
+            return (V) values[index];
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package de.comparus.opensource.longmap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A LongMap which keeps its keys and values outside of the Java heap, in
+ * direct buffers. Values are stored in fixed-width slots through a
+ * ValueCodec, so the garbage collector never scans the entries of this map.
+ * <p>
+ * The memory is released by close, or when the map becomes unreachable if
+ * close is never called. Null values are not permitted.
+ *
+ * @param <V> the type of mapped values
+ */
+public class OffHeapLongMap<V> extends AbstractBufferLongMap<V> {
+
+    /* ---------------- Constructors ---------------- */
+
+    /**
+     * Constructs an empty OffHeapLongMap with the specified initial capacity,
+     * load factor and hash strategy. The capacity is rounded up to the
+     * nearest power of two.
+     *
+     * @param codec           the codec of the values
+     * @param initialCapacity the initial capacity
+     * @param loadFactor      the load factor
+     * @param hashStrategy    the strategy which hashes the keys
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *                                  or the load factor is not in (0, 1)
+     * @throws NullPointerException     if the hash strategy is null
+     */
+    public OffHeapLongMap(ValueCodec<V> codec, int initialCapacity, float loadFactor,
+                          LongHashStrategy hashStrategy) {
+        super(codec, loadFactor, hashStrategy);
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        }
+        int capacity = tableSizeFor(initialCapacity);
+        attach(allocate(capacity + 1), capacity, 0);
+    }
+
+    /**
+     * Constructs an empty OffHeapLongMap with the specified initial capacity
+     * and the specified load factor, which hashes keys with fmix64. The
+     * capacity is rounded up to the nearest power of two.
+     *
+     * @param codec           the codec of the values
+     * @param initialCapacity the initial capacity
+     * @param loadFactor      the load factor
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *                                  or the load factor is not in (0, 1)
+     */
+    public OffHeapLongMap(ValueCodec<V> codec, int initialCapacity, float loadFactor) {
+        this(codec, initialCapacity, loadFactor, LongHashStrategies.FMIX64);
+    }
+
+    /**
+     * Constructs an empty OffHeapLongMap with the specified initial capacity
+     * and the default load factor (0.75).
+     *
+     * @param codec           the codec of the values
+     * @param initialCapacity the initial capacity
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public OffHeapLongMap(ValueCodec<V> codec, int initialCapacity) {
+        this(codec, initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty OffHeapLongMap with the default initial capacity (16)
+     * and the default load factor (0.75).
+     *
+     * @param codec the codec of the values
+     */
+    public OffHeapLongMap(ValueCodec<V> codec) {
+        this(codec, DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /* ---------------- Memory ---------------- */
+
+    /**
+     * Allocates zeroed direct buffers for the specified number of slots.
+     *
+     * @param slots the number of slots
+     * @return the buffers
+     */
+    ByteBuffer[] allocate(int slots) {
+        long[] sizes = chunkSizes(slots);
+        ByteBuffer[] buffers = new ByteBuffer[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            buffers[i] = ByteBuffer.allocateDirect((int) sizes[i]).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return buffers;
+    }
+
+    /**
+     * Frees the direct buffers right away.
+     *
+     * @param buffers the buffers
+     */
+    void release(ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers) {
+            DirectMemory.free(buffer);
+        }
+    }
+}
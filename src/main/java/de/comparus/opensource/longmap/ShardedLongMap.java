@@ -0,0 +1,579 @@
+package de.comparus.opensource.longmap;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.LongFunction;
+import java.util.stream.IntStream;
+
+/**
+ * A thread-safe map with keys of type long which partitions its keys across
+ * a fixed number of independent LongMapImpl shards. A key is routed by the
+ * high bits of its fmix64 hash, while the shard places it by the low bits,
+ * so both levels spread keys evenly.
+ * <p>
+ * Every shard has its own lock and its own table. Writes to different
+ * shards proceed in parallel, and a resize copies only the shard which
+ * grows, so the pause is 1/N of the one of a single table of the same size.
+ * <p>
+ * Operations spanning all shards, like size, keys or forEach, visit the
+ * shards one after another, locking each in turn. They are weakly
+ * consistent: every shard is seen in a consistent state, but the shards
+ * are not seen at the same instant. Null values are permitted.
+ *
+ * @param <V> the type of mapped values
+ */
+public class ShardedLongMap<V> implements LongMap<V> {
+
+    /* ---------------- Default values ---------------- */
+
+    /**
+     * The default initial capacity of a shard.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The default load factor.
+     */
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The maximum number of shards, must be a power of two.
+     */
+    private static final int MAXIMUM_SHARDS = 1 << 16;
+
+    /**
+     * The default number of shards: four per CPU, so that threads rarely
+     * contend for a shard.
+     */
+    private static final int DEFAULT_SHARDS =
+            shardCountFor(Runtime.getRuntime().availableProcessors() * 4);
+
+    /* ---------------- Fields ---------------- */
+
+    /**
+     * The shards, which also serve as their locks.
+     */
+    private final LongMapImpl<V>[] shards;
+
+    /**
+     * The number of bits of the hash which are shifted away to select a shard.
+     */
+    private final int shift;
+
+    /* ---------------- Constructors ---------------- */
+
+    /**
+     * Constructs an empty ShardedLongMap with the specified number of shards,
+     * initial capacity of each shard and load factor. The number of shards
+     * is rounded up to the nearest power of two.
+     *
+     * @param shardCount      the number of shards
+     * @param initialCapacity the initial capacity of each shard
+     * @param loadFactor      the load factor of the shards
+     * @throws IllegalArgumentException if the number of shards is not
+     *                                  positive, the initial capacity is
+     *                                  negative or the load factor is not in (0, 1)
+     */
+    public ShardedLongMap(int shardCount, int initialCapacity, float loadFactor) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Illegal shard count: " + shardCount);
+        }
+        int count = shardCountFor(shardCount);
+        @SuppressWarnings("unchecked")
+        LongMapImpl<V>[] array = (LongMapImpl<V>[]) new LongMapImpl<?>[count];
+        shards = array;
+        for (int i = 0; i < count; i++) {
+            shards[i] = new LongMapImpl<>(initialCapacity, loadFactor);
+        }
+        shift = Integer.SIZE - Integer.numberOfTrailingZeros(count);
+    }
+
+    /**
+     * Constructs an empty ShardedLongMap with the specified number of shards
+     * and the default initial capacity (16) and load factor (0.75) of each shard.
+     *
+     * @param shardCount the number of shards
+     * @throws IllegalArgumentException if the number of shards is not positive
+     */
+    public ShardedLongMap(int shardCount) {
+        this(shardCount, DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty ShardedLongMap with four shards per available CPU.
+     */
+    public ShardedLongMap() {
+        this(DEFAULT_SHARDS);
+    }
+
+    /* ---------------- Main Methods ---------------- */
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with key, or
+     * null if there was no mapping for key
+     */
+    public V put(long key, V value) {
+        LongMapImpl<V> shard = shardFor(key);
+        synchronized (shard) {
+            return shard.put(key, value);
+        }
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this map
+     * contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or null if this map contains no mapping for the key
+     */
+    public V get(long key) {
+        LongMapImpl<V> shard = shardFor(key);
+        synchronized (shard) {
+            return shard.get(key);
+        }
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    public V remove(long key) {
+        LongMapImpl<V> shard = shardFor(key);
+        synchronized (shard) {
+            return shard.remove(key);
+        }
+    }
+
+    /**
+     * Returns true if this map contains no key-value mappings.
+     *
+     * @return true if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        for (LongMapImpl<V> shard : shards) {
+            synchronized (shard) {
+                if (!shard.isEmpty()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the specified key.
+     *
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for the specified key
+     */
+    public boolean containsKey(long key) {
+        LongMapImpl<V> shard = shardFor(key);
+        synchronized (shard) {
+            return shard.containsKey(key);
+        }
+    }
+
+    /**
+     * Returns true if this map maps one or more keys to the specified value.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return true if this map maps one or more keys to the specified value
+     */
+    public boolean containsValue(V value) {
+        for (LongMapImpl<V> shard : shards) {
+            synchronized (shard) {
+                if (shard.containsValue(value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns all the keys contained in this map, shard by shard.
+     *
+     * @return array of keys
+     */
+    public long[] keys() {
+        long[][] parts = new long[shards.length][];
+        int total = 0;
+        for (int i = 0; i < shards.length; i++) {
+            synchronized (shards[i]) {
+                parts[i] = shards[i].keys();
+            }
+            total += parts[i].length;
+        }
+        long[] keySet = new long[total];
+        int position = 0;
+        for (long[] part : parts) {
+            System.arraycopy(part, 0, keySet, position, part.length);
+            position += part.length;
+        }
+        return keySet;
+    }
+
+    /**
+     * Returns all the values contained in this map, shard by shard and in
+     * the order of {@link #keys()}. The type of the array is the class of
+     * the first non-null value.
+     *
+     * @return array of values or null if this map contains no values
+     */
+    @SuppressWarnings("unchecked")
+    public V[] values() {
+        Object[][] parts = new Object[shards.length][];
+        int total = 0;
+        Object genericValue = null;
+        for (int i = 0; i < shards.length; i++) {
+            Object[] part = new Object[0];
+            synchronized (shards[i]) {
+                V[] shardValues = shards[i].values();
+                if (shardValues != null) {
+                    part = shardValues;
+                } else if (!shards[i].isEmpty()) {
+                    part = new Object[(int) shards[i].size()];
+                }
+            }
+            for (int j = 0; genericValue == null && j < part.length; j++) {
+                genericValue = part[j];
+            }
+            parts[i] = part;
+            total += part.length;
+        }
+        if (genericValue == null) {
+            return null;
+        }
+        V[] valuesSet = (V[]) Array.newInstance(genericValue.getClass(), total);
+        int position = 0;
+        for (Object[] part : parts) {
+            System.arraycopy(part, 0, valuesSet, position, part.length);
+            position += part.length;
+        }
+        return valuesSet;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map, summed over the
+     * shards one after another.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public long size() {
+        long sum = 0;
+        for (LongMapImpl<V> shard : shards) {
+            synchronized (shard) {
+                sum += shard.size();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Removes all of the mappings from this map, shard by shard.
+     */
+    public void clear() {
+        for (LongMapImpl<V> shard : shards) {
+            synchronized (shard) {
+                shard.clear();
+            }
+        }
+    }
+
+    /**
+     * Rebuilds every shard at the smallest capacity which holds its
+     * mappings, one shard at a time, so only one shard is locked at once.
+     */
+    public void trimToSize() {
+        for (LongMapImpl<V> shard : shards) {
+            synchronized (shard) {
+                shard.trimToSize();
+            }
+        }
+    }
+
+    /* ---------------- Atomic Methods ---------------- */
+
+    /**
+     * Returns the value to which the specified key is mapped, or the
+     * default value if this map contains no mapping for the key.
+     *
+     * @param key          the key whose associated value is to be returned
+     * @param defaultValue the value to return if the key is absent
+     * @return the value mapped to key, or defaultValue
+     */
+    public V getOrDefault(long key, V defaultValue) {
+        LongMapImpl<V> shard = shardFor(key);
+        synchronized (shard) {
+            return shard.getOrDefault(key, defaultValue);
+        }
+    }
+
+    /**
+     * Associates the specified value with the specified key unless the key
+     * is already mapped to a non-null value, atomically.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the current value associated with key, or null if the value has been put
+     */
+    public V putIfAbsent(long key, V value) {
+        LongMapImpl<V> shard = shardFor(key);
+        synchronized (shard) {
+            return shard.putIfAbsent(key, value);
+        }
+    }
+
+    /**
+     * Atomically computes the value of a key which is not mapped to a
+     * non-null value. The shard of the key stays locked while the function
+     * runs, so the function should be short and must not access this map.
+     *
+     * @param key             key with which the computed value is to be associated
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value associated with key,
+     * or null if the computed value is null
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        LongMapImpl<V> shard = shardFor(key);
+        synchronized (shard) {
+            return shard.computeIfAbsent(key, mappingFunction);
+        }
+    }
+
+    /**
+     * Atomically recomputes the value of a key mapped to a non-null value,
+     * with the shard of the key locked like in computeIfAbsent.
+     *
+     * @param key               key whose value is to be recomputed
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with key, or null if none
+     */
+    public V computeIfPresent(long key, LongObjFunction<? super V, ? extends V> remappingFunction) {
+        LongMapImpl<V> shard = shardFor(key);
+        synchronized (shard) {
+            return shard.computeIfPresent(key, remappingFunction);
+        }
+    }
+
+    /**
+     * Atomically computes the value of a key from its current value, with
+     * the shard of the key locked like in computeIfAbsent.
+     *
+     * @param key               key whose value is to be computed
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with key, or null if none
+     */
+    public V compute(long key, LongObjFunction<? super V, ? extends V> remappingFunction) {
+        LongMapImpl<V> shard = shardFor(key);
+        synchronized (shard) {
+            return shard.compute(key, remappingFunction);
+        }
+    }
+
+    /**
+     * Atomically merges the given value into the value of a key, with the
+     * shard of the key locked like in computeIfAbsent.
+     *
+     * @param key               key with which the resulting value is to be associated
+     * @param value             the value to use if absent
+     * @param remappingFunction the function to recompute a value if present
+     * @return the new value associated with key, or null if none
+     */
+    public V merge(long key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        LongMapImpl<V> shard = shardFor(key);
+        synchronized (shard) {
+            return shard.merge(key, value, remappingFunction);
+        }
+    }
+
+    /* ---------------- Iteration ---------------- */
+
+    /**
+     * Performs the given action for each mapping of this map, shard by
+     * shard. A shard stays locked while the action runs for its mappings,
+     * so the action must not access other shards of this map.
+     *
+     * @param action the action to be performed for each mapping
+     */
+    public void forEach(LongObjConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        for (LongMapImpl<V> shard : shards) {
+            synchronized (shard) {
+                shard.forEach(action);
+            }
+        }
+    }
+
+    /**
+     * Performs the given action for each mapping of this map. If the map
+     * holds at least parallelismThreshold mappings, the shards are
+     * processed in parallel on the common ForkJoinPool, each under its own
+     * lock, so the action must be safe to call from several threads at once.
+     *
+     * @param parallelismThreshold the number of mappings from which the
+     *                             operation runs in parallel, Long.MAX_VALUE
+     *                             to always run sequentially
+     * @param action               the action to be performed for each mapping
+     */
+    public void forEach(long parallelismThreshold, LongObjConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        if (parallelismThreshold == Long.MAX_VALUE || size() < parallelismThreshold) {
+            forEach(action);
+            return;
+        }
+        IntStream.range(0, shards.length).parallel().forEach(i -> {
+            LongMapImpl<V> shard = shards[i];
+            synchronized (shard) {
+                shard.forEach(action);
+            }
+        });
+    }
+
+    /**
+     * Returns a weakly consistent cursor over the mappings of this map. The
+     * cursor copies the mappings of one shard at a time, so it never throws
+     * ConcurrentModificationException and does not hold any lock between
+     * calls. Removal through the cursor removes the current key from the map.
+     *
+     * @return a new cursor
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A cursor which copies the mappings of the next shard once it has
+     * visited all mappings of the current one.
+     */
+    private final class Cursor implements LongMapCursor<V> {
+
+        private int shardIndex;
+        private long[] keys;
+        private Object[] values;
+        private int count;
+        private int index;
+        private boolean current;
+
+        private Cursor() {
+            reset();
+        }
+
+        public void reset() {
+            shardIndex = 0;
+            count = 0;
+            index = -1;
+            current = false;
+        }
+
+        public boolean advance() {
+            while (++index >= count) {
+                if (shardIndex == shards.length) {
+                    index = count;
+                    return current = false;
+                }
+                load(shards[shardIndex++]);
+            }
+            return current = true;
+        }
+
+        public long key() {
+            checkCurrent();
+            return keys[index];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V value() {
+            checkCurrent();
+            return (V) values[index];
+        }
+
+        public void remove() {
+            checkCurrent();
+            ShardedLongMap.this.remove(keys[index]);
+            current = false;
+        }
+
+        /**
+         * Copies the mappings of a shard.
+         *
+         * @param shard the shard
+         */
+        private void load(LongMapImpl<V> shard) {
+            synchronized (shard) {
+                count = (int) shard.size();
+                if (keys == null || keys.length < count) {
+                    keys = new long[count];
+                    values = new Object[count];
+                }
+                int[] position = {0};
+                shard.forEach((key, value) -> {
+                    keys[position[0]] = key;
+                    values[position[0]++] = value;
+                });
+            }
+            Arrays.fill(values, count, values.length, null);
+            index = -1;
+        }
+
+        private void checkCurrent() {
+            if (!current) {
+                throw new IllegalStateException("Cursor does not point to a mapping");
+            }
+        }
+    }
+
+    /* ---------------- Sharding ---------------- */
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return the number of shards
+     */
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns the index of the shard which holds the specified key.
+     *
+     * @param key the key
+     * @return the index of the shard
+     */
+    int shardIndex(long key) {
+        return (LongHashStrategies.FMIX64.hash(key) >>> shift) & (shards.length - 1);
+    }
+
+    /* ---------------- Utils Methods ---------------- */
+
+    /**
+     * Returns the shard which holds the specified key.
+     *
+     * @param key the key
+     * @return the shard
+     */
+    private LongMapImpl<V> shardFor(long key) {
+        return shards[shardIndex(key)];
+    }
+
+    /**
+     * Returns a power of two number of shards for the given count.
+     *
+     * @param count the requested number of shards
+     * @return the smallest power of two not less than count
+     */
+    private static int shardCountFor(int count) {
+        if (count >= MAXIMUM_SHARDS) {
+            return MAXIMUM_SHARDS;
+        }
+        return count <= 1 ? 1 : Integer.highestOneBit(count - 1) << 1;
+    }
+}
@@ -0,0 +1,73 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * Collects the statistics of a single-threaded map. The counters are plain
+ * fields, so the recording costs a few increments.
+ */
+final class StatsRecorder {
+
+    private long gets;
+    private long hits;
+    private long puts;
+    private long removes;
+    private long resizes;
+    private final long[] probeLengths = new long[LongMapStats.HISTOGRAM_BUCKETS];
+    private final long[] resizeNanos = new long[LongMapStats.HISTOGRAM_BUCKETS];
+
+    /**
+     * Records a lookup.
+     *
+     * @param hit true if the lookup found a mapping
+     */
+    void get(boolean hit) {
+        gets++;
+        if (hit) {
+            hits++;
+        }
+    }
+
+    /**
+     * Records a put.
+     */
+    void put() {
+        puts++;
+    }
+
+    /**
+     * Records a remove.
+     */
+    void remove() {
+        removes++;
+    }
+
+    /**
+     * Records the number of slots inspected by an operation.
+     *
+     * @param length the probe length
+     */
+    void probe(int length) {
+        probeLengths[LongMapStats.bucket(length)]++;
+    }
+
+    /**
+     * Records a resize.
+     *
+     * @param nanos the duration of the resize
+     */
+    void resize(long nanos) {
+        resizes++;
+        resizeNanos[LongMapStats.bucket(Math.max(nanos, 0L))]++;
+    }
+
+    /**
+     * Returns a snapshot of the statistics.
+     *
+     * @param size     the current number of mappings
+     * @param capacity the current capacity of the table
+     * @return the snapshot
+     */
+    LongMapStats snapshot(long size, int capacity) {
+        return new LongMapStats(gets, hits, puts, removes, resizes, size, capacity,
+                probeLengths.clone(), resizeNanos.clone());
+    }
+}
@@ -0,0 +1,722 @@
+package de.comparus.opensource.longmap;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Objects;
+
+/**
+ * A hash map with keys of type long in the layout of a Swiss table. The
+ * slots are grouped by eight, and each group has a word of eight one-byte
+ * control tags: EMPTY, DELETED or, for a slot in use, the seven top bits
+ * of the hash of its key. A lookup compares all tags of a group with the
+ * tag of the key at once using SWAR (SIMD within a register) arithmetic on
+ * the control word, so it reads a key only when its tag matches, which
+ * makes one key read per hit and none per miss the common case even at
+ * high load factors. The groups are probed quadratically.
+ * <p>
+ * Removed slots become DELETED tombstones unless their group has an EMPTY
+ * slot, as no probe passes such a group. Tombstones are purged when the
+ * table runs out of EMPTY slots. Any key, including 0, and null values are
+ * permitted. The map is not synchronized and its iteration is fail-fast.
+ *
+ * @param <V> the type of mapped values
+ */
+public class SwissLongMap<V> implements LongMap<V> {
+
+    /* ---------------- Default values ---------------- */
+
+    /**
+     * The default initial capacity.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The default load factor, which the group probing handles well.
+     */
+    private static final float DEFAULT_LOAD_FACTOR = 0.875f;
+
+    /**
+     * The maximum capacity of the table, must be a power of two.
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The number of slots per group, one per byte of a control word.
+     */
+    private static final int GROUP_WIDTH = 8;
+
+    /**
+     * The control tag of an empty slot.
+     */
+    private static final long EMPTY = 0x80L;
+
+    /**
+     * The control tag of a removed slot.
+     */
+    private static final long DELETED = 0xFEL;
+
+    /**
+     * The lowest bit of every byte of a control word.
+     */
+    private static final long LSBS = 0x0101010101010101L;
+
+    /**
+     * The highest bit of every byte of a control word.
+     */
+    private static final long MSBS = 0x8080808080808080L;
+
+    /**
+     * A control word of eight EMPTY tags.
+     */
+    private static final long EMPTY_GROUP = EMPTY * LSBS;
+
+    /* ---------------- Fields ---------------- */
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    private int size;
+
+    /**
+     * The load factor for this map.
+     */
+    private final float loadFactor;
+
+    /**
+     * The number of EMPTY slots which may still be filled before the table
+     * is rebuilt.
+     */
+    private int growthLeft;
+
+    /**
+     * The mask to calculate the index of a group, always equal to the
+     * number of groups - 1.
+     */
+    private int groupMask;
+
+    /**
+     * The control words, one per group, the tag of slot i of a group in
+     * byte i.
+     */
+    private long[] control;
+
+    /**
+     * The keys of this map, the slots of group g at g * 8 until g * 8 + 8.
+     */
+    private long[] keys;
+
+    /**
+     * The values of this map, parallel to the keys.
+     */
+    private Object[] values;
+
+    /**
+     * The number of times this map has been structurally modified.
+     */
+    private int modCount;
+
+    /* ---------------- Constructors ---------------- */
+
+    /**
+     * Constructs an empty SwissLongMap with the specified initial capacity
+     * and load factor. The capacity is rounded up to the nearest power of
+     * two and at least one group.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor      the load factor
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *                                  or the load factor is not in (0, 1)
+     */
+    public SwissLongMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        }
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor)) {
+            throw new IllegalArgumentException("Illegal load factor: " +
+                    loadFactor);
+        }
+        this.loadFactor = loadFactor;
+        allocate(tableSizeFor(initialCapacity));
+    }
+
+    /**
+     * Constructs an empty SwissLongMap with the specified initial capacity
+     * and the default load factor (0.875).
+     *
+     * @param initialCapacity the initial capacity
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public SwissLongMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty SwissLongMap with the default initial capacity (16)
+     * and the default load factor (0.875).
+     */
+    public SwissLongMap() {
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /* ---------------- Main Methods ---------------- */
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        int hash = hash(key);
+        int index = find(key, hash);
+        if (index >= 0) {
+            V previous = (V) values[index];
+            values[index] = value;
+            return previous;
+        }
+        index = -index - 1;
+        if (growthLeft == 0 && tagAt(index) == EMPTY) {
+            rehash();
+            index = insertionSlot(hash);
+        }
+        if (tagAt(index) == EMPTY) {
+            growthLeft--;
+        }
+        setTag(index, tagOf(hash));
+        keys[index] = key;
+        values[index] = value;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this map
+     * contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or null if this map contains no mapping for the key
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V value = (V) values[index];
+        erase(index);
+        modCount++;
+        return value;
+    }
+
+    /**
+     * Returns true if this map contains no key-value mappings.
+     *
+     * @return true if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the specified key.
+     *
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for the specified key
+     */
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Returns true if this map maps one or more keys to the specified value.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return true if this map maps one or more keys to the specified value
+     */
+    public boolean containsValue(V value) {
+        for (int group = 0; group < control.length; group++) {
+            for (long full = matchFull(control[group]); full != 0; full &= full - 1) {
+                if (Objects.equals(value, values[slot(group, full)])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns all the keys contained in this map.
+     *
+     * @return array of keys
+     */
+    public long[] keys() {
+        long[] keySet = new long[size];
+        int position = 0;
+        for (int group = 0; group < control.length; group++) {
+            for (long full = matchFull(control[group]); full != 0; full &= full - 1) {
+                keySet[position++] = keys[slot(group, full)];
+            }
+        }
+        return keySet;
+    }
+
+    /**
+     * Returns all the values contained in this map, in the order of
+     * {@link #keys()}. The type of the array is the class of the first
+     * non-null value.
+     *
+     * @return array of values or null if this map contains no values
+     */
+    @SuppressWarnings("unchecked")
+    public V[] values() {
+        V[] valuesSet = null;
+        int position = 0;
+        for (int group = 0; group < control.length; group++) {
+            for (long full = matchFull(control[group]); full != 0; full &= full - 1) {
+                Object value = values[slot(group, full)];
+                if (valuesSet == null && value != null) {
+                    valuesSet = (V[]) Array.newInstance(value.getClass(), size);
+                }
+                if (valuesSet != null) {
+                    valuesSet[position] = (V) value;
+                }
+                position++;
+            }
+        }
+        return valuesSet;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     */
+    public void clear() {
+        if (size == 0 && growthLeft == maxGrowth(keys.length)) {
+            return;
+        }
+        size = 0;
+        growthLeft = maxGrowth(keys.length);
+        Arrays.fill(control, EMPTY_GROUP);
+        Arrays.fill(values, null);
+        modCount++;
+    }
+
+    /* ---------------- Iteration ---------------- */
+
+    /**
+     * Performs the given action for each mapping of this map.
+     *
+     * @param action the action to be performed for each mapping
+     * @throws ConcurrentModificationException if the action structurally modifies this map
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(LongObjConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        long[] words = control;
+        for (int group = 0; group < words.length && modCount == expectedModCount; group++) {
+            for (long full = matchFull(words[group]); full != 0 && modCount == expectedModCount; full &= full - 1) {
+                int index = slot(group, full);
+                action.accept(keys[index], (V) values[index]);
+            }
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Returns a cursor over the mappings of this map. Removing through the
+     * cursor only retags the slot, so it never moves other mappings.
+     *
+     * @return a new cursor
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A cursor over the slots of the table.
+     */
+    private class Cursor implements LongMapCursor<V> {
+
+        /**
+         * The index of the current slot, or -1 before the first one.
+         */
+        private int index;
+
+        /**
+         * True if the cursor points to a mapping not removed yet.
+         */
+        private boolean current;
+
+        /**
+         * The modCount this cursor is in sync with.
+         */
+        private int expectedModCount;
+
+        private Cursor() {
+            reset();
+        }
+
+        public void reset() {
+            index = -1;
+            current = false;
+            expectedModCount = modCount;
+        }
+
+        public boolean advance() {
+            checkModCount();
+            int group = (index + 1) / GROUP_WIDTH;
+            if (group < control.length) {
+                long full = matchFull(control[group]) & (-1L << (((index + 1) % GROUP_WIDTH) << 3));
+                while (full == 0 && ++group < control.length) {
+                    full = matchFull(control[group]);
+                }
+                if (full != 0) {
+                    index = slot(group, full);
+                    current = true;
+                    return true;
+                }
+            }
+            index = keys.length;
+            current = false;
+            return false;
+        }
+
+        public long key() {
+            checkCurrent();
+            return keys[index];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V value() {
+            checkCurrent();
+            return (V) values[index];
+        }
+
+        public void remove() {
+            checkCurrent();
+            erase(index);
+            expectedModCount = ++modCount;
+            current = false;
+        }
+
+        private void checkCurrent() {
+            checkModCount();
+            if (!current) {
+                throw new IllegalStateException("Cursor does not point to a mapping");
+            }
+        }
+
+        private void checkModCount() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /* ---------------- Table Layout ---------------- */
+
+    /**
+     * Returns the number of slots of the table.
+     *
+     * @return the capacity of the table
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /* ---------------- Utils Methods ---------------- */
+
+    /**
+     * Returns calculated hash of a key. The low bits select the first group
+     * to probe and the top seven bits are the control tag.
+     *
+     * @param key a key, which needs to be hashed
+     * @return hash value
+     */
+    private static int hash(long key) {
+        return LongHashStrategies.FMIX64.hash(key);
+    }
+
+    /**
+     * Returns the control tag of a slot holding a key with the specified hash.
+     *
+     * @param hash the hash of the key
+     * @return the tag, in 0..127
+     */
+    private static long tagOf(int hash) {
+        return hash >>> 25;
+    }
+
+    /**
+     * Returns the index of the slot which contains the specified key.
+     *
+     * @param key a key to look for
+     * @return index of the slot or -1 if there is no such key in the table
+     */
+    private int indexOf(long key) {
+        int hash = hash(key);
+        long tag = tagOf(hash);
+        int group = hash & groupMask;
+        for (int step = 1; ; step++) {
+            long word = control[group];
+            for (long match = matchTag(word, tag); match != 0; match &= match - 1) {
+                int index = slot(group, match);
+                if (keys[index] == key) {
+                    return index;
+                }
+            }
+            if (matchEmpty(word) != 0) {
+                return -1;
+            }
+            group = (group + step) & groupMask;
+        }
+    }
+
+    /**
+     * Finds the slot for the specified key with a single probe.
+     *
+     * @param key  a key to look for
+     * @param hash the hash of the key
+     * @return index of the slot which contains the key, or -index - 1 for
+     * the first EMPTY or DELETED slot on its probe sequence
+     */
+    private int find(long key, int hash) {
+        long tag = tagOf(hash);
+        int group = hash & groupMask;
+        int free = -1;
+        for (int step = 1; ; step++) {
+            long word = control[group];
+            for (long match = matchTag(word, tag); match != 0; match &= match - 1) {
+                int index = slot(group, match);
+                if (keys[index] == key) {
+                    return index;
+                }
+            }
+            if (free < 0) {
+                long available = matchEmptyOrDeleted(word);
+                if (available != 0) {
+                    free = slot(group, available);
+                }
+            }
+            if (matchEmpty(word) != 0) {
+                return -free - 1;
+            }
+            group = (group + step) & groupMask;
+        }
+    }
+
+    /**
+     * Returns the first EMPTY or DELETED slot on the probe sequence of the
+     * specified hash.
+     *
+     * @param hash the hash of a key
+     * @return index of the slot
+     */
+    private int insertionSlot(int hash) {
+        int group = hash & groupMask;
+        for (int step = 1; ; step++) {
+            long available = matchEmptyOrDeleted(control[group]);
+            if (available != 0) {
+                return slot(group, available);
+            }
+            group = (group + step) & groupMask;
+        }
+    }
+
+    /**
+     * Removes the mapping in the specified slot. The slot becomes EMPTY if
+     * its group has an EMPTY slot, as then no probe sequence continues past
+     * the group, and DELETED otherwise.
+     *
+     * @param index index of the slot to empty
+     */
+    private void erase(int index) {
+        if (matchEmpty(control[index / GROUP_WIDTH]) != 0) {
+            setTag(index, EMPTY);
+            growthLeft++;
+        } else {
+            setTag(index, DELETED);
+        }
+        values[index] = null;
+        size--;
+    }
+
+    /**
+     * Rebuilds the table when it runs out of EMPTY slots. The capacity
+     * doubles if the map is more than half full, otherwise the tombstones
+     * are purged at the same capacity.
+     */
+    private void rehash() {
+        int capacity = keys.length;
+        if (size >= maxGrowth(capacity) / 2) {
+            if (capacity == MAXIMUM_CAPACITY) {
+                throw new IllegalStateException("Map capacity exceeded: " + size);
+            }
+            capacity *= 2;
+        }
+        long[] oldControl = control;
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+
+        for (int group = 0; group < oldControl.length; group++) {
+            for (long full = matchFull(oldControl[group]); full != 0; full &= full - 1) {
+                int oldIndex = slot(group, full);
+                int hash = hash(oldKeys[oldIndex]);
+                int index = insertionSlot(hash);
+                setTag(index, tagOf(hash));
+                keys[index] = oldKeys[oldIndex];
+                values[index] = oldValues[oldIndex];
+                growthLeft--;
+            }
+        }
+    }
+
+    /**
+     * Returns the tag of the specified slot.
+     *
+     * @param index index of the slot
+     * @return the control tag
+     */
+    private long tagAt(int index) {
+        return (control[index / GROUP_WIDTH] >>> ((index % GROUP_WIDTH) << 3)) & 0xFFL;
+    }
+
+    /**
+     * Sets the tag of the specified slot.
+     *
+     * @param index index of the slot
+     * @param tag   the control tag
+     */
+    private void setTag(int index, long tag) {
+        int shift = (index % GROUP_WIDTH) << 3;
+        int group = index / GROUP_WIDTH;
+        control[group] = (control[group] & ~(0xFFL << shift)) | (tag << shift);
+    }
+
+    /**
+     * Returns the index of the slot of the lowest marked byte.
+     *
+     * @param group the group
+     * @param mask  a mask with the high bit of marked bytes set, not 0
+     * @return index of the slot
+     */
+    private static int slot(int group, long mask) {
+        return group * GROUP_WIDTH + (Long.numberOfTrailingZeros(mask) >>> 3);
+    }
+
+    /**
+     * Marks the bytes of a control word which equal the specified tag. A
+     * byte above a matching byte may be marked as well, so the key of every
+     * marked slot must be compared.
+     *
+     * @param word a control word
+     * @param tag  the tag of a slot in use, in 0..127
+     * @return a mask with the high bit of the candidate bytes set
+     */
+    private static long matchTag(long word, long tag) {
+        long x = word ^ (tag * LSBS);
+        return (x - LSBS) & ~x & MSBS;
+    }
+
+    /**
+     * Marks the EMPTY bytes of a control word, which are the only ones with
+     * the high bit set and bit 1 clear.
+     *
+     * @param word a control word
+     * @return a mask with the high bit of the EMPTY bytes set
+     */
+    private static long matchEmpty(long word) {
+        return word & ~(word << 6) & MSBS;
+    }
+
+    /**
+     * Marks the EMPTY and DELETED bytes of a control word, which are the
+     * only ones with the high bit set and bit 0 clear.
+     *
+     * @param word a control word
+     * @return a mask with the high bit of the EMPTY and DELETED bytes set
+     */
+    private static long matchEmptyOrDeleted(long word) {
+        return word & ~(word << 7) & MSBS;
+    }
+
+    /**
+     * Marks the bytes of a control word of slots in use, which are the only
+     * ones with the high bit clear.
+     *
+     * @param word a control word
+     * @return a mask with the high bit of the bytes in use set
+     */
+    private static long matchFull(long word) {
+        return ~word & MSBS;
+    }
+
+    /**
+     * Returns the number of EMPTY slots of a new table of the specified
+     * capacity which may be filled before it is rebuilt. At least one
+     * slot stays EMPTY, so that every probe terminates.
+     *
+     * @param capacity the capacity of the table
+     * @return the maximum growth
+     */
+    private int maxGrowth(int capacity) {
+        return Math.min((int) (capacity * loadFactor), capacity - 1);
+    }
+
+    /**
+     * Initialize new empty table of the specified capacity.
+     *
+     * @param capacity the capacity of the table, a power of two of at least one group
+     */
+    private void allocate(int capacity) {
+        control = new long[capacity / GROUP_WIDTH];
+        Arrays.fill(control, EMPTY_GROUP);
+        keys = new long[capacity];
+        values = new Object[capacity];
+        groupMask = control.length - 1;
+        growthLeft = maxGrowth(capacity);
+    }
+
+    /**
+     * Returns a power of two size for the given capacity.
+     *
+     * @param capacity the requested capacity
+     * @return the smallest power of two not less than capacity and one group
+     */
+    private static int tableSizeFor(int capacity) {
+        if (capacity >= MAXIMUM_CAPACITY) {
+            return MAXIMUM_CAPACITY;
+        }
+        int n = -1 >>> Integer.numberOfLeadingZeros(Math.max(capacity, GROUP_WIDTH) - 1);
+        return n + 1;
+    }
+}
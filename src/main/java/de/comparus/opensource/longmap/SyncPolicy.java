@@ -0,0 +1,97 @@
+package de.comparus.opensource.longmap;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When a DurableLongMap forces its write-ahead log to the storage device.
+ */
+public final class SyncPolicy {
+
+    /**
+     * The policy which forces the log before every change returns.
+     */
+    private static final SyncPolicy ALWAYS = new SyncPolicy(0);
+
+    /**
+     * The policy which never forces the log.
+     */
+    private static final SyncPolicy NEVER = new SyncPolicy(-1);
+
+    /**
+     * The interval between two forces in milliseconds, 0 to force before
+     * every change returns or -1 to never force.
+     */
+    private final long intervalMillis;
+
+    private SyncPolicy(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Returns the policy which forces the log before every change returns.
+     * Changes made concurrently by several threads share one force, so the
+     * cost of a force is spread over all of them.
+     *
+     * @return the policy
+     */
+    public static SyncPolicy always() {
+        return ALWAYS;
+    }
+
+    /**
+     * Returns the policy which forces the log in the background at a fixed
+     * interval. A crash loses at most the changes of the last interval.
+     *
+     * @param interval the interval between two forces
+     * @param unit     the unit of the interval
+     * @return the policy
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    public static SyncPolicy every(long interval, TimeUnit unit) {
+        long millis = unit.toMillis(interval);
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Illegal sync interval: " + interval + " " + unit);
+        }
+        return new SyncPolicy(millis);
+    }
+
+    /**
+     * Returns the policy which never forces the log. The changes reach the
+     * file through the page cache and survive a crash of the process, but
+     * not of the machine.
+     *
+     * @return the policy
+     */
+    public static SyncPolicy never() {
+        return NEVER;
+    }
+
+    /**
+     * Returns true if every change waits for the log to be forced.
+     *
+     * @return true for {@link #always()}
+     */
+    boolean isAlways() {
+        return intervalMillis == 0;
+    }
+
+    /**
+     * Returns the interval between two forces in the background.
+     *
+     * @return the interval in milliseconds, or a value not greater than 0
+     * if there are no forces in the background
+     */
+    long intervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Returns a description of this policy.
+     *
+     * @return the description
+     */
+    @Override
+    public String toString() {
+        return intervalMillis == 0 ? "always" : intervalMillis < 0 ? "never" : "every " + intervalMillis + " ms";
+    }
+}
@@ -0,0 +1,152 @@
+package de.comparus.opensource.longmap;
+
+import java.util.Arrays;
+
+/**
+ * W-TinyLFU eviction. New entries enter an LRU window of about one percent
+ * of the cache. The rest of the cache is a segmented LRU: entries leaving
+ * the window go to the probation segment and are promoted to the protected
+ * segment, which takes up to 80% of it, on their next hit. When the cache
+ * is full, the entry which left the window last competes with the oldest
+ * entry of the main segments, and the one with the lower estimated
+ * frequency is evicted. A key used once thus cannot push out a key used
+ * often.
+ */
+final class TinyLfuPolicy extends CachePolicy {
+
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+
+    private final Queue window = new Queue();
+    private final Queue probation = new Queue();
+    private final Queue protect = new Queue();
+    private final FrequencySketch sketch = new FrequencySketch();
+
+    /**
+     * The segment of each slot.
+     */
+    private byte[] segment = new byte[0];
+
+    /**
+     * The key of each slot, needed to look up frequencies of victims.
+     */
+    private long[] keys = new long[0];
+
+    /**
+     * The slot which left the window last and has not been admitted to the
+     * main segments by a comparison yet, or NONE.
+     */
+    private int candidate = NONE;
+
+    @Override
+    void grow(int capacity) {
+        super.grow(capacity);
+        segment = Arrays.copyOf(segment, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        sketch.ensureCapacity(capacity);
+    }
+
+    void onInsert(int slot, long key) {
+        sketch.increment(key);
+        keys[slot] = key;
+        segment[slot] = WINDOW;
+        linkFirst(window, slot);
+        while (window.size > windowMax()) {
+            int oldest = window.tail;
+            unlink(window, oldest);
+            segment[oldest] = PROBATION;
+            linkFirst(probation, oldest);
+            candidate = oldest;
+        }
+    }
+
+    void onAccess(int slot, long key) {
+        sketch.increment(key);
+        switch (segment[slot]) {
+            case WINDOW:
+                moveToFirst(window, slot);
+                break;
+            case PROBATION:
+                if (slot == candidate) {
+                    candidate = NONE;
+                }
+                unlink(probation, slot);
+                segment[slot] = PROTECTED;
+                linkFirst(protect, slot);
+                int protectedMax = (size() - windowMax()) * 4 / 5;
+                while (protect.size > Math.max(protectedMax, 1)) {
+                    int demoted = protect.tail;
+                    unlink(protect, demoted);
+                    segment[demoted] = PROBATION;
+                    linkFirst(probation, demoted);
+                }
+                break;
+            default:
+                moveToFirst(protect, slot);
+        }
+    }
+
+    @Override
+    void onMiss(long key) {
+        sketch.increment(key);
+    }
+
+    void onRemove(int slot) {
+        if (slot == candidate) {
+            candidate = NONE;
+        }
+        unlink(queueOf(slot), slot);
+    }
+
+    int victim() {
+        int admitted = candidate;
+        candidate = NONE;
+        int victim = probation.tail != admitted ? probation.tail : protect.tail;
+        if (admitted == NONE) {
+            if (victim != NONE) {
+                return victim;
+            }
+            return probation.tail != NONE ? probation.tail : window.tail;
+        }
+        if (victim == NONE) {
+            return admitted;
+        }
+        return sketch.frequency(keys[admitted]) > sketch.frequency(keys[victim]) ? victim : admitted;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries in all queues
+     */
+    private int size() {
+        return window.size + probation.size + protect.size;
+    }
+
+    /**
+     * Returns the target size of the window.
+     *
+     * @return one percent of the entries, at least one
+     */
+    private int windowMax() {
+        return Math.max(1, size() / 100);
+    }
+
+    /**
+     * Returns the queue which contains the slot.
+     *
+     * @param slot the slot
+     * @return the queue
+     */
+    private Queue queueOf(int slot) {
+        switch (segment[slot]) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protect;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package de.comparus.opensource.longmap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes values of a map into fixed-width binary slots.
+ *
+ * @param <V> the type of encoded values
+ */
+public interface ValueCodec<V> {
+
+    /**
+     * Returns the number of bytes taken by every encoded value.
+     *
+     * @return the width of a value slot in bytes
+     */
+    int size();
+
+    /**
+     * Writes the value at the specified absolute offset of the buffer.
+     *
+     * @param buffer the buffer to write to
+     * @param offset the absolute offset of the value slot
+     * @param value  the value to write, never null
+     */
+    void write(ByteBuffer buffer, int offset, V value);
+
+    /**
+     * Reads the value at the specified absolute offset of the buffer.
+     *
+     * @param buffer the buffer to read from
+     * @param offset the absolute offset of the value slot
+     * @return the value
+     */
+    V read(ByteBuffer buffer, int offset);
+}
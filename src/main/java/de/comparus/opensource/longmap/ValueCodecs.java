@@ -0,0 +1,63 @@
+package de.comparus.opensource.longmap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Codecs for the common fixed-width value types.
+ */
+public final class ValueCodecs {
+
+    /**
+     * Encodes Long values in 8 bytes.
+     */
+    public static final ValueCodec<Long> LONG = new ValueCodec<Long>() {
+        public int size() {
+            return Long.BYTES;
+        }
+
+        public void write(ByteBuffer buffer, int offset, Long value) {
+            buffer.putLong(offset, value);
+        }
+
+        public Long read(ByteBuffer buffer, int offset) {
+            return buffer.getLong(offset);
+        }
+    };
+
+    /**
+     * Encodes Integer values in 4 bytes.
+     */
+    public static final ValueCodec<Integer> INT = new ValueCodec<Integer>() {
+        public int size() {
+            return Integer.BYTES;
+        }
+
+        public void write(ByteBuffer buffer, int offset, Integer value) {
+            buffer.putInt(offset, value);
+        }
+
+        public Integer read(ByteBuffer buffer, int offset) {
+            return buffer.getInt(offset);
+        }
+    };
+
+    /**
+     * Encodes Double values in 8 bytes.
+     */
+    public static final ValueCodec<Double> DOUBLE = new ValueCodec<Double>() {
+        public int size() {
+            return Double.BYTES;
+        }
+
+        public void write(ByteBuffer buffer, int offset, Double value) {
+            buffer.putDouble(offset, value);
+        }
+
+        public Double read(ByteBuffer buffer, int offset) {
+            return buffer.getDouble(offset);
+        }
+    };
+
+    private ValueCodecs() {
+    }
+}
@@ -0,0 +1,176 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AsyncLongMapTest {
+
+    private static final int THREADS = 8;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void initWithIllegalBatchSize() {
+        new AsyncLongMap<Long>(executor, keys -> null, 1, TimeUnit.MILLISECONDS, 0);
+    }
+
+    @Test
+    public void concurrentMissesShareOneLoad() throws Exception {
+        AsyncLongMap<Long> longs = new AsyncLongMap<>(executor);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(longs.computeIfAbsent(7, key -> {
+                loads.incrementAndGet();
+                awaitQuietly(release);
+                return key * 2;
+            }));
+        }
+        release.countDown();
+
+        for (CompletableFuture<Long> future : futures) {
+            assertEquals(Long.valueOf(14), future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(Long.valueOf(14), longs.getIfPresent(7));
+        assertEquals(Long.valueOf(14), longs.computeIfAbsent(7, key -> -1L).get());
+    }
+
+    @Test
+    public void missesWithinWindowAreLoadedTogether() throws Exception {
+        List<Integer> batchSizes = new ArrayList<>();
+        AsyncLongMap<Long> longs = new AsyncLongMap<>(executor, keys -> {
+            synchronized (batchSizes) {
+                batchSizes.add(keys.length);
+            }
+            return loadAll(keys);
+        }, 200, TimeUnit.MILLISECONDS, 1000);
+
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (long key = 0; key < 100; key++) {
+            futures.add(longs.get(key));
+            futures.add(longs.get(key));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(Long.valueOf(i / 2 * 10), futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        synchronized (batchSizes) {
+            assertTrue(batchSizes.size() <= 3);
+            assertEquals(100, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        }
+        assertEquals(100, longs.size());
+    }
+
+    @Test
+    public void fullBatchIsLoadedEarly() throws Exception {
+        AtomicInteger batches = new AtomicInteger();
+        AsyncLongMap<Long> longs = new AsyncLongMap<>(executor, keys -> {
+            batches.incrementAndGet();
+            return loadAll(keys);
+        }, 1, TimeUnit.HOURS, 10);
+
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (long key = 0; key < 20; key++) {
+            futures.add(longs.get(key));
+        }
+        for (CompletableFuture<Long> future : futures) {
+            assertNotNull(future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, batches.get());
+    }
+
+    @Test
+    public void failedLoadIsRetried() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        AsyncLongMap<Long> longs = new AsyncLongMap<>(executor, keys -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("unavailable");
+            }
+            return loadAll(keys);
+        }, 1, TimeUnit.MILLISECONDS, 16);
+
+        try {
+            longs.get(3).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(Long.valueOf(30), longs.get(3).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void missingValueIsNotStored() throws Exception {
+        AsyncLongMap<Long> longs = new AsyncLongMap<>(executor, keys -> new LongMapImpl<>(),
+                1, TimeUnit.MILLISECONDS, 16);
+        assertNull(longs.get(1).get(5, TimeUnit.SECONDS));
+        assertEquals(0, longs.size());
+
+        longs.put(1, 5L);
+        assertEquals(Long.valueOf(5), longs.get(1).get());
+        assertTrue(longs.get(1).isDone());
+    }
+
+    @Test
+    public void concurrentLookupsLoadEveryKeyOnce() throws Exception {
+        AtomicInteger loadedKeys = new AtomicInteger();
+        AsyncLongMap<Long> longs = new AsyncLongMap<>(executor, keys -> {
+            loadedKeys.addAndGet(keys.length);
+            return loadAll(keys);
+        }, 1, TimeUnit.MILLISECONDS, 64);
+
+        ExecutorService callers = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                futures.add(callers.submit(() -> {
+                    for (long i = 0; i < 2000; i++) {
+                        long key = i % 500;
+                        assertEquals(Long.valueOf(key * 10), longs.get(key).get(5, TimeUnit.SECONDS));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            callers.shutdown();
+        }
+        assertEquals(500, loadedKeys.get());
+    }
+
+    private static LongMap<Long> loadAll(long[] keys) {
+        LongMapImpl<Long> values = new LongMapImpl<>();
+        for (long key : keys) {
+            values.put(key, key * 10);
+        }
+        return values;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class BTreeLongMapTest {
+
+    private static final String FIRST_VALUE = "first";
+    private static final String SECOND_VALUE = "second";
+
+    private BTreeLongMap<String> strings;
+
+    @Before
+    public void setUp() {
+        strings = new BTreeLongMap<>();
+    }
+
+    @Test
+    public void putGetRemove() {
+        assertNull(strings.put(1, FIRST_VALUE));
+        assertEquals(FIRST_VALUE, strings.put(1, SECOND_VALUE));
+        assertEquals(SECOND_VALUE, strings.get(1));
+        assertTrue(strings.containsKey(1));
+        assertTrue(strings.containsValue(SECOND_VALUE));
+        assertFalse(strings.containsValue(FIRST_VALUE));
+
+        assertEquals(SECOND_VALUE, strings.remove(1));
+        assertNull(strings.remove(1));
+        assertTrue(strings.isEmpty());
+        assertNull(strings.values());
+    }
+
+    @Test
+    public void nullValue() {
+        assertNull(strings.put(0, null));
+        assertTrue(strings.containsKey(0));
+        assertTrue(strings.containsValue(null));
+        assertNull(strings.values());
+        assertEquals(1, strings.size());
+    }
+
+    @Test
+    public void matchesTreeMap() {
+        TreeMap<Long, Long> expected = new TreeMap<>();
+        BTreeLongMap<Long> longs = new BTreeLongMap<>();
+        Random random = new Random(17);
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(20000) - 10000;
+            if (random.nextInt(5) < 2) {
+                assertEquals(expected.remove(key), longs.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), longs.put(key, (long) i));
+            }
+        }
+
+        assertEquals(expected.size(), longs.size());
+        long[] keys = longs.keys();
+        Long[] values = longs.values();
+        int i = 0;
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals((long) entry.getKey(), keys[i]);
+            assertEquals(entry.getValue(), values[i]);
+            i++;
+        }
+        assertEquals((long) expected.firstKey(), longs.firstKey());
+        assertEquals((long) expected.lastKey(), longs.lastKey());
+
+        for (long key = expected.firstKey(); key <= expected.lastKey(); key += 7) {
+            Long floor = expected.floorKey(key);
+            Long ceiling = expected.ceilingKey(key);
+            assertEquals((long) floor, longs.floorKey(key));
+            assertEquals((long) ceiling, longs.ceilingKey(key));
+        }
+
+        for (long key : expected.keySet().toArray(new Long[0])) {
+            assertEquals(expected.remove(key), longs.remove(key));
+        }
+        assertTrue(longs.isEmpty());
+        assertEquals(0, longs.keys().length);
+    }
+
+    @Test
+    public void forEachInRange() {
+        for (long key = 0; key < 10000; key += 2) {
+            strings.put(key, "" + key);
+        }
+        List<Long> visited = new ArrayList<>();
+        strings.forEachInRange(1001, 2001, (key, value) -> {
+            assertEquals("" + key, value);
+            visited.add(key);
+        });
+        assertEquals(500, visited.size());
+        assertEquals(Long.valueOf(1002), visited.get(0));
+        assertEquals(Long.valueOf(2000), visited.get(499));
+
+        visited.clear();
+        strings.forEachInRange(5000, 5000, (key, value) -> visited.add(key));
+        assertTrue(visited.isEmpty());
+        strings.forEachInRange(Long.MIN_VALUE, Long.MAX_VALUE, (key, value) -> visited.add(key));
+        assertEquals(5000, visited.size());
+    }
+
+    @Test
+    public void floorAndCeilingAtBounds() {
+        strings.put(Long.MIN_VALUE, FIRST_VALUE);
+        strings.put(Long.MAX_VALUE, SECOND_VALUE);
+        assertEquals(Long.MIN_VALUE, strings.floorKey(0));
+        assertEquals(Long.MAX_VALUE, strings.ceilingKey(0));
+        assertEquals(Long.MIN_VALUE, strings.firstKey());
+        assertEquals(Long.MAX_VALUE, strings.lastKey());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void firstKeyOfEmptyMap() {
+        strings.firstKey();
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void floorKeyBelowAllKeys() {
+        strings.put(10, FIRST_VALUE);
+        strings.floorKey(9);
+    }
+
+    @Test
+    public void cursorRemove() {
+        BTreeLongMap<Long> longs = new BTreeLongMap<>();
+        for (long key = 0; key < 1000; key++) {
+            longs.put(key, key);
+        }
+        LongMapCursor<Long> cursor = longs.cursor();
+        long previous = -1;
+        int visited = 0;
+        while (cursor.advance()) {
+            visited++;
+            assertTrue(cursor.key() > previous);
+            previous = cursor.key();
+            assertEquals(cursor.key(), (long) cursor.value());
+            if (cursor.key() % 3 != 0) {
+                cursor.remove();
+            }
+        }
+        assertEquals(1000, visited);
+        assertEquals(334, longs.size());
+
+        long[] sum = {0};
+        longs.forEach((key, value) -> sum[0] += value);
+        assertEquals(3 * (333 * 334 / 2), sum[0]);
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void forEachFailsFast() {
+        for (long key = 0; key < 100; key++) {
+            strings.put(key, "" + key);
+        }
+        strings.forEach((key, value) -> strings.remove(key));
+    }
+}
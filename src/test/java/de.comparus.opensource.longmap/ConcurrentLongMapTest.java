@@ -0,0 +1,289 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentLongMapTest {
+
+    private static final int THREADS = 8;
+    private static final int KEYS_PER_THREAD = 20000;
+    private static final String FIRST_VALUE = "first";
+    private static final String SECOND_VALUE = "second";
+
+    private ConcurrentLongMap<String> strings;
+
+    @Before
+    public void setUp() {
+        strings = new ConcurrentLongMap<>();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void initWithNegativeCapacity() {
+        new ConcurrentLongMap<String>(-1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void putNullValue() {
+        strings.put(1, null);
+    }
+
+    @Test
+    public void putGetRemove() {
+        assertNull(strings.put(1, FIRST_VALUE));
+        assertEquals(FIRST_VALUE, strings.put(1, SECOND_VALUE));
+        assertEquals(SECOND_VALUE, strings.get(1));
+        assertTrue(strings.containsKey(1));
+        assertTrue(strings.containsValue(SECOND_VALUE));
+        assertEquals(1, strings.size());
+
+        assertEquals(SECOND_VALUE, strings.remove(1));
+        assertNull(strings.remove(1));
+        assertFalse(strings.containsKey(1));
+        assertTrue(strings.isEmpty());
+        assertNull(strings.values());
+    }
+
+    @Test
+    public void keysAndValuesAfterResize() {
+        for (int i = -500; i < 500; i++) {
+            strings.put(i, "" + i);
+        }
+        assertEquals(1000, strings.size());
+        assertEquals(1000, strings.keys().length);
+        assertEquals(1000, strings.values().length);
+
+        strings.clear();
+        assertTrue(strings.isEmpty());
+        assertEquals(0, strings.keys().length);
+    }
+
+    @Test
+    public void putIfAbsent() {
+        assertNull(strings.putIfAbsent(1, FIRST_VALUE));
+        assertEquals(FIRST_VALUE, strings.putIfAbsent(1, SECOND_VALUE));
+        assertEquals(FIRST_VALUE, strings.get(1));
+    }
+
+    @Test
+    public void computeIfAbsent() {
+        assertEquals(FIRST_VALUE, strings.computeIfAbsent(1, key -> FIRST_VALUE));
+        assertEquals(FIRST_VALUE, strings.computeIfAbsent(1, key -> SECOND_VALUE));
+        assertNull(strings.computeIfAbsent(2, key -> null));
+        assertFalse(strings.containsKey(2));
+        assertEquals(1, strings.size());
+    }
+
+    @Test
+    public void merge() {
+        assertEquals(FIRST_VALUE, strings.merge(1, FIRST_VALUE, String::concat));
+        assertEquals(FIRST_VALUE + SECOND_VALUE, strings.merge(1, SECOND_VALUE, String::concat));
+        assertNull(strings.merge(1, FIRST_VALUE, (oldValue, value) -> null));
+        assertFalse(strings.containsKey(1));
+    }
+
+    @Test
+    public void concurrentPutsWithResize() throws Exception {
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>(2);
+        runConcurrently(thread -> {
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                long key = (long) thread * KEYS_PER_THREAD + i;
+                map.put(key, key);
+            }
+        });
+
+        assertEquals(THREADS * KEYS_PER_THREAD, map.size());
+        assertEquals(THREADS * KEYS_PER_THREAD, map.keys().length);
+        for (long key = 0; key < THREADS * KEYS_PER_THREAD; key++) {
+            assertEquals(Long.valueOf(key), map.get(key));
+        }
+    }
+
+    @Test
+    public void concurrentMergeCounts() throws Exception {
+        ConcurrentLongMap<Long> counters = new ConcurrentLongMap<>(2);
+        runConcurrently(thread -> {
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                counters.merge(i % 1000, 1L, Long::sum);
+            }
+        });
+
+        assertEquals(1000, counters.size());
+        for (long key = 0; key < 1000; key++) {
+            assertEquals(Long.valueOf(THREADS * KEYS_PER_THREAD / 1000), counters.get(key));
+        }
+    }
+
+    @Test
+    public void concurrentComputeIfAbsentAppliesOnce() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        runConcurrently(thread -> {
+            for (int i = 0; i < 1000; i++) {
+                strings.computeIfAbsent(i, key -> {
+                    calls.incrementAndGet();
+                    return "" + key;
+                });
+            }
+        });
+
+        assertEquals(1000, calls.get());
+        assertEquals(1000, strings.size());
+    }
+
+    @Test
+    public void forEachAndCursor() {
+        for (int i = 0; i < 1000; i++) {
+            strings.put(i, "" + i);
+        }
+        long[] sum = {0};
+        strings.forEach((key, value) -> {
+            assertEquals("" + key, value);
+            sum[0] += key;
+        });
+        assertEquals(999 * 1000 / 2, sum[0]);
+
+        LongMapCursor<String> cursor = strings.cursor();
+        while (cursor.advance()) {
+            if (cursor.key() % 2 == 0) {
+                cursor.remove();
+            }
+        }
+        assertEquals(500, strings.size());
+        assertFalse(strings.containsKey(2));
+    }
+
+    @Test
+    public void collidingKeys() {
+        assertEquals(0, LongHashStrategies.FMIX64.hash(colliding(12345)));
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>();
+        for (long x = 1; x <= 1000; x++) {
+            assertNull(map.put(colliding(x), x));
+        }
+        assertEquals(1000, map.size());
+        assertEquals(1000, map.keys().length);
+        for (long x = 1; x <= 1000; x++) {
+            assertEquals(Long.valueOf(x), map.get(colliding(x)));
+        }
+        assertNull(map.get(colliding(1001)));
+
+        assertEquals(Long.valueOf(7), map.putIfAbsent(colliding(7), -7L));
+        assertEquals(Long.valueOf(14), map.merge(colliding(7), 7L, Long::sum));
+        assertEquals(Long.valueOf(-1), map.computeIfAbsent(colliding(1001), key -> -1L));
+        assertNull(map.merge(colliding(1001), 1L, (oldValue, value) -> null));
+
+        for (long x = 1; x <= 995; x++) {
+            assertNotNull(map.remove(colliding(x)));
+        }
+        assertEquals(5, map.size());
+        long[] sum = {0};
+        map.forEach((key, value) -> sum[0] += value);
+        assertEquals(996 + 997 + 998 + 999 + 1000, sum[0]);
+        for (long x = 996; x <= 1000; x++) {
+            assertEquals(Long.valueOf(x), map.remove(colliding(x)));
+        }
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void concurrentCollidingPuts() throws Exception {
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>(2);
+        runConcurrently(thread -> {
+            for (int i = 0; i < 2000; i++) {
+                long x = (long) thread * 2000 + i + 1;
+                map.put(i % 2 == 0 ? colliding(x) : x, x);
+            }
+        });
+
+        assertEquals(THREADS * 2000, map.size());
+        assertEquals(THREADS * 2000, map.keys().length);
+        for (int thread = 0; thread < THREADS; thread++) {
+            for (int i = 0; i < 2000; i++) {
+                long x = (long) thread * 2000 + i + 1;
+                assertEquals(Long.valueOf(x), map.get(i % 2 == 0 ? colliding(x) : x));
+            }
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void computeAndComputeIfPresent() {
+        assertNull(strings.computeIfPresent(1, (key, value) -> FIRST_VALUE));
+        assertFalse(strings.containsKey(1));
+        assertEquals(FIRST_VALUE, strings.compute(1, (key, value) -> value == null ? FIRST_VALUE : value + key));
+        assertEquals(FIRST_VALUE + 1, strings.compute(1, (key, value) -> value == null ? FIRST_VALUE : value + key));
+        assertEquals(SECOND_VALUE, strings.computeIfPresent(1, (key, value) -> SECOND_VALUE));
+        assertNull(strings.compute(1, (key, value) -> null));
+        assertTrue(strings.isEmpty());
+        assertEquals(FIRST_VALUE, strings.getOrDefault(1, FIRST_VALUE));
+
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>();
+        for (long x = 1; x <= 20; x++) {
+            map.compute(colliding(x), (key, value) -> 1L);
+        }
+        for (long x = 1; x <= 20; x++) {
+            assertEquals(Long.valueOf(2), map.computeIfPresent(colliding(x), (key, value) -> value + 1));
+        }
+        for (long x = 1; x <= 20; x++) {
+            assertNull(map.compute(colliding(x), (key, value) -> null));
+        }
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void concurrentComputeCounts() throws Exception {
+        ConcurrentLongMap<Long> counters = new ConcurrentLongMap<>(2);
+        runConcurrently(thread -> {
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                counters.compute(i % 1000, (key, value) -> value == null ? 1L : value + 1);
+            }
+        });
+
+        assertEquals(1000, counters.size());
+        for (long key = 0; key < 1000; key++) {
+            assertEquals(Long.valueOf(THREADS * KEYS_PER_THREAD / 1000), counters.get(key));
+        }
+    }
+
+    /**
+     * Returns a key whose hash is 0, like the hashes of all other such keys:
+     * the key which fmix64 mixes into x << 32, found by inverting fmix64.
+     */
+    private static long colliding(long x) {
+        long key = x << 32;
+        key ^= key >>> 33;
+        key *= 0x9cb4b2f8129337dbL;
+        key ^= key >>> 33;
+        key *= 0x4f74430c22a54005L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private void runConcurrently(ThreadTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int current = thread;
+                futures.add(executor.submit(() -> task.run(current)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private interface ThreadTask {
+        void run(int thread);
+    }
+}
@@ -0,0 +1,172 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DenseLongMapTest {
+
+    private static final String FIRST_VALUE = "first";
+    private static final String SECOND_VALUE = "second";
+
+    private DenseLongMap<String> strings;
+
+    @Before
+    public void setUp() {
+        strings = new DenseLongMap<>();
+    }
+
+    @Test
+    public void putGetRemove() {
+        assertNull(strings.put(1, FIRST_VALUE));
+        assertEquals(FIRST_VALUE, strings.put(1, SECOND_VALUE));
+        assertEquals(SECOND_VALUE, strings.get(1));
+        assertTrue(strings.containsKey(1));
+        assertFalse(strings.containsKey(2));
+        assertTrue(strings.containsValue(SECOND_VALUE));
+        assertFalse(strings.containsValue(FIRST_VALUE));
+
+        assertEquals(SECOND_VALUE, strings.remove(1));
+        assertNull(strings.get(1));
+        assertTrue(strings.isEmpty());
+        assertNull(strings.values());
+        assertTrue(strings.isDense());
+    }
+
+    @Test
+    public void sequentialKeysStayDense() {
+        DenseLongMap<Long> longs = new DenseLongMap<>();
+        for (long key = 1000000; key < 1100000; key++) {
+            longs.put(key, key);
+        }
+        for (long key = 999999; key >= 950000; key--) {
+            longs.put(key, key);
+        }
+        assertTrue(longs.isDense());
+        assertEquals(150000, longs.size());
+
+        long[] keys = longs.keys();
+        Long[] values = longs.values();
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(950000 + i, keys[i]);
+            assertEquals(Long.valueOf(keys[i]), values[i]);
+        }
+        assertNull(longs.get(949999));
+        assertNull(longs.get(1100000));
+    }
+
+    @Test
+    public void sparseKeySwitchesToHashMode() {
+        for (long key = 0; key < 100; key++) {
+            strings.put(key, "" + key);
+        }
+        assertTrue(strings.isDense());
+        strings.put(1L << 40, FIRST_VALUE);
+        assertFalse(strings.isDense());
+
+        assertEquals(101, strings.size());
+        assertEquals(FIRST_VALUE, strings.get(1L << 40));
+        for (long key = 0; key < 100; key++) {
+            assertEquals("" + key, strings.get(key));
+        }
+
+        strings.clear();
+        assertTrue(strings.isDense());
+        assertTrue(strings.isEmpty());
+        strings.put(5, FIRST_VALUE);
+        assertEquals(FIRST_VALUE, strings.get(5));
+    }
+
+    @Test
+    public void extremeKeys() {
+        strings.put(Long.MAX_VALUE, FIRST_VALUE);
+        strings.put(Long.MAX_VALUE - 10, SECOND_VALUE);
+        assertTrue(strings.isDense());
+        assertEquals(FIRST_VALUE, strings.get(Long.MAX_VALUE));
+        assertEquals(SECOND_VALUE, strings.get(Long.MAX_VALUE - 10));
+        assertNull(strings.get(Long.MIN_VALUE));
+
+        strings.put(Long.MIN_VALUE, FIRST_VALUE);
+        assertFalse(strings.isDense());
+        assertEquals(FIRST_VALUE, strings.get(Long.MIN_VALUE));
+        assertEquals(3, strings.size());
+    }
+
+    @Test
+    public void matchesHashMap() {
+        Map<Long, String> expected = new HashMap<>();
+        for (long key = -5000; key < 5000; key++) {
+            expected.put(key, FIRST_VALUE);
+            strings.put(key, FIRST_VALUE);
+        }
+        Random random = new Random(17);
+        for (int i = 0; i < 50000; i++) {
+            long key = random.nextInt(12000) - 6000;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), strings.remove(key));
+            } else {
+                assertEquals(expected.put(key, "" + i), strings.put(key, "" + i));
+            }
+        }
+        assertTrue(strings.isDense());
+
+        assertEquals(expected.size(), strings.size());
+        long[] keys = strings.keys();
+        String[] values = strings.values();
+        assertEquals(expected.size(), keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(expected.get(keys[i]), values[i]);
+        }
+        int[] visited = {0};
+        strings.forEach((key, value) -> {
+            assertEquals(expected.get(key), value);
+            visited[0]++;
+        });
+        assertEquals(expected.size(), visited[0]);
+    }
+
+    @Test
+    public void nullValues() {
+        strings.put(1, null);
+        strings.put(2, FIRST_VALUE);
+        assertTrue(strings.containsKey(1));
+        assertTrue(strings.containsValue(null));
+        assertArrayEquals(new String[]{null, FIRST_VALUE}, strings.values());
+    }
+
+    @Test
+    public void cursorRemove() {
+        DenseLongMap<Long> longs = new DenseLongMap<>();
+        for (long key = 0; key < 1000; key++) {
+            longs.put(key, key);
+        }
+        LongMapCursor<Long> cursor = longs.cursor();
+        long expectedKey = 0;
+        while (cursor.advance()) {
+            assertEquals(expectedKey++, cursor.key());
+            assertEquals(cursor.key(), (long) cursor.value());
+            if (cursor.key() % 3 == 0) {
+                cursor.remove();
+            }
+        }
+        assertEquals(1000, expectedKey);
+        assertEquals(666, longs.size());
+        assertFalse(cursor.advance());
+        assertFalse(longs.containsKey(999));
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void cursorFailsOnSwitchToHashMode() {
+        strings.put(1, FIRST_VALUE);
+        LongMapCursor<String> cursor = strings.cursor();
+        assertTrue(cursor.advance());
+        strings.put(Long.MIN_VALUE, SECOND_VALUE);
+        cursor.advance();
+    }
+}
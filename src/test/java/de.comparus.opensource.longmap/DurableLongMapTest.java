@@ -0,0 +1,274 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DurableLongMapTest {
+
+    private static final Long FIRST_VALUE = 100L;
+    private static final Long SECOND_VALUE = 200L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private DurableLongMap<Long> longs;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.getRoot().toPath().resolve("longs");
+        longs = new DurableLongMap<>(directory, ValueCodecs.LONG);
+    }
+
+    @After
+    public void tearDown() {
+        longs.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void initWithIllegalSegmentSize() throws IOException {
+        new DurableLongMap<>(directory.resolveSibling("other"), ValueCodecs.LONG, SyncPolicy.never(), 0, 1024);
+    }
+
+    @Test
+    public void putGetRemove() {
+        assertNull(longs.put(1, FIRST_VALUE));
+        assertEquals(FIRST_VALUE, longs.put(1, SECOND_VALUE));
+        assertEquals(SECOND_VALUE, longs.get(1));
+        assertEquals(SECOND_VALUE, longs.remove(1));
+        assertNull(longs.remove(1));
+        assertTrue(longs.isEmpty());
+    }
+
+    @Test
+    public void reopenReplaysLog() throws IOException {
+        for (long key = -1000; key < 1000; key++) {
+            longs.put(key, key * 2);
+        }
+        longs.remove(7);
+        longs.put(8, null);
+        longs.close();
+
+        longs = new DurableLongMap<>(directory, ValueCodecs.LONG);
+        assertEquals(1999, longs.size());
+        assertEquals(Long.valueOf(-2000), longs.get(-1000));
+        assertFalse(longs.containsKey(7));
+        assertTrue(longs.containsKey(8));
+        assertNull(longs.get(8));
+
+        longs.clear();
+        longs.put(5, FIRST_VALUE);
+        longs.close();
+        longs = new DurableLongMap<>(directory, ValueCodecs.LONG);
+        assertEquals(1, longs.size());
+        assertEquals(FIRST_VALUE, longs.get(5));
+    }
+
+    @Test
+    public void compactionReplacesSegmentsWithSnapshot() throws IOException {
+        longs.close();
+        longs = new DurableLongMap<>(directory, ValueCodecs.LONG, SyncPolicy.never(), 4096, 1 << 30);
+        for (long key = 0; key < 10000; key++) {
+            longs.put(key, key);
+        }
+        longs.sync();
+        assertTrue(count("segment-*.wal") > 1);
+
+        longs.compact();
+        assertEquals(1, count("snapshot-*.lms"));
+        assertEquals(1, count("segment-*.wal"));
+        for (long key = 0; key < 100; key++) {
+            longs.remove(key);
+        }
+        longs.close();
+
+        longs = new DurableLongMap<>(directory, ValueCodecs.LONG, SyncPolicy.never(), 4096, 1 << 30);
+        assertEquals(9900, longs.size());
+        assertNull(longs.get(99));
+        assertEquals(Long.valueOf(9999), longs.get(9999));
+    }
+
+    @Test
+    public void segmentsNeverOutgrowSegmentSize() throws IOException {
+        longs.close();
+        longs = new DurableLongMap<>(directory, ValueCodecs.LONG, SyncPolicy.never(), 4096, 1 << 30);
+        for (long key = 0; key < 10000; key++) {
+            longs.put(key, key);
+        }
+        longs.sync();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.wal")) {
+            for (Path file : files) {
+                assertTrue(file + " has " + Files.size(file) + " bytes", Files.size(file) <= 4096);
+            }
+        }
+        longs.close();
+
+        longs = new DurableLongMap<>(directory, ValueCodecs.LONG, SyncPolicy.never(), 4096, 1 << 30);
+        assertEquals(10000, longs.size());
+        assertEquals(Long.valueOf(9999), longs.get(9999));
+    }
+
+    @Test
+    public void compactionRunsInBackground() throws Exception {
+        longs.close();
+        longs = new DurableLongMap<>(directory, ValueCodecs.LONG, SyncPolicy.never(), 4096, 16384);
+        for (long key = 0; key < 20000; key++) {
+            longs.put(key, key);
+        }
+        longs.sync();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (count("snapshot-*.lms") == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        longs.close();
+        assertTrue(count("snapshot-*.lms") > 0);
+
+        longs = new DurableLongMap<>(directory, ValueCodecs.LONG);
+        assertEquals(20000, longs.size());
+    }
+
+    @Test
+    public void tornTailIsCutOff() throws IOException {
+        for (long key = 0; key < 100; key++) {
+            longs.put(key, key);
+        }
+        longs.close();
+        Path segment = lastSegment();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{30, 0, 0, 0, 1, 2, 3}));
+        }
+        long intact = Files.size(segment) - 7;
+
+        longs = new DurableLongMap<>(directory, ValueCodecs.LONG);
+        assertEquals(100, longs.size());
+        assertEquals(intact, Files.size(segment));
+        longs.put(100, FIRST_VALUE);
+        longs.close();
+
+        longs = new DurableLongMap<>(directory, ValueCodecs.LONG);
+        assertEquals(101, longs.size());
+        assertEquals(FIRST_VALUE, longs.get(100));
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptedRecordBeforeLastSegmentFails() throws IOException {
+        longs.put(1, FIRST_VALUE);
+        longs.close();
+        Path segment = lastSegment();
+        longs = new DurableLongMap<>(directory, ValueCodecs.LONG);
+        longs.put(2, SECOND_VALUE);
+        longs.close();
+
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF}), Files.size(segment) - 1);
+        }
+        longs = new DurableLongMap<>(directory, ValueCodecs.LONG);
+    }
+
+    @Test
+    public void concurrentChangesShareForces() throws Exception {
+        int threads = 8;
+        int keysPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                long base = (long) thread * keysPerThread;
+                futures.add(executor.submit(() -> {
+                    for (long key = base; key < base + keysPerThread; key++) {
+                        longs.put(key, key);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        longs.close();
+
+        longs = new DurableLongMap<>(directory, ValueCodecs.LONG);
+        assertEquals(threads * keysPerThread, longs.size());
+        for (long key = 0; key < threads * keysPerThread; key++) {
+            assertEquals(Long.valueOf(key), longs.get(key));
+        }
+    }
+
+    @Test
+    public void intervalPolicyPersistsOnClose() throws IOException {
+        longs.close();
+        longs = new DurableLongMap<>(directory, ValueCodecs.LONG, SyncPolicy.every(10, TimeUnit.MILLISECONDS));
+        longs.put(1, FIRST_VALUE);
+        longs.close();
+
+        longs = new DurableLongMap<>(directory, ValueCodecs.LONG);
+        assertEquals(FIRST_VALUE, longs.get(1));
+    }
+
+    @Test
+    public void cursorRemoveIsLogged() throws IOException {
+        for (long key = 0; key < 30; key++) {
+            longs.put(key, key);
+        }
+        LongMapCursor<Long> cursor = longs.cursor();
+        while (cursor.advance()) {
+            if (cursor.key() % 3 == 0) {
+                cursor.remove();
+            }
+        }
+        assertEquals(20, longs.size());
+        longs.close();
+
+        longs = new DurableLongMap<>(directory, ValueCodecs.LONG);
+        assertEquals(20, longs.size());
+        assertFalse(longs.containsKey(3));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedMapRejectsChanges() {
+        longs.close();
+        longs.put(1, FIRST_VALUE);
+    }
+
+    private Path lastSegment() throws IOException {
+        Path last = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.wal")) {
+            for (Path file : files) {
+                if (last == null || file.compareTo(last) > 0) {
+                    last = file;
+                }
+            }
+        }
+        return last;
+    }
+
+    private int count(String glob) throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, glob)) {
+            for (Path ignored : files) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,99 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ImmutableLongMapTest {
+
+    private static final String FIRST_VALUE = "first";
+
+    @Test
+    public void copyMatchesSource() {
+        LongMapImpl<Long> source = new LongMapImpl<>();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(9);
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextLong();
+            source.put(key, key);
+            expected.put(key, key);
+        }
+        source.put(0, 0L);
+        expected.put(0L, 0L);
+
+        ImmutableLongMap<Long> frozen = source.freeze();
+        assertEquals(expected.size(), frozen.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), frozen.get(entry.getKey()));
+        }
+        for (int i = 0; i < 1000; i++) {
+            long key = random.nextLong();
+            assertEquals(expected.containsKey(key), frozen.containsKey(key));
+        }
+        long[] keys = frozen.keys();
+        Long[] values = frozen.values();
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(Long.valueOf(keys[i]), values[i]);
+        }
+        assertSame(frozen, ImmutableLongMap.copyOf(frozen));
+    }
+
+    @Test
+    public void emptyAndNullValues() {
+        ImmutableLongMap<String> empty = new LongMapImpl<String>().freeze();
+        assertTrue(empty.isEmpty());
+        assertNull(empty.get(0));
+        assertNull(empty.values());
+        assertFalse(empty.cursor().advance());
+
+        LongMapImpl<String> source = new LongMapImpl<>();
+        source.put(1, null);
+        ImmutableLongMap<String> frozen = source.freeze();
+        assertTrue(frozen.containsKey(1));
+        assertTrue(frozen.containsValue(null));
+        assertNull(frozen.values());
+    }
+
+    @Test
+    public void copyOfConcurrentMap() {
+        ConcurrentLongMap<String> source = new ConcurrentLongMap<>();
+        for (int i = 0; i < 100; i++) {
+            source.put(i, "" + i);
+        }
+        ImmutableLongMap<String> frozen = ImmutableLongMap.copyOf(source);
+        assertEquals(100, frozen.size());
+        assertEquals("42", frozen.get(42));
+        assertEquals("missing", frozen.getOrDefault(100, "missing"));
+    }
+
+    @Test
+    public void cursorAndForEach() {
+        LongMapImpl<Long> source = new LongMapImpl<>();
+        for (long key = 0; key < 100; key++) {
+            source.put(key, key);
+        }
+        ImmutableLongMap<Long> frozen = source.freeze();
+        long[] sum = {0};
+        frozen.forEach((key, value) -> sum[0] += value);
+        LongMapCursor<Long> cursor = frozen.cursor();
+        while (cursor.advance()) {
+            sum[0] -= cursor.key();
+        }
+        assertEquals(0, sum[0]);
+        assertFalse(cursor.advance());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void putThrows() {
+        new LongMapImpl<String>().freeze().put(1, FIRST_VALUE);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void mergeThrows() {
+        new LongMapImpl<String>().freeze().merge(1, FIRST_VALUE, String::concat);
+    }
+}
@@ -0,0 +1,166 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LongCacheTest {
+
+    private static final String FIRST_VALUE = "first";
+    private static final String SECOND_VALUE = "second";
+
+    @Test(expected = IllegalArgumentException.class)
+    public void initWithZeroMaximumSize() {
+        new LongCache<String>(0, EvictionPolicy.LRU);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void putNullValue() {
+        new LongCache<String>(10, EvictionPolicy.LRU).put(1, null);
+    }
+
+    @Test
+    public void putGetRemove() {
+        for (EvictionPolicy policy : EvictionPolicy.values()) {
+            LongCache<String> cache = new LongCache<>(10, policy);
+            assertNull(cache.put(1, FIRST_VALUE));
+            assertEquals(FIRST_VALUE, cache.put(1, SECOND_VALUE));
+            assertEquals(SECOND_VALUE, cache.get(1));
+            assertTrue(cache.containsKey(1));
+            assertEquals(1, cache.size());
+            assertEquals(SECOND_VALUE, cache.remove(1));
+            assertNull(cache.get(1));
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    public void sizeStaysBounded() {
+        for (EvictionPolicy policy : EvictionPolicy.values()) {
+            LongCache<Long> cache = new LongCache<>(100, policy);
+            Random random = new Random(3);
+            for (int i = 0; i < 100000; i++) {
+                long key = random.nextInt(1000);
+                if (random.nextBoolean()) {
+                    cache.put(key, key);
+                } else {
+                    Long value = cache.get(key);
+                    if (value != null) {
+                        assertEquals(key, (long) value);
+                    }
+                }
+                assertTrue(cache.size() <= 100);
+            }
+            cache.clear();
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    public void lruEvictsLeastRecentlyUsed() {
+        List<Long> evicted = new ArrayList<>();
+        LongCache<String> cache = new LongCache<>(3, EvictionPolicy.LRU);
+        cache.setEvictionListener((key, value, cause) -> {
+            assertEquals(EvictionListener.Cause.SIZE, cause);
+            evicted.add(key);
+        });
+        cache.put(1, FIRST_VALUE);
+        cache.put(2, FIRST_VALUE);
+        cache.put(3, FIRST_VALUE);
+        cache.get(1);
+        cache.put(4, FIRST_VALUE);
+        cache.put(5, FIRST_VALUE);
+
+        assertEquals(2, evicted.size());
+        assertEquals(Long.valueOf(2), evicted.get(0));
+        assertEquals(Long.valueOf(3), evicted.get(1));
+        assertTrue(cache.containsKey(1));
+    }
+
+    @Test
+    public void clockGivesReferencedEntriesSecondChance() {
+        LongCache<String> cache = new LongCache<>(3, EvictionPolicy.CLOCK);
+        cache.put(1, FIRST_VALUE);
+        cache.put(2, FIRST_VALUE);
+        cache.put(3, FIRST_VALUE);
+        cache.get(1);
+        cache.put(4, FIRST_VALUE);
+
+        assertTrue(cache.containsKey(1));
+        assertFalse(cache.containsKey(2));
+        assertTrue(cache.containsKey(3));
+        assertTrue(cache.containsKey(4));
+    }
+
+    @Test
+    public void tinyLfuResistsScans() {
+        LongCache<Long> cache = new LongCache<>(100, EvictionPolicy.W_TINY_LFU);
+        for (int round = 0; round < 10; round++) {
+            for (long key = 0; key < 50; key++) {
+                if (cache.get(key) == null) {
+                    cache.put(key, key);
+                }
+            }
+        }
+        for (long key = 1000; key < 11000; key++) {
+            cache.put(key, key);
+            if (key % 5 == 0) {
+                cache.get(key / 5 % 50);
+            }
+        }
+        int hot = 0;
+        for (long key = 0; key < 50; key++) {
+            if (cache.containsKey(key)) {
+                hot++;
+            }
+        }
+        assertTrue("hot entries kept: " + hot, hot >= 45);
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    public void weightBound() {
+        LongCache<String> cache = new LongCache<>(10L, (key, value) -> value.length(), EvictionPolicy.LRU);
+        cache.put(1, "abcd");
+        cache.put(2, "abcd");
+        assertEquals(8, cache.weight());
+        cache.put(3, "abc");
+        assertEquals(7, cache.weight());
+        assertFalse(cache.containsKey(1));
+        cache.put(2, "a");
+        assertEquals(4, cache.weight());
+        cache.put(4, "abcdefghijk");
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+    }
+
+    @Test
+    public void expireAfterWrite() {
+        long[] now = {0L};
+        List<Long> expired = new ArrayList<>();
+        LongCache<String> cache = new LongCache<>(10, EvictionPolicy.LRU);
+        cache.setTicker(() -> now[0]);
+        cache.setExpireAfterWrite(10, TimeUnit.NANOSECONDS);
+        cache.setEvictionListener((key, value, cause) -> {
+            assertEquals(EvictionListener.Cause.EXPIRED, cause);
+            expired.add(key);
+        });
+
+        cache.put(1, FIRST_VALUE);
+        now[0] = 5;
+        cache.put(2, SECOND_VALUE);
+        assertEquals(FIRST_VALUE, cache.get(1));
+        now[0] = 10;
+        assertNull(cache.get(1));
+        assertEquals(SECOND_VALUE, cache.get(2));
+        now[0] = 20;
+        cache.cleanUp();
+        assertEquals(0, cache.size());
+        assertEquals(2, expired.size());
+    }
+}
@@ -0,0 +1,113 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongDoubleMapImplTest {
+
+    private static final double DELTA = 1e-9;
+
+    private LongDoubleMap sums;
+
+    @Before
+    public void setUp() {
+        sums = new LongDoubleMapImpl(16, 0.75f, Double.NaN);
+    }
+
+    @Test
+    public void putGetRemove() {
+        assertTrue(Double.isNaN(sums.put(1, 0.5)));
+        assertEquals(0.5, sums.put(1, 1.5), DELTA);
+        assertEquals(1.5, sums.get(1), DELTA);
+        assertEquals(1.5, sums.remove(1), DELTA);
+        assertTrue(Double.isNaN(sums.get(1)));
+    }
+
+    @Test
+    public void addTo() {
+        sums.addTo(1, 0.25);
+        sums.addTo(1, 0.5);
+        assertEquals(0.75, sums.get(1), DELTA);
+        assertTrue(sums.containsValue(0.75));
+        assertArrayEquals(new double[]{0.75}, sums.values(), DELTA);
+    }
+
+    @Test
+    public void freeKey() {
+        assertFalse(sums.containsKey(0));
+        assertTrue(Double.isNaN(sums.get(0)));
+        assertTrue(Double.isNaN(sums.put(0, 0.5)));
+        assertTrue(sums.containsKey(0));
+        assertEquals(0.5, sums.addTo(0, 0.25), DELTA);
+        assertEquals(0.75, sums.get(0), DELTA);
+        assertEquals(1, sums.size());
+        assertArrayEquals(new long[]{0}, sums.keys());
+        assertArrayEquals(new double[]{0.75}, sums.values(), DELTA);
+
+        assertEquals(0.75, sums.remove(0), DELTA);
+        assertTrue(Double.isNaN(sums.remove(0)));
+        assertFalse(sums.containsKey(0));
+        assertTrue(sums.isEmpty());
+    }
+
+    @Test
+    public void removeInsideCollisionClusters() {
+        LongDoubleMap map = new LongDoubleMapImpl(64, 0.9f, Double.NaN);
+        List<Long> keys = new ArrayList<>();
+        for (int i = 1; i <= 57; i++) {
+            map.put(-i * 17L, i / 4.0);
+            keys.add(-i * 17L);
+        }
+        assertEquals(57, map.size());
+
+        Collections.shuffle(keys, new Random(11));
+        for (int i = 0; i < keys.size(); i++) {
+            long removed = keys.get(i);
+            assertEquals(-removed / 17 / 4.0, map.remove(removed), DELTA);
+            assertFalse(map.containsKey(removed));
+            for (int j = i + 1; j < keys.size(); j++) {
+                long key = keys.get(j);
+                assertEquals(-key / 17 / 4.0, map.get(key), DELTA);
+            }
+        }
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.keys().length);
+    }
+
+    @Test
+    public void resizeKeepsAllMappings() {
+        LongDoubleMap map = new LongDoubleMapImpl(2, 0.5f, Double.NaN);
+        Map<Long, Double> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextLong() >> random.nextInt(64);
+            if (random.nextInt(3) == 0) {
+                Double removed = expected.remove(key);
+                double previous = map.remove(key);
+                if (removed == null) {
+                    assertTrue(Double.isNaN(previous));
+                } else {
+                    assertEquals(removed, previous, DELTA);
+                }
+            } else {
+                expected.merge(key, 0.5, Double::sum);
+                map.addTo(key, 0.5);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Double> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()), DELTA);
+        }
+        assertEquals(expected.size(), map.keys().length);
+    }
+}
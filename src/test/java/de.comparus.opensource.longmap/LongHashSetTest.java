@@ -0,0 +1,171 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+import static org.junit.Assert.*;
+
+public class LongHashSetTest {
+
+    private LongHashSet set;
+
+    @Before
+    public void setUp() {
+        set = new LongHashSet();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void initWithIllegalLoadFactor() {
+        new LongHashSet(16, 1f);
+    }
+
+    @Test
+    public void addContainsRemove() {
+        assertTrue(set.add(1));
+        assertFalse(set.add(1));
+        assertTrue(set.contains(1));
+        assertFalse(set.contains(2));
+        assertEquals(1, set.size());
+
+        assertTrue(set.remove(1));
+        assertFalse(set.remove(1));
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void freeKey() {
+        assertTrue(set.add(0));
+        assertTrue(set.contains(0));
+        assertArrayEquals(new long[]{0}, set.toArray());
+        assertTrue(set.remove(0));
+        assertFalse(set.contains(0));
+    }
+
+    @Test
+    public void matchesHashSet() {
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(21);
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextInt(20000) - 10000;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), set.remove(value));
+            } else {
+                assertEquals(expected.add(value), set.add(value));
+            }
+        }
+
+        assertEquals(expected.size(), set.size());
+        long[] values = set.toArray();
+        assertEquals(expected.size(), values.length);
+        for (long value : values) {
+            assertTrue(expected.contains(value));
+        }
+        long[] sum = {0};
+        set.forEach(value -> sum[0] += value);
+        assertEquals(expected.stream().mapToLong(Long::longValue).sum(), sum[0]);
+
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertEquals(0, set.toArray().length);
+    }
+
+    @Test
+    public void unionAndIntersection() {
+        LongHashSet other = new LongHashSet();
+        for (long value = 0; value < 1000; value++) {
+            set.add(value);
+            other.add(value + 500);
+        }
+
+        LongHashSet union = new LongHashSet();
+        assertTrue(union.addAll(set));
+        assertTrue(union.addAll(other));
+        assertFalse(union.addAll(other));
+        assertEquals(1500, union.size());
+
+        assertTrue(set.retainAll(other));
+        assertFalse(set.retainAll(other));
+        assertEquals(500, set.size());
+        for (long value = 0; value < 1500; value++) {
+            assertTrue(union.contains(value));
+            assertEquals(value >= 500 && value < 1000, set.contains(value));
+        }
+
+        assertTrue(union.removeAll(set));
+        assertEquals(1000, union.size());
+        assertTrue(union.contains(0));
+        assertFalse(union.contains(500));
+    }
+
+    @Test
+    public void removeAllFromItself() {
+        for (long value = 0; value < 1000; value++) {
+            set.add(value);
+        }
+        assertTrue(set.removeAll(set));
+        assertTrue(set.isEmpty());
+        assertEquals(0, set.toArray().length);
+        assertFalse(set.removeAll(set));
+    }
+
+    @Test
+    public void defaultRemoveAllFromItself() {
+        LongSet view = new DelegatingLongSet(set);
+        for (long value = 0; value < 1000; value++) {
+            view.add(value);
+        }
+        assertTrue(view.removeAll(view));
+        assertTrue(view.isEmpty());
+        assertFalse(view.removeAll(view));
+    }
+
+    /**
+     * A LongSet which implements only the abstract methods, so that the
+     * default methods of the interface are exercised.
+     */
+    private static final class DelegatingLongSet implements LongSet {
+
+        private final LongSet set;
+
+        private DelegatingLongSet(LongSet set) {
+            this.set = set;
+        }
+
+        public boolean add(long value) {
+            return set.add(value);
+        }
+
+        public boolean contains(long value) {
+            return set.contains(value);
+        }
+
+        public boolean remove(long value) {
+            return set.remove(value);
+        }
+
+        public boolean isEmpty() {
+            return set.isEmpty();
+        }
+
+        public long size() {
+            return set.size();
+        }
+
+        public void clear() {
+            set.clear();
+        }
+
+        public long[] toArray() {
+            return set.toArray();
+        }
+
+        public void forEach(LongConsumer action) {
+            set.forEach(action);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongIntMapImplTest {
+
+    private static final int NO_ENTRY = Integer.MIN_VALUE;
+
+    private LongIntMap offsets;
+
+    @Before
+    public void setUp() {
+        offsets = new LongIntMapImpl(2, 0.5f, NO_ENTRY);
+    }
+
+    @Test
+    public void putGetRemove() {
+        assertEquals(NO_ENTRY, offsets.put(-7, 1));
+        assertEquals(1, offsets.put(-7, 2));
+        assertEquals(2, offsets.get(-7));
+        assertEquals(2, offsets.remove(-7));
+        assertEquals(NO_ENTRY, offsets.get(-7));
+    }
+
+    @Test
+    public void addToAfterResize() {
+        for (int i = 0; i < 1000; i++) {
+            offsets.addTo(i % 100, 1);
+        }
+        assertEquals(100, offsets.size());
+        for (int value : offsets.values()) {
+            assertEquals(10, value);
+        }
+    }
+
+    @Test
+    public void freeKey() {
+        assertFalse(offsets.containsKey(0));
+        assertEquals(NO_ENTRY, offsets.get(0));
+        assertEquals(NO_ENTRY, offsets.put(0, 1));
+        assertTrue(offsets.containsKey(0));
+        assertEquals(1, offsets.addTo(0, 2));
+        assertEquals(3, offsets.get(0));
+        assertEquals(1, offsets.size());
+        assertArrayEquals(new long[]{0}, offsets.keys());
+        assertArrayEquals(new int[]{3}, offsets.values());
+        assertTrue(offsets.containsValue(3));
+
+        assertEquals(3, offsets.remove(0));
+        assertEquals(NO_ENTRY, offsets.remove(0));
+        assertFalse(offsets.containsKey(0));
+        assertTrue(offsets.isEmpty());
+    }
+
+    @Test
+    public void removeInsideCollisionClusters() {
+        LongIntMap map = new LongIntMapImpl(64, 0.9f, NO_ENTRY);
+        List<Long> keys = new ArrayList<>();
+        for (int i = 1; i <= 57; i++) {
+            map.put(i * 31L, i);
+            keys.add(i * 31L);
+        }
+        assertEquals(57, map.size());
+
+        Collections.shuffle(keys, new Random(7));
+        for (int i = 0; i < keys.size(); i++) {
+            long removed = keys.get(i);
+            assertEquals((int) (removed / 31), map.remove(removed));
+            assertFalse(map.containsKey(removed));
+            for (int j = i + 1; j < keys.size(); j++) {
+                long key = keys.get(j);
+                assertEquals((int) (key / 31), map.get(key));
+            }
+        }
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.keys().length);
+    }
+
+    @Test
+    public void resizeKeepsAllMappings() {
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextInt(6000) - 3000;
+            if (random.nextInt(3) == 0) {
+                Integer removed = expected.remove(key);
+                assertEquals(removed == null ? NO_ENTRY : removed, offsets.remove(key));
+            } else {
+                expected.put(key, i);
+                offsets.put(key, i);
+            }
+        }
+
+        assertEquals(expected.size(), offsets.size());
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), offsets.get(entry.getKey()));
+        }
+        assertEquals(expected.size(), offsets.keys().length);
+    }
+}
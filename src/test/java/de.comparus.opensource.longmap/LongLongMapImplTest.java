@@ -0,0 +1,99 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongLongMapImplTest {
+
+    private static final long NO_ENTRY = -1L;
+
+    private LongLongMap counters;
+
+    @Before
+    public void setUp() {
+        counters = new LongLongMapImpl(16, 0.75f, NO_ENTRY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void initWithNegativeCapacity() {
+        new LongLongMapImpl(-1);
+    }
+
+    @Test
+    public void noEntryValue() {
+        assertEquals(NO_ENTRY, counters.getNoEntryValue());
+        assertEquals(NO_ENTRY, counters.get(1));
+        assertEquals(NO_ENTRY, counters.remove(1));
+        assertEquals(0L, new LongLongMapImpl().get(1));
+    }
+
+    @Test
+    public void putGetRemove() {
+        assertEquals(NO_ENTRY, counters.put(1, 10));
+        assertEquals(10, counters.put(1, 20));
+        assertEquals(20, counters.get(1));
+        assertTrue(counters.containsKey(1));
+        assertTrue(counters.containsValue(20));
+        assertEquals(20, counters.remove(1));
+        assertFalse(counters.containsKey(1));
+        assertTrue(counters.isEmpty());
+    }
+
+    @Test
+    public void addTo() {
+        assertEquals(NO_ENTRY, counters.addTo(1, 5));
+        assertEquals(5, counters.addTo(1, 5));
+        assertEquals(10, counters.get(1));
+
+        assertEquals(NO_ENTRY, counters.addTo(0, 3));
+        assertEquals(3, counters.addTo(0, -1));
+        assertEquals(2, counters.get(0));
+        assertEquals(2, counters.size());
+    }
+
+    @Test
+    public void keysAndValues() {
+        counters.put(0, 1);
+        counters.put(2, 3);
+        counters.put(4, 5);
+
+        long[] keys = counters.keys();
+        long[] values = counters.values();
+        assertEquals(3, keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(keys[i] + 1, values[i]);
+        }
+
+        counters.clear();
+        assertEquals(0, counters.keys().length);
+        assertEquals(0, counters.values().length);
+        assertFalse(counters.containsKey(0));
+    }
+
+    @Test
+    public void resizeKeepsAllMappings() {
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextInt(6000) - 3000;
+            if (random.nextInt(3) == 0) {
+                Long removed = expected.remove(key);
+                assertEquals(removed == null ? NO_ENTRY : removed, counters.remove(key));
+            } else {
+                expected.merge(key, 1L, Long::sum);
+                counters.addTo(key, 1);
+            }
+        }
+
+        assertEquals(expected.size(), counters.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals((long) entry.getValue(), counters.get(entry.getKey()));
+        }
+    }
+}
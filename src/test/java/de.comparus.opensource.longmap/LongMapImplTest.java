@@ -3,6 +3,18 @@ package de.comparus.opensource.longmap;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
 import static org.junit.Assert.*;
 
 /**
@@ -104,16 +116,16 @@ public class LongMapImplTest {
         keys[0] = 1;
         keys[1] = 2;
         keys[2] = 3;
-        assertArrayEquals(keys, strings.keys());
+        assertArrayEquals(keys, sorted(strings.keys()));
 
         strings.put(3, FIRST_VALUE);
-        assertArrayEquals(keys, strings.keys());
+        assertArrayEquals(keys, sorted(strings.keys()));
 
         strings.remove(1);
         keys = new long[2];
         keys[0] = 2;
         keys[1] = 3;
-        assertArrayEquals(keys, strings.keys());
+        assertArrayEquals(keys, sorted(strings.keys()));
     }
 
     @Test
@@ -128,17 +140,17 @@ public class LongMapImplTest {
         values[0] = FIRST_VALUE;
         values[1] = SECOND_VALUE;
         values[2] = NULL_VALUE;
-        assertArrayEquals(values, strings.values());
+        assertArrayEquals(sorted(values), sorted(strings.values()));
 
         strings.put(3, FIRST_VALUE);
         values[2] = FIRST_VALUE;
-        assertArrayEquals(values, strings.values());
+        assertArrayEquals(sorted(values), sorted(strings.values()));
 
         strings.remove(1);
         values = new String[2];
         values[0] = SECOND_VALUE;
         values[1] = FIRST_VALUE;
-        assertArrayEquals(values, strings.values());
+        assertArrayEquals(sorted(values), sorted(strings.values()));
     }
 
     @Test
@@ -172,4 +184,710 @@ public class LongMapImplTest {
         int size = 0;
         assertEquals(size, strings.size());
     }
-}
\ No newline at end of file
+
+    @Test(expected = IllegalArgumentException.class)
+    public void initLongMapWithTooBigLoadFactor() {
+        LongMap<String> map = new LongMapImpl<>(1f);
+    }
+
+    @Test
+    public void freeKey() {
+        assertFalse(strings.containsKey(0));
+        assertNull(strings.put(0, FIRST_VALUE));
+        assertTrue(strings.containsKey(0));
+        assertEquals(FIRST_VALUE, strings.get(0));
+        assertEquals(1, strings.size());
+
+        assertEquals(FIRST_VALUE, strings.put(0, SECOND_VALUE));
+        assertEquals(1, strings.size());
+        assertArrayEquals(new long[]{0}, strings.keys());
+
+        assertEquals(SECOND_VALUE, strings.remove(0));
+        assertFalse(strings.containsKey(0));
+        assertTrue(strings.isEmpty());
+    }
+
+    @Test
+    public void negativeKeys() {
+        strings.put(-1, FIRST_VALUE);
+        strings.put(Long.MIN_VALUE, SECOND_VALUE);
+        assertEquals(FIRST_VALUE, strings.get(-1));
+        assertEquals(SECOND_VALUE, strings.get(Long.MIN_VALUE));
+        assertEquals(FIRST_VALUE, strings.remove(-1));
+        assertNull(strings.get(-1));
+    }
+
+    @Test
+    public void removeInsideCollisionCluster() {
+        LongMap<String> map = new LongMapImpl<>(16);
+        map.put(1, FIRST_VALUE);
+        map.put(17, SECOND_VALUE);
+        map.put(33, NULL_VALUE);
+
+        assertEquals(FIRST_VALUE, map.remove(1));
+        assertEquals(SECOND_VALUE, map.get(17));
+        assertTrue(map.containsKey(33));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void resizeKeepsAllMappings() {
+        LongMap<Long> map = new LongMapImpl<>(2);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 10000; i++) {
+            long key = random.nextLong() >> random.nextInt(64);
+            map.put(key, (long) i);
+            expected.put(key, (long) i);
+            if (i % 3 == 0) {
+                long removed = random.nextLong() >> random.nextInt(64);
+                assertEquals(expected.remove(removed), map.remove(removed));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        assertEquals(expected.size(), map.keys().length);
+    }
+
+    @Test
+    public void incrementalResize() {
+        LongMapImpl<Long> map = new LongMapImpl<>(16);
+        map.setIncrementalResize(true);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(7);
+        boolean rehashed = false;
+
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextInt(5000) - 2500;
+            if (random.nextInt(4) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+            rehashed |= map.isRehashing();
+            assertEquals(expected.get(key), map.get(key));
+        }
+
+        assertTrue(rehashed);
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected.size(), map.keys().length);
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertTrue(map.containsKey(entry.getKey()));
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void disableIncrementalResizeFinishesMigration() {
+        LongMapImpl<String> map = new LongMapImpl<>(16);
+        map.setIncrementalResize(true);
+        for (int i = 1; i <= 13; i++) {
+            map.put(i, FIRST_VALUE);
+        }
+        assertTrue(map.isRehashing());
+        assertEquals(13, map.keys().length);
+        assertEquals(13, map.values().length);
+
+        map.setIncrementalResize(false);
+        assertFalse(map.isRehashing());
+        assertEquals(13, map.size());
+        assertTrue(map.containsValue(FIRST_VALUE));
+    }
+
+    @Test
+    public void forEach() {
+        strings.put(0, FIRST_VALUE);
+        strings.put(1, SECOND_VALUE);
+        strings.put(-1, NULL_VALUE);
+
+        Map<Long, String> visited = new HashMap<>();
+        strings.forEach(visited::put);
+
+        assertEquals(3, visited.size());
+        assertEquals(FIRST_VALUE, visited.get(0L));
+        assertEquals(SECOND_VALUE, visited.get(1L));
+        assertTrue(visited.containsKey(-1L));
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void forEachFailsOnModification() {
+        strings.put(1, FIRST_VALUE);
+        strings.put(2, SECOND_VALUE);
+        strings.forEach((key, value) -> strings.remove(key));
+    }
+
+    @Test
+    public void cursor() {
+        strings.put(0, FIRST_VALUE);
+        strings.put(1, SECOND_VALUE);
+
+        LongMapCursor<String> cursor = strings.cursor();
+        Map<Long, String> visited = new HashMap<>();
+        while (cursor.advance()) {
+            visited.put(cursor.key(), cursor.value());
+        }
+        assertEquals(2, visited.size());
+        assertEquals(FIRST_VALUE, visited.get(0L));
+
+        cursor.reset();
+        int count = 0;
+        while (cursor.advance()) {
+            count++;
+        }
+        assertEquals(2, count);
+    }
+
+    @Test
+    public void cursorRemovesWrappedClusters() {
+        LongMapImpl<Long> map = new LongMapImpl<>(16, 0.9f, LongHashStrategies.FOLD);
+        long[] keys = {14, 15, 30, 31, 46, 47, 62, 0, 3};
+        for (long key : keys) {
+            map.put(key, key);
+        }
+
+        LongMapCursor<Long> cursor = map.cursor();
+        Map<Long, Long> visited = new HashMap<>();
+        while (cursor.advance()) {
+            assertNull(visited.put(cursor.key(), cursor.value()));
+            if (cursor.key() % 2 == 0) {
+                cursor.remove();
+            }
+        }
+
+        assertEquals(keys.length, visited.size());
+        for (long key : keys) {
+            assertEquals(key % 2 != 0, map.containsKey(key));
+            if (key % 2 != 0) {
+                assertEquals(Long.valueOf(key), map.get(key));
+            }
+        }
+        assertEquals(4, map.size());
+    }
+
+    @Test
+    public void cursorRemovesEverything() {
+        LongMapImpl<Long> map = new LongMapImpl<>(4);
+        Random random = new Random(9);
+        for (int i = 0; i < 5000; i++) {
+            map.put(random.nextInt(20000) - 10000, (long) i);
+        }
+        long size = map.size();
+
+        LongMapCursor<Long> cursor = map.cursor();
+        int visited = 0;
+        while (cursor.advance()) {
+            visited++;
+            cursor.remove();
+        }
+        assertEquals(size, visited);
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.keys().length);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cursorRemoveTwice() {
+        strings.put(1, FIRST_VALUE);
+        LongMapCursor<String> cursor = strings.cursor();
+        cursor.advance();
+        cursor.remove();
+        cursor.remove();
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void cursorFailsOnModification() {
+        strings.put(1, FIRST_VALUE);
+        LongMapCursor<String> cursor = strings.cursor();
+        strings.put(2, SECOND_VALUE);
+        cursor.advance();
+    }
+
+    @Test
+    public void bulkOperations() {
+        Random random = new Random(5);
+        long[] keys = new long[3000];
+        Long[] values = new Long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextInt(4000) - 2000;
+            values[i] = (long) i;
+        }
+        keys[17] = 0;
+
+        LongMapImpl<Long> map = new LongMapImpl<>(4);
+        Map<Long, Long> expected = new HashMap<>();
+        map.putAll(keys, values);
+        for (int i = 0; i < keys.length; i++) {
+            expected.put(keys[i], values[i]);
+        }
+        assertEquals(expected.size(), map.size());
+
+        long[] lookups = new long[5000];
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = random.nextInt(8000) - 4000;
+        }
+        lookups[3] = 0;
+        Long[] found = new Long[lookups.length];
+        boolean[] present = new boolean[lookups.length];
+        map.getAll(lookups, found);
+        assertFalse(map.containsAll(lookups, present));
+        for (int i = 0; i < lookups.length; i++) {
+            assertEquals(expected.get(lookups[i]), found[i]);
+            assertEquals(expected.containsKey(lookups[i]), present[i]);
+        }
+        assertTrue(map.containsAll(keys, new boolean[keys.length]));
+
+        int removed = 0;
+        for (long key : lookups) {
+            if (expected.remove(key) != null) {
+                removed++;
+            }
+        }
+        assertEquals(removed, map.removeAll(lookups));
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void putAllResizesOnce() {
+        LongMapImpl<String> map = new LongMapImpl<>(4);
+        long[] keys = new long[1000];
+        String[] values = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i + 1;
+            values[i] = "" + i;
+        }
+        map.putAll(keys, values);
+        assertEquals(2048, map.capacity());
+        assertEquals(1000, map.size());
+        assertEquals("999", map.get(1000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void putAllWithDifferentLengths() {
+        strings.putAll(new long[2], new String[1]);
+    }
+
+    @Test
+    public void structuredKeys() {
+        LongMapImpl<Long> map = new LongMapImpl<>();
+        for (long i = -1000; i < 1000; i++) {
+            map.put(i << 20, i);
+            map.put(i << 40 | 7, -i);
+        }
+        assertEquals(4000, map.size());
+        for (long i = -1000; i < 1000; i++) {
+            assertEquals(Long.valueOf(i), map.get(i << 20));
+            assertEquals(Long.valueOf(-i), map.get(i << 40 | 7));
+        }
+    }
+
+    @Test
+    public void customHashStrategy() {
+        LongMapImpl<Long> map = new LongMapImpl<>(4, 0.75f, key -> 0);
+        for (long key = -50; key < 50; key++) {
+            map.put(key, key);
+        }
+        for (long key = -50; key < 50; key += 2) {
+            assertEquals(Long.valueOf(key), map.remove(key));
+        }
+        assertEquals(50, map.size());
+        for (long key = -49; key < 50; key += 2) {
+            assertEquals(Long.valueOf(key), map.get(key));
+        }
+    }
+
+    @Test
+    public void keysCollidingUnderFmix64() {
+        LongMapImpl<Long> map = new LongMapImpl<>();
+        map.setStatsEnabled(true);
+        for (long x = 1; x <= 20000; x++) {
+            assertEquals(0, LongHashStrategies.FMIX64.hash(collidingUnderFmix64(x)));
+            map.put(collidingUnderFmix64(x), x);
+        }
+        for (long x = 1; x <= 20000; x++) {
+            assertEquals(Long.valueOf(x), map.get(collidingUnderFmix64(x)));
+        }
+
+        long[] probeLengths = map.stats().getProbeLengths();
+        for (int bucket = 11; bucket < probeLengths.length; bucket++) {
+            assertEquals("probes of 1024 slots or more", 0, probeLengths[bucket]);
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void initLongMapWithNullHashStrategy() {
+        new LongMapImpl<String>(16, 0.75f, null);
+    }
+
+    @Test
+    public void stats() {
+        LongMapImpl<Long> map = new LongMapImpl<>(4);
+        assertFalse(map.isStatsEnabled());
+        map.setStatsEnabled(true);
+        for (long key = 0; key < 100; key++) {
+            map.put(key, key);
+        }
+        for (long key = 50; key < 150; key++) {
+            map.get(key);
+        }
+        map.remove(1);
+        map.remove(1000);
+
+        LongMapStats stats = map.stats();
+        assertEquals(100, stats.getPuts());
+        assertEquals(100, stats.getGets());
+        assertEquals(50, stats.getHits());
+        assertEquals(50, stats.getMisses());
+        assertEquals(2, stats.getRemoves());
+        assertEquals(6, stats.getResizes());
+        assertEquals(99, stats.getSize());
+        assertEquals(256, stats.getCapacity());
+        assertEquals(99 / 256.0, stats.getLoadFactor(), 1e-9);
+        assertEquals(6, Arrays.stream(stats.getResizeNanos()).sum());
+        assertEquals(99 + 100 + 2, Arrays.stream(stats.getProbeLengths()).sum());
+        assertEquals(0, stats.getProbeLengths()[0]);
+
+        map.setStatsEnabled(false);
+        assertFalse(map.isStatsEnabled());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void statsWhenDisabled() {
+        new LongMapImpl<String>().stats();
+    }
+
+    @Test
+    public void statsMBean() throws Exception {
+        LongMapImpl<String> map = new LongMapImpl<>();
+        ObjectName name = new ObjectName("de.comparus.opensource.longmap:type=LongMap,name=test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        map.registerStats(name);
+        try {
+            assertTrue(map.isStatsEnabled());
+            map.put(1, FIRST_VALUE);
+            map.get(1);
+            assertEquals(1L, server.getAttribute(name, "Hits"));
+            assertEquals(1L, server.getAttribute(name, "Puts"));
+        } finally {
+            map.unregisterStats(name);
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void parallelForEachReduceSearch() {
+        LongMapImpl<Long> longs = new LongMapImpl<>();
+        for (long key = 0; key < 100000; key++) {
+            longs.put(key, key);
+        }
+        for (long threshold : new long[]{1, 1000, Long.MAX_VALUE}) {
+            LongAdder sum = new LongAdder();
+            longs.forEach(threshold, (key, value) -> sum.add(value));
+            assertEquals(99999L * 100000 / 2, sum.sum());
+
+            assertEquals(Long.valueOf(99999L * 100000 / 2), longs.reduce(threshold, (key, value) -> value, Long::sum));
+            assertNull(longs.reduce(threshold, (key, value) -> null, Long::sum));
+
+            assertEquals(Long.valueOf(4242), longs.search(threshold, (key, value) -> key == 4242 ? value : null));
+            assertNull(longs.search(threshold, (key, value) -> key < 0 ? value : null));
+        }
+    }
+
+    @Test
+    public void parallelBulkOnCustomPool() {
+        LongMapImpl<Long> longs = new LongMapImpl<>();
+        for (long key = 0; key < 10000; key++) {
+            longs.put(key, 1L);
+        }
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            longs.setBulkPool(pool);
+            assertEquals(Long.valueOf(10000), longs.reduce(1, (key, value) -> value, Long::sum));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void keyAndValueStreams() {
+        LongMapImpl<String> map = new LongMapImpl<>();
+        for (int i = 0; i < 5000; i++) {
+            map.put(i, "" + i);
+        }
+        assertEquals(4999L * 5000 / 2, map.keyStream().parallel().sum());
+        assertEquals(5000, map.keyStream().parallel().distinct().count());
+        assertEquals(4999L * 5000 / 2, map.valueStream().parallel().mapToLong(Long::parseLong).sum());
+        assertArrayEquals(sorted(map.keys()), map.keyStream().sorted().toArray());
+
+        LongMapImpl<String> empty = new LongMapImpl<>();
+        assertEquals(0, empty.keyStream().count());
+        assertEquals(0, empty.valueStream().count());
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void keyStreamFailsFast() {
+        LongMapImpl<String> map = new LongMapImpl<>();
+        map.put(1, FIRST_VALUE);
+        map.put(2, SECOND_VALUE);
+        map.keyStream().forEach(key -> map.remove(key));
+    }
+
+    @Test
+    public void computeMethods() {
+        LongMapImpl<String> map = new LongMapImpl<>();
+        for (long key : new long[]{0, 1}) {
+            assertEquals(SECOND_VALUE, map.getOrDefault(key, SECOND_VALUE));
+            assertNull(map.putIfAbsent(key, FIRST_VALUE));
+            assertEquals(FIRST_VALUE, map.putIfAbsent(key, SECOND_VALUE));
+            assertEquals(FIRST_VALUE, map.getOrDefault(key, SECOND_VALUE));
+
+            assertEquals(FIRST_VALUE, map.computeIfAbsent(key, k -> SECOND_VALUE));
+            assertEquals(FIRST_VALUE + key, map.computeIfPresent(key, (k, value) -> value + k));
+            assertEquals("x", map.compute(key, (k, value) -> "x"));
+            assertEquals("xy", map.merge(key, "y", String::concat));
+            assertNull(map.merge(key, "y", (value, given) -> null));
+            assertFalse(map.containsKey(key));
+
+            assertNull(map.computeIfPresent(key, (k, value) -> SECOND_VALUE));
+            assertNull(map.compute(key, (k, value) -> null));
+            assertFalse(map.containsKey(key));
+            assertEquals(SECOND_VALUE, map.compute(key, (k, value) -> value == null ? SECOND_VALUE : value));
+            assertEquals(FIRST_VALUE, map.merge(key + 100, FIRST_VALUE, String::concat));
+            assertNull(map.computeIfAbsent(key + 200, k -> null));
+        }
+        assertEquals(4, map.size());
+    }
+
+    @Test
+    public void computeReplacesNullValue() {
+        LongMapImpl<String> map = new LongMapImpl<>();
+        map.put(5, null);
+        assertNull(map.getOrDefault(5, FIRST_VALUE));
+        assertNull(map.putIfAbsent(5, FIRST_VALUE));
+        assertEquals(FIRST_VALUE, map.get(5));
+        map.put(6, null);
+        assertEquals(SECOND_VALUE, map.computeIfAbsent(6, key -> SECOND_VALUE));
+        map.put(7, null);
+        assertNull(map.compute(7, (key, value) -> null));
+        assertFalse(map.containsKey(7));
+    }
+
+    @Test
+    public void mergeCountsDuringIncrementalResize() {
+        LongMapImpl<Long> counters = new LongMapImpl<>(2);
+        counters.setIncrementalResize(true);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 50000; i++) {
+            long key = random.nextInt(5000);
+            assertEquals(expected.merge(key, 1L, Long::sum), counters.merge(key, 1L, Long::sum));
+        }
+        assertEquals(expected.size(), counters.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), counters.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void computeReadingMapDuringIncrementalResize() {
+        LongMapImpl<Long> longs = new LongMapImpl<>(2);
+        longs.setIncrementalResize(true);
+        Map<Long, Long> expected = new HashMap<>();
+        for (long key = 1; key <= 5000; key++) {
+            long value = key % 2 == 0
+                    ? longs.computeIfAbsent(key, k -> longs.containsKey(k - 1) ? k : -k)
+                    : longs.compute(key, (k, v) -> longs.get(k - 1) != null ? k : -k);
+            expected.put(key, value);
+            assertEquals(expected.size(), longs.size());
+        }
+        assertEquals(expected.size(), longs.keys().length);
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), longs.get(entry.getKey()));
+        }
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void computeFailsOnRecursiveUpdate() {
+        LongMapImpl<String> map = new LongMapImpl<>();
+        map.computeIfAbsent(1, key -> map.put(2, FIRST_VALUE));
+    }
+
+    @Test
+    public void trimToSize() {
+        LongMapImpl<Long> longs = new LongMapImpl<>();
+        for (long key = 0; key < 10000; key++) {
+            longs.put(key, key);
+        }
+        assertEquals(16384, longs.capacity());
+        for (long key = 1000; key < 10000; key++) {
+            longs.remove(key);
+        }
+        assertEquals(16384, longs.capacity());
+
+        longs.trimToSize();
+        assertEquals(2048, longs.capacity());
+        assertEquals(1000, longs.size());
+        for (long key = 0; key < 1000; key++) {
+            assertEquals(Long.valueOf(key), longs.get(key));
+        }
+    }
+
+    @Test
+    public void shrinkAfterMassRemoval() {
+        LongMapImpl<Long> longs = new LongMapImpl<>();
+        longs.setShrinkLoadFactor(0.1f);
+        for (long key = 0; key < 100000; key++) {
+            longs.put(key, key);
+        }
+        assertEquals(262144, longs.capacity());
+        for (long key = 0; key < 99000; key++) {
+            longs.remove(key);
+        }
+        assertEquals(8192, longs.capacity());
+        for (long key = 99000; key < 100000; key++) {
+            assertEquals(Long.valueOf(key), longs.get(key));
+        }
+
+        int capacity = longs.capacity();
+        for (int i = 0; i < 1000; i++) {
+            longs.put(-1, -1L);
+            longs.remove(-1);
+        }
+        assertEquals(capacity, longs.capacity());
+
+        longs.clear();
+        assertEquals(16, longs.capacity());
+    }
+
+    @Test
+    public void cursorRemovalNeverShrinks() {
+        for (int seed = 0; seed < 10; seed++) {
+            LongMapImpl<Long> longs = new LongMapImpl<>(2);
+            longs.setShrinkLoadFactor(0.2f);
+            Random random = new Random(seed);
+            for (int i = 0; i < 1000; i++) {
+                longs.put(random.nextLong(), (long) i);
+            }
+            int capacity = longs.capacity();
+            long size = longs.size();
+
+            LongMapCursor<Long> cursor = longs.cursor();
+            int visited = 0;
+            while (cursor.advance()) {
+                visited++;
+                cursor.remove();
+            }
+            assertEquals(size, visited);
+            assertTrue(longs.isEmpty());
+            assertEquals(capacity, longs.capacity());
+        }
+    }
+
+    @Test
+    public void shrinkNeverBelowInitialCapacity() {
+        LongMapImpl<Long> longs = new LongMapImpl<>(1024);
+        longs.setShrinkLoadFactor(0.2f);
+        for (long key = 0; key < 5000; key++) {
+            longs.put(key, key);
+        }
+        longs.removeAll(longs.keys());
+        assertTrue(longs.isEmpty());
+        assertEquals(1024, longs.capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void illegalShrinkLoadFactor() {
+        new LongMapImpl<String>().setShrinkLoadFactor(0.5f);
+    }
+
+    @Test
+    public void clearEmptyMapKeepsTable() {
+        LongMapImpl<String> map = new LongMapImpl<>(1 << 20);
+        map.clear();
+        assertEquals(1 << 20, map.capacity());
+        map.put(1, FIRST_VALUE);
+        map.clear();
+        assertFalse(map.containsKey(1));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void snapshotIsPointInTime() {
+        LongMapImpl<Long> longs = new LongMapImpl<>();
+        for (long key = 0; key < 100; key++) {
+            longs.put(key, key);
+        }
+        LongMap<Long> snapshot = longs.snapshot();
+        LongMap<Long> same = longs.snapshot();
+
+        longs.put(1, -1L);
+        longs.remove(2);
+        longs.merge(3, 1L, Long::sum);
+        longs.remove(0);
+        for (long key = 100; key < 1000; key++) {
+            longs.put(key, key);
+        }
+        LongMapCursor<Long> cursor = longs.cursor();
+        while (cursor.advance()) {
+            if (cursor.key() % 5 == 0) {
+                cursor.remove();
+            }
+        }
+
+        for (LongMap<Long> view : Arrays.asList(snapshot, same)) {
+            assertEquals(100, view.size());
+            for (long key = 0; key < 100; key++) {
+                assertEquals(Long.valueOf(key), view.get(key));
+            }
+            assertFalse(view.containsKey(100));
+            assertEquals(100, view.keys().length);
+            long[] sum = {0};
+            view.forEach((key, value) -> sum[0] += value);
+            assertEquals(99 * 100 / 2, sum[0]);
+        }
+        assertEquals(Long.valueOf(-1), longs.get(1));
+        assertNull(longs.get(2));
+
+        LongMap<Long> cleared = longs.snapshot();
+        longs.clear();
+        assertTrue(longs.isEmpty());
+        assertEquals(Long.valueOf(-1), cleared.get(1));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshotIsReadOnly() {
+        LongMapImpl<String> map = new LongMapImpl<>();
+        map.snapshot().put(1, FIRST_VALUE);
+    }
+
+    /**
+     * Returns the key which fmix64 mixes into x << 32, found by inverting
+     * fmix64, so that the unseeded hashes of all such keys are 0.
+     */
+    private static long collidingUnderFmix64(long x) {
+        long key = x << 32;
+        key ^= key >>> 33;
+        key *= 0x9cb4b2f8129337dbL;
+        key ^= key >>> 33;
+        key *= 0x4f74430c22a54005L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static long[] sorted(long[] array) {
+        long[] copy = array.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    private static String[] sorted(String[] array) {
+        String[] copy = array.clone();
+        Arrays.sort(copy, Comparator.nullsFirst(Comparator.naturalOrder()));
+        return copy;
+    }
+}
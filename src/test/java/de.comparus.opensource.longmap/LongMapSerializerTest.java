@@ -0,0 +1,84 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongMapSerializerTest {
+
+    private LongMapImpl<Long> longs;
+
+    @Before
+    public void setUp() {
+        longs = new LongMapImpl<>();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        Random random = new Random(3);
+        for (int i = 0; i < 100000; i++) {
+            longs.put(random.nextLong(), (long) i);
+        }
+        longs.put(0, null);
+        longs.put(Long.MIN_VALUE, 1L);
+        longs.put(Long.MAX_VALUE, 2L);
+
+        LongMapImpl<Long> restored = restore(snapshot(longs));
+
+        assertEquals(longs.size(), restored.size());
+        assertEquals(longs.capacity(), restored.capacity());
+        long[] keys = longs.keys();
+        for (long key : keys) {
+            assertTrue(restored.containsKey(key));
+            assertEquals(longs.get(key), restored.get(key));
+        }
+    }
+
+    @Test
+    public void emptyMap() throws IOException {
+        LongMapImpl<Long> restored = restore(snapshot(longs));
+        assertTrue(restored.isEmpty());
+    }
+
+    @Test
+    public void sequentialKeysAreCompact() throws IOException {
+        for (long key = 1; key <= 10000; key++) {
+            longs.put(key, key);
+        }
+        byte[] snapshot = snapshot(longs);
+        assertTrue(snapshot.length < 10000 * (1 + 1 + Long.BYTES) + 64);
+    }
+
+    @Test(expected = IOException.class)
+    public void readWithCodecOfOtherWidth() throws IOException {
+        longs.put(1, 1L);
+        LongMapSerializer.read(Channels.newChannel(new ByteArrayInputStream(snapshot(longs))), ValueCodecs.INT);
+    }
+
+    @Test(expected = EOFException.class)
+    public void readTruncatedSnapshot() throws IOException {
+        longs.put(1, 1L);
+        longs.put(2, 2L);
+        byte[] snapshot = snapshot(longs);
+        restore(Arrays.copyOf(snapshot, snapshot.length - 3));
+    }
+
+    private static byte[] snapshot(LongMapImpl<Long> map) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LongMapSerializer.write(map, ValueCodecs.LONG, Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    private static LongMapImpl<Long> restore(byte[] snapshot) throws IOException {
+        return LongMapSerializer.read(Channels.newChannel(new ByteArrayInputStream(snapshot)), ValueCodecs.LONG);
+    }
+}
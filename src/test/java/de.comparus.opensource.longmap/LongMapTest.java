@@ -0,0 +1,120 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LongMapTest {
+
+    private LongMap<String> strings;
+
+    @Before
+    public void setUp() {
+        strings = new HashLongMap<>();
+        strings.put(1, "one");
+        strings.put(2, "two");
+        strings.put(3, null);
+    }
+
+    @Test
+    public void defaultForEach() {
+        Map<Long, String> visited = new HashMap<>();
+        strings.forEach(visited::put);
+        assertEquals(3, visited.size());
+        assertEquals("one", visited.get(1L));
+        assertEquals("two", visited.get(2L));
+        assertTrue(visited.containsKey(3L));
+        assertNull(visited.get(3L));
+    }
+
+    @Test
+    public void defaultCursor() {
+        LongMapCursor<String> cursor = strings.cursor();
+        Map<Long, String> visited = new HashMap<>();
+        while (cursor.advance()) {
+            visited.put(cursor.key(), cursor.value());
+            if (cursor.key() != 2) {
+                cursor.remove();
+            }
+        }
+        assertEquals(3, visited.size());
+        assertEquals(1, strings.size());
+        assertEquals("two", strings.get(2));
+
+        cursor.reset();
+        int remaining = 0;
+        while (cursor.advance()) {
+            if (strings.containsKey(cursor.key())) {
+                remaining++;
+            }
+        }
+        assertEquals(1, remaining);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void defaultCursorRemoveTwice() {
+        LongMapCursor<String> cursor = strings.cursor();
+        cursor.advance();
+        cursor.remove();
+        cursor.remove();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void defaultCursorBeforeFirstMapping() {
+        strings.cursor().key();
+    }
+
+    /**
+     * A LongMap which implements only the abstract methods, so that the
+     * default methods of the interface are exercised.
+     */
+    private static final class HashLongMap<V> implements LongMap<V> {
+
+        private final Map<Long, V> map = new HashMap<>();
+
+        public V put(long key, V value) {
+            return map.put(key, value);
+        }
+
+        public V get(long key) {
+            return map.get(key);
+        }
+
+        public V remove(long key) {
+            return map.remove(key);
+        }
+
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        public boolean containsKey(long key) {
+            return map.containsKey(key);
+        }
+
+        public boolean containsValue(V value) {
+            return map.containsValue(value);
+        }
+
+        public long[] keys() {
+            return map.keySet().stream().mapToLong(Long::longValue).toArray();
+        }
+
+        @SuppressWarnings("unchecked")
+        public V[] values() {
+            return (V[]) map.values().toArray();
+        }
+
+        public long size() {
+            return map.size();
+        }
+
+        public void clear() {
+            map.clear();
+        }
+    }
+}
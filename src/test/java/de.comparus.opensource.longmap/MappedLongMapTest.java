@@ -0,0 +1,105 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+public class MappedLongMapTest {
+
+    private static final Long FIRST_VALUE = 100L;
+    private static final Long SECOND_VALUE = 200L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+    private MappedLongMap<Long> longs;
+
+    @Before
+    public void setUp() throws IOException {
+        file = folder.getRoot().toPath().resolve("longs.map");
+        longs = new MappedLongMap<>(file, ValueCodecs.LONG);
+    }
+
+    @After
+    public void tearDown() {
+        longs.close();
+    }
+
+    @Test
+    public void putGetRemove() {
+        assertNull(longs.put(1, FIRST_VALUE));
+        assertEquals(FIRST_VALUE, longs.put(1, SECOND_VALUE));
+        assertEquals(SECOND_VALUE, longs.get(1));
+        assertEquals(SECOND_VALUE, longs.remove(1));
+        assertTrue(longs.isEmpty());
+    }
+
+    @Test
+    public void reopenRestoresMappings() throws IOException {
+        for (long key = -1000; key < 1000; key++) {
+            longs.put(key, key * 2);
+        }
+        longs.remove(7);
+        longs.force();
+        longs.close();
+
+        longs = new MappedLongMap<>(file, ValueCodecs.LONG);
+        assertEquals(1999, longs.size());
+        assertEquals(Long.valueOf(0), longs.get(0));
+        assertEquals(Long.valueOf(-2000), longs.get(-1000));
+        assertFalse(longs.containsKey(7));
+        assertFalse(Files.exists(file.resolveSibling("longs.map.resize")));
+    }
+
+    @Test
+    public void reopenWithoutForce() throws IOException {
+        longs.put(42, FIRST_VALUE);
+        longs.close();
+
+        longs = new MappedLongMap<>(file, ValueCodecs.LONG);
+        assertEquals(FIRST_VALUE, longs.get(42));
+        assertEquals(1, longs.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void openWithCodecOfOtherWidth() throws IOException {
+        longs.close();
+        new MappedLongMap<>(file, ValueCodecs.INT);
+    }
+
+    @Test(expected = IOException.class)
+    public void openForeignFile() throws IOException {
+        Path foreign = folder.newFile("foreign").toPath();
+        Files.write(foreign, new byte[128]);
+        new MappedLongMap<>(foreign, ValueCodecs.LONG);
+    }
+
+    @Test(expected = IOException.class)
+    public void openFileOfPreviousVersion() throws IOException {
+        longs.close();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer version = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 1);
+            channel.write(version, 8);
+        }
+        new MappedLongMap<>(file, ValueCodecs.LONG);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void forceAfterClose() {
+        longs.close();
+        longs.force();
+    }
+}
@@ -0,0 +1,176 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class ObservableLongMapTest {
+
+    private ObservableLongMap<Long> longs;
+
+    @Before
+    public void setUp() {
+        longs = new ObservableLongMap<>(new LongMapImpl<>());
+    }
+
+    @After
+    public void tearDown() {
+        longs.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void initWithIllegalBatchSize() {
+        new ObservableLongMap<>(new LongMapImpl<Long>(), 16, 0, false);
+    }
+
+    @Test
+    public void mirrorFollowsChanges() {
+        Map<Long, Long> mirror = new HashMap<>();
+        longs.subscribe(changes -> apply(changes, mirror));
+
+        Random random = new Random(24);
+        for (int i = 0; i < 50000; i++) {
+            long key = random.nextInt(1000);
+            int op = random.nextInt(100);
+            if (op == 0) {
+                longs.clear();
+            } else if (op < 40) {
+                longs.remove(key);
+            } else {
+                longs.put(key, (long) i);
+            }
+        }
+        LongMapCursor<Long> cursor = longs.cursor();
+        while (cursor.advance()) {
+            if (cursor.key() % 2 == 0) {
+                cursor.remove();
+            }
+        }
+        longs.close();
+
+        assertEquals(longs.size(), mirror.size());
+        longs.forEach((key, value) -> assertEquals(value, mirror.get(key)));
+    }
+
+    @Test
+    public void subscriberSeesOnlyLaterChanges() {
+        longs.put(1, 1L);
+        List<Long> seen = new ArrayList<>();
+        longs.subscribe(changes -> {
+            for (int i = 0; i < changes.size(); i++) {
+                seen.add(changes.key(i));
+            }
+        });
+        longs.put(2, 2L);
+        longs.remove(3);
+        longs.remove(1);
+        longs.close();
+
+        assertEquals(2, seen.size());
+        assertEquals(Long.valueOf(2), seen.get(0));
+        assertEquals(Long.valueOf(1), seen.get(1));
+    }
+
+    @Test
+    public void coalescingCollapsesRepeatedUpdates() throws InterruptedException {
+        longs.close();
+        longs = new ObservableLongMap<>(new LongMapImpl<>(), 1024, 1024, true);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> values = new ArrayList<>();
+        longs.subscribe(changes -> {
+            awaitQuietly(release);
+            for (int i = 0; i < changes.size(); i++) {
+                assertEquals(LongMapChanges.Type.PUT, changes.type(i));
+                values.add(changes.value(i));
+            }
+        });
+
+        for (long value = 0; value < 500; value++) {
+            longs.put(1, value);
+        }
+        release.countDown();
+        longs.close();
+
+        assertTrue(values.size() <= 2);
+        assertEquals(Long.valueOf(499), values.get(values.size() - 1));
+    }
+
+    @Test
+    public void fullBufferBlocksWriters() throws InterruptedException {
+        longs.close();
+        longs = new ObservableLongMap<>(new LongMapImpl<>(), 4, 1, false);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> keys = new ArrayList<>();
+        longs.subscribe(changes -> {
+            awaitQuietly(release);
+            keys.add(changes.key(0));
+        });
+
+        Thread writer = new Thread(() -> {
+            for (long key = 0; key < 100; key++) {
+                longs.put(key, key);
+            }
+        });
+        writer.start();
+        writer.join(200);
+        assertTrue(writer.isAlive());
+        assertTrue(longs.size() <= 6);
+
+        release.countDown();
+        writer.join();
+        longs.close();
+        assertEquals(100, keys.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Long.valueOf(i), keys.get(i));
+        }
+    }
+
+    @Test
+    public void cancelledSubscriptionReceivesNothing() {
+        List<Long> seen = new ArrayList<>();
+        ObservableLongMap<Long>.Subscription subscription = longs.subscribe(changes -> seen.add(changes.key(0)));
+        subscription.cancel();
+        assertTrue(subscription.isCancelled());
+        longs.put(1, 1L);
+        longs.close();
+        assertTrue(seen.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedMapRejectsChanges() {
+        longs.close();
+        longs.put(1, 1L);
+    }
+
+    private static void apply(LongMapChanges<Long> changes, Map<Long, Long> mirror) {
+        for (int i = 0; i < changes.size(); i++) {
+            switch (changes.type(i)) {
+                case PUT:
+                    mirror.put(changes.key(i), changes.value(i));
+                    break;
+                case REMOVE:
+                    mirror.remove(changes.key(i));
+                    break;
+                default:
+                    mirror.clear();
+            }
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OffHeapLongMapTest {
+
+    private static final Long FIRST_VALUE = 100L;
+    private static final Long SECOND_VALUE = 200L;
+
+    private OffHeapLongMap<Long> longs;
+
+    @Before
+    public void setUp() {
+        longs = new OffHeapLongMap<>(ValueCodecs.LONG);
+    }
+
+    @After
+    public void tearDown() {
+        longs.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void initWithIllegalLoadFactor() {
+        new OffHeapLongMap<>(ValueCodecs.LONG, 16, 1.5f);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void putNullValue() {
+        longs.put(1, null);
+    }
+
+    @Test
+    public void putGetRemove() {
+        assertNull(longs.put(1, FIRST_VALUE));
+        assertEquals(FIRST_VALUE, longs.put(1, SECOND_VALUE));
+        assertEquals(SECOND_VALUE, longs.get(1));
+        assertTrue(longs.containsKey(1));
+        assertTrue(longs.containsValue(SECOND_VALUE));
+        assertFalse(longs.containsValue(FIRST_VALUE));
+
+        assertEquals(SECOND_VALUE, longs.remove(1));
+        assertNull(longs.get(1));
+        assertTrue(longs.isEmpty());
+        assertNull(longs.values());
+    }
+
+    @Test
+    public void freeKey() {
+        assertNull(longs.put(0, FIRST_VALUE));
+        assertEquals(FIRST_VALUE, longs.get(0));
+        assertArrayEquals(new long[]{0}, longs.keys());
+        assertArrayEquals(new Long[]{FIRST_VALUE}, longs.values());
+        assertEquals(FIRST_VALUE, longs.remove(0));
+        assertFalse(longs.containsKey(0));
+    }
+
+    @Test
+    public void resizeKeepsAllMappings() {
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextInt(8000) - 4000;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), longs.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), longs.put(key, (long) i));
+            }
+        }
+
+        assertEquals(expected.size(), longs.size());
+        assertEquals(expected.size(), longs.keys().length);
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), longs.get(entry.getKey()));
+        }
+
+        longs.clear();
+        assertTrue(longs.isEmpty());
+        assertEquals(0, longs.keys().length);
+    }
+
+    @Test
+    public void structuredKeys() {
+        for (long i = -1000; i < 1000; i++) {
+            longs.put(i << 20, i);
+            longs.put(i << 40 | 7, -i);
+        }
+        assertEquals(4000, longs.size());
+        for (long i = -1000; i < 1000; i++) {
+            assertEquals(Long.valueOf(i), longs.get(i << 20));
+            assertEquals(Long.valueOf(-i), longs.get(i << 40 | 7));
+        }
+    }
+
+    @Test
+    public void customHashStrategy() {
+        try (OffHeapLongMap<Long> folded = new OffHeapLongMap<>(ValueCodecs.LONG, 16, 0.75f,
+                LongHashStrategies.FOLD)) {
+            for (long key = -500; key < 500; key++) {
+                folded.put(key, key * 2);
+            }
+            for (long key = -500; key < 500; key++) {
+                assertEquals(Long.valueOf(key * 2), folded.get(key));
+            }
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void initWithNullHashStrategy() {
+        new OffHeapLongMap<>(ValueCodecs.LONG, 16, 0.75f, null);
+    }
+
+    @Test
+    public void intValues() {
+        OffHeapLongMap<Integer> ints = new OffHeapLongMap<>(ValueCodecs.INT, 4);
+        try {
+            for (int i = 0; i < 100; i++) {
+                ints.put(i, -i);
+            }
+            assertEquals(Integer.valueOf(-42), ints.get(42));
+            assertEquals(100, ints.values().length);
+        } finally {
+            ints.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void useAfterClose() {
+        longs.put(1, FIRST_VALUE);
+        longs.close();
+        longs.get(1);
+    }
+
+    @Test
+    public void cursorRemove() {
+        for (long key = 0; key < 1000; key++) {
+            longs.put(key, key);
+        }
+        LongMapCursor<Long> cursor = longs.cursor();
+        int visited = 0;
+        while (cursor.advance()) {
+            visited++;
+            assertEquals(cursor.key(), (long) cursor.value());
+            if (cursor.key() % 3 == 0) {
+                cursor.remove();
+            }
+        }
+        assertEquals(1000, visited);
+        assertEquals(666, longs.size());
+
+        long[] sum = {0};
+        longs.forEach((key, value) -> sum[0] += value);
+        assertEquals(1000 * 999 / 2 - 3 * (333 * 334 / 2), sum[0]);
+    }
+}
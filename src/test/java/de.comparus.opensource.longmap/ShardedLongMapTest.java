@@ -0,0 +1,176 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.*;
+
+public class ShardedLongMapTest {
+
+    private static final int THREADS = 8;
+    private static final int KEYS_PER_THREAD = 20000;
+    private static final String FIRST_VALUE = "first";
+    private static final String SECOND_VALUE = "second";
+
+    private ShardedLongMap<String> strings;
+
+    @Before
+    public void setUp() {
+        strings = new ShardedLongMap<>(8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void initWithZeroShards() {
+        new ShardedLongMap<String>(0);
+    }
+
+    @Test
+    public void shardCountIsPowerOfTwo() {
+        assertEquals(1, new ShardedLongMap<String>(1).shardCount());
+        assertEquals(8, new ShardedLongMap<String>(5).shardCount());
+        assertEquals(8, strings.shardCount());
+    }
+
+    @Test
+    public void putGetRemove() {
+        assertNull(strings.put(1, FIRST_VALUE));
+        assertEquals(FIRST_VALUE, strings.put(1, SECOND_VALUE));
+        assertEquals(SECOND_VALUE, strings.get(1));
+        assertTrue(strings.containsKey(1));
+        assertTrue(strings.containsValue(SECOND_VALUE));
+        assertFalse(strings.containsValue(FIRST_VALUE));
+
+        assertEquals(SECOND_VALUE, strings.remove(1));
+        assertNull(strings.get(1));
+        assertTrue(strings.isEmpty());
+        assertNull(strings.values());
+    }
+
+    @Test
+    public void matchesHashMap() {
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 50000; i++) {
+            long key = random.nextInt(10000) - 5000;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), strings.remove(key));
+            } else {
+                assertEquals(expected.put(key, "" + i), strings.put(key, "" + i));
+            }
+        }
+
+        assertEquals(expected.size(), strings.size());
+        long[] keys = strings.keys();
+        String[] values = strings.values();
+        assertEquals(expected.size(), keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(expected.get(keys[i]), values[i]);
+        }
+
+        strings.clear();
+        assertTrue(strings.isEmpty());
+        assertEquals(0, strings.keys().length);
+    }
+
+    @Test
+    public void keysSpreadOverAllShards() {
+        int[] counts = new int[strings.shardCount()];
+        for (long key = 0; key < 8000; key++) {
+            counts[strings.shardIndex(key << 32)]++;
+        }
+        for (int count : counts) {
+            assertTrue(count > 800);
+        }
+    }
+
+    @Test
+    public void nullValues() {
+        strings.put(1, null);
+        strings.put(2, FIRST_VALUE);
+        assertTrue(strings.containsKey(1));
+        assertTrue(strings.containsValue(null));
+        assertEquals(2, strings.values().length);
+    }
+
+    @Test
+    public void cursorRemove() {
+        ShardedLongMap<Long> longs = new ShardedLongMap<>(4);
+        for (long key = 0; key < 1000; key++) {
+            longs.put(key, key);
+        }
+        LongMapCursor<Long> cursor = longs.cursor();
+        int visited = 0;
+        while (cursor.advance()) {
+            visited++;
+            assertEquals(cursor.key(), (long) cursor.value());
+            if (cursor.key() % 3 == 0) {
+                cursor.remove();
+            }
+        }
+        assertEquals(1000, visited);
+        assertEquals(666, longs.size());
+        assertFalse(cursor.advance());
+    }
+
+    @Test
+    public void concurrentPutsAndParallelForEach() throws Exception {
+        ShardedLongMap<Long> map = new ShardedLongMap<>(16, 2, 0.75f);
+        runConcurrently(thread -> {
+            long base = (long) thread * KEYS_PER_THREAD;
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                map.put(base + i, base + i);
+            }
+        });
+
+        long total = (long) THREADS * KEYS_PER_THREAD;
+        assertEquals(total, map.size());
+        LongAdder sum = new LongAdder();
+        map.forEach(1, (key, value) -> sum.add(value));
+        assertEquals(total * (total - 1) / 2, sum.sum());
+    }
+
+    @Test
+    public void concurrentMergeCounts() throws Exception {
+        ShardedLongMap<Long> counters = new ShardedLongMap<>(4);
+        runConcurrently(thread -> {
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                counters.merge(i % 1000, 1L, Long::sum);
+            }
+        });
+
+        assertEquals(1000, counters.size());
+        for (long key = 0; key < 1000; key++) {
+            assertEquals(Long.valueOf(THREADS * KEYS_PER_THREAD / 1000), counters.getOrDefault(key, 0L));
+        }
+    }
+
+    private void runConcurrently(ThreadTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int current = thread;
+                futures.add(executor.submit(() -> task.run(current)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private interface ThreadTask {
+        void run(int thread);
+    }
+}
@@ -0,0 +1,150 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SwissLongMapTest {
+
+    private static final String FIRST_VALUE = "first";
+    private static final String SECOND_VALUE = "second";
+
+    private SwissLongMap<String> strings;
+
+    @Before
+    public void setUp() {
+        strings = new SwissLongMap<>();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void initWithIllegalLoadFactor() {
+        new SwissLongMap<String>(16, 1f);
+    }
+
+    @Test
+    public void putGetRemove() {
+        assertNull(strings.put(1, FIRST_VALUE));
+        assertEquals(FIRST_VALUE, strings.put(1, SECOND_VALUE));
+        assertEquals(SECOND_VALUE, strings.get(1));
+        assertTrue(strings.containsKey(1));
+        assertFalse(strings.containsKey(2));
+        assertTrue(strings.containsValue(SECOND_VALUE));
+        assertFalse(strings.containsValue(FIRST_VALUE));
+
+        assertEquals(SECOND_VALUE, strings.remove(1));
+        assertNull(strings.get(1));
+        assertTrue(strings.isEmpty());
+        assertNull(strings.values());
+    }
+
+    @Test
+    public void zeroAndExtremeKeys() {
+        strings.put(0, FIRST_VALUE);
+        strings.put(Long.MIN_VALUE, SECOND_VALUE);
+        strings.put(Long.MAX_VALUE, FIRST_VALUE);
+        assertEquals(FIRST_VALUE, strings.get(0));
+        assertEquals(SECOND_VALUE, strings.get(Long.MIN_VALUE));
+        assertEquals(FIRST_VALUE, strings.get(Long.MAX_VALUE));
+        assertEquals(3, strings.size());
+        assertEquals(FIRST_VALUE, strings.remove(0));
+        assertFalse(strings.containsKey(0));
+    }
+
+    @Test
+    public void matchesHashMap() {
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(22);
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(20000) - 10000;
+            if (random.nextInt(2) == 0) {
+                assertEquals(expected.remove(key), strings.remove(key));
+            } else {
+                assertEquals(expected.put(key, "" + i), strings.put(key, "" + i));
+            }
+        }
+
+        assertEquals(expected.size(), strings.size());
+        long[] keys = strings.keys();
+        String[] values = strings.values();
+        assertEquals(expected.size(), keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(expected.get(keys[i]), values[i]);
+        }
+        for (long key = -11000; key < 11000; key++) {
+            assertEquals(expected.get(key), strings.get(key));
+        }
+
+        strings.clear();
+        assertTrue(strings.isEmpty());
+        assertEquals(0, strings.keys().length);
+    }
+
+    @Test
+    public void highLoadFactor() {
+        SwissLongMap<Long> longs = new SwissLongMap<>(1024, 0.97f);
+        for (long key = 0; key < 990; key++) {
+            longs.put(key * 7919, key);
+        }
+        assertEquals(1024, longs.capacity());
+        for (long key = 0; key < 990; key++) {
+            assertEquals(Long.valueOf(key), longs.get(key * 7919));
+        }
+        assertNull(longs.get(-1));
+    }
+
+    @Test
+    public void churnPurgesTombstonesWithoutGrowing() {
+        SwissLongMap<Long> longs = new SwissLongMap<>(64);
+        for (long key = 0; key < 100000; key++) {
+            longs.put(key, key);
+            if (key >= 20) {
+                assertEquals(Long.valueOf(key - 20), longs.remove(key - 20));
+            }
+        }
+        assertEquals(20, longs.size());
+        assertEquals(64, longs.capacity());
+    }
+
+    @Test
+    public void nullValues() {
+        strings.put(1, null);
+        strings.put(2, FIRST_VALUE);
+        assertTrue(strings.containsKey(1));
+        assertTrue(strings.containsValue(null));
+        assertEquals(2, strings.values().length);
+    }
+
+    @Test
+    public void cursorRemove() {
+        SwissLongMap<Long> longs = new SwissLongMap<>();
+        for (long key = 0; key < 1000; key++) {
+            longs.put(key, key);
+        }
+        LongMapCursor<Long> cursor = longs.cursor();
+        int visited = 0;
+        while (cursor.advance()) {
+            visited++;
+            assertEquals(cursor.key(), (long) cursor.value());
+            if (cursor.key() % 3 == 0) {
+                cursor.remove();
+            }
+        }
+        assertEquals(1000, visited);
+        assertEquals(666, longs.size());
+        assertFalse(cursor.advance());
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void forEachFailsFast() {
+        for (long key = 0; key < 100; key++) {
+            strings.put(key, FIRST_VALUE);
+        }
+        strings.forEach((key, value) -> strings.remove(key));
+    }
+}